@@ -0,0 +1,80 @@
+package memcached_sdn.experiment.data;
+
+import memcached_sdn.experiment.helpers.Helpers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of serializing a latency record by the file writer thread, as a text line or a binary record.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExperimentDataBenchmark {
+
+    private static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    @Param({"false", "true"})
+    private boolean compress;
+
+    private final ExperimentData data = new ExperimentData(System.nanoTime(), String.format(Helpers.KEY_FORMAT, 12345), 12345,
+            TimeUnit.MICROSECONDS.toNanos(250), 1, 1, 1, 1);
+    private final StringBuilder line = new StringBuilder(64);
+    private final Calendar calendar = Calendar.getInstance();
+    private File file;
+    private BinaryExperimentDataWriter writer;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        file = File.createTempFile("latency-benchmark", ".bin");
+        writer = new BinaryExperimentDataWriter(file.getPath(), "", Helpers.KEY_FORMAT, compress, SEGMENT_SIZE);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        writer.close();
+        for (int i = 0; ; i++) {
+            File segment = new File(BinaryExperimentDataWriter.getSegmentFileName(file.getPath(), i));
+            if (!segment.delete()) {
+                break;
+            }
+        }
+    }
+
+    @Benchmark
+    public StringBuilder appendTo() {
+        line.setLength(0);
+        data.appendTo(line, calendar);
+        return line;
+    }
+
+    @Benchmark
+    public String toText() {
+        return data.toString();
+    }
+
+    @Benchmark
+    public void writeBinary() throws IOException {
+        writer.write(data);
+    }
+
+}
@@ -0,0 +1,82 @@
+package memcached_sdn.experiment.data;
+
+import memcached_sdn.experiment.helpers.Helpers;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hand off of latency records from a load thread to the file writer thread.
+ *
+ * The load thread uses the DROP policy, so a writer which falls behind shows up as dropped records
+ * (the "dropped" counter of every iteration) rather than as a stalled producer.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExperimentDataQueueBenchmark {
+
+    private static final int CAPACITY = 1 << 16;
+    private static final int DRAIN_SIZE = 1024;
+
+    private final ExperimentData data = new ExperimentData(System.nanoTime(), String.format(Helpers.KEY_FORMAT, 12345), 12345,
+            TimeUnit.MICROSECONDS.toNanos(250), 1, 1, 1, 1);
+    private final List<ExperimentData> drained = new ArrayList<>(DRAIN_SIZE);
+    private ExperimentDataQueue queue;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        queue = new ExperimentDataQueue(1, CAPACITY, ExperimentDataQueue.OverflowPolicy.DROP, 1, new AtomicBoolean(false));
+    }
+
+    /**
+     * Records dropped during the iteration, as last seen by the writer.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class DropCounters {
+
+        public long dropped;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            dropped = 0;
+        }
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public void add() {
+        queue.add(0, data);
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public int drain(DropCounters counters) {
+        drained.clear();
+        counters.dropped = queue.getDroppedCount();
+        return queue.drainTo(drained, DRAIN_SIZE);
+    }
+
+}
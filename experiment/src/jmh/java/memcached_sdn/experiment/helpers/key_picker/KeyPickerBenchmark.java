@@ -0,0 +1,74 @@
+package memcached_sdn.experiment.helpers.key_picker;
+
+import memcached_sdn.experiment.helpers.Helpers;
+import memcached_sdn.experiment.helpers.KeyValuePair;
+import memcached_sdn.experiment.memcached.routing.ModuloKeyRouter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of picking the key of a request, as done by every load thread before every get.
+ *
+ * pickerFactor is the --zipf-picker-factor option, -1 for picking straight from the distribution.
+ * Objects have empty values, only the keys take memory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class KeyPickerBenchmark {
+
+    private static final long SEED = 1;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int keysCount;
+
+    @Param({"random", "zipf"})
+    private String distribution;
+
+    @Param({"-1", "70"})
+    private int pickerFactor;
+
+    private KeyPicker keyPicker;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final List<KeyValuePair<String, String>> objects = new ArrayList<>(keysCount);
+        for (int i = 0; i < keysCount; i++) {
+            objects.add(new KeyValuePair<>(i, String.format(Helpers.KEY_FORMAT, i), ""));
+        }
+        if ("zipf".equals(distribution)) {
+            keyPicker = new ZipfKeyPicker(objects, null, SEED);
+        } else {
+            keyPicker = new RandomKeyPicker(objects, SEED);
+        }
+        if (pickerFactor != -1) {
+            keyPicker = new ServerLoadKeyPicker(keyPicker, new double[]{pickerFactor, 100 - pickerFactor}, new ModuloKeyRouter(2));
+        }
+        random = keyPicker.createThreadRandom(0);
+    }
+
+    @Benchmark
+    public KeyValuePair<String, String> pickKey() {
+        return keyPicker.pickKey(random);
+    }
+
+}
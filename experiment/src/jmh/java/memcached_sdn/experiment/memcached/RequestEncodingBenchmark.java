@@ -0,0 +1,55 @@
+package memcached_sdn.experiment.memcached;
+
+import memcached_sdn.experiment.helpers.Helpers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of encoding a get request datagram into the client's send buffer, for a single key (the load
+ * threads' path) and for a multi-get.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestEncodingBenchmark {
+
+    @Param({"1", "10"})
+    private int multiGetKeys;
+
+    private String[] keys;
+    private final byte[] sendBuffer = new byte[AbstractMemcachedUDPClient.BUFFER_SIZE];
+    private int requestId = 0;
+
+    @Setup
+    public void setUp() {
+        keys = new String[multiGetKeys];
+        for (int i = 0; i < multiGetKeys; i++) {
+            keys[i] = String.format(Helpers.KEY_FORMAT, 1000000 + i);
+        }
+    }
+
+    private int nextRequestId() {
+        requestId = (requestId + 1) & 0x7FFF;
+        return requestId;
+    }
+
+    @Benchmark
+    public int encodeRequest() {
+        return AbstractMemcachedUDPClient.encodeGetRequest(keys, nextRequestId(), sendBuffer);
+    }
+
+}
@@ -0,0 +1,92 @@
+package memcached_sdn.experiment.memcached;
+
+import memcached_sdn.experiment.helpers.Helpers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of receiving a get response: reassembling its datagrams (split like memcached does, 1400 payload
+ * bytes each) and reading the value out of the result.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseParsingBenchmark {
+
+    private static final int DATAGRAM_PAYLOAD_SIZE = 1400;
+
+    @Param({"1024", "10240", "102400"})
+    private int valueSize;
+
+    private final String[] keys = new String[]{String.format(Helpers.KEY_FORMAT, 1)};
+    private final ResponseAssembler assembler = new ResponseAssembler(AbstractMemcachedUDPClient.BUFFER_SIZE);
+    private byte[][] datagrams;
+    private byte[] value;
+
+    @Setup
+    public void setUp() {
+        value = Helpers.generateString(keys[0], valueSize).substring(0, valueSize).getBytes(StandardCharsets.US_ASCII);
+        final byte[] header = String.format("VALUE %s 0 %d\r\n", keys[0], valueSize).getBytes(StandardCharsets.US_ASCII);
+        final byte[] trailer = "\r\nEND\r\n".getBytes(StandardCharsets.US_ASCII);
+        final byte[] payload = new byte[header.length + valueSize + trailer.length];
+        System.arraycopy(header, 0, payload, 0, header.length);
+        System.arraycopy(value, 0, payload, header.length, valueSize);
+        System.arraycopy(trailer, 0, payload, header.length + valueSize, trailer.length);
+
+        final int datagramsCount = (payload.length + DATAGRAM_PAYLOAD_SIZE - 1) / DATAGRAM_PAYLOAD_SIZE;
+        datagrams = new byte[datagramsCount][];
+        for (int i = 0; i < datagramsCount; i++) {
+            int offset = i * DATAGRAM_PAYLOAD_SIZE;
+            int length = Math.min(DATAGRAM_PAYLOAD_SIZE, payload.length - offset);
+            byte[] datagram = new byte[AbstractMemcachedUDPClient.HEADER_SIZE + length];
+            datagram[3] = (byte) i;
+            datagram[2] = (byte) (i >> 8);
+            datagram[5] = (byte) datagramsCount;
+            datagram[4] = (byte) (datagramsCount >> 8);
+            System.arraycopy(payload, offset, datagram, AbstractMemcachedUDPClient.HEADER_SIZE, length);
+            datagrams[i] = datagram;
+        }
+        // Check the setup once, outside of the measurement
+        if (!Arrays.equals(value, receive().getValue().getBytes(StandardCharsets.US_ASCII))) {
+            throw new IllegalStateException("Unexpected value.");
+        }
+    }
+
+    private MemcachedUDPResult receive() {
+        assembler.reset();
+        for (byte[] datagram : datagrams) {
+            assembler.add(AbstractMemcachedUDPClient.getShort(datagram, 2), AbstractMemcachedUDPClient.getShort(datagram, 4),
+                    datagram, 0, datagram.length);
+        }
+        assembler.assemble();
+        return new MemcachedUDPResult(keys, assembler.getPayload(), assembler.getPayloadOffset(), assembler.getPayloadLength(),
+                assembler.getPacketsCount(), assembler.getTotalNumberOfPackets(), 0, 0);
+    }
+
+    @Benchmark
+    public int copyValue() {
+        return receive().copyValue(value, 0);
+    }
+
+    @Benchmark
+    public String getValue() {
+        return receive().getValue();
+    }
+
+}
@@ -3,19 +3,43 @@ package memcached_sdn.experiment;
 import joptsimple.OptionException;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import memcached_sdn.experiment.coordinator.LoadCoordinator;
+import memcached_sdn.experiment.coordinator.WorkerConnection;
+import memcached_sdn.experiment.data.HotKeyDetector;
+import memcached_sdn.experiment.data.IntervalListener;
+import memcached_sdn.experiment.data.LatencyLogFormat;
+import memcached_sdn.experiment.data.LatencyRecorder;
+import memcached_sdn.experiment.data.RequestTrace;
+import memcached_sdn.experiment.data.RequestTraceRecorder;
 import memcached_sdn.experiment.helpers.Helpers;
 import memcached_sdn.experiment.helpers.KeyValuePair;
+import memcached_sdn.experiment.helpers.ObjectsDataset;
 import memcached_sdn.experiment.helpers.key_picker.KeyPicker;
 import memcached_sdn.experiment.helpers.key_picker.RandomKeyPicker;
+import memcached_sdn.experiment.helpers.key_picker.ServerLoadKeyPicker;
+import memcached_sdn.experiment.helpers.key_picker.TraceKeyPicker;
 import memcached_sdn.experiment.helpers.key_picker.ZipfKeyPicker;
 import memcached_sdn.experiment.memcached.MemcachedUDPClient;
-import net.spy.memcached.MemcachedClient;
-import net.spy.memcached.transcoders.SerializingTranscoder;
+import memcached_sdn.experiment.memcached.ObjectsPreloader;
+import memcached_sdn.experiment.memcached.RetryPolicy;
+import memcached_sdn.experiment.memcached.Transport;
+import memcached_sdn.experiment.memcached.cache.NearCache;
+import memcached_sdn.experiment.memcached.replication.HotKeyReplicas;
+import memcached_sdn.experiment.memcached.replication.HotKeyReplicator;
+import memcached_sdn.experiment.memcached.replication.SpreadingPolicy;
+import memcached_sdn.experiment.memcached.routing.KeyRouter;
+import memcached_sdn.experiment.memcached.routing.ModuloKeyRouter;
+import memcached_sdn.experiment.metrics.MetricsReporter;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -27,17 +51,70 @@ public class Main {
     private static final int DEFAULT_OBJECTS_COUNT = 1000;
     private static final int DEFAULT_OBJECT_SIZE = 1000;
 
+    /**
+     * Options of the coordinator which are not passed on to its workers, or are set per worker.
+     */
+    private static final List<String> COORDINATOR_OPTIONS = Arrays.asList(
+            "workers", "spawn-workers", "coordinator-listen", WorkerConnection.COORDINATOR_OPTION, "metrics-http", "metrics-jmx",
+            "rate", "max-requests", "latency-output-file", "histogram-output-file", "write-objects", "skip-sanity",
+            "keys-distribution-method", "streams-offset", "trace-output-file", "trace-partition");
+
     private static OptionSet parseProgramArgument(String[] args) throws IOException {
         OptionParser parser = new OptionParser();
         parser.accepts(
                 "servers", "Comma separated servers list (10.0.0.5:11211,10.0.0.6:11211...")
                 .withRequiredArg().required();
+        parser.accepts(
+                "routing", "Keys to servers mapping (modulo/ketama/jump/weighted).")
+                .withOptionalArg().ofType(String.class).defaultsTo(ModuloKeyRouter.NAME);
+        parser.accepts(
+                "server-weights", "Comma separated relative capacity of each server for ketama/weighted routing (1,2,1...).")
+                .withOptionalArg().ofType(String.class);
         parser.accepts(
                 "sleep", "Time in milliseconds to wait after each request.")
                 .withOptionalArg().ofType(Long.class).defaultsTo(DEFAULT_SLEEP);
+        parser.accepts(
+                "exponential-sleep", "Draw every sleep from an exponential distribution with the sleep time as its mean (think time), instead of a fixed sleep.")
+                .withOptionalArg().ofType(Boolean.class).defaultsTo(false);
+        parser.accepts(
+                "rate", "Target aggregate requests per second (open loop, sleep is ignored). -1 runs a closed loop.")
+                .withOptionalArg().ofType(Double.class).defaultsTo(-1.0);
+        parser.accepts(
+                "async-window", "Number of outstanding get requests per thread using the non-blocking client (0 uses the blocking client).")
+                .withOptionalArg().ofType(Integer.class).defaultsTo(0);
+        parser.accepts(
+                "batch-size", "Number of keys per request, sent as one multi-get per server (every key counts as a request).")
+                .withOptionalArg().ofType(Integer.class).defaultsTo(1);
+        parser.accepts(
+                "transport", "udp (memcached ASCII protocol) or tcp (pipelined memcached binary protocol, gets are always sent asynchronously).")
+                .withOptionalArg().ofType(String.class).defaultsTo("udp");
+        parser.accepts(
+                "tcp-connections", "Number of TCP connections per server of every load thread.")
+                .withOptionalArg().ofType(Integer.class).defaultsTo(1);
+        parser.accepts(
+                "timeout", "Time in milliseconds to wait for a get response (the initial and maximal timeout with adaptive-timeout).")
+                .withOptionalArg().ofType(Long.class).defaultsTo(1000L);
+        parser.accepts(
+                "adaptive-timeout", "Wait for every server's smoothed RTT + 4 * RTT variation instead of a fixed timeout.")
+                .withOptionalArg().ofType(Boolean.class).defaultsTo(false);
+        parser.accepts(
+                "min-timeout", "Minimal adaptive timeout in milliseconds.")
+                .withOptionalArg().ofType(Long.class).defaultsTo(10L);
+        parser.accepts(
+                "retries", "Number of times a timed out get is re-sent with a new request id, each retry doubling the timeout.")
+                .withOptionalArg().ofType(Integer.class).defaultsTo(0);
         parser.accepts(
                 "write-objects", "Determines whether to write objects to the Memcached servers.")
                 .withOptionalArg().ofType(Boolean.class).defaultsTo(true);
+        parser.accepts(
+                "preload-connections", "Number of connections per server used to write the objects.")
+                .withOptionalArg().ofType(Integer.class).defaultsTo(1);
+        parser.accepts(
+                "preload-window", "Maximal number of pipelined sets in flight on every preload connection.")
+                .withOptionalArg().ofType(Integer.class).defaultsTo(1000);
+        parser.accepts(
+                "preload-verify", "Number of random objects read back after writing them, 0 to skip the verification.")
+                .withOptionalArg().ofType(Integer.class).defaultsTo(1000);
         parser.accepts(
                 "objects-count", "The number of objects to write to the Memcached servers.")
                 .withOptionalArg().ofType(Integer.class).defaultsTo(DEFAULT_OBJECTS_COUNT);
@@ -47,6 +124,26 @@ public class Main {
         parser.accepts(
                 "threads", "The number of threads to use for the experiment.")
                 .withOptionalArg().ofType(Integer.class).defaultsTo(1);
+        parser.accepts(
+                "virtual-clients", "Number of simulated clients, each sending blocking gets from its own virtual thread with its own sockets and request ids "
+                        + "(0 runs a client per thread). Their results are recorded over <threads> lanes. Every client may open a socket per server.")
+                .withOptionalArg().ofType(Integer.class).defaultsTo(0);
+        parser.accepts(
+                "workers", "Number of local worker processes running the experiment together, each with <threads> threads (or <virtual-clients>), "
+                        + "its share of the rate and max-requests and its own key streams. Their intervals are merged by this process (0 runs the experiment in this process).")
+                .withOptionalArg().ofType(Integer.class).defaultsTo(0);
+        parser.accepts(
+                "spawn-workers", "Start the workers as local JVMs (output in worker-<n>.log), false waits for workers started with --coordinator <host>:<port>.")
+                .withOptionalArg().ofType(Boolean.class).defaultsTo(true);
+        parser.accepts(
+                "coordinator-listen", "<host>:<port> the workers connect to, port 0 picks a free one.")
+                .withOptionalArg().ofType(String.class).defaultsTo("127.0.0.1:0");
+        parser.accepts(
+                WorkerConnection.COORDINATOR_OPTION, "<host>:<port> of the coordinator to run as a worker of, all other options are received from it.")
+                .withOptionalArg().ofType(String.class);
+        parser.accepts(
+                "streams-offset", "Key stream of the first thread (or virtual client), set by the coordinator so workers pick different keys.")
+                .withOptionalArg().ofType(Integer.class).defaultsTo(0);
         parser.accepts(
                 "bind", "Interface address to bind sent packets to.")
                 .withOptionalArg().ofType(String.class);
@@ -60,11 +157,82 @@ public class Main {
                 "latency-output-file", "The file the latency output will be written to.")
                 .withOptionalArg().ofType(String.class).defaultsTo("latency.txt");
         parser.accepts(
-                "keys-distribution-method", "Key distribution method to use (random/zipf[-<random-seed>])")
+                "latency-log", "Determines whether to write every request to the latency output file.")
+                .withOptionalArg().ofType(Boolean.class).defaultsTo(true);
+        parser.accepts(
+                "latency-log-format", "Latency output file format (text/binary/binary-compressed). Binary files are converted to text with latency-log-converter.")
+                .withOptionalArg().ofType(String.class).defaultsTo("text");
+        parser.accepts(
+                "latency-queue-size", "Per thread capacity of the latency records queue.")
+                .withOptionalArg().ofType(Integer.class).defaultsTo(65536);
+        parser.accepts(
+                "latency-queue-overflow", "What to do when a latency records queue is full (block/drop/sample[-<keep-every-n>]).")
+                .withOptionalArg().ofType(String.class).defaultsTo("block");
+        parser.accepts(
+                "histogram-interval", "Interval in seconds for printing latency percentiles per server (0 prints only the totals).")
+                .withOptionalArg().ofType(Integer.class).defaultsTo(10);
+        parser.accepts(
+                "histogram-output-file", "An HdrHistogram log file the interval latency histograms will be written to.")
+                .withOptionalArg().ofType(String.class);
+        parser.accepts(
+                "metrics-http", "<host>:<port> to serve the latest interval metrics of every server on as JSON (GET /metrics), port 0 picks a free one.")
+                .withOptionalArg().ofType(String.class);
+        parser.accepts(
+                "metrics-jmx", "Export the latest interval metrics of every server as JMX MBeans.")
+                .withOptionalArg().ofType(Boolean.class).defaultsTo(false);
+        parser.accepts(
+                "hot-keys-interval", "Interval in seconds for printing the most requested keys per server (0 disables hot keys detection).")
+                .withOptionalArg().ofType(Integer.class).defaultsTo(0);
+        parser.accepts(
+                "hot-keys-top", "Number of hot keys printed per server.")
+                .withOptionalArg().ofType(Integer.class).defaultsTo(10);
+        parser.accepts(
+                "hot-keys-capacity", "Number of keys tracked per thread and server by the hot keys detection.")
+                .withOptionalArg().ofType(Integer.class).defaultsTo(100);
+        parser.accepts(
+                "hot-keys-file", "A file of hot keys (one per line) to replicate before the experiment starts, gets of replicated keys are spread over their replicas.")
+                .withOptionalArg().ofType(String.class);
+        parser.accepts(
+                "replicate-hot-keys", "Replicate the keys found by the hot keys detection every hot-keys-interval.")
+                .withOptionalArg().ofType(Boolean.class).defaultsTo(false);
+        parser.accepts(
+                "hot-key-replicas", "Number of servers every replicated hot key is written to (0 for all servers).")
+                .withOptionalArg().ofType(Integer.class).defaultsTo(0);
+        parser.accepts(
+                "hot-key-spreading", "How gets of replicated hot keys pick a replica (random/round-robin/least-outstanding).")
+                .withOptionalArg().ofType(String.class).defaultsTo("random");
+        parser.accepts(
+                "near-cache", "Answer gets from a client side cache in front of the servers (none/lru/tinylfu).")
+                .withOptionalArg().ofType(String.class).defaultsTo("none");
+        parser.accepts(
+                "near-cache-size", "Near cache size in bytes, split evenly between the threads (each thread has its own cache).")
+                .withOptionalArg().ofType(Long.class).defaultsTo(1048576L);
+        parser.accepts(
+                "near-cache-ttl", "Time in milliseconds a near cache entry is served after it was fetched (0 keeps entries until evicted).")
+                .withOptionalArg().ofType(Long.class).defaultsTo(0L);
+        parser.accepts(
+                "keys-distribution-method", "Key distribution method to use (random[-<random-seed>]/zipf[-<random-seed>[-<exponent>]])")
                 .withOptionalArg().ofType(String.class).defaultsTo("random");
+        parser.accepts(
+                "zipf-exponent", "Zipf distribution exponent (overridden by zipf-<random-seed>-<exponent>).")
+                .withOptionalArg().ofType(Double.class).defaultsTo(1.0);
         parser.accepts(
                 "keys-distribution-file", "A previous output file containing keys distribution data.")
                 .withOptionalArg().ofType(String.class);
+        parser.accepts(
+                "trace-output-file", "A request trace file every request's send time, key and value size is recorded to (see trace-replay-file).")
+                .withOptionalArg().ofType(String.class);
+        parser.accepts(
+                "trace-replay-file", "A request trace to replay instead of picking keys by keys-distribution-method, objects-count must cover its keys. "
+                        + "The trace is memory mapped, not loaded to the heap.")
+                .withOptionalArg().ofType(String.class);
+        parser.accepts(
+                "trace-speedup", "Factor the trace's send times are divided by, the experiment ends with the trace. "
+                        + "0 replays only the keys of the trace (cycling through it), sent as the sleep/rate allow.")
+                .withOptionalArg().ofType(Double.class).defaultsTo(1.0);
+        parser.accepts(
+                "trace-partition", "<index>/<count>: replay every count-th request of the trace starting at index (set by the coordinator).")
+                .withOptionalArg().ofType(String.class).defaultsTo("0/1");
         parser.accepts(
                 "exact-requests-count", "Check on every thread that requests count has not been exceeded (may have a performance implication).")
                 .withOptionalArg().ofType(Boolean.class).defaultsTo(false);
@@ -75,8 +243,11 @@ public class Main {
                 "print-zipf-weights", "Print zipf distribution weights.")
                 .withOptionalArg().ofType(Boolean.class).defaultsTo(false);
         parser.accepts(
-                "zipf-picker-factor", "Percentage for picking a key between two servers.")
+                "zipf-picker-factor", "Percentage for picking a key between two servers (same as server-load <factor>,<100-factor>).")
                 .withOptionalArg().ofType(Integer.class).defaultsTo(-1);
+        parser.accepts(
+                "server-load", "Comma separated share of requests to send to each server (50,30,20...).")
+                .withOptionalArg().ofType(String.class);
         try {
             return parser.parse(args);
         } catch (OptionException e) {
@@ -86,15 +257,31 @@ public class Main {
         return null;
     }
 
-    private static List<KeyValuePair<String, String>> createObjectsList(int objectsCount, int objectSize) {
-        final List<KeyValuePair<String, String>> objects = new ArrayList<>(objectsCount);
-        for (int i = 0; i < objectsCount; i++) {
-            String key = String.format("mem-key-%d", i);
-            String value = Helpers.generateString(key, objectSize);
-            KeyValuePair pair = new KeyValuePair(key, value);
-            objects.add(pair);
+    private static double[] parseDoubles(String commaSeparated) {
+        final String[] values = commaSeparated.split(",");
+        final double[] doubles = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            doubles[i] = Double.parseDouble(values[i].trim());
+        }
+        return doubles;
+    }
+
+    /**
+     * Reads one key per line, ignoring empty lines and lines starting with #.
+     */
+    private static List<String> readHotKeys(String fileName) {
+        final List<String> keys = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(Paths.get(fileName), StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    keys.add(line);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
-        return objects;
+        return keys;
     }
 
     private static void performSanityCheck(MemcachedUDPClient client) {
@@ -106,71 +293,319 @@ public class Main {
         }
     }
 
-    private static void runExperiment(OptionSet options) throws InterruptedException {
+    /**
+     * @return the coordinator of a worker process (started with only --coordinator), otherwise null.
+     */
+    private static String parseCoordinatorArgument(String[] args) {
+        OptionParser parser = new OptionParser();
+        parser.allowsUnrecognizedOptions();
+        parser.accepts(WorkerConnection.COORDINATOR_OPTION).withRequiredArg();
+        try {
+            OptionSet options = parser.parse(args);
+            return options.has(WorkerConnection.COORDINATOR_OPTION) ? options.valueOf(WorkerConnection.COORDINATOR_OPTION).toString() : null;
+        } catch (OptionException e) {
+            return null;
+        }
+    }
+
+    private static MetricsReporter createMetricsReporter(String[] servers, String metricsHttp, boolean metricsJmx) {
+        MetricsReporter metricsReporter = new MetricsReporter(servers);
+        if (metricsJmx) {
+            metricsReporter.registerMBeans();
+            LOGGER.info("Interval metrics exported as " + MetricsReporter.JMX_DOMAIN + ":type=ServerMetrics MBeans");
+        }
+        if (metricsHttp != null) {
+            String[] hostAndPort = metricsHttp.trim().split(":");
+            metricsReporter.startHttpServer(new InetSocketAddress(hostAndPort[0], Integer.parseInt(hostAndPort[1])));
+            InetSocketAddress address = metricsReporter.getHttpAddress();
+            LOGGER.info(String.format("Interval metrics served on http://%s:%d%s",
+                    address.getHostString(), address.getPort(), MetricsReporter.HTTP_PATH));
+        }
+        return metricsReporter;
+    }
+
+    /**
+     * Builds the arguments of every worker: the options given to the coordinator, except for the ones in
+     * {@link #COORDINATOR_OPTIONS}, which are set per worker. Only the first worker checks the servers and
+     * writes the objects, the others wait for it before the experiment starts. All workers share the key
+     * picker's master seed, so they shuffle the zipf weights the same way and their streams do not overlap.
+     */
+    private static List<String[]> createWorkerArgs(OptionSet options, int workersCount) {
+        final boolean writeObjects = Boolean.parseBoolean(options.valueOf("write-objects").toString());
+        final boolean skipSanity = Boolean.parseBoolean(options.valueOf("skip-sanity").toString());
+        final int numberOfThreads = Integer.parseInt(options.valueOf("threads").toString());
+        final int virtualClients = Integer.parseInt(options.valueOf("virtual-clients").toString());
+        final double targetRate = Double.parseDouble(options.valueOf("rate").toString());
+        final long maximumRequestsCount = Long.parseLong(options.valueOf("max-requests").toString());
+        final String latencyFileName = options.valueOf("latency-output-file").toString();
+        final String histogramFileName = options.hasArgument("histogram-output-file") ? options.valueOf("histogram-output-file").toString() : null;
+        final String traceFileName = options.hasArgument("trace-output-file") ? options.valueOf("trace-output-file").toString() : null;
+        String keysDistributionMethod = options.valueOf("keys-distribution-method").toString();
+        if (keysDistributionMethod.split("-").length == 1) {
+            keysDistributionMethod += "-" + KeyPicker.resolveSeed(-1);
+        }
+
+        final List<String> commonArgs = new ArrayList<>();
+        for (OptionSpec<?> spec : options.specs()) {
+            String name = spec.options().iterator().next();
+            if (COORDINATOR_OPTIONS.contains(name)) {
+                continue;
+            }
+            if (options.hasArgument(spec)) {
+                for (Object value : options.valuesOf(spec)) {
+                    commonArgs.add("--" + name + "=" + value);
+                }
+            } else {
+                commonArgs.add("--" + name);
+            }
+        }
+
+        final List<String[]> workerArgs = new ArrayList<>(workersCount);
+        for (int i = 0; i < workersCount; i++) {
+            List<String> args = new ArrayList<>(commonArgs);
+            args.add("--rate=" + ((targetRate > 0) ? targetRate / workersCount : targetRate));
+            args.add("--max-requests=" + ((maximumRequestsCount != -1)
+                    ? maximumRequestsCount / workersCount + ((i < maximumRequestsCount % workersCount) ? 1 : 0)
+                    : -1));
+            args.add("--latency-output-file=" + latencyFileName + ".worker-" + i);
+            if (histogramFileName != null) {
+                args.add("--histogram-output-file=" + histogramFileName + ".worker-" + i);
+            }
+            if (traceFileName != null) {
+                args.add("--trace-output-file=" + traceFileName + ".worker-" + i);
+            }
+            args.add("--trace-partition=" + i + "/" + workersCount);
+            args.add("--write-objects=" + (writeObjects && i == 0));
+            args.add("--skip-sanity=" + (skipSanity || i > 0));
+            args.add("--keys-distribution-method=" + keysDistributionMethod);
+            args.add("--streams-offset=" + i * ((virtualClients > 0) ? virtualClients : numberOfThreads));
+            workerArgs.add(args.toArray(new String[args.size()]));
+        }
+        return workerArgs;
+    }
+
+    private static void runCoordinator(OptionSet options) throws InterruptedException {
+        final String[] servers = options.valueOf("servers").toString().split(",");
+        final int workersCount = Integer.parseInt(options.valueOf("workers").toString());
+        final boolean spawnWorkers = Boolean.parseBoolean(options.valueOf("spawn-workers").toString());
+        final String coordinatorListen = options.valueOf("coordinator-listen").toString();
+        final int histogramInterval = Integer.parseInt(options.valueOf("histogram-interval").toString());
+        final String metricsHttp = options.hasArgument("metrics-http") ? options.valueOf("metrics-http").toString() : null;
+        final boolean metricsJmx = Boolean.parseBoolean(options.valueOf("metrics-jmx").toString());
+        final int experimentDuration = Integer.parseInt(options.valueOf("duration").toString());
+        final long maximumRequestsCount = Long.parseLong(options.valueOf("max-requests").toString());
+
+        if (maximumRequestsCount != -1 && experimentDuration != -1) {
+            System.out.println("Only one of duration/max-requests can be set.");
+            System.exit(1);
+        }
+
+        if ((metricsHttp != null || metricsJmx) && histogramInterval <= 0) {
+            System.out.println("metrics-http/metrics-jmx export every histogram-interval, which must be positive.");
+            System.exit(1);
+        }
+
+        final List<IntervalListener> intervalListeners = new ArrayList<>();
+        MetricsReporter metricsReporter = null;
+        if (metricsHttp != null || metricsJmx) {
+            metricsReporter = createMetricsReporter(servers, metricsHttp, metricsJmx);
+            intervalListeners.add(metricsReporter);
+        }
+
+        String[] hostAndPort = coordinatorListen.trim().split(":");
+        final LoadCoordinator coordinator = new LoadCoordinator(
+                new InetSocketAddress(hostAndPort[0], Integer.parseInt(hostAndPort[1])), workersCount, intervalListeners, LOGGER);
+        try {
+            InetSocketAddress address = coordinator.getAddress();
+            if (spawnWorkers) {
+                coordinator.spawnWorkers(Main.class.getName(), "worker-");
+            } else {
+                LOGGER.info(String.format("Waiting for %d workers started with --%s %s:%d", workersCount,
+                        WorkerConnection.COORDINATOR_OPTION, address.getHostString(), address.getPort()));
+            }
+            coordinator.run(createWorkerArgs(options, workersCount));
+        } finally {
+            coordinator.close();
+            if (metricsReporter != null) {
+                metricsReporter.close();
+            }
+        }
+    }
+
+    private static void runExperiment(OptionSet options, WorkerConnection worker) throws InterruptedException {
         final String[] servers = options.valueOf("servers").toString().split(",");
+        final String routing = options.valueOf("routing").toString();
+        final String serverWeights = options.hasArgument("server-weights") ? options.valueOf("server-weights").toString() : null;
         final boolean writeObjects = Boolean.parseBoolean(options.valueOf("write-objects").toString());
+        final int preloadConnections = Integer.parseInt(options.valueOf("preload-connections").toString());
+        final int preloadWindow = Integer.parseInt(options.valueOf("preload-window").toString());
+        final int preloadVerify = Integer.parseInt(options.valueOf("preload-verify").toString());
         final int objectsCount = Integer.parseInt(options.valueOf("objects-count").toString());
         final int objectSize = Integer.parseInt(options.valueOf("object-size").toString());
         final long sleepTime = Long.parseLong(options.valueOf("sleep").toString());
         final int numberOfThreads = Integer.parseInt(options.valueOf("threads").toString());
+        final int virtualClients = Integer.parseInt(options.valueOf("virtual-clients").toString());
+        final int streamsOffset = Integer.parseInt(options.valueOf("streams-offset").toString());
+        final boolean exponentialSleep = Boolean.parseBoolean(options.valueOf("exponential-sleep").toString());
+        final int asyncWindow = Integer.parseInt(options.valueOf("async-window").toString());
+        final int batchSize = Integer.parseInt(options.valueOf("batch-size").toString());
+        final double targetRate = Double.parseDouble(options.valueOf("rate").toString());
+        final Transport transport = Transport.fromString(options.valueOf("transport").toString());
+        final int tcpConnections = Integer.parseInt(options.valueOf("tcp-connections").toString());
+        final long timeout = Long.parseLong(options.valueOf("timeout").toString());
+        final boolean adaptiveTimeout = Boolean.parseBoolean(options.valueOf("adaptive-timeout").toString());
+        final long minimumTimeout = Long.parseLong(options.valueOf("min-timeout").toString());
+        final int retries = Integer.parseInt(options.valueOf("retries").toString());
         final String bindAddress = options.valueOf("bind") != null ? options.valueOf("bind").toString() : null;
         final int experimentDuration = Integer.parseInt(options.valueOf("duration").toString());
         final long maximumRequestsCount = Long.parseLong(options.valueOf("max-requests").toString());
         final String latencyFileName = options.valueOf("latency-output-file").toString();
+        final boolean latencyLogEnabled = Boolean.parseBoolean(options.valueOf("latency-log").toString());
+        final LatencyLogFormat latencyLogFormat = LatencyLogFormat.fromString(options.valueOf("latency-log-format").toString());
+        final int latencyQueueSize = Integer.parseInt(options.valueOf("latency-queue-size").toString());
+        final String latencyQueueOverflow = options.valueOf("latency-queue-overflow").toString();
+        final int histogramInterval = Integer.parseInt(options.valueOf("histogram-interval").toString());
+        final String histogramFileName = options.hasArgument("histogram-output-file") ? options.valueOf("histogram-output-file").toString() : null;
+        final String metricsHttp = options.hasArgument("metrics-http") ? options.valueOf("metrics-http").toString() : null;
+        final boolean metricsJmx = Boolean.parseBoolean(options.valueOf("metrics-jmx").toString());
+        final int hotKeysInterval = Integer.parseInt(options.valueOf("hot-keys-interval").toString());
+        final int hotKeysTop = Integer.parseInt(options.valueOf("hot-keys-top").toString());
+        final int hotKeysCapacity = Integer.parseInt(options.valueOf("hot-keys-capacity").toString());
+        final String hotKeysFile = options.hasArgument("hot-keys-file") ? options.valueOf("hot-keys-file").toString() : null;
+        final boolean replicateHotKeys = Boolean.parseBoolean(options.valueOf("replicate-hot-keys").toString());
+        final int hotKeyReplicasCount = Integer.parseInt(options.valueOf("hot-key-replicas").toString());
+        final SpreadingPolicy hotKeySpreading = SpreadingPolicy.fromString(options.valueOf("hot-key-spreading").toString());
+        final String nearCachePolicy = options.valueOf("near-cache").toString();
+        final long nearCacheSize = Long.parseLong(options.valueOf("near-cache-size").toString());
+        final long nearCacheTtl = Long.parseLong(options.valueOf("near-cache-ttl").toString());
         final String keysDistributionMethod = options.valueOf("keys-distribution-method").toString();
         final String keysDistributionFile = options.hasArgument("keys-distribution-file") ? options.valueOf("keys-distribution-file").toString() : null;
+        final String traceFileName = options.hasArgument("trace-output-file") ? options.valueOf("trace-output-file").toString() : null;
+        final String traceReplayFileName = options.hasArgument("trace-replay-file") ? options.valueOf("trace-replay-file").toString() : null;
+        final double traceSpeedUp = Double.parseDouble(options.valueOf("trace-speedup").toString());
+        final String[] tracePartition = options.valueOf("trace-partition").toString().split("/");
         final boolean exactRequestsCount = Boolean.parseBoolean(options.valueOf("exact-requests-count").toString());
         final boolean skipSanity = Boolean.parseBoolean(options.valueOf("skip-sanity").toString());
         final boolean printZipfWeights = Boolean.parseBoolean(options.valueOf("print-zipf-weights").toString());
         final int zipfPickerFactor = Integer.parseInt(options.valueOf("zipf-picker-factor").toString());
+        final double zipfExponent = Double.parseDouble(options.valueOf("zipf-exponent").toString());
+        final String serverLoad = options.hasArgument("server-load") ? options.valueOf("server-load").toString() : null;
 
         if (maximumRequestsCount != -1 && experimentDuration != -1) {
             System.out.println("Only one of duration/max-requests can be set.");
             System.exit(1);
         }
 
+        if (batchSize < 1) {
+            System.out.println("batch-size must be positive.");
+            System.exit(1);
+        }
+
+        if (virtualClients > 0 && (asyncWindow > 0 || batchSize > 1 || transport != Transport.UDP)) {
+            System.out.println("virtual-clients send one blocking UDP get at a time, async-window/batch-size/transport can not be set.");
+            System.exit(1);
+        }
+
+        if (transport == Transport.TCP && (adaptiveTimeout || retries > 0)) {
+            System.out.println("TCP gets are not retried and wait the fixed timeout, adaptive-timeout/retries can not be set.");
+            System.exit(1);
+        }
+
+        if (traceReplayFileName != null && (serverLoad != null || zipfPickerFactor != -1)) {
+            System.out.println("server-load/zipf-picker-factor can not be set when replaying a trace.");
+            System.exit(1);
+        }
+
+        if (traceReplayFileName != null && traceSpeedUp > 0 && (targetRate > 0 || batchSize > 1)) {
+            System.out.println("A trace replayed with trace-speedup > 0 sets the send time of every get, rate/batch-size can not be set.");
+            System.exit(1);
+        }
+
+        if (serverLoad != null && zipfPickerFactor != -1) {
+            System.out.println("Only one of server-load/zipf-picker-factor can be set.");
+            System.exit(1);
+        }
+
+        if ((metricsHttp != null || metricsJmx) && histogramInterval <= 0) {
+            System.out.println("metrics-http/metrics-jmx export every histogram-interval, which must be positive.");
+            System.exit(1);
+        }
+
+        if (replicateHotKeys && hotKeysInterval <= 0) {
+            System.out.println("replicate-hot-keys requires hot-keys-interval.");
+            System.exit(1);
+        }
+
         if (keysDistributionFile != null && !new File(keysDistributionFile).exists()) {
             throw new RuntimeException("keys-distribution-file " + keysDistributionFile + " not found.");
         }
 
-        MemcachedUDPClient client = new MemcachedUDPClient(servers, bindAddress, -1);
-        if (!skipSanity) {
-            performSanityCheck(client);
+        final KeyRouter router = KeyRouter.create(routing, servers, serverWeights != null ? parseDoubles(serverWeights) : null);
+        LOGGER.info("Keys routing: " + router);
+
+        final RetryPolicy retryPolicy = new RetryPolicy(timeout, adaptiveTimeout, minimumTimeout, retries);
+        LOGGER.info(String.format("Gets over %s: %s", transport, retryPolicy));
+
+        if (!skipSanity && transport == Transport.UDP) {
+            MemcachedUDPClient sanityClient = new MemcachedUDPClient(servers, bindAddress, -1, router);
+            try {
+                performSanityCheck(sanityClient);
+            } finally {
+                sanityClient.close();
+            }
         }
 
-        LOGGER.info("Creating objects list...");
-        final List<KeyValuePair<String, String>> objectsList = createObjectsList(objectsCount, objectSize);
+        final List<KeyValuePair<String, String>> objectsList = new ObjectsDataset(objectsCount, objectSize);
 
         if (writeObjects) {
-            InetSocketAddress[] serverAddresses = new InetSocketAddress[servers.length];
-            for (int i = 0; i < servers.length; i++) {
-                String[] values = servers[i].split(":");
-                serverAddresses[i] = new InetSocketAddress(values[0], Integer.parseInt(values[1]));
-            }
-            MemcachedClient memcachedClient = null;
+            ObjectsPreloader preloader = new ObjectsPreloader(servers, router, preloadConnections, preloadWindow, LOGGER);
             try {
-                memcachedClient = new MemcachedClient(serverAddresses);
-                SerializingTranscoder transcoder = new SerializingTranscoder();
-                transcoder.setCompressionThreshold(Integer.MAX_VALUE);
-                LOGGER.info(String.format("Writing %d objects to Memcached...", objectsCount));
-                for (KeyValuePair<String, String> pair : objectsList) {
-                    memcachedClient.set(pair.getKey(), 0, pair.getValue(), transcoder).get();
+                LOGGER.info(String.format("Writing %d objects to Memcached (%d connections per server, window %d)...",
+                        objectsCount, preloadConnections, preloadWindow));
+                preloader.load(objectsList);
+                if (preloadVerify > 0) {
+                    LOGGER.info(String.format("Verifying %d preloaded objects...", Math.min(preloadVerify, objectsCount)));
+                    int mismatchesCount = preloader.verify(objectsList, preloadVerify, System.nanoTime());
+                    if (mismatchesCount > 0) {
+                        throw new IllegalStateException(String.format("Preload verification failed for %d objects.", mismatchesCount));
+                    }
                 }
-            } catch (Exception e) {
-                throw new RuntimeException(e);
             } finally {
-                if (memcachedClient != null) {
-                    memcachedClient.shutdown();
-                }
+                preloader.close();
+            }
+        }
+
+        HotKeyReplicas hotKeyReplicas = null;
+        HotKeyReplicator hotKeyReplicator = null;
+        if (hotKeysFile != null || replicateHotKeys) {
+            hotKeyReplicas = new HotKeyReplicas(router, hotKeyReplicasCount, hotKeySpreading);
+            hotKeyReplicator = new HotKeyReplicator(servers, hotKeyReplicas, objectsList);
+            if (hotKeysFile != null) {
+                List<String> hotKeys = readHotKeys(hotKeysFile);
+                LOGGER.info(String.format("Replicating %d hot keys to %d servers each...", hotKeys.size(), hotKeyReplicas.getReplicasCount()));
+                hotKeyReplicator.replicate(hotKeys);
+            }
+            if (!replicateHotKeys) {
+                hotKeyReplicator.close();
+                hotKeyReplicator = null;
             }
         }
 
         LOGGER.info("Starting experiment main loop...");
 
         KeyPicker keyPicker;
-        if (keysDistributionMethod.equalsIgnoreCase("random")) {
+        if (traceReplayFileName != null) {
+            LOGGER.info("Initializing trace key picker [file=" + traceReplayFileName + "]");
+            keyPicker = new TraceKeyPicker(objectsList, RequestTrace.open(traceReplayFileName), traceSpeedUp,
+                    Integer.parseInt(tracePartition[0]), Integer.parseInt(tracePartition[1]));
+        } else if (keysDistributionMethod.startsWith("random")) {
             LOGGER.info("Initializing random key picker");
-            keyPicker = new RandomKeyPicker(objectsList);
+            String[] values = keysDistributionMethod.split("-");
+            long seed = -1;
+            if (values.length > 1) {
+                seed = Long.parseLong(values[1]);
+            }
+            keyPicker = new RandomKeyPicker(objectsList, seed);
         } else if (keysDistributionMethod.startsWith("zipf")) {
             LOGGER.info("Initializing zipf key picker [file=" + keysDistributionFile + "]");
             String[] values = keysDistributionMethod.split("-");
@@ -178,7 +613,11 @@ public class Main {
             if (values.length > 1) {
                 seed = Long.parseLong(values[1]);
             }
-            keyPicker = new ZipfKeyPicker(objectsList, keysDistributionFile, seed, zipfPickerFactor);
+            double exponent = zipfExponent;
+            if (values.length > 2) {
+                exponent = Double.parseDouble(values[2]);
+            }
+            keyPicker = new ZipfKeyPicker(objectsList, keysDistributionFile, seed, exponent);
             if (printZipfWeights) {
                 ZipfKeyPicker zkp = (ZipfKeyPicker) keyPicker;
                 zkp.printWeightPerServer(objectsList, servers.length, maximumRequestsCount);
@@ -188,18 +627,93 @@ public class Main {
             throw new IllegalArgumentException("Unrecognized keys distribution method: " + keysDistributionMethod);
         }
 
+        if (serverLoad != null) {
+            LOGGER.info("Targeting server load " + serverLoad);
+            keyPicker = new ServerLoadKeyPicker(keyPicker, parseDoubles(serverLoad), router);
+        } else if (zipfPickerFactor != -1) {
+            // Legacy option, always splits keys by hash % 2
+            keyPicker = new ServerLoadKeyPicker(keyPicker, new double[]{zipfPickerFactor, 100 - zipfPickerFactor}, new ModuloKeyRouter(2));
+        }
+
+        LOGGER.info(String.format("Key picker streams seed: %d", keyPicker.getStreamsSeed()));
+        if (virtualClients > 0) {
+            LOGGER.info(String.format("Running %d virtual clients recorded over %d lanes", virtualClients, numberOfThreads));
+        }
+
+        if (worker != null) {
+            LOGGER.info(String.format("Worker #%d ready, waiting for the other workers...", worker.getWorkerIndex()));
+            worker.awaitStart();
+        }
+
+        final LatencyRecorder latencyRecorder = new LatencyRecorder(numberOfThreads, servers.length);
+        if (histogramFileName != null) {
+            latencyRecorder.setLogFile(histogramFileName);
+        }
+
+        final List<IntervalListener> intervalListeners = new ArrayList<>();
+        MetricsReporter metricsReporter = null;
+        if (metricsHttp != null || metricsJmx) {
+            metricsReporter = createMetricsReporter(servers, metricsHttp, metricsJmx);
+            intervalListeners.add(metricsReporter);
+        }
+        if (worker != null) {
+            intervalListeners.add(worker);
+        }
+
+        final HotKeyDetector hotKeyDetector = (hotKeysInterval > 0)
+                ? new HotKeyDetector(numberOfThreads, servers.length, Math.max(hotKeysCapacity, hotKeysTop), hotKeysTop)
+                : null;
+
+        final RequestTraceRecorder traceRecorder = (traceFileName != null) ? new RequestTraceRecorder(traceFileName, numberOfThreads) : null;
+
+        NearCache[] nearCaches = null;
+        if (!"none".equals(nearCachePolicy)) {
+            nearCaches = new NearCache[numberOfThreads];
+            for (int i = 0; i < numberOfThreads; i++) {
+                nearCaches[i] = NearCache.create(nearCachePolicy, nearCacheSize / numberOfThreads, nearCacheTtl);
+            }
+            LOGGER.info(String.format("Near cache: %s, %d bytes per thread, ttl %dms", nearCachePolicy, nearCacheSize / numberOfThreads, nearCacheTtl));
+        }
+
         final MemcachedConcurrentClient mcc = new MemcachedConcurrentClient(
                 servers,
                 numberOfThreads,
+                virtualClients,
                 sleepTime,
+                exponentialSleep,
+                asyncWindow,
+                batchSize,
+                targetRate,
                 bindAddress,
+                router,
+                retryPolicy,
+                transport,
+                tcpConnections,
                 experimentDuration,
                 maximumRequestsCount,
                 exactRequestsCount,
                 latencyFileName,
+                latencyLogFormat,
+                latencyLogEnabled,
+                latencyQueueSize,
+                latencyQueueOverflow,
+                latencyRecorder,
+                histogramInterval,
+                intervalListeners,
+                hotKeyDetector,
+                hotKeysInterval,
+                hotKeyReplicas,
+                hotKeyReplicator,
+                nearCaches,
+                traceRecorder,
+                streamsOffset,
                 keyPicker,
                 LOGGER);
 
+        if (metricsReporter != null && latencyLogEnabled) {
+            metricsReporter.setRecordsQueue(mcc.getLatenciesQueue());
+        }
+
         Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
             @Override
             public void run() {
@@ -212,14 +726,45 @@ public class Main {
             }
         }));
 
-        mcc.run();
+        try {
+            mcc.run();
+            if (traceRecorder != null) {
+                LOGGER.info("Writing request trace " + traceFileName + "...");
+                LOGGER.info(String.format("Recorded %d requests to %s", traceRecorder.close(), traceFileName));
+            }
+        } finally {
+            if (hotKeyReplicator != null) {
+                hotKeyReplicator.close();
+            }
+            if (metricsReporter != null) {
+                metricsReporter.close();
+            }
+        }
 
     }
 
     public static void main(String[] args) throws IOException, InterruptedException {
+        final String coordinator = parseCoordinatorArgument(args);
+        if (coordinator != null) {
+            WorkerConnection worker = WorkerConnection.connect(coordinator);
+            try {
+                OptionSet options = parseProgramArgument(worker.getArgs());
+                LOGGER.info(String.format("Starting the experiment as worker #%d of %s...", worker.getWorkerIndex(), coordinator));
+                runExperiment(options, worker);
+                worker.finish();
+            } finally {
+                worker.close();
+            }
+            return;
+        }
         OptionSet options = parseProgramArgument(args);
+        if (Integer.parseInt(options.valueOf("workers").toString()) > 0) {
+            LOGGER.info("Starting the experiment over worker processes...");
+            runCoordinator(options);
+            return;
+        }
         LOGGER.info("Starting the experiment...");
-        runExperiment(options);
+        runExperiment(options, null);
     }
 
 
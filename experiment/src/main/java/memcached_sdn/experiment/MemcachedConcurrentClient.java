@@ -2,20 +2,49 @@ package memcached_sdn.experiment;
 
 import com.google.common.math.LongMath;
 import memcached_sdn.experiment.data.ExperimentData;
+import memcached_sdn.experiment.data.ExperimentDataQueue;
+import memcached_sdn.experiment.data.HotKeyDetector;
+import memcached_sdn.experiment.data.HotKeysSnapshot;
+import memcached_sdn.experiment.data.IntervalListener;
+import memcached_sdn.experiment.data.LatencyRecorder;
+import memcached_sdn.experiment.data.LatencyLogFormat;
+import memcached_sdn.experiment.data.LatencySnapshot;
+import memcached_sdn.experiment.data.RequestTrace;
+import memcached_sdn.experiment.data.RequestTraceRecorder;
 import memcached_sdn.experiment.helpers.FileWriterCallable;
+import memcached_sdn.experiment.helpers.Helpers;
 import memcached_sdn.experiment.helpers.KeyValuePair;
+import memcached_sdn.experiment.helpers.ObjectsDataset;
+import memcached_sdn.experiment.helpers.RequestPacer;
 import memcached_sdn.experiment.helpers.key_picker.KeyPicker;
+import memcached_sdn.experiment.helpers.key_picker.TraceKeyPicker;
+import memcached_sdn.experiment.memcached.AbstractMemcachedAsyncClient;
+import memcached_sdn.experiment.memcached.AbstractMemcachedUDPClient;
+import memcached_sdn.experiment.memcached.MemcachedAsyncTCPClient;
+import memcached_sdn.experiment.memcached.MemcachedAsyncUDPClient;
+import memcached_sdn.experiment.memcached.MemcachedUDPCallback;
 import memcached_sdn.experiment.memcached.MemcachedUDPClient;
 import memcached_sdn.experiment.memcached.MemcachedUDPResult;
+import memcached_sdn.experiment.memcached.RetryPolicy;
+import memcached_sdn.experiment.memcached.Transport;
+import memcached_sdn.experiment.memcached.cache.NearCache;
+import memcached_sdn.experiment.memcached.replication.HotKeyReplicas;
+import memcached_sdn.experiment.memcached.replication.HotKeyReplicator;
+import memcached_sdn.experiment.memcached.routing.KeyRouter;
 
-import java.util.Calendar;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
 /**
@@ -23,30 +52,79 @@ import java.util.logging.Logger;
  */
 public class MemcachedConcurrentClient {
 
+    private static final long ASYNC_POLL_MILLIS = 10;
 
     private final Thread[] threads;
+    // Virtual clients share the recording structures of their lane, which are single writer, platform threads own theirs
+    private final ReentrantLock[] laneLocks;
+    private final boolean exponentialSleep;
     private final int duration;
     private final long minimumRequestsCount;
     private final boolean exactRequestsCount;
     private final String latencyFileName;
     private final KeyPicker keyPicker;
+    private final int streamsOffset;
+    private final TraceKeyPicker traceReplay;
+    private final RequestTraceRecorder traceRecorder;
     private final Logger logger;
-    private final Queue<ExperimentData> latenciesQueue = new ConcurrentLinkedQueue<>();
+    private final ExperimentDataQueue latenciesQueue;
     private final ExecutorService executorService = Executors.newFixedThreadPool(1);
     private final AtomicBoolean stop = new AtomicBoolean(false);
     private final AtomicInteger globalRequestsCount = new AtomicInteger(0);
     private final FileWriterCallable latenciesFileWriter;
     private final long[] requestsCountPerThread;
+    private final long[] allocatedBytesPerThread;
+    private final long[] timeoutRetriesPerThread;
+    private final long[] fragmentRetriesPerThread;
+    private final long[] staleDatagramsPerThread;
+    private final double targetRate;
+    private final int batchSize;
+    private final KeyRouter router;
+    private final RetryPolicy retryPolicy;
+    private final Transport transport;
+    private final int tcpConnections;
+    private final LatencyRecorder latencyRecorder;
+    private final boolean latencyLogEnabled;
+    private final int histogramInterval;
+    private final List<IntervalListener> intervalListeners;
+    private final HotKeyDetector hotKeyDetector;
+    private final int hotKeysInterval;
+    private final HotKeyReplicas hotKeyReplicas;
+    private final HotKeyReplicator hotKeyReplicator;
+    private final NearCache[] nearCaches;
     private long startTime = -1;
 
     public MemcachedConcurrentClient(final String[] servers,
-                                     int numberOfThreads,
+                                     final int numberOfThreads,
+                                     int virtualClients,
                                      final long sleepTime,
+                                     boolean exponentialSleep,
+                                     final int asyncWindow,
+                                     int batchSize,
+                                     double targetRate,
                                      final String bindAddress,
+                                     final KeyRouter router,
+                                     RetryPolicy retryPolicy,
+                                     Transport transport,
+                                     int tcpConnections,
                                      int duration,
                                      final long minimumRequestsCount,
                                      boolean exactRequestsCount,
                                      String latencyFileName,
+                                     LatencyLogFormat latencyLogFormat,
+                                     boolean latencyLogEnabled,
+                                     int latencyQueueSize,
+                                     String latencyQueueOverflow,
+                                     LatencyRecorder latencyRecorder,
+                                     int histogramInterval,
+                                     List<IntervalListener> intervalListeners,
+                                     HotKeyDetector hotKeyDetector,
+                                     int hotKeysInterval,
+                                     HotKeyReplicas hotKeyReplicas,
+                                     HotKeyReplicator hotKeyReplicator,
+                                     NearCache[] nearCaches,
+                                     RequestTraceRecorder traceRecorder,
+                                     int streamsOffset,
                                      final KeyPicker keyPicker,
                                      Logger logger) {
         this.duration = duration;
@@ -54,80 +132,593 @@ public class MemcachedConcurrentClient {
         this.exactRequestsCount = exactRequestsCount;
         this.latencyFileName = latencyFileName;
         this.keyPicker = keyPicker;
+        this.streamsOffset = streamsOffset;
+        this.traceReplay = (keyPicker instanceof TraceKeyPicker && ((TraceKeyPicker) keyPicker).isTimed())
+                ? (TraceKeyPicker) keyPicker : null;
+        this.traceRecorder = traceRecorder;
+        this.targetRate = targetRate;
+        this.router = router;
+        this.retryPolicy = retryPolicy;
+        this.transport = transport;
+        this.tcpConnections = tcpConnections;
+        this.batchSize = batchSize;
+        this.exponentialSleep = exponentialSleep;
+        this.latencyLogEnabled = latencyLogEnabled;
+        this.latencyRecorder = latencyRecorder;
+        this.histogramInterval = histogramInterval;
+        this.intervalListeners = intervalListeners;
+        this.hotKeyDetector = hotKeyDetector;
+        this.hotKeysInterval = hotKeysInterval;
+        this.hotKeyReplicas = hotKeyReplicas;
+        this.hotKeyReplicator = hotKeyReplicator;
+        this.nearCaches = nearCaches;
+        this.latenciesQueue = ExperimentDataQueue.create(numberOfThreads, latencyQueueSize, latencyQueueOverflow, this.stop);
         this.latenciesFileWriter= new FileWriterCallable(
-                this.latenciesQueue, latencyFileName, this.stop, minimumRequestsCount, keyPicker.toString(), servers);
+                this.latenciesQueue, latencyFileName, latencyLogFormat, this.stop, minimumRequestsCount, keyPicker.toString(), servers, router);
         this.logger = logger;
         this.requestsCountPerThread = new long[numberOfThreads];
-        this.threads = new Thread[numberOfThreads];
+        this.allocatedBytesPerThread = new long[numberOfThreads];
+        this.timeoutRetriesPerThread = new long[numberOfThreads];
+        this.fragmentRetriesPerThread = new long[numberOfThreads];
+        this.staleDatagramsPerThread = new long[numberOfThreads];
+        if (virtualClients > 0) {
+            this.laneLocks = new ReentrantLock[numberOfThreads];
+            for (int i = 0; i < numberOfThreads; i++) {
+                this.laneLocks[i] = new ReentrantLock();
+            }
+            this.threads = new Thread[virtualClients];
+        } else {
+            this.laneLocks = null;
+            this.threads = new Thread[numberOfThreads];
+        }
         for (int i = 0; i < this.threads.length; i++) {
+            if (virtualClients > 0) {
+                final int clientId = i;
+                this.threads[i] = Thread.ofVirtual().name("client-" + clientId).unstarted(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Allocations are only measured for platform threads
+                        allocatedBytesPerThread[clientId % numberOfThreads] = -1;
+                        runSyncLoop(clientId, clientId % numberOfThreads, servers, bindAddress, sleepTime);
+                    }
+                });
+                continue;
+            }
             final int threadId = i;
-            final boolean validateRequestsCount = this.exactRequestsCount;
             this.threads[i] = new Thread(new Runnable() {
                 @Override
                 public void run() {
-                    final MemcachedUDPClient client = new MemcachedUDPClient(servers, bindAddress, threadId);
-                    while (!stop.get()) {
+                    final long allocatedBytes = Helpers.getCurrentThreadAllocatedBytes();
+                    try {
+                        if (asyncWindow > 0 || MemcachedConcurrentClient.this.transport == Transport.TCP) {
+                            // TCP gets are always pipelined, a window of 1 keeps a single get in flight
+                            runAsyncLoop(threadId, servers, bindAddress, sleepTime, Math.max(1, asyncWindow));
+                        } else if (MemcachedConcurrentClient.this.batchSize > 1) {
+                            runSyncBatchLoop(threadId, servers, bindAddress, sleepTime);
+                        } else {
+                            runSyncLoop(threadId, threadId, servers, bindAddress, sleepTime);
+                        }
+                    } finally {
+                        allocatedBytesPerThread[threadId] = (allocatedBytes != -1)
+                                ? Helpers.getCurrentThreadAllocatedBytes() - allocatedBytes : -1;
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Creates the open-loop schedule of a load thread, or null when running a closed loop.
+     * Thread start times are staggered so the aggregate rate is spread evenly.
+     * Every key counts as a request, so batches are sent at the target rate divided by the batch size.
+     */
+    private RequestPacer createPacer(int threadId) {
+        if (this.targetRate <= 0) {
+            return null;
+        }
+        double threadRate = this.targetRate / this.threads.length / this.batchSize;
+        long intervalNanos = Math.round(TimeUnit.SECONDS.toNanos(1) / threadRate);
+        return new RequestPacer(threadRate, System.nanoTime() + (intervalNanos * threadId) / this.threads.length);
+    }
+
+    /**
+     * Sends one get at a time.
+     * @param clientId identifies the client's key stream and open-loop schedule.
+     * @param lane the recording structures the client writes to, the client's thread id unless running virtual clients.
+     */
+    private void runSyncLoop(int clientId, int lane, String[] servers, String bindAddress, long sleepTime) {
+        final boolean validateRequestsCount = this.exactRequestsCount;
+        final MemcachedUDPClient client = new MemcachedUDPClient(servers, bindAddress, clientId, this.router, this.retryPolicy);
+        if (this.hotKeyReplicas != null) {
+            client.setReplicaSelector(this.hotKeyReplicas.createSelector(keyPicker.getStreamsSeed(), this.streamsOffset + clientId));
+        }
+        final RequestPacer pacer = createPacer(clientId);
+        final Random random = keyPicker.createThreadRandom(this.streamsOffset + clientId);
+        final NearCache nearCache = getNearCache(lane);
+        try {
+            while (!stop.get()) {
+                try {
+                    if (validateRequestsCount && globalRequestsCount.get() >= minimumRequestsCount) {
+                        break;
+                    }
+                    KeyValuePair<String, String> pair;
+                    long currentNanoTime;
+                    if (this.traceReplay != null) {
+                        long record = this.traceReplay.claimRecord();
+                        if (record == -1) {
+                            break;
+                        }
+                        pair = this.traceReplay.getKey(record);
+                        currentNanoTime = this.traceReplay.awaitIntendedTime(record);
+                    } else {
+                        pair = keyPicker.pickKey(random);
+                        currentNanoTime = (pacer != null) ? pacer.awaitNext() : System.nanoTime();
+                    }
+                    if (this.traceRecorder != null) {
+                        enterLane(lane);
                         try {
-                            if (validateRequestsCount && globalRequestsCount.get() >= minimumRequestsCount) {
-                                break;
-                            }
-                            KeyValuePair<String, String> pair = keyPicker.pickKey();
-                            long currentNanoTime = System.nanoTime();
-                            Calendar cal = Calendar.getInstance();
+                            recordTrace(lane, pair, currentNanoTime);
+                        } finally {
+                            exitLane(lane);
+                        }
+                    }
+                    try {
+                        if (!takeNearCacheHit(lane, nearCache, pair, currentNanoTime)) {
+                            MemcachedUDPResult result = client.get(pair.getKey());
+                            enterLane(lane);
                             try {
-                                MemcachedUDPResult result = client.get(pair.getKey());
-                                double elapsedTime = (System.nanoTime() - currentNanoTime) / (double) 1000000;
-                                latenciesQueue.add(new ExperimentData(
-                                        String.format("%d:%d:%d:%d", cal.get(Calendar.HOUR), cal.get(Calendar.MINUTE), cal.get(Calendar.SECOND), cal.get(Calendar.MILLISECOND)),
-                                        pair.getKey(),
-                                        elapsedTime,
-                                        result.getServerIndex(),
-                                        result.getResponseServerIndex(),
-                                        result.getPacketsCount(),
-                                        result.getTotalNumberOfPackets()));
-                                if (result.hasPacketsLost()) {
-                                    latenciesQueue.add(new ExperimentData(
-                                            String.format("%d:%d:%d:%d", cal.get(Calendar.HOUR), cal.get(Calendar.MINUTE), cal.get(Calendar.SECOND), cal.get(Calendar.MILLISECOND)),
-                                            pair.getKey(),
-                                            -1.0,
-                                            result.getServerIndex(),
-                                            result.getResponseServerIndex(),
-                                            result.getPacketsCount(),
-                                            result.getTotalNumberOfPackets()));
-                                }
-                            } catch (MemcachedUDPClient.PacketLostException e) {
-                                latenciesQueue.add(new ExperimentData(
-                                        String.format("%d:%d:%d:%d", cal.get(Calendar.HOUR), cal.get(Calendar.MINUTE), cal.get(Calendar.SECOND), cal.get(Calendar.MILLISECOND)),
-                                        pair.getKey(),
-                                        -1.0,
-                                        e.serverIndex,
-                                        e.responseServerIndex,
-                                        e.receivedPacketsCount,
-                                        e.totalNumberOfPackets));
-                                //TraceableLogger.dump();
-                                e.printStackTrace();
+                                recordResult(lane, pair, currentNanoTime, result);
+                                recordDatagrams(lane, result);
+                                fillNearCache(nearCache, result);
                             } finally {
-                                if (stop.get()) {
-                                    break;
-                                }
-                                if (validateRequestsCount) {
-                                    globalRequestsCount.incrementAndGet();
-                                }
-                                requestsCountPerThread[threadId] += 1;
-                                Thread.sleep(sleepTime);
+                                exitLane(lane);
                             }
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                            throw new RuntimeException(e);
+                        }
+                    } catch (MemcachedUDPClient.PacketLostException e) {
+                        enterLane(lane);
+                        try {
+                            recordPacketLost(lane, pair, currentNanoTime, e);
+                            recordDatagrams(lane, e);
+                        } finally {
+                            exitLane(lane);
+                        }
+                        e.printStackTrace();
+                    } finally {
+                        if (stop.get()) {
+                            break;
+                        }
+                        if (validateRequestsCount) {
+                            globalRequestsCount.incrementAndGet();
+                        }
+                        enterLane(lane);
+                        requestsCountPerThread[lane] += 1;
+                        exitLane(lane);
+                        if (pacer == null && this.traceReplay == null) {
+                            Thread.sleep(nextSleepTime(sleepTime));
                         }
                     }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    throw new RuntimeException(e);
+                }
+            }
+        } finally {
+            closeClient(lane, client);
+        }
+    }
+
+    /**
+     * Records the request as a near cache hit if the key is in the near cache.
+     * @return false if the key should be requested from the servers.
+     */
+    private boolean takeNearCacheHit(int lane, NearCache nearCache, KeyValuePair<String, String> pair, long startNanoTime) {
+        if (nearCache == null) {
+            return false;
+        }
+        enterLane(lane);
+        try {
+            if (nearCache.get(pair.getKey()) == null) {
+                return false;
+            }
+            recordNearCacheHit(lane, pair, startNanoTime);
+            return true;
+        } finally {
+            exitLane(lane);
+        }
+    }
+
+    private void enterLane(int lane) {
+        if (this.laneLocks != null) {
+            this.laneLocks[lane].lock();
+        }
+    }
 
+    private void exitLane(int lane) {
+        if (this.laneLocks != null) {
+            this.laneLocks[lane].unlock();
+        }
+    }
+
+    /**
+     * @return the closed-loop sleep (think time) before the next request, exponentially distributed around
+     * the sleep time if requested so clients do not march in step.
+     */
+    private long nextSleepTime(long sleepTime) {
+        if (!this.exponentialSleep || sleepTime <= 0) {
+            return sleepTime;
+        }
+        return Math.round(-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * sleepTime);
+    }
 
+    /**
+     * Sends batchSize keys per iteration as one multi-get per server. Servers are read in order after all
+     * requests were sent, so a key's latency includes waiting for the responses of the servers before it.
+     * With exact-requests-count the last batch may exceed the requests count by up to batchSize - 1 keys.
+     */
+    private void runSyncBatchLoop(int threadId, String[] servers, String bindAddress, long sleepTime) {
+        final boolean validateRequestsCount = this.exactRequestsCount;
+        final MemcachedUDPClient client = new MemcachedUDPClient(servers, bindAddress, threadId, this.router, this.retryPolicy);
+        if (this.hotKeyReplicas != null) {
+            client.setReplicaSelector(this.hotKeyReplicas.createSelector(keyPicker.getStreamsSeed(), this.streamsOffset + threadId));
+        }
+        final RequestPacer pacer = createPacer(threadId);
+        final Random random = keyPicker.createThreadRandom(this.streamsOffset + threadId);
+        final List<String> keys = new ArrayList<>(this.batchSize);
+        final NearCache nearCache = getNearCache(threadId);
+        try {
+            while (!stop.get()) {
+                try {
+                    if (validateRequestsCount && globalRequestsCount.get() >= minimumRequestsCount) {
+                        break;
+                    }
+                    final Map<String, KeyValuePair<String, String>> pairs = pickBatch(random, keys);
+                    long currentNanoTime = (pacer != null) ? pacer.awaitNext() : System.nanoTime();
+                    recordTrace(threadId, keys, pairs, currentNanoTime);
+                    takeNearCacheHits(threadId, nearCache, keys, pairs, currentNanoTime, validateRequestsCount);
+                    if (!keys.isEmpty()) {
+                        client.get(keys, new BatchCallback(threadId, pairs, nearCache, currentNanoTime, validateRequestsCount));
+                    }
+                    if (pacer == null) {
+                        Thread.sleep(nextSleepTime(sleepTime));
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    throw new RuntimeException(e);
                 }
-            });
+            }
+        } finally {
+            closeClient(threadId, client);
+        }
+    }
+
+    /**
+     * Picks batchSize keys into the provided list.
+     * @return the picked pairs by key.
+     */
+    private Map<String, KeyValuePair<String, String>> pickBatch(Random random, List<String> keys) {
+        final Map<String, KeyValuePair<String, String>> pairs = new HashMap<>();
+        keys.clear();
+        for (int i = 0; i < this.batchSize; i++) {
+            KeyValuePair<String, String> pair = keyPicker.pickKey(random);
+            keys.add(pair.getKey());
+            pairs.put(pair.getKey(), pair);
+        }
+        return pairs;
+    }
+
+    /**
+     * Answers the keys of a batch found in the near cache, removing them from the keys to request.
+     */
+    private void takeNearCacheHits(int threadId, NearCache nearCache, List<String> keys,
+                                   Map<String, KeyValuePair<String, String>> pairs, long startNanoTime, boolean validateRequestsCount) {
+        if (nearCache == null) {
+            return;
+        }
+        for (Iterator<String> iterator = keys.iterator(); iterator.hasNext(); ) {
+            String key = iterator.next();
+            if (nearCache.get(key) != null) {
+                recordNearCacheHit(threadId, pairs.get(key), startNanoTime);
+                onRequestCompleted(threadId, validateRequestsCount);
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Records every key of a multi-get response as a separate request.
+     */
+    private class BatchCallback implements MemcachedUDPCallback {
+
+        private final int threadId;
+        private final Map<String, KeyValuePair<String, String>> pairs;
+        private final NearCache nearCache;
+        private final long startNanoTime;
+        private final boolean validateRequestsCount;
+
+        BatchCallback(int threadId, Map<String, KeyValuePair<String, String>> pairs, NearCache nearCache, long startNanoTime, boolean validateRequestsCount) {
+            this.threadId = threadId;
+            this.pairs = pairs;
+            this.nearCache = nearCache;
+            this.startNanoTime = startNanoTime;
+            this.validateRequestsCount = validateRequestsCount;
+        }
+
+        @Override
+        public void onResult(MemcachedUDPResult result) {
+            for (String key : result.getKeys()) {
+                recordResult(threadId, pairs.get(key), startNanoTime, result);
+                onRequestCompleted(threadId, validateRequestsCount);
+            }
+            recordDatagrams(threadId, result);
+            fillNearCache(nearCache, result);
+        }
+
+        @Override
+        public void onPacketLost(MemcachedUDPClient.PacketLostException e) {
+            for (String key : e.keys) {
+                recordPacketLost(threadId, pairs.get(key), startNanoTime, e);
+                onRequestCompleted(threadId, validateRequestsCount);
+            }
+            recordDatagrams(threadId, e);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Keeps up to asyncWindow get requests in flight using a single non-blocking client.
+     * In a closed loop the sleep time is applied after every refill of the window, in an open loop
+     * requests are sent when due and a full window delays them (the delay is part of their latency).
+     */
+    private void runAsyncLoop(final int threadId, String[] servers, String bindAddress, long sleepTime, int asyncWindow) {
+        final boolean validateRequestsCount = this.exactRequestsCount;
+        final AbstractMemcachedAsyncClient client = createAsyncClient(threadId, servers, bindAddress);
+        if (this.hotKeyReplicas != null) {
+            client.setReplicaSelector(this.hotKeyReplicas.createSelector(keyPicker.getStreamsSeed(), this.streamsOffset + threadId));
+        }
+        final RequestPacer pacer = createPacer(threadId);
+        final Random random = keyPicker.createThreadRandom(this.streamsOffset + threadId);
+        final List<String> keys = new ArrayList<>(this.batchSize);
+        final NearCache nearCache = getNearCache(threadId);
+        boolean traceEnded = false;
+        try {
+            while (!stop.get()) {
+                while (client.getOutstandingRequestsCount() < asyncWindow && !stop.get() && !traceEnded) {
+                    if (validateRequestsCount && globalRequestsCount.get() >= minimumRequestsCount) {
+                        break;
+                    }
+                    if (pacer != null && !pacer.isDue(System.nanoTime())) {
+                        break;
+                    }
+                    if (this.traceReplay != null && System.nanoTime() - this.traceReplay.getNextIntendedTime() < 0) {
+                        break;
+                    }
+                    if (this.batchSize > 1) {
+                        final Map<String, KeyValuePair<String, String>> pairs = pickBatch(random, keys);
+                        final long currentNanoTime = (pacer != null) ? pacer.next() : System.nanoTime();
+                        recordTrace(threadId, keys, pairs, currentNanoTime);
+                        takeNearCacheHits(threadId, nearCache, keys, pairs, currentNanoTime, validateRequestsCount);
+                        if (!keys.isEmpty()) {
+                            client.get(keys, new BatchCallback(threadId, pairs, nearCache, currentNanoTime, validateRequestsCount));
+                        }
+                        continue;
+                    }
+                    final KeyValuePair<String, String> pair;
+                    final long currentNanoTime;
+                    if (this.traceReplay != null) {
+                        long record = this.traceReplay.claimRecord();
+                        if (record == -1) {
+                            traceEnded = true;
+                            break;
+                        }
+                        pair = this.traceReplay.getKey(record);
+                        currentNanoTime = this.traceReplay.getIntendedTime(record);
+                    } else {
+                        pair = keyPicker.pickKey(random);
+                        currentNanoTime = (pacer != null) ? pacer.next() : System.nanoTime();
+                    }
+                    if (this.traceRecorder != null) {
+                        recordTrace(threadId, pair, currentNanoTime);
+                    }
+                    if (nearCache != null && nearCache.get(pair.getKey()) != null) {
+                        recordNearCacheHit(threadId, pair, currentNanoTime);
+                        onRequestCompleted(threadId, validateRequestsCount);
+                        continue;
+                    }
+                    client.get(pair.getKey(), new MemcachedUDPCallback() {
+                        @Override
+                        public void onResult(MemcachedUDPResult result) {
+                            recordResult(threadId, pair, currentNanoTime, result);
+                            recordDatagrams(threadId, result);
+                            onRequestCompleted(threadId, validateRequestsCount);
+                            fillNearCache(nearCache, result);
+                        }
+
+                        @Override
+                        public void onPacketLost(MemcachedUDPClient.PacketLostException e) {
+                            recordPacketLost(threadId, pair, currentNanoTime, e);
+                            recordDatagrams(threadId, e);
+                            onRequestCompleted(threadId, validateRequestsCount);
+                            e.printStackTrace();
+                        }
+                    });
+                }
+                if ((traceEnded || validateRequestsCount && globalRequestsCount.get() >= minimumRequestsCount)
+                        && client.getOutstandingRequestsCount() == 0) {
+                    break;
+                }
+                if (pacer != null || this.traceReplay != null) {
+                    long nextIntendedTime = (pacer != null) ? pacer.getNextSendTime() : this.traceReplay.getNextIntendedTime();
+                    long untilNextRequest = TimeUnit.NANOSECONDS.toMillis(nextIntendedTime - System.nanoTime());
+                    client.processEvents(Math.max(0, Math.min(untilNextRequest, ASYNC_POLL_MILLIS)));
+                } else {
+                    if (sleepTime > 0) {
+                        Thread.sleep(nextSleepTime(sleepTime));
+                    }
+                    client.processEvents(ASYNC_POLL_MILLIS);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        } finally {
+            closeClient(threadId, client);
+        }
+    }
+
+    private AbstractMemcachedAsyncClient createAsyncClient(int threadId, String[] servers, String bindAddress) {
+        if (this.transport == Transport.TCP) {
+            return new MemcachedAsyncTCPClient(servers, bindAddress, threadId, this.router, this.retryPolicy, this.tcpConnections);
+        }
+        return new MemcachedAsyncUDPClient(servers, bindAddress, threadId, this.router, this.retryPolicy);
+    }
+
+    private void closeClient(int lane, AbstractMemcachedUDPClient client) {
+        enterLane(lane);
+        try {
+            timeoutRetriesPerThread[lane] += client.getTimeoutRetriesCount();
+            fragmentRetriesPerThread[lane] += client.getFragmentRetriesCount();
+            staleDatagramsPerThread[lane] += client.getStaleDatagramsCount();
+        } finally {
+            exitLane(lane);
+        }
+        client.close();
+    }
+
+    private void onRequestCompleted(int threadId, boolean validateRequestsCount) {
+        if (validateRequestsCount) {
+            globalRequestsCount.incrementAndGet();
+        }
+        requestsCountPerThread[threadId] += 1;
+    }
+
+    private void recordResult(int threadId, KeyValuePair<String, String> pair, long startNanoTime, MemcachedUDPResult result) {
+        long elapsedNanos = System.nanoTime() - startNanoTime;
+        if (hotKeyDetector != null) {
+            hotKeyDetector.recordRequest(threadId, result.getServerIndex(), pair.getKey());
+        }
+        latencyRecorder.recordLatency(threadId, result.getServerIndex(), result.getResponseServerIndex(), elapsedNanos);
+        latencyRecorder.recordTimeouts(threadId, result.getServerIndex(), result.getResponseServerIndex(), result.getTimeoutRetries());
+        if (result.hasPacketsLost()) {
+            latencyRecorder.recordPacketLost(threadId, result.getServerIndex(), result.getResponseServerIndex());
+        }
+        if (!latencyLogEnabled) {
+            return;
+        }
+        long timestampNanos = Helpers.toEpochNanos(startNanoTime);
+        latenciesQueue.add(threadId, new ExperimentData(
+                timestampNanos,
+                pair.getKey(),
+                pair.getId(),
+                elapsedNanos,
+                result.getServerIndex(),
+                result.getResponseServerIndex(),
+                result.getPacketsCount(),
+                result.getTotalNumberOfPackets(),
+                result.getTimeoutRetries(),
+                result.getFragmentRetries()));
+        if (result.hasPacketsLost()) {
+            latenciesQueue.add(threadId, new ExperimentData(
+                    timestampNanos,
+                    pair.getKey(),
+                    pair.getId(),
+                    -1,
+                    result.getServerIndex(),
+                    result.getResponseServerIndex(),
+                    result.getPacketsCount(),
+                    result.getTotalNumberOfPackets()));
+        }
+    }
+
+    /**
+     * Records the datagrams of a response once, multi-get responses answering several requests.
+     */
+    private void recordDatagrams(int threadId, MemcachedUDPResult result) {
+        latencyRecorder.recordDatagrams(threadId, result.getServerIndex(), result.getResponseServerIndex(),
+                result.getPacketsCount(), result.getTotalNumberOfPackets());
+    }
+
+    private void recordDatagrams(int threadId, MemcachedUDPClient.PacketLostException e) {
+        latencyRecorder.recordDatagrams(threadId, e.serverIndex, e.responseServerIndex, e.receivedPacketsCount, e.totalNumberOfPackets);
+    }
+
+    private void recordTrace(int threadId, KeyValuePair<String, String> pair, long startNanoTime) {
+        this.traceRecorder.record(threadId, startNanoTime, pair.getId(), RequestTrace.OP_GET, ObjectsDataset.getValueSize(pair));
+    }
+
+    private void recordTrace(int threadId, List<String> keys, Map<String, KeyValuePair<String, String>> pairs, long startNanoTime) {
+        if (this.traceRecorder == null) {
+            return;
+        }
+        for (String key : keys) {
+            recordTrace(threadId, pairs.get(key), startNanoTime);
+        }
+    }
+
+    private NearCache getNearCache(int threadId) {
+        return (this.nearCaches != null) ? this.nearCaches[threadId] : null;
+    }
+
+    /**
+     * Copies the returned values into the near cache, the result's buffers being reused by the client.
+     */
+    private static void fillNearCache(NearCache nearCache, MemcachedUDPResult result) {
+        if (nearCache == null || result.hasPacketsLost()) {
+            return;
+        }
+        final String[] keys = result.getKeys();
+        final MemcachedUDPResult.ValueCursor cursor = result.values();
+        while (cursor.next()) {
+            String key = (keys.length == 1 && cursor.keyEquals(keys[0])) ? keys[0] : cursor.getKey();
+            byte[] value = new byte[cursor.getValueLength()];
+            cursor.copyValue(value, 0);
+            nearCache.put(key, value);
         }
     }
 
+    private void recordNearCacheHit(int threadId, KeyValuePair<String, String> pair, long startNanoTime) {
+        long elapsedNanos = System.nanoTime() - startNanoTime;
+        latencyRecorder.recordNearCacheHit(threadId, elapsedNanos);
+        if (!latencyLogEnabled) {
+            return;
+        }
+        latenciesQueue.add(threadId, new ExperimentData(
+                Helpers.toEpochNanos(startNanoTime),
+                pair.getKey(),
+                pair.getId(),
+                elapsedNanos,
+                ExperimentData.NEAR_CACHE_SERVER_INDEX,
+                ExperimentData.NEAR_CACHE_SERVER_INDEX,
+                0,
+                0));
+    }
+
+    private void recordPacketLost(int threadId, KeyValuePair<String, String> pair, long startNanoTime, MemcachedUDPClient.PacketLostException e) {
+        if (hotKeyDetector != null) {
+            hotKeyDetector.recordRequest(threadId, e.serverIndex, pair.getKey());
+        }
+        latencyRecorder.recordTimeouts(threadId, e.serverIndex, e.responseServerIndex, e.timeoutRetries);
+        latencyRecorder.recordPacketLost(threadId, e.serverIndex, e.responseServerIndex);
+        if (!latencyLogEnabled) {
+            return;
+        }
+        latenciesQueue.add(threadId, new ExperimentData(
+                Helpers.toEpochNanos(startNanoTime),
+                pair.getKey(),
+                pair.getId(),
+                -1,
+                e.serverIndex,
+                e.responseServerIndex,
+                e.receivedPacketsCount,
+                e.totalNumberOfPackets,
+                e.timeoutRetries,
+                e.fragmentRetries));
+        //TraceableLogger.dump();
+    }
+
+    public ExperimentDataQueue getLatenciesQueue() {
+        return this.latenciesQueue;
+    }
+
     public void run() throws InterruptedException {
 
         if (this.minimumRequestsCount == 0) {
@@ -136,7 +727,13 @@ public class MemcachedConcurrentClient {
 
         this.startTime = System.currentTimeMillis();
 
-        this.executorService.submit(latenciesFileWriter);
+        if (this.latencyLogEnabled) {
+            this.executorService.submit(latenciesFileWriter);
+        }
+        if (this.traceReplay != null) {
+            this.traceReplay.start(System.nanoTime());
+            this.logger.info("Replaying " + this.traceReplay);
+        }
         for (Thread t : this.threads) {
             t.start();
         }
@@ -144,15 +741,48 @@ public class MemcachedConcurrentClient {
         long deadline = System.currentTimeMillis() + (this.duration * 1000);
 
         this.logger.info("Experiment started!");
+        if (this.targetRate > 0) {
+            this.logger.info(String.format("Open loop: %.0f requests/s over %d %s", this.targetRate, this.threads.length,
+                    (this.laneLocks != null) ? "virtual clients" : "threads"));
+        }
+
+        long nextHistogramSample = System.currentTimeMillis() + (this.histogramInterval * 1000L);
+        long nextHotKeysSample = System.currentTimeMillis() + (this.hotKeysInterval * 1000L);
 
         while (!stop.get()) {
             Thread.sleep(1000L);
+            if (this.histogramInterval > 0 && System.currentTimeMillis() >= nextHistogramSample) {
+                LatencySnapshot snapshot = this.latencyRecorder.sampleInterval();
+                this.logger.info(snapshot.toString());
+                for (IntervalListener listener : this.intervalListeners) {
+                    listener.onLatencyInterval(snapshot);
+                }
+                if (this.latencyLogEnabled) {
+                    this.logger.info(this.latenciesQueue.toString());
+                }
+                nextHistogramSample += this.histogramInterval * 1000L;
+            }
+            if (this.hotKeyDetector != null && System.currentTimeMillis() >= nextHotKeysSample) {
+                HotKeysSnapshot hotKeys = this.hotKeyDetector.sampleInterval();
+                this.logger.info(hotKeys.toString());
+                for (IntervalListener listener : this.intervalListeners) {
+                    listener.onHotKeysInterval(hotKeys);
+                }
+                if (this.hotKeyReplicator != null) {
+                    replicateHotKeys(hotKeys);
+                }
+                nextHotKeysSample += this.hotKeysInterval * 1000L;
+            }
+            if (this.traceReplay != null && this.traceReplay.isFinished()) {
+                this.logger.info("Trace replayed.");
+                stop();
+            }
             if (this.duration != -1 && System.currentTimeMillis() > deadline) {
                 this.logger.info("Deadline.");
                 stop();
             }
 
-            if (minimumRequestsCount != -1 && latenciesFileWriter.getWritesCount() >= minimumRequestsCount) {
+            if (minimumRequestsCount != -1 && getCompletedRequestsCount() >= minimumRequestsCount) {
                 logger.info("Minimum requests count exceeded. Ending experiment...");
                 stop();
             }
@@ -163,14 +793,121 @@ public class MemcachedConcurrentClient {
             logger.info(String.format("Actual requests count: %d", this.globalRequestsCount.get()));
         }
 
-        StringBuilder msg = new StringBuilder("Requests count per thread:\n");
+        StringBuilder msg = new StringBuilder((this.laneLocks != null)
+                ? String.format("Requests count per lane (%d virtual clients):\n", this.threads.length)
+                : "Requests count per thread:\n");
         long totalRequests = 0;
+        long totalAllocatedBytes = 0;
         for (int i = 0; i < requestsCountPerThread.length; i++) {
-            msg.append(String.format(" - %3d: %d\n", i, requestsCountPerThread[i]));
+            msg.append(String.format(" - %3d: %d (%s)\n", i, requestsCountPerThread[i],
+                    formatAllocatedBytes(allocatedBytesPerThread[i], requestsCountPerThread[i])));
             totalRequests += requestsCountPerThread[i];
+            totalAllocatedBytes += allocatedBytesPerThread[i];
         }
         msg.append("Total requests: " + totalRequests);
+        if (totalAllocatedBytes >= 0) {
+            msg.append(" (" + formatAllocatedBytes(totalAllocatedBytes, totalRequests) + ")");
+        }
         logger.info(msg.toString());
+        logger.info(formatRetries());
+
+        if (this.latencyLogEnabled) {
+            logger.info(this.latenciesQueue.toString());
+        }
+        LatencySnapshot lastInterval = this.latencyRecorder.sampleInterval();
+        for (IntervalListener listener : this.intervalListeners) {
+            listener.onLatencyInterval(lastInterval);
+        }
+        logger.info("Total " + this.latencyRecorder.getTotal().toString());
+        if (this.hotKeyDetector != null) {
+            HotKeysSnapshot lastHotKeys = this.hotKeyDetector.sampleInterval();
+            logger.info(lastHotKeys.toString());
+            for (IntervalListener listener : this.intervalListeners) {
+                listener.onHotKeysInterval(lastHotKeys);
+            }
+        }
+        if (this.hotKeyReplicas != null) {
+            logger.info(this.hotKeyReplicas.toString());
+        }
+        if (this.nearCaches != null) {
+            logger.info(formatNearCacheStatistics());
+        }
+        this.latencyRecorder.close();
+    }
+
+    /**
+     * Replicates the keys of the interval which are not replicated yet. Replicated keys stay replicated
+     * until the experiment ends.
+     */
+    private void replicateHotKeys(HotKeysSnapshot hotKeys) {
+        List<String> replicated = this.hotKeyReplicator.replicate(hotKeys.getKeys());
+        if (!replicated.isEmpty()) {
+            this.logger.info(String.format("Replicated %d hot keys to %d servers each: %s",
+                    replicated.size(), this.hotKeyReplicas.getReplicasCount(), replicated));
+        }
+    }
+
+    private String formatRetries() {
+        long timeoutRetries = 0;
+        long fragmentRetries = 0;
+        long staleDatagrams = 0;
+        for (int i = 0; i < timeoutRetriesPerThread.length; i++) {
+            timeoutRetries += timeoutRetriesPerThread[i];
+            fragmentRetries += fragmentRetriesPerThread[i];
+            staleDatagrams += staleDatagramsPerThread[i];
+        }
+        if (this.transport == Transport.TCP) {
+            return String.format("TCP gets (%d connections per server, %s): %d late responses of timed out gets dropped",
+                    this.tcpConnections, this.retryPolicy, staleDatagrams);
+        }
+        return String.format("Retries (%s): %d after timeouts, %d after missing fragments, %d stale datagrams ignored",
+                this.retryPolicy, timeoutRetries, fragmentRetries, staleDatagrams);
+    }
+
+    private String formatNearCacheStatistics() {
+        long hits = 0;
+        long misses = 0;
+        long evictions = 0;
+        long expirations = 0;
+        long rejections = 0;
+        long weight = 0;
+        long maximumWeight = 0;
+        int entries = 0;
+        for (NearCache nearCache : this.nearCaches) {
+            hits += nearCache.getHitsCount();
+            misses += nearCache.getMissesCount();
+            evictions += nearCache.getEvictionsCount();
+            expirations += nearCache.getExpirationsCount();
+            rejections += nearCache.getRejectionsCount();
+            weight += nearCache.getWeight();
+            maximumWeight += nearCache.getMaximumWeight();
+            entries += nearCache.getEntriesCount();
+        }
+        return String.format("Near cache (%s, %d threads): hit ratio %.2f%% (hits=%d, misses=%d), evictions=%d, expirations=%d, "
+                        + "rejected=%d, %d entries taking about %d of %d bytes",
+                this.nearCaches[0].getPolicy(), this.nearCaches.length, 100.0 * hits / Math.max(1, hits + misses),
+                hits, misses, evictions, expirations, rejections, entries, weight, maximumWeight);
+    }
+
+    /**
+     * Heap allocated by a load thread (client, key picking, recording and latency records included).
+     */
+    private static String formatAllocatedBytes(long allocatedBytes, long requestsCount) {
+        if (allocatedBytes < 0) {
+            return "allocations not available";
+        }
+        return String.format("%.1f bytes allocated per request", allocatedBytes / (double) Math.max(1, requestsCount));
+    }
+
+    private long getCompletedRequestsCount() {
+        if (this.latencyLogEnabled) {
+            return latenciesFileWriter.getWritesCount();
+        }
+        long count = 0;
+        for (long threadCount : requestsCountPerThread) {
+            count += threadCount;
+        }
+        return count;
     }
 
     public synchronized void stop() throws InterruptedException {
@@ -0,0 +1,302 @@
+package memcached_sdn.experiment.coordinator;
+
+import memcached_sdn.experiment.data.HotKeysSnapshot;
+import memcached_sdn.experiment.data.IntervalListener;
+import memcached_sdn.experiment.data.LatencySnapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Runs one experiment over several worker processes, so the load of a single machine is not limited to
+ * what a single JVM generates.
+ *
+ * Workers connect to the coordinator (see {@link WorkerConnection}) and receive the arguments of their share
+ * of the experiment. Once all of them are ready they are started at the same time, every worker sends the
+ * snapshots of its intervals, which are merged by interval number: an interval is logged and passed to the
+ * listeners when all workers reported it. Worker processes can be spawned on the local machine or started by hand.
+ */
+public class LoadCoordinator implements Closeable {
+
+    static final byte CONFIGURE = 1;
+    static final byte START = 2;
+    static final byte READY = 3;
+    static final byte LATENCY_INTERVAL = 4;
+    static final byte HOT_KEYS_INTERVAL = 5;
+    static final byte DONE = 6;
+
+    private static final int ACCEPT_TIMEOUT_MILLIS = 60000;
+    private static final long START_DELAY_MILLIS = 1000;
+    private static final long EXIT_TIMEOUT_SECONDS = 30;
+
+    private final int workersCount;
+    private final List<IntervalListener> intervalListeners;
+    private final Logger logger;
+    private final ServerSocket serverSocket;
+    private final List<Socket> sockets = new ArrayList<>();
+    private final List<Process> processes = new ArrayList<>();
+    private final Map<Integer, List<LatencySnapshot>> latencyIntervals = new TreeMap<>();
+    private final Map<Integer, List<HotKeysSnapshot>> hotKeysIntervals = new TreeMap<>();
+    private LatencySnapshot total = null;
+    private int failedWorkersCount = 0;
+
+    /**
+     * @param address the address workers connect to, port 0 picks a free one.
+     */
+    public LoadCoordinator(InetSocketAddress address, int workersCount, List<IntervalListener> intervalListeners, Logger logger) {
+        this.workersCount = workersCount;
+        this.intervalListeners = intervalListeners;
+        this.logger = logger;
+        try {
+            this.serverSocket = new ServerSocket();
+            this.serverSocket.bind(address);
+            this.serverSocket.setSoTimeout(ACCEPT_TIMEOUT_MILLIS);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Failed to accept workers on %s: %s", address, e.getMessage()), e);
+        }
+    }
+
+    public InetSocketAddress getAddress() {
+        return (InetSocketAddress) this.serverSocket.getLocalSocketAddress();
+    }
+
+    /**
+     * Starts every worker as a local JVM with the arguments of this one, running mainClass with
+     * --coordinator &lt;address&gt;. The output of worker process i is written to &lt;logFilePrefix&gt;i.log.
+     */
+    public void spawnWorkers(String mainClass, String logFilePrefix) {
+        final List<String> command = new ArrayList<>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            // A second debugger on the same port would prevent the worker from starting
+            if (!argument.startsWith("-agentlib:jdwp")) {
+                command.add(argument);
+            }
+        }
+        command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), mainClass,
+                "--" + WorkerConnection.COORDINATOR_OPTION, getAddress().getHostString() + ":" + getAddress().getPort()));
+        for (int i = 0; i < this.workersCount; i++) {
+            File logFile = new File(logFilePrefix + i + ".log");
+            try {
+                this.processes.add(new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(logFile).start());
+            } catch (IOException e) {
+                throw new RuntimeException(String.format("Failed to start worker process %d: %s", i, e.getMessage()), e);
+            }
+            this.logger.info(String.format("Started worker process %d, output in %s", i, logFile));
+        }
+    }
+
+    /**
+     * Runs the experiment: hands out the arguments, starts all workers in lockstep and merges their intervals
+     * until all of them are done.
+     *
+     * @param workerArgs the arguments of every worker, by worker index.
+     * @return the totals of all workers.
+     */
+    public LatencySnapshot run(List<String[]> workerArgs) throws InterruptedException {
+        final List<DataInputStream> inputs = new ArrayList<>(this.workersCount);
+        final List<DataOutputStream> outputs = new ArrayList<>(this.workersCount);
+        try {
+            for (int i = 0; i < this.workersCount; i++) {
+                Socket socket;
+                try {
+                    socket = this.serverSocket.accept();
+                } catch (SocketTimeoutException e) {
+                    throw new IllegalStateException(String.format("Only %d of %d workers connected within %d seconds.",
+                            i, this.workersCount, TimeUnit.MILLISECONDS.toSeconds(ACCEPT_TIMEOUT_MILLIS)));
+                }
+                this.sockets.add(socket);
+                socket.setTcpNoDelay(true);
+                inputs.add(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                outputs.add(out);
+                out.writeByte(CONFIGURE);
+                out.writeInt(i);
+                out.writeInt(workerArgs.get(i).length);
+                for (String argument : workerArgs.get(i)) {
+                    out.writeUTF(argument);
+                }
+                out.flush();
+                this.logger.info(String.format("Worker #%d connected from %s", i, socket.getRemoteSocketAddress()));
+            }
+
+            for (int i = 0; i < this.workersCount; i++) {
+                expectMessage(inputs.get(i), READY, i);
+            }
+            final long startTimeMillis = System.currentTimeMillis() + START_DELAY_MILLIS;
+            for (DataOutputStream out : outputs) {
+                out.writeByte(START);
+                out.writeLong(startTimeMillis);
+                out.flush();
+            }
+            this.logger.info(String.format("All %d workers ready, starting in %dms", this.workersCount, START_DELAY_MILLIS));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        final CountDownLatch done = new CountDownLatch(this.workersCount);
+        for (int i = 0; i < this.workersCount; i++) {
+            final int workerIndex = i;
+            final DataInputStream in = inputs.get(i);
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        readIntervals(workerIndex, in);
+                    } catch (IOException e) {
+                        workerFailed(workerIndex, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "worker-" + i);
+            reader.setDaemon(true);
+            reader.start();
+        }
+        done.await();
+
+        synchronized (this) {
+            // Intervals some worker did not get to, e.g. the last ones of a worker which started late
+            for (Map.Entry<Integer, List<LatencySnapshot>> entry : this.latencyIntervals.entrySet()) {
+                publishLatency(entry.getValue());
+            }
+            this.latencyIntervals.clear();
+            for (Map.Entry<Integer, List<HotKeysSnapshot>> entry : this.hotKeysIntervals.entrySet()) {
+                publishHotKeys(entry.getValue());
+            }
+            this.hotKeysIntervals.clear();
+            if (this.total != null) {
+                this.logger.info(String.format("Total of %d workers %s", this.workersCount, this.total));
+            }
+            if (this.failedWorkersCount > 0) {
+                throw new IllegalStateException(String.format("%d of %d workers failed.", this.failedWorkersCount, this.workersCount));
+            }
+            return this.total;
+        }
+    }
+
+    private void expectMessage(DataInputStream in, byte type, int workerIndex) throws IOException {
+        final byte received = in.readByte();
+        if (received != type) {
+            throw new IOException(String.format("Unexpected message %d from worker #%d, expected %d.", received, workerIndex, type));
+        }
+    }
+
+    private void readIntervals(int workerIndex, DataInputStream in) throws IOException {
+        int latencyInterval = 0;
+        int hotKeysInterval = 0;
+        while (true) {
+            byte type = in.readByte();
+            switch (type) {
+                case LATENCY_INTERVAL:
+                    addLatencyInterval(latencyInterval++, LatencySnapshot.readFrom(in));
+                    break;
+                case HOT_KEYS_INTERVAL:
+                    addHotKeysInterval(hotKeysInterval++, HotKeysSnapshot.readFrom(in));
+                    break;
+                case DONE:
+                    this.logger.info(String.format("Worker #%d done", workerIndex));
+                    return;
+                default:
+                    throw new IOException(String.format("Unexpected message %d from worker #%d.", type, workerIndex));
+            }
+        }
+    }
+
+    private synchronized void workerFailed(int workerIndex, IOException e) {
+        this.failedWorkersCount++;
+        this.logger.severe(String.format("Worker #%d failed: %s", workerIndex, e));
+    }
+
+    private synchronized void addLatencyInterval(int interval, LatencySnapshot snapshot) {
+        List<LatencySnapshot> snapshots = this.latencyIntervals.get(interval);
+        if (snapshots == null) {
+            snapshots = new ArrayList<>(this.workersCount);
+            this.latencyIntervals.put(interval, snapshots);
+        }
+        snapshots.add(snapshot);
+        if (snapshots.size() == this.workersCount) {
+            this.latencyIntervals.remove(interval);
+            publishLatency(snapshots);
+        }
+    }
+
+    private synchronized void addHotKeysInterval(int interval, HotKeysSnapshot snapshot) {
+        List<HotKeysSnapshot> snapshots = this.hotKeysIntervals.get(interval);
+        if (snapshots == null) {
+            snapshots = new ArrayList<>(this.workersCount);
+            this.hotKeysIntervals.put(interval, snapshots);
+        }
+        snapshots.add(snapshot);
+        if (snapshots.size() == this.workersCount) {
+            this.hotKeysIntervals.remove(interval);
+            publishHotKeys(snapshots);
+        }
+    }
+
+    private void publishLatency(List<LatencySnapshot> snapshots) {
+        final LatencySnapshot merged = LatencySnapshot.merge(snapshots);
+        this.total = (this.total != null) ? LatencySnapshot.merge(Arrays.asList(this.total, merged)) : merged;
+        this.logger.info(String.format("Merged (%d workers) %s", snapshots.size(), merged));
+        for (IntervalListener listener : this.intervalListeners) {
+            listener.onLatencyInterval(merged);
+        }
+    }
+
+    private void publishHotKeys(List<HotKeysSnapshot> snapshots) {
+        final HotKeysSnapshot merged = HotKeysSnapshot.merge(snapshots);
+        this.logger.info(String.format("Merged (%d workers) %s", snapshots.size(), merged));
+        for (IntervalListener listener : this.intervalListeners) {
+            listener.onHotKeysInterval(merged);
+        }
+    }
+
+    /**
+     * Disconnects the workers and waits for the spawned processes to exit, killing the ones which do not.
+     */
+    @Override
+    public void close() {
+        for (Socket socket : this.sockets) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+        try {
+            this.serverSocket.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+        for (Process process : this.processes) {
+            try {
+                if (!process.waitFor(EXIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    this.logger.warning("Killing worker process which did not exit");
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+package memcached_sdn.experiment.coordinator;
+
+import memcached_sdn.experiment.data.HotKeysSnapshot;
+import memcached_sdn.experiment.data.IntervalListener;
+import memcached_sdn.experiment.data.LatencySnapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * The worker side of a {@link LoadCoordinator}: receives the worker's arguments, waits for the common start
+ * time and sends every interval sampled by the worker's experiment to the coordinator.
+ */
+public class WorkerConnection implements IntervalListener, Closeable {
+
+    public static final String COORDINATOR_OPTION = "coordinator";
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final int workerIndex;
+    private final String[] args;
+
+    private WorkerConnection(Socket socket) throws IOException {
+        this.socket = socket;
+        this.socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        expectMessage(LoadCoordinator.CONFIGURE);
+        this.workerIndex = this.in.readInt();
+        this.args = new String[this.in.readInt()];
+        for (int i = 0; i < this.args.length; i++) {
+            this.args[i] = this.in.readUTF();
+        }
+    }
+
+    /**
+     * Connects to the coordinator and receives the worker's arguments.
+     *
+     * @param coordinator &lt;host&gt;:&lt;port&gt; of the coordinator.
+     */
+    public static WorkerConnection connect(String coordinator) {
+        final String[] hostAndPort = coordinator.trim().split(":");
+        try {
+            return new WorkerConnection(new Socket(hostAndPort[0], Integer.parseInt(hostAndPort[1])));
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Failed to connect to coordinator %s: %s", coordinator, e.getMessage()), e);
+        }
+    }
+
+    public int getWorkerIndex() {
+        return workerIndex;
+    }
+
+    /**
+     * @return the experiment arguments of this worker.
+     */
+    public String[] getArgs() {
+        return args;
+    }
+
+    /**
+     * Reports the worker ready and blocks until the start time all workers share.
+     */
+    public void awaitStart() throws InterruptedException {
+        final long startTimeMillis;
+        try {
+            this.out.writeByte(LoadCoordinator.READY);
+            this.out.flush();
+            expectMessage(LoadCoordinator.START);
+            startTimeMillis = this.in.readLong();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        final long delay = startTimeMillis - System.currentTimeMillis();
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+    }
+
+    @Override
+    public synchronized void onLatencyInterval(LatencySnapshot snapshot) {
+        try {
+            this.out.writeByte(LoadCoordinator.LATENCY_INTERVAL);
+            snapshot.writeTo(this.out);
+            this.out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized void onHotKeysInterval(HotKeysSnapshot snapshot) {
+        try {
+            this.out.writeByte(LoadCoordinator.HOT_KEYS_INTERVAL);
+            snapshot.writeTo(this.out);
+            this.out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Tells the coordinator that all intervals were sent.
+     */
+    public synchronized void finish() {
+        try {
+            this.out.writeByte(LoadCoordinator.DONE);
+            this.out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void expectMessage(byte type) throws IOException {
+        final byte received = this.in.readByte();
+        if (received != type) {
+            throw new IOException(String.format("Unexpected message %d from coordinator, expected %d.", received, type));
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            this.socket.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+package memcached_sdn.experiment.data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the segment files written by {@link BinaryExperimentDataWriter}.
+ */
+public class BinaryExperimentDataReader implements Closeable {
+
+    private final String filename;
+    private ByteBuffer inflatedBlock = ByteBuffer.allocate(BinaryExperimentDataWriter.BLOCK_SIZE);
+    private final Inflater inflater = new Inflater(true);
+    private String fileHeader;
+    private String keyFormat;
+    private int segmentIndex = 0;
+    private short version;
+    private int recordSize;
+    private MappedByteBuffer segment;
+    private ByteBuffer block;
+
+    public BinaryExperimentDataReader(String filename) throws IOException {
+        this.filename = filename;
+        if (!openSegment()) {
+            throw new IOException("Binary latency file not found: " + filename);
+        }
+    }
+
+    private boolean openSegment() throws IOException {
+        final File file = new File(BinaryExperimentDataWriter.getSegmentFileName(this.filename, this.segmentIndex));
+        if (!file.exists()) {
+            return false;
+        }
+        try (RandomAccessFile segmentFile = new RandomAccessFile(file, "r")) {
+            this.segment = segmentFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, segmentFile.length());
+        }
+        if (this.segment.getInt() != BinaryExperimentDataWriter.MAGIC) {
+            throw new IOException("Not a binary latency file: " + file);
+        }
+        final short version = this.segment.getShort();
+        if (version < 1 || version > BinaryExperimentDataWriter.VERSION) {
+            throw new IOException(String.format("Unsupported binary latency file version %d: %s", version, file));
+        }
+        this.version = version;
+        this.recordSize = (version == 1) ? BinaryExperimentDataWriter.VERSION_1_RECORD_SIZE : BinaryExperimentDataWriter.RECORD_SIZE;
+        this.segment.getShort();
+        final int index = this.segment.getInt();
+        if (index != this.segmentIndex) {
+            throw new IOException(String.format("Expected segment %d but found %d: %s", this.segmentIndex, index, file));
+        }
+        if (version >= 3) {
+            final long dataLength = this.segment.getLong();
+            if (dataLength > this.segment.capacity()) {
+                throw new IOException(String.format("Segment data length %d exceeds the file length %d: %s", dataLength, this.segment.capacity(), file));
+            }
+            if (dataLength > 0) {
+                this.segment.limit((int) dataLength);
+            }
+        }
+        final String header = readString();
+        final String format = readString();
+        if (this.segmentIndex == 0) {
+            this.fileHeader = header;
+            this.keyFormat = format;
+        }
+        return true;
+    }
+
+    private String readString() {
+        final byte[] bytes = new byte[this.segment.getInt()];
+        this.segment.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean nextBlock() throws IOException {
+        while (this.segment.remaining() < BinaryExperimentDataWriter.BLOCK_HEADER_SIZE) {
+            this.segmentIndex++;
+            if (!openSegment()) {
+                return false;
+            }
+        }
+        final int rawLength = this.segment.getInt();
+        final int storedLength = this.segment.getInt();
+        if (rawLength == 0) {
+            return false;
+        }
+        if (storedLength == rawLength) {
+            this.block = this.segment.slice();
+            this.block.limit(rawLength);
+        } else {
+            final byte[] stored = new byte[storedLength];
+            this.segment.get(stored);
+            if (this.inflatedBlock.capacity() < rawLength) {
+                this.inflatedBlock = ByteBuffer.allocate(rawLength);
+            }
+            this.inflater.reset();
+            this.inflater.setInput(stored);
+            try {
+                this.inflater.inflate(this.inflatedBlock.array(), 0, rawLength);
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            }
+            this.block = this.inflatedBlock;
+            this.block.clear();
+            this.block.limit(rawLength);
+            return true;
+        }
+        this.segment.position(this.segment.position() + rawLength);
+        return true;
+    }
+
+    /**
+     * @return the next record or null at the end of the file.
+     */
+    public ExperimentData next() throws IOException {
+        if ((this.block == null || this.block.remaining() < this.recordSize) && !nextBlock()) {
+            return null;
+        }
+        final long timestampNanos = this.block.getLong();
+        final int keyId = this.block.getInt();
+        final long latencyNanos = this.block.getLong();
+        final short serverIndex = this.block.getShort();
+        final short responseServerIndex = this.block.getShort();
+        final short receivedPacketsCount = this.block.getShort();
+        final short totalPacketsCount = this.block.getShort();
+        final short timeoutRetries = (this.version == 1) ? 0 : this.block.getShort();
+        final short fragmentRetries = (this.version == 1) ? 0 : this.block.getShort();
+        return new ExperimentData(
+                timestampNanos,
+                String.format(this.keyFormat, keyId),
+                keyId,
+                latencyNanos,
+                serverIndex,
+                responseServerIndex,
+                receivedPacketsCount,
+                totalPacketsCount,
+                timeoutRetries,
+                fragmentRetries);
+    }
+
+    /**
+     * @return the ';' header lines of the equivalent text latency file.
+     */
+    public String getFileHeader() {
+        return fileHeader;
+    }
+
+    public String getKeyFormat() {
+        return keyFormat;
+    }
+
+    @Override
+    public void close() {
+        this.inflater.end();
+        this.segment = null;
+        this.block = null;
+    }
+
+}
@@ -0,0 +1,161 @@
+package memcached_sdn.experiment.data;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+
+/**
+ * Writes latency records in a fixed width binary format to memory mapped segment files.
+ *
+ * A segment starts with the magic number, format version, flags, segment index and the length of its data,
+ * followed (in the first segment only) by the text file header and the key name format. The rest of the
+ * segment is a sequence of blocks, each prefixed by its raw and stored length. When compression is enabled
+ * a block is stored deflated if that made it smaller. Segments after the first are named "filename.N".
+ *
+ * A segment file keeps the size it was mapped with, since it cannot be truncated while it is mapped and
+ * Java has no way to release a mapping. The data length is written when the segment is closed (0 if the
+ * writer did not close it, readers then stop at the first empty block header); the unwritten tail is a
+ * sparse hole on most file systems. Version 2 segments had no data length and were truncated instead.
+ *
+ * Record layout ({@link #RECORD_SIZE} bytes): timestamp in epoch nanoseconds (long), key id (int),
+ * latency in nanoseconds or -1 (long), server index, response server index, received packets,
+ * total packets, timeout retries and fragment retries (shorts). Version 1 records had no retries (28 bytes).
+ */
+public class BinaryExperimentDataWriter implements ExperimentDataWriter {
+
+    public static final int MAGIC = 0x4D424C47;
+    public static final short VERSION = 3;
+    public static final short FLAG_COMPRESSED = 0x0001;
+    public static final int RECORD_SIZE = 32;
+    static final int VERSION_1_RECORD_SIZE = 28;
+    static final int DATA_LENGTH_OFFSET = 12;
+    public static final int BLOCK_HEADER_SIZE = 8;
+    public static final int BLOCK_SIZE = RECORD_SIZE * 2048;
+    public static final long DEFAULT_SEGMENT_SIZE = 256L * 1024 * 1024;
+
+    private final String filename;
+    private final byte[] fileHeader;
+    private final byte[] keyFormat;
+    private final boolean compress;
+    private final long segmentSize;
+    private final ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+    private final byte[] compressedBlock;
+    private final Deflater deflater;
+    private int segmentIndex = 0;
+    private RandomAccessFile segmentFile;
+    private MappedByteBuffer segment;
+    private long storedBytesCount = 0;
+
+    public BinaryExperimentDataWriter(String filename, String fileHeader, String keyFormat, boolean compress) throws IOException {
+        this(filename, fileHeader, keyFormat, compress, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public BinaryExperimentDataWriter(String filename, String fileHeader, String keyFormat, boolean compress, long segmentSize) throws IOException {
+        this.filename = filename;
+        this.fileHeader = fileHeader.getBytes(StandardCharsets.UTF_8);
+        this.keyFormat = keyFormat.getBytes(StandardCharsets.UTF_8);
+        this.compress = compress;
+        this.segmentSize = segmentSize;
+        this.deflater = compress ? new Deflater(Deflater.BEST_SPEED, true) : null;
+        this.compressedBlock = compress ? new byte[BLOCK_SIZE] : null;
+        openSegment();
+    }
+
+    static String getSegmentFileName(String filename, int segmentIndex) {
+        return (segmentIndex == 0) ? filename : filename + "." + segmentIndex;
+    }
+
+    private void openSegment() throws IOException {
+        final byte[] header = (this.segmentIndex == 0) ? this.fileHeader : new byte[0];
+        final byte[] format = (this.segmentIndex == 0) ? this.keyFormat : new byte[0];
+        this.segmentFile = new RandomAccessFile(getSegmentFileName(this.filename, this.segmentIndex), "rw");
+        final long mappedSize = this.segmentSize + header.length + format.length;
+        this.segment = this.segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, mappedSize);
+        this.segment.putInt(MAGIC);
+        this.segment.putShort(VERSION);
+        this.segment.putShort(this.compress ? FLAG_COMPRESSED : 0);
+        this.segment.putInt(this.segmentIndex);
+        this.segment.putLong(0);
+        this.segment.putInt(header.length);
+        this.segment.put(header);
+        this.segment.putInt(format.length);
+        this.segment.put(format);
+    }
+
+    private void closeSegment() throws IOException {
+        this.segment.putLong(DATA_LENGTH_OFFSET, this.segment.position());
+        this.segment.force();
+        this.segment = null;
+        this.segmentFile.close();
+        this.segmentFile = null;
+    }
+
+    @Override
+    public void write(ExperimentData data) throws IOException {
+        if (block.remaining() < RECORD_SIZE) {
+            flushBlock();
+        }
+        block.putLong(data.getTimestampNanos());
+        block.putInt(data.getKeyId());
+        block.putLong(data.getLatencyNanos());
+        block.putShort((short) data.getServerIndex());
+        block.putShort((short) data.getResponseServerIndex());
+        block.putShort((short) data.getReceivedPacketsCount());
+        block.putShort((short) data.getTotalPacketsCount());
+        block.putShort((short) data.getTimeoutRetries());
+        block.putShort((short) data.getFragmentRetries());
+    }
+
+    private void flushBlock() throws IOException {
+        final int rawLength = block.position();
+        if (rawLength == 0) {
+            return;
+        }
+        byte[] data = block.array();
+        int storedLength = rawLength;
+        if (this.compress) {
+            deflater.reset();
+            deflater.setInput(data, 0, rawLength);
+            deflater.finish();
+            int compressedLength = deflater.deflate(compressedBlock, 0, rawLength - 1);
+            if (deflater.finished()) {
+                data = compressedBlock;
+                storedLength = compressedLength;
+            }
+        }
+        if (this.segment.remaining() < BLOCK_HEADER_SIZE + storedLength) {
+            closeSegment();
+            this.segmentIndex++;
+            openSegment();
+        }
+        this.segment.putInt(rawLength);
+        this.segment.putInt(storedLength);
+        this.segment.put(data, 0, storedLength);
+        this.storedBytesCount += BLOCK_HEADER_SIZE + storedLength;
+        block.clear();
+    }
+
+    /**
+     * @return the number of block bytes (headers included) written to the segments so far.
+     */
+    public long getStoredBytesCount() {
+        return storedBytesCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.segment == null) {
+            return;
+        }
+        flushBlock();
+        closeSegment();
+        if (this.deflater != null) {
+            this.deflater.end();
+        }
+    }
+
+}
@@ -0,0 +1,27 @@
+package memcached_sdn.experiment.data;
+
+import java.io.IOException;
+
+/**
+ * Converts a binary latency file to the text format used by the Python scripts.
+ */
+public class BinaryLatencyLogConverter {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: latency-log-converter <binary-latency-file> <text-latency-file>");
+            System.exit(1);
+        }
+        long recordsCount = 0;
+        try (BinaryExperimentDataReader reader = new BinaryExperimentDataReader(args[0]);
+             TextExperimentDataWriter writer = new TextExperimentDataWriter(args[1], reader.getFileHeader())) {
+            ExperimentData data;
+            while ((data = reader.next()) != null) {
+                writer.write(data);
+                recordsCount++;
+            }
+        }
+        System.out.println(String.format("Converted %d records to %s", recordsCount, args[1]));
+    }
+
+}
@@ -1,31 +1,122 @@
 package memcached_sdn.experiment.data;
 
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Created by idanmo on 2/27/16.
  */
 public class ExperimentData {
 
-    private final String time;
+    /**
+     * Server index of requests answered by the client's near cache.
+     */
+    public static final int NEAR_CACHE_SERVER_INDEX = -2;
+
+    private final long timestampNanos;
     private final String key;
-    private final double latency;
+    private final int keyId;
+    private final long latencyNanos;
     private final int serverIndex;
     private final int responseServerIndex;
     private final int receivedPacketsCount;
     private final int totalPacketsCount;
+    private final int timeoutRetries;
+    private final int fragmentRetries;
+
+    /**
+     * @param timestampNanos request time in nanoseconds since the epoch.
+     * @param latencyNanos request latency in nanoseconds, or -1 for a request with lost packets.
+     * @param serverIndex the server the request was sent to, or {@link #NEAR_CACHE_SERVER_INDEX}.
+     */
+    public ExperimentData(long timestampNanos, String key, int keyId, long latencyNanos, int serverIndex, int responseServerIndex, int receivedPacketsCount, int totalPacketsCount) {
+        this(timestampNanos, key, keyId, latencyNanos, serverIndex, responseServerIndex, receivedPacketsCount, totalPacketsCount, 0, 0);
+    }
 
-    public ExperimentData(String time, String key, double latency, int serverIndex, int responseServerIndex, int receivedPacketsCount, int totalPacketsCount) {
-        this.time = time;
+    /**
+     * @param timeoutRetries times the request was re-sent because no datagram of the previous attempt arrived.
+     * @param fragmentRetries times the request was re-sent because only some datagrams of the previous attempt arrived.
+     */
+    public ExperimentData(long timestampNanos, String key, int keyId, long latencyNanos, int serverIndex, int responseServerIndex, int receivedPacketsCount, int totalPacketsCount, int timeoutRetries, int fragmentRetries) {
+        this.timestampNanos = timestampNanos;
         this.key = key;
-        this.latency = latency;
+        this.keyId = keyId;
+        this.latencyNanos = latencyNanos;
         this.serverIndex = serverIndex;
         this.responseServerIndex = responseServerIndex;
         this.receivedPacketsCount = receivedPacketsCount;
         this.totalPacketsCount = totalPacketsCount;
+        this.timeoutRetries = timeoutRetries;
+        this.fragmentRetries = fragmentRetries;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public int getKeyId() {
+        return keyId;
+    }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    public int getServerIndex() {
+        return serverIndex;
+    }
+
+    public int getResponseServerIndex() {
+        return responseServerIndex;
+    }
+
+    public int getReceivedPacketsCount() {
+        return receivedPacketsCount;
+    }
+
+    public int getTotalPacketsCount() {
+        return totalPacketsCount;
+    }
+
+    public int getTimeoutRetries() {
+        return timeoutRetries;
+    }
+
+    public int getFragmentRetries() {
+        return fragmentRetries;
+    }
+
+    /**
+     * Appends the latency file line of this record (without a line separator). Retried requests get an extra
+     * "timeout-retries/fragment-retries" column.
+     * The calendar is only used as a scratch object so callers can reuse one instance.
+     */
+    public void appendTo(StringBuilder sb, Calendar cal) {
+        cal.setTimeInMillis(TimeUnit.NANOSECONDS.toMillis(timestampNanos));
+        sb.append(cal.get(Calendar.HOUR)).append(':')
+                .append(cal.get(Calendar.MINUTE)).append(':')
+                .append(cal.get(Calendar.SECOND)).append(':')
+                .append(cal.get(Calendar.MILLISECOND)).append(',')
+                .append(key).append(',')
+                .append(latencyNanos < 0 ? -1.0 : latencyNanos / (double) 1000000).append(',')
+                .append(serverIndex).append(',')
+                .append(responseServerIndex).append(',')
+                .append(receivedPacketsCount).append('/')
+                .append(totalPacketsCount);
+        if (timeoutRetries > 0 || fragmentRetries > 0) {
+            sb.append(',').append(timeoutRetries).append('/').append(fragmentRetries);
+        }
     }
 
     @Override
     public String toString() {
-        return String.format("%s,%s,%s,%d,%d,%d/%d", time, key, Double.toString(latency), serverIndex, responseServerIndex, receivedPacketsCount, totalPacketsCount);
+        final StringBuilder sb = new StringBuilder(64);
+        appendTo(sb, Calendar.getInstance());
+        return sb.toString();
     }
 
 }
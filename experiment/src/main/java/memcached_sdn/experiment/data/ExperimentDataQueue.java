@@ -0,0 +1,126 @@
+package memcached_sdn.experiment.data;
+
+import memcached_sdn.experiment.helpers.SpscRingBuffer;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands latency records from the load threads to the file writer through one bounded ring buffer per thread.
+ *
+ * When a thread's buffer is full the overflow policy decides what happens: BLOCK waits for the writer,
+ * DROP discards the record and SAMPLE starts keeping only every Nth record once the buffer is half full
+ * (and drops when it is full). Discarded records are counted per thread.
+ */
+public class ExperimentDataQueue {
+
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final int DEFAULT_SAMPLE_EVERY = 10;
+
+    public enum OverflowPolicy {
+        BLOCK,
+        DROP,
+        SAMPLE
+    }
+
+    private final SpscRingBuffer<ExperimentData>[] buffers;
+    private final OverflowPolicy overflowPolicy;
+    private final int sampleEvery;
+    private final AtomicBoolean stop;
+    private final AtomicLongArray droppedCount;
+    private final long[] sampleCounters;
+    private int nextDrainIndex = 0;
+
+    @SuppressWarnings("unchecked")
+    public ExperimentDataQueue(int numberOfThreads, int capacityPerThread, OverflowPolicy overflowPolicy, int sampleEvery, AtomicBoolean stop) {
+        this.buffers = (SpscRingBuffer<ExperimentData>[]) new SpscRingBuffer<?>[numberOfThreads];
+        for (int i = 0; i < numberOfThreads; i++) {
+            this.buffers[i] = new SpscRingBuffer<>(capacityPerThread);
+        }
+        this.overflowPolicy = overflowPolicy;
+        this.sampleEvery = sampleEvery;
+        this.stop = stop;
+        this.droppedCount = new AtomicLongArray(numberOfThreads);
+        this.sampleCounters = new long[numberOfThreads];
+    }
+
+    /**
+     * Parses an overflow policy option value: block, drop or sample[-&lt;N&gt;].
+     */
+    public static ExperimentDataQueue create(int numberOfThreads, int capacityPerThread, String overflowPolicy, AtomicBoolean stop) {
+        final String[] values = overflowPolicy.split("-");
+        final OverflowPolicy policy = OverflowPolicy.valueOf(values[0].trim().toUpperCase());
+        final int sampleEvery = (values.length > 1) ? Integer.parseInt(values[1]) : DEFAULT_SAMPLE_EVERY;
+        return new ExperimentDataQueue(numberOfThreads, capacityPerThread, policy, sampleEvery, stop);
+    }
+
+    /**
+     * Must only be called by the load thread identified by threadId.
+     */
+    public void add(int threadId, ExperimentData data) {
+        final SpscRingBuffer<ExperimentData> buffer = this.buffers[threadId];
+        if (this.overflowPolicy == OverflowPolicy.SAMPLE && buffer.size() > buffer.capacity() / 2) {
+            if (++this.sampleCounters[threadId] % this.sampleEvery != 0) {
+                drop(threadId);
+                return;
+            }
+        }
+        if (buffer.offer(data)) {
+            return;
+        }
+        if (this.overflowPolicy == OverflowPolicy.BLOCK) {
+            while (!buffer.offer(data)) {
+                if (this.stop.get()) {
+                    drop(threadId);
+                    return;
+                }
+                LockSupport.parkNanos(BLOCK_PARK_NANOS);
+            }
+        } else {
+            drop(threadId);
+        }
+    }
+
+    private void drop(int threadId) {
+        this.droppedCount.lazySet(threadId, this.droppedCount.get(threadId) + 1);
+    }
+
+    /**
+     * Moves up to maxItems records from all thread buffers to the target list, starting with a different
+     * thread on every call. Must only be called by the writer thread.
+     * @return the number of records moved.
+     */
+    public int drainTo(List<ExperimentData> target, int maxItems) {
+        int drained = 0;
+        for (int i = 0; i < this.buffers.length && drained < maxItems; i++) {
+            drained += this.buffers[(this.nextDrainIndex + i) % this.buffers.length].drainTo(target, maxItems - drained);
+        }
+        this.nextDrainIndex = (this.nextDrainIndex + 1) % this.buffers.length;
+        return drained;
+    }
+
+    public long getQueueDepth() {
+        long depth = 0;
+        for (SpscRingBuffer<ExperimentData> buffer : this.buffers) {
+            depth += buffer.size();
+        }
+        return depth;
+    }
+
+    public long getDroppedCount() {
+        long dropped = 0;
+        for (int i = 0; i < this.droppedCount.length(); i++) {
+            dropped += this.droppedCount.get(i);
+        }
+        return dropped;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Latency queue: depth=%d, dropped=%d, policy=%s", getQueueDepth(), getDroppedCount(), this.overflowPolicy);
+    }
+
+}
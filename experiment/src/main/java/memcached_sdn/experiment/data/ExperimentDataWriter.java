@@ -0,0 +1,13 @@
+package memcached_sdn.experiment.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Latency output file writer. Instances are used by a single writer thread.
+ */
+public interface ExperimentDataWriter extends Closeable {
+
+    void write(ExperimentData data) throws IOException;
+
+}
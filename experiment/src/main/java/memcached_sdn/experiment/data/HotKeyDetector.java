@@ -0,0 +1,128 @@
+package memcached_sdn.experiment.data;
+
+import org.HdrHistogram.WriterReaderPhaser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the most requested keys of every target server while the experiment runs.
+ *
+ * Each load thread counts its requests in its own {@link SpaceSaving} summaries (one per server), so
+ * recording never contends with other threads. {@link #sampleInterval()} swaps every thread's summaries
+ * for empty ones, the same way HdrHistogram's recorders do, and merges them into the top keys of the interval.
+ */
+public class HotKeyDetector {
+
+    private final int numberOfServers;
+    private final int topCount;
+    private final ThreadSummaries[] threadSummaries;
+    private long intervalStartTimeMillis;
+    private volatile HotKeysSnapshot lastSnapshot = null;
+
+    /**
+     * @param capacity number of keys monitored per thread and server, a key requested more than
+     *                 1/capacity of a thread's requests to a server is guaranteed to be found.
+     * @param topCount number of keys reported per server.
+     */
+    public HotKeyDetector(int numberOfThreads, int numberOfServers, int capacity, int topCount) {
+        this.numberOfServers = numberOfServers;
+        this.topCount = topCount;
+        this.threadSummaries = new ThreadSummaries[numberOfThreads];
+        for (int t = 0; t < numberOfThreads; t++) {
+            this.threadSummaries[t] = new ThreadSummaries(numberOfServers, capacity);
+        }
+        this.intervalStartTimeMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Must only be called by the load thread identified by threadId.
+     */
+    public void recordRequest(int threadId, int serverIndex, String key) {
+        final ThreadSummaries summaries = this.threadSummaries[threadId];
+        final long criticalValue = summaries.phaser.writerCriticalSectionEnter();
+        try {
+            summaries.active[serverIndex].offer(key);
+        } finally {
+            summaries.phaser.writerCriticalSectionExit(criticalValue);
+        }
+    }
+
+    /**
+     * Merges the keys counted by all threads since the previous call.
+     */
+    public synchronized HotKeysSnapshot sampleInterval() {
+        final long now = System.currentTimeMillis();
+        final List<List<List<SpaceSaving.Counter>>> countersByServer = new ArrayList<>(this.numberOfServers);
+        final long[][] unmonitoredCountsByServer = new long[this.numberOfServers][this.threadSummaries.length];
+        for (int s = 0; s < this.numberOfServers; s++) {
+            countersByServer.add(new ArrayList<List<SpaceSaving.Counter>>(this.threadSummaries.length));
+        }
+        for (int t = 0; t < this.threadSummaries.length; t++) {
+            SpaceSaving[] interval = this.threadSummaries[t].flip();
+            for (int s = 0; s < this.numberOfServers; s++) {
+                countersByServer.get(s).add(interval[s].getCounters());
+                unmonitoredCountsByServer[s][t] = interval[s].getUnmonitoredCount();
+            }
+        }
+
+        final List<List<SpaceSaving.Counter>> topKeys = new ArrayList<>(this.numberOfServers);
+        final long[] unmonitoredCounts = new long[this.numberOfServers];
+        for (int s = 0; s < this.numberOfServers; s++) {
+            HotKeysSnapshot.MergedCounters merged = HotKeysSnapshot.mergeCounters(
+                    countersByServer.get(s), unmonitoredCountsByServer[s], this.topCount);
+            topKeys.add(merged.counters);
+            unmonitoredCounts[s] = merged.unmonitoredCount;
+        }
+        HotKeysSnapshot snapshot = new HotKeysSnapshot(this.intervalStartTimeMillis, now, topKeys, unmonitoredCounts);
+        this.intervalStartTimeMillis = now;
+        this.lastSnapshot = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * @return the latest sampled interval, or null before the first sample.
+     */
+    public HotKeysSnapshot getLastSnapshot() {
+        return lastSnapshot;
+    }
+
+    private static class ThreadSummaries {
+        private final WriterReaderPhaser phaser = new WriterReaderPhaser();
+        private volatile SpaceSaving[] active;
+        private SpaceSaving[] inactive;
+
+        ThreadSummaries(int numberOfServers, int capacity) {
+            this.active = createSummaries(numberOfServers, capacity);
+            this.inactive = createSummaries(numberOfServers, capacity);
+        }
+
+        private static SpaceSaving[] createSummaries(int numberOfServers, int capacity) {
+            SpaceSaving[] summaries = new SpaceSaving[numberOfServers];
+            for (int s = 0; s < numberOfServers; s++) {
+                summaries[s] = new SpaceSaving(capacity);
+            }
+            return summaries;
+        }
+
+        /**
+         * @return the summaries recorded since the previous flip, which the writer no longer updates.
+         */
+        SpaceSaving[] flip() {
+            for (SpaceSaving summary : this.inactive) {
+                summary.reset();
+            }
+            this.phaser.readerLock();
+            try {
+                SpaceSaving[] interval = this.active;
+                this.active = this.inactive;
+                this.inactive = interval;
+                this.phaser.flipPhase();
+                return interval;
+            } finally {
+                this.phaser.readerUnlock();
+            }
+        }
+    }
+
+}
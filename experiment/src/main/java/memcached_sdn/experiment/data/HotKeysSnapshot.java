@@ -0,0 +1,227 @@
+package memcached_sdn.experiment.data;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The most requested keys of every server over a time range, as produced by {@link HotKeyDetector}.
+ *
+ * Every server also has an unmonitored count, an upper bound of the requests of any key which is not among
+ * its top keys, so snapshots can be merged into upper bounds again (see {@link #mergeCounters}).
+ */
+public class HotKeysSnapshot {
+
+    private final long startTimeMillis;
+    private final long endTimeMillis;
+    private final List<List<SpaceSaving.Counter>> topKeysByServer;
+    private final long[] unmonitoredCounts;
+
+    /**
+     * A snapshot of complete top keys lists, keys which are not listed were not requested.
+     */
+    public HotKeysSnapshot(long startTimeMillis, long endTimeMillis, List<List<SpaceSaving.Counter>> topKeysByServer) {
+        this(startTimeMillis, endTimeMillis, topKeysByServer, new long[topKeysByServer.size()]);
+    }
+
+    public HotKeysSnapshot(long startTimeMillis, long endTimeMillis, List<List<SpaceSaving.Counter>> topKeysByServer, long[] unmonitoredCounts) {
+        if (unmonitoredCounts.length != topKeysByServer.size()) {
+            throw new IllegalArgumentException(String.format("%d unmonitored counts for %d servers.",
+                    unmonitoredCounts.length, topKeysByServer.size()));
+        }
+        this.startTimeMillis = startTimeMillis;
+        this.endTimeMillis = endTimeMillis;
+        this.topKeysByServer = topKeysByServer;
+        this.unmonitoredCounts = unmonitoredCounts;
+    }
+
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    public long getEndTimeMillis() {
+        return endTimeMillis;
+    }
+
+    public int getServersCount() {
+        return topKeysByServer.size();
+    }
+
+    /**
+     * @return the server's hottest keys, most requested first.
+     */
+    public List<SpaceSaving.Counter> getTopKeys(int serverIndex) {
+        return topKeysByServer.get(serverIndex);
+    }
+
+    /**
+     * @return an upper bound of the requests of any key which is not among the server's top keys.
+     */
+    public long getUnmonitoredCount(int serverIndex) {
+        return unmonitoredCounts[serverIndex];
+    }
+
+    /**
+     * @return the hot keys of all servers, each server's hottest first.
+     */
+    public List<String> getKeys() {
+        final List<String> keys = new ArrayList<>();
+        for (List<SpaceSaving.Counter> counters : topKeysByServer) {
+            for (SpaceSaving.Counter counter : counters) {
+                keys.add(counter.getKey());
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * @return the estimated requests per second of a counter of this snapshot.
+     */
+    public double getRate(SpaceSaving.Counter counter) {
+        return counter.getCount() / (Math.max(1, endTimeMillis - startTimeMillis) / 1000.0);
+    }
+
+    /**
+     * Merges summaries of disjoint parts of a stream (e.g. the requests of every thread) with the mergeable
+     * summaries rule: counts and errors are summed, and a key which a summary does not list counts as that
+     * summary's unmonitored count, added to both its count and error. Merged counts are then upper bounds
+     * of the keys' occurrences in the whole stream, as the summaries' counts are.
+     *
+     * @param unmonitoredCounts the unmonitored count of every counters list, e.g. {@link SpaceSaving#getUnmonitoredCount()}.
+     * @return the topCount most requested keys, most requested first.
+     */
+    static MergedCounters mergeCounters(List<List<SpaceSaving.Counter>> countersLists, long[] unmonitoredCounts, int topCount) {
+        long totalUnmonitoredCount = 0;
+        for (long unmonitoredCount : unmonitoredCounts) {
+            totalUnmonitoredCount += unmonitoredCount;
+        }
+        // Every key starts as unmonitored by all lists, each list monitoring it replaces its unmonitored count
+        final Map<String, SpaceSaving.Counter> merged = new HashMap<>();
+        for (int i = 0; i < countersLists.size(); i++) {
+            for (SpaceSaving.Counter counter : countersLists.get(i)) {
+                SpaceSaving.Counter current = merged.get(counter.getKey());
+                long count = (current != null) ? current.getCount() : totalUnmonitoredCount;
+                long error = (current != null) ? current.getError() : totalUnmonitoredCount;
+                merged.put(counter.getKey(), new SpaceSaving.Counter(counter.getKey(),
+                        count + counter.getCount() - unmonitoredCounts[i], error + counter.getError() - unmonitoredCounts[i]));
+            }
+        }
+        final List<SpaceSaving.Counter> counters = new ArrayList<>(merged.values());
+        Collections.sort(counters, new Comparator<SpaceSaving.Counter>() {
+            @Override
+            public int compare(SpaceSaving.Counter o1, SpaceSaving.Counter o2) {
+                return Long.compare(o2.getCount(), o1.getCount());
+            }
+        });
+        if (counters.size() <= topCount) {
+            return new MergedCounters(counters, totalUnmonitoredCount);
+        }
+        // A key left out is bounded by the last listed one
+        final List<SpaceSaving.Counter> top = new ArrayList<>(counters.subList(0, topCount));
+        return new MergedCounters(top, (topCount > 0) ? top.get(topCount - 1).getCount() : counters.get(0).getCount());
+    }
+
+    /**
+     * The top keys of merged counters lists and their unmonitored count.
+     */
+    static class MergedCounters {
+        final List<SpaceSaving.Counter> counters;
+        final long unmonitoredCount;
+
+        MergedCounters(List<SpaceSaving.Counter> counters, long unmonitoredCount) {
+            this.counters = counters;
+            this.unmonitoredCount = unmonitoredCount;
+        }
+    }
+
+    /**
+     * Sums snapshots of the same servers, e.g. the same interval detected by several processes. Every server
+     * keeps as many keys as the longest of its merged lists.
+     */
+    public static HotKeysSnapshot merge(List<HotKeysSnapshot> snapshots) {
+        final HotKeysSnapshot first = snapshots.get(0);
+        long startTimeMillis = first.startTimeMillis;
+        long endTimeMillis = first.endTimeMillis;
+        for (HotKeysSnapshot snapshot : snapshots) {
+            if (snapshot.getServersCount() != first.getServersCount()) {
+                throw new IllegalArgumentException(String.format("Can not merge hot keys of %d and %d servers.",
+                        first.getServersCount(), snapshot.getServersCount()));
+            }
+            startTimeMillis = Math.min(startTimeMillis, snapshot.startTimeMillis);
+            endTimeMillis = Math.max(endTimeMillis, snapshot.endTimeMillis);
+        }
+        final List<List<SpaceSaving.Counter>> topKeys = new ArrayList<>(first.getServersCount());
+        final long[] unmonitoredCounts = new long[first.getServersCount()];
+        for (int s = 0; s < first.getServersCount(); s++) {
+            final List<List<SpaceSaving.Counter>> countersLists = new ArrayList<>(snapshots.size());
+            final long[] snapshotsUnmonitoredCounts = new long[snapshots.size()];
+            int topCount = 0;
+            for (int i = 0; i < snapshots.size(); i++) {
+                countersLists.add(snapshots.get(i).getTopKeys(s));
+                snapshotsUnmonitoredCounts[i] = snapshots.get(i).getUnmonitoredCount(s);
+                topCount = Math.max(topCount, snapshots.get(i).getTopKeys(s).size());
+            }
+            MergedCounters merged = mergeCounters(countersLists, snapshotsUnmonitoredCounts, topCount);
+            topKeys.add(merged.counters);
+            unmonitoredCounts[s] = merged.unmonitoredCount;
+        }
+        return new HotKeysSnapshot(startTimeMillis, endTimeMillis, topKeys, unmonitoredCounts);
+    }
+
+    /**
+     * Writes the snapshot in a form read by {@link #readFrom(DataInputStream)}.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(startTimeMillis);
+        out.writeLong(endTimeMillis);
+        out.writeInt(topKeysByServer.size());
+        for (int s = 0; s < topKeysByServer.size(); s++) {
+            List<SpaceSaving.Counter> counters = topKeysByServer.get(s);
+            out.writeLong(unmonitoredCounts[s]);
+            out.writeInt(counters.size());
+            for (SpaceSaving.Counter counter : counters) {
+                out.writeUTF(counter.getKey());
+                out.writeLong(counter.getCount());
+                out.writeLong(counter.getError());
+            }
+        }
+    }
+
+    public static HotKeysSnapshot readFrom(DataInputStream in) throws IOException {
+        final long startTimeMillis = in.readLong();
+        final long endTimeMillis = in.readLong();
+        final int serversCount = in.readInt();
+        final List<List<SpaceSaving.Counter>> topKeys = new ArrayList<>(serversCount);
+        final long[] unmonitoredCounts = new long[serversCount];
+        for (int s = 0; s < serversCount; s++) {
+            unmonitoredCounts[s] = in.readLong();
+            final int countersCount = in.readInt();
+            final List<SpaceSaving.Counter> counters = new ArrayList<>(countersCount);
+            for (int i = 0; i < countersCount; i++) {
+                counters.add(new SpaceSaving.Counter(in.readUTF(), in.readLong(), in.readLong()));
+            }
+            topKeys.add(counters);
+        }
+        return new HotKeysSnapshot(startTimeMillis, endTimeMillis, topKeys, unmonitoredCounts);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Hot keys [%.1fs]:", (endTimeMillis - startTimeMillis) / 1000.0));
+        for (int s = 0; s < topKeysByServer.size(); s++) {
+            sb.append(String.format("%n - server #%d:", s));
+            for (SpaceSaving.Counter counter : topKeysByServer.get(s)) {
+                sb.append(String.format(" %s=%.1f/s(+-%d)", counter.getKey(), getRate(counter), counter.getError()));
+            }
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,13 @@
+package memcached_sdn.experiment.data;
+
+/**
+ * Receives the snapshots sampled by the experiment's main loop. Called from the main loop's thread, after
+ * the snapshot was printed, and once more with the last (partial) interval when the experiment ends.
+ */
+public interface IntervalListener {
+
+    void onLatencyInterval(LatencySnapshot snapshot);
+
+    void onHotKeysInterval(HotKeysSnapshot snapshot);
+
+}
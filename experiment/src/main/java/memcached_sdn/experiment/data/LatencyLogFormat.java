@@ -0,0 +1,31 @@
+package memcached_sdn.experiment.data;
+
+import memcached_sdn.experiment.helpers.Helpers;
+
+import java.io.IOException;
+
+/**
+ * Supported latency output file formats.
+ */
+public enum LatencyLogFormat {
+
+    TEXT,
+    BINARY,
+    BINARY_COMPRESSED;
+
+    public ExperimentDataWriter createWriter(String filename, String fileHeader) throws IOException {
+        switch (this) {
+            case BINARY:
+                return new BinaryExperimentDataWriter(filename, fileHeader, Helpers.KEY_FORMAT, false);
+            case BINARY_COMPRESSED:
+                return new BinaryExperimentDataWriter(filename, fileHeader, Helpers.KEY_FORMAT, true);
+            default:
+                return new TextExperimentDataWriter(filename, fileHeader);
+        }
+    }
+
+    public static LatencyLogFormat fromString(String value) {
+        return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+
+}
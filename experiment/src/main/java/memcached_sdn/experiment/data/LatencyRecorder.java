@@ -0,0 +1,305 @@
+package memcached_sdn.experiment.data;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.SingleWriterRecorder;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records request latencies into per-thread, per-server HdrHistograms.
+ *
+ * Each load thread writes only to its own recorders (wait-free), histograms are merged per requested
+ * and per responding server whenever {@link #sampleInterval()} is called. Requests served by the near cache
+ * are recorded in a histogram of their own. Lost responses and timeout retries are counted per requested server,
+ * and per responding server when some datagram of the response arrived, as are the received and expected
+ * response datagrams. Optionally every interval histogram is appended to an HdrHistogram
+ * log file, tagged "requested-N" / "responded-N" / "near-cache".
+ */
+public class LatencyRecorder {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final int numberOfServers;
+    private final SingleWriterRecorder[][] requestedRecorders;
+    private final SingleWriterRecorder[][] respondingRecorders;
+    private final SingleWriterRecorder[] nearCacheRecorders;
+    private final AtomicLongArray[] lostByRequestedServer;
+    private final AtomicLongArray[] lostByRespondingServer;
+    private final AtomicLongArray[] timeoutsByRequestedServer;
+    private final AtomicLongArray[] timeoutsByRespondingServer;
+    private final AtomicLongArray[] receivedDatagramsByRequestedServer;
+    private final AtomicLongArray[] receivedDatagramsByRespondingServer;
+    private final AtomicLongArray[] expectedDatagramsByRequestedServer;
+    private final AtomicLongArray[] expectedDatagramsByRespondingServer;
+    private final Histogram[] totalByRequestedServer;
+    private final Histogram[] totalByRespondingServer;
+    private final Histogram totalNearCacheHits;
+    private final long[] totalLostByRequestedServer;
+    private final long[] totalLostByRespondingServer;
+    private final long[] totalTimeoutsByRequestedServer;
+    private final long[] totalTimeoutsByRespondingServer;
+    private final long[] totalReceivedDatagramsByRequestedServer;
+    private final long[] totalReceivedDatagramsByRespondingServer;
+    private final long[] totalExpectedDatagramsByRequestedServer;
+    private final long[] totalExpectedDatagramsByRespondingServer;
+    private final long startTimeMillis;
+    private long intervalStartTimeMillis;
+    private PrintStream logStream = null;
+    private HistogramLogWriter logWriter = null;
+
+    public LatencyRecorder(int numberOfThreads, int numberOfServers) {
+        this.numberOfServers = numberOfServers;
+        this.requestedRecorders = new SingleWriterRecorder[numberOfThreads][numberOfServers];
+        this.respondingRecorders = new SingleWriterRecorder[numberOfThreads][numberOfServers];
+        this.nearCacheRecorders = new SingleWriterRecorder[numberOfThreads];
+        this.lostByRequestedServer = createCounters(numberOfThreads, numberOfServers);
+        this.lostByRespondingServer = createCounters(numberOfThreads, numberOfServers);
+        this.timeoutsByRequestedServer = createCounters(numberOfThreads, numberOfServers);
+        this.timeoutsByRespondingServer = createCounters(numberOfThreads, numberOfServers);
+        this.receivedDatagramsByRequestedServer = createCounters(numberOfThreads, numberOfServers);
+        this.receivedDatagramsByRespondingServer = createCounters(numberOfThreads, numberOfServers);
+        this.expectedDatagramsByRequestedServer = createCounters(numberOfThreads, numberOfServers);
+        this.expectedDatagramsByRespondingServer = createCounters(numberOfThreads, numberOfServers);
+        for (int t = 0; t < numberOfThreads; t++) {
+            this.nearCacheRecorders[t] = new SingleWriterRecorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+            for (int s = 0; s < numberOfServers; s++) {
+                this.requestedRecorders[t][s] = new SingleWriterRecorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+                this.respondingRecorders[t][s] = new SingleWriterRecorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+            }
+        }
+        this.totalByRequestedServer = createHistograms(numberOfServers);
+        this.totalByRespondingServer = createHistograms(numberOfServers);
+        this.totalNearCacheHits = new Histogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+        this.totalLostByRequestedServer = new long[numberOfServers];
+        this.totalLostByRespondingServer = new long[numberOfServers];
+        this.totalTimeoutsByRequestedServer = new long[numberOfServers];
+        this.totalTimeoutsByRespondingServer = new long[numberOfServers];
+        this.totalReceivedDatagramsByRequestedServer = new long[numberOfServers];
+        this.totalReceivedDatagramsByRespondingServer = new long[numberOfServers];
+        this.totalExpectedDatagramsByRequestedServer = new long[numberOfServers];
+        this.totalExpectedDatagramsByRespondingServer = new long[numberOfServers];
+        this.startTimeMillis = System.currentTimeMillis();
+        this.intervalStartTimeMillis = this.startTimeMillis;
+    }
+
+    private static Histogram[] createHistograms(int count) {
+        Histogram[] histograms = new Histogram[count];
+        for (int i = 0; i < count; i++) {
+            histograms[i] = new Histogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+        }
+        return histograms;
+    }
+
+    private static AtomicLongArray[] createCounters(int numberOfThreads, int numberOfServers) {
+        AtomicLongArray[] counters = new AtomicLongArray[numberOfThreads];
+        for (int t = 0; t < numberOfThreads; t++) {
+            counters[t] = new AtomicLongArray(numberOfServers);
+        }
+        return counters;
+    }
+
+    /**
+     * Appends every sampled interval histogram to the provided HdrHistogram log file.
+     */
+    public synchronized void setLogFile(String filename) {
+        try {
+            this.logStream = new PrintStream(new FileOutputStream(filename));
+        } catch (FileNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+        this.logWriter = new HistogramLogWriter(this.logStream);
+        this.logWriter.outputLogFormatVersion();
+        this.logWriter.outputStartTime(this.startTimeMillis);
+        this.logWriter.setBaseTime(this.startTimeMillis);
+        this.logWriter.outputLegend();
+    }
+
+    /**
+     * Must only be called by the load thread identified by threadId.
+     */
+    public void recordLatency(int threadId, int serverIndex, int responseServerIndex, long latencyNanos) {
+        if (latencyNanos < 0) {
+            return;
+        }
+        final long value = Math.min(latencyNanos, HIGHEST_TRACKABLE_NANOS);
+        this.requestedRecorders[threadId][serverIndex].recordValue(value);
+        if (responseServerIndex >= 0 && responseServerIndex < this.numberOfServers) {
+            this.respondingRecorders[threadId][responseServerIndex].recordValue(value);
+        }
+    }
+
+    /**
+     * Records a request answered by the thread's near cache, without a server.
+     * Must only be called by the load thread identified by threadId.
+     */
+    public void recordNearCacheHit(int threadId, long latencyNanos) {
+        if (latencyNanos < 0) {
+            return;
+        }
+        this.nearCacheRecorders[threadId].recordValue(Math.min(latencyNanos, HIGHEST_TRACKABLE_NANOS));
+    }
+
+    /**
+     * Must only be called by the load thread identified by threadId.
+     */
+    public void recordPacketLost(int threadId, int serverIndex) {
+        recordPacketLost(threadId, serverIndex, -1);
+    }
+
+    /**
+     * @param responseServerIndex the server which sent the received part of the response, -1 if nothing arrived.
+     * Must only be called by the load thread identified by threadId.
+     */
+    public void recordPacketLost(int threadId, int serverIndex, int responseServerIndex) {
+        increment(this.lostByRequestedServer[threadId], serverIndex, 1);
+        if (responseServerIndex >= 0 && responseServerIndex < this.numberOfServers) {
+            increment(this.lostByRespondingServer[threadId], responseServerIndex, 1);
+        }
+    }
+
+    /**
+     * Records the attempts of a request which timed out before it was answered (or given up on).
+     * @param responseServerIndex the server which finally answered, -1 if none did.
+     * Must only be called by the load thread identified by threadId.
+     */
+    public void recordTimeouts(int threadId, int serverIndex, int responseServerIndex, int timeoutsCount) {
+        if (timeoutsCount <= 0) {
+            return;
+        }
+        increment(this.timeoutsByRequestedServer[threadId], serverIndex, timeoutsCount);
+        if (responseServerIndex >= 0 && responseServerIndex < this.numberOfServers) {
+            increment(this.timeoutsByRespondingServer[threadId], responseServerIndex, timeoutsCount);
+        }
+    }
+
+    /**
+     * Records the datagrams of a response (once per response, whatever the number of keys it answers).
+     * Responses of which no datagram arrived are not counted, their number of datagrams is unknown.
+     * @param receivedCount the datagrams which arrived.
+     * @param totalCount the number of datagrams in the response, as written in the datagram headers.
+     * Must only be called by the load thread identified by threadId.
+     */
+    public void recordDatagrams(int threadId, int serverIndex, int responseServerIndex, int receivedCount, int totalCount) {
+        if (totalCount <= 0) {
+            return;
+        }
+        increment(this.receivedDatagramsByRequestedServer[threadId], serverIndex, receivedCount);
+        increment(this.expectedDatagramsByRequestedServer[threadId], serverIndex, totalCount);
+        if (responseServerIndex >= 0 && responseServerIndex < this.numberOfServers) {
+            increment(this.receivedDatagramsByRespondingServer[threadId], responseServerIndex, receivedCount);
+            increment(this.expectedDatagramsByRespondingServer[threadId], responseServerIndex, totalCount);
+        }
+    }
+
+    /**
+     * Single writer increment, readers only need to see the value eventually.
+     */
+    private static void increment(AtomicLongArray counters, int index, long delta) {
+        counters.lazySet(index, counters.get(index) + delta);
+    }
+
+    /**
+     * Merges the histograms recorded by all threads since the previous call and adds them to the totals.
+     */
+    public synchronized LatencySnapshot sampleInterval() {
+        final long now = System.currentTimeMillis();
+        final Histogram[] byRequestedServer = createHistograms(this.numberOfServers);
+        final Histogram[] byRespondingServer = createHistograms(this.numberOfServers);
+        final Histogram nearCacheHits = new Histogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+        for (int t = 0; t < this.requestedRecorders.length; t++) {
+            nearCacheHits.add(this.nearCacheRecorders[t].getIntervalHistogram());
+            for (int s = 0; s < this.numberOfServers; s++) {
+                byRequestedServer[s].add(this.requestedRecorders[t][s].getIntervalHistogram());
+                byRespondingServer[s].add(this.respondingRecorders[t][s].getIntervalHistogram());
+            }
+        }
+        final long[] lostByRequestedServer = sampleCounters(this.lostByRequestedServer, this.totalLostByRequestedServer);
+        final long[] lostByRespondingServer = sampleCounters(this.lostByRespondingServer, this.totalLostByRespondingServer);
+        final long[] timeoutsByRequestedServer = sampleCounters(this.timeoutsByRequestedServer, this.totalTimeoutsByRequestedServer);
+        final long[] timeoutsByRespondingServer = sampleCounters(this.timeoutsByRespondingServer, this.totalTimeoutsByRespondingServer);
+        final long[] receivedDatagramsByRequestedServer = sampleCounters(this.receivedDatagramsByRequestedServer, this.totalReceivedDatagramsByRequestedServer);
+        final long[] receivedDatagramsByRespondingServer = sampleCounters(this.receivedDatagramsByRespondingServer, this.totalReceivedDatagramsByRespondingServer);
+        final long[] expectedDatagramsByRequestedServer = sampleCounters(this.expectedDatagramsByRequestedServer, this.totalExpectedDatagramsByRequestedServer);
+        final long[] expectedDatagramsByRespondingServer = sampleCounters(this.expectedDatagramsByRespondingServer, this.totalExpectedDatagramsByRespondingServer);
+        for (int s = 0; s < this.numberOfServers; s++) {
+            this.totalByRequestedServer[s].add(byRequestedServer[s]);
+            this.totalByRespondingServer[s].add(byRespondingServer[s]);
+            if (this.logWriter != null) {
+                writeToLog(byRequestedServer[s], "requested-" + s, now);
+                writeToLog(byRespondingServer[s], "responded-" + s, now);
+            }
+        }
+        this.totalNearCacheHits.add(nearCacheHits);
+        if (this.logWriter != null && nearCacheHits.getTotalCount() > 0) {
+            writeToLog(nearCacheHits, "near-cache", now);
+        }
+        if (this.logStream != null) {
+            this.logStream.flush();
+        }
+        final LatencySnapshot snapshot = new LatencySnapshot(this.intervalStartTimeMillis, now, byRequestedServer, byRespondingServer,
+                lostByRequestedServer, lostByRespondingServer, timeoutsByRequestedServer, timeoutsByRespondingServer,
+                receivedDatagramsByRequestedServer, receivedDatagramsByRespondingServer,
+                expectedDatagramsByRequestedServer, expectedDatagramsByRespondingServer, nearCacheHits);
+        this.intervalStartTimeMillis = now;
+        return snapshot;
+    }
+
+    /**
+     * Sums the per-thread counters into the provided totals.
+     * @return the increase of every server's counter since the previous call.
+     */
+    private static long[] sampleCounters(AtomicLongArray[] counters, long[] totals) {
+        final long[] interval = new long[totals.length];
+        for (AtomicLongArray threadCounters : counters) {
+            for (int s = 0; s < totals.length; s++) {
+                interval[s] += threadCounters.get(s);
+            }
+        }
+        for (int s = 0; s < totals.length; s++) {
+            long total = interval[s];
+            interval[s] = total - totals[s];
+            totals[s] = total;
+        }
+        return interval;
+    }
+
+    private void writeToLog(Histogram histogram, String tag, long now) {
+        histogram.setTag(tag);
+        histogram.setStartTimeStamp(this.intervalStartTimeMillis);
+        histogram.setEndTimeStamp(now);
+        this.logWriter.outputIntervalHistogram(histogram);
+    }
+
+    /**
+     * Returns the totals of all sampled intervals. Call {@link #sampleInterval()} first to include the latest values.
+     */
+    public synchronized LatencySnapshot getTotal() {
+        final Histogram[] byRequestedServer = new Histogram[this.numberOfServers];
+        final Histogram[] byRespondingServer = new Histogram[this.numberOfServers];
+        for (int s = 0; s < this.numberOfServers; s++) {
+            byRequestedServer[s] = this.totalByRequestedServer[s].copy();
+            byRespondingServer[s] = this.totalByRespondingServer[s].copy();
+        }
+        return new LatencySnapshot(this.startTimeMillis, this.intervalStartTimeMillis, byRequestedServer, byRespondingServer,
+                this.totalLostByRequestedServer.clone(), this.totalLostByRespondingServer.clone(),
+                this.totalTimeoutsByRequestedServer.clone(), this.totalTimeoutsByRespondingServer.clone(),
+                this.totalReceivedDatagramsByRequestedServer.clone(), this.totalReceivedDatagramsByRespondingServer.clone(),
+                this.totalExpectedDatagramsByRequestedServer.clone(), this.totalExpectedDatagramsByRespondingServer.clone(),
+                this.totalNearCacheHits.copy());
+    }
+
+    public synchronized void close() {
+        if (this.logStream != null) {
+            this.logStream.close();
+            this.logStream = null;
+            this.logWriter = null;
+        }
+    }
+
+}
@@ -0,0 +1,319 @@
+package memcached_sdn.experiment.data;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+/**
+ * Latency histograms, lost responses, timeout retries and response datagrams per server over a time range, as
+ * produced by {@link LatencyRecorder}. Histogram values are in nanoseconds.
+ */
+public class LatencySnapshot {
+
+    private final long startTimeMillis;
+    private final long endTimeMillis;
+    private final Histogram[] byRequestedServer;
+    private final Histogram[] byRespondingServer;
+    private final long[] lostByRequestedServer;
+    private final long[] lostByRespondingServer;
+    private final long[] timeoutsByRequestedServer;
+    private final long[] timeoutsByRespondingServer;
+    private final long[] receivedDatagramsByRequestedServer;
+    private final long[] receivedDatagramsByRespondingServer;
+    private final long[] expectedDatagramsByRequestedServer;
+    private final long[] expectedDatagramsByRespondingServer;
+    private final Histogram nearCacheHits;
+
+    public LatencySnapshot(long startTimeMillis, long endTimeMillis, Histogram[] byRequestedServer, Histogram[] byRespondingServer,
+                           long[] lostByRequestedServer, long[] lostByRespondingServer,
+                           long[] timeoutsByRequestedServer, long[] timeoutsByRespondingServer,
+                           long[] receivedDatagramsByRequestedServer, long[] receivedDatagramsByRespondingServer,
+                           long[] expectedDatagramsByRequestedServer, long[] expectedDatagramsByRespondingServer,
+                           Histogram nearCacheHits) {
+        this.startTimeMillis = startTimeMillis;
+        this.endTimeMillis = endTimeMillis;
+        this.byRequestedServer = byRequestedServer;
+        this.byRespondingServer = byRespondingServer;
+        this.lostByRequestedServer = lostByRequestedServer;
+        this.lostByRespondingServer = lostByRespondingServer;
+        this.timeoutsByRequestedServer = timeoutsByRequestedServer;
+        this.timeoutsByRespondingServer = timeoutsByRespondingServer;
+        this.receivedDatagramsByRequestedServer = receivedDatagramsByRequestedServer;
+        this.receivedDatagramsByRespondingServer = receivedDatagramsByRespondingServer;
+        this.expectedDatagramsByRequestedServer = expectedDatagramsByRequestedServer;
+        this.expectedDatagramsByRespondingServer = expectedDatagramsByRespondingServer;
+        this.nearCacheHits = nearCacheHits;
+    }
+
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    public long getEndTimeMillis() {
+        return endTimeMillis;
+    }
+
+    public int getServersCount() {
+        return byRequestedServer.length;
+    }
+
+    public Histogram getRequestedServerHistogram(int serverIndex) {
+        return byRequestedServer[serverIndex];
+    }
+
+    public Histogram getRespondingServerHistogram(int serverIndex) {
+        return byRespondingServer[serverIndex];
+    }
+
+    public double getDurationSeconds() {
+        return Math.max(1, endTimeMillis - startTimeMillis) / 1000.0;
+    }
+
+    public long getPacketsLostCount(int serverIndex) {
+        return lostByRequestedServer[serverIndex];
+    }
+
+    /**
+     * @return requests of which only some datagrams arrived, by the server which sent them.
+     */
+    public long getRespondingPacketsLostCount(int serverIndex) {
+        return lostByRespondingServer[serverIndex];
+    }
+
+    public long getTimeoutsCount(int serverIndex) {
+        return timeoutsByRequestedServer[serverIndex];
+    }
+
+    /**
+     * @return timed out attempts of requests which were finally answered by the server.
+     */
+    public long getRespondingTimeoutsCount(int serverIndex) {
+        return timeoutsByRespondingServer[serverIndex];
+    }
+
+    /**
+     * @return the response datagrams received from the server, of responses of which some datagram arrived.
+     */
+    public long getReceivedDatagramsCount(int serverIndex) {
+        return receivedDatagramsByRequestedServer[serverIndex];
+    }
+
+    /**
+     * @return the datagrams the server's responses consisted of, of responses of which some datagram arrived.
+     */
+    public long getExpectedDatagramsCount(int serverIndex) {
+        return expectedDatagramsByRequestedServer[serverIndex];
+    }
+
+    public long getRespondingReceivedDatagramsCount(int serverIndex) {
+        return receivedDatagramsByRespondingServer[serverIndex];
+    }
+
+    public long getRespondingExpectedDatagramsCount(int serverIndex) {
+        return expectedDatagramsByRespondingServer[serverIndex];
+    }
+
+    /**
+     * @return the latencies of requests answered by the near cache.
+     */
+    public Histogram getNearCacheHistogram() {
+        return nearCacheHits;
+    }
+
+    public long getTotalCount() {
+        long count = nearCacheHits.getTotalCount();
+        for (int i = 0; i < byRequestedServer.length; i++) {
+            count += byRequestedServer[i].getTotalCount() + lostByRequestedServer[i];
+        }
+        return count;
+    }
+
+    /**
+     * @return the fraction of the server's requests which were lost. A request is lost as soon as one of its
+     * fragments is, see {@link #getFragmentLossRate(long, long)} for the datagrams.
+     */
+    public static double getRequestLossRate(Histogram histogram, long lostCount) {
+        return lostCount / (double) Math.max(1, histogram.getTotalCount() + lostCount);
+    }
+
+    /**
+     * @return the fraction of the response datagrams which did not arrive.
+     */
+    public static double getFragmentLossRate(long receivedDatagramsCount, long expectedDatagramsCount) {
+        return (expectedDatagramsCount - receivedDatagramsCount) / (double) Math.max(1, expectedDatagramsCount);
+    }
+
+    /**
+     * Sums snapshots of the same servers, e.g. the same interval recorded by several processes.
+     * The merged snapshot spans from the earliest start to the latest end.
+     */
+    public static LatencySnapshot merge(List<LatencySnapshot> snapshots) {
+        final LatencySnapshot first = snapshots.get(0);
+        final int serversCount = first.getServersCount();
+        long startTimeMillis = first.startTimeMillis;
+        long endTimeMillis = first.endTimeMillis;
+        final Histogram[] byRequestedServer = new Histogram[serversCount];
+        final Histogram[] byRespondingServer = new Histogram[serversCount];
+        for (int s = 0; s < serversCount; s++) {
+            byRequestedServer[s] = first.byRequestedServer[s].copy();
+            byRespondingServer[s] = first.byRespondingServer[s].copy();
+        }
+        final long[] lostByRequestedServer = first.lostByRequestedServer.clone();
+        final long[] lostByRespondingServer = first.lostByRespondingServer.clone();
+        final long[] timeoutsByRequestedServer = first.timeoutsByRequestedServer.clone();
+        final long[] timeoutsByRespondingServer = first.timeoutsByRespondingServer.clone();
+        final long[] receivedDatagramsByRequestedServer = first.receivedDatagramsByRequestedServer.clone();
+        final long[] receivedDatagramsByRespondingServer = first.receivedDatagramsByRespondingServer.clone();
+        final long[] expectedDatagramsByRequestedServer = first.expectedDatagramsByRequestedServer.clone();
+        final long[] expectedDatagramsByRespondingServer = first.expectedDatagramsByRespondingServer.clone();
+        final Histogram nearCacheHits = first.nearCacheHits.copy();
+        for (LatencySnapshot snapshot : snapshots.subList(1, snapshots.size())) {
+            if (snapshot.getServersCount() != serversCount) {
+                throw new IllegalArgumentException(String.format("Can not merge snapshots of %d and %d servers.",
+                        serversCount, snapshot.getServersCount()));
+            }
+            startTimeMillis = Math.min(startTimeMillis, snapshot.startTimeMillis);
+            endTimeMillis = Math.max(endTimeMillis, snapshot.endTimeMillis);
+            for (int s = 0; s < serversCount; s++) {
+                byRequestedServer[s].add(snapshot.byRequestedServer[s]);
+                byRespondingServer[s].add(snapshot.byRespondingServer[s]);
+                lostByRequestedServer[s] += snapshot.lostByRequestedServer[s];
+                lostByRespondingServer[s] += snapshot.lostByRespondingServer[s];
+                timeoutsByRequestedServer[s] += snapshot.timeoutsByRequestedServer[s];
+                timeoutsByRespondingServer[s] += snapshot.timeoutsByRespondingServer[s];
+                receivedDatagramsByRequestedServer[s] += snapshot.receivedDatagramsByRequestedServer[s];
+                receivedDatagramsByRespondingServer[s] += snapshot.receivedDatagramsByRespondingServer[s];
+                expectedDatagramsByRequestedServer[s] += snapshot.expectedDatagramsByRequestedServer[s];
+                expectedDatagramsByRespondingServer[s] += snapshot.expectedDatagramsByRespondingServer[s];
+            }
+            nearCacheHits.add(snapshot.nearCacheHits);
+        }
+        return new LatencySnapshot(startTimeMillis, endTimeMillis, byRequestedServer, byRespondingServer,
+                lostByRequestedServer, lostByRespondingServer, timeoutsByRequestedServer, timeoutsByRespondingServer,
+                receivedDatagramsByRequestedServer, receivedDatagramsByRespondingServer,
+                expectedDatagramsByRequestedServer, expectedDatagramsByRespondingServer, nearCacheHits);
+    }
+
+    /**
+     * Writes the snapshot in a form read by {@link #readFrom(DataInputStream)}, histograms are written in
+     * HdrHistogram's compressed encoding.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(startTimeMillis);
+        out.writeLong(endTimeMillis);
+        out.writeInt(byRequestedServer.length);
+        for (int s = 0; s < byRequestedServer.length; s++) {
+            writeHistogram(out, byRequestedServer[s]);
+            writeHistogram(out, byRespondingServer[s]);
+            out.writeLong(lostByRequestedServer[s]);
+            out.writeLong(lostByRespondingServer[s]);
+            out.writeLong(timeoutsByRequestedServer[s]);
+            out.writeLong(timeoutsByRespondingServer[s]);
+            out.writeLong(receivedDatagramsByRequestedServer[s]);
+            out.writeLong(receivedDatagramsByRespondingServer[s]);
+            out.writeLong(expectedDatagramsByRequestedServer[s]);
+            out.writeLong(expectedDatagramsByRespondingServer[s]);
+        }
+        writeHistogram(out, nearCacheHits);
+    }
+
+    public static LatencySnapshot readFrom(DataInputStream in) throws IOException {
+        final long startTimeMillis = in.readLong();
+        final long endTimeMillis = in.readLong();
+        final int serversCount = in.readInt();
+        final Histogram[] byRequestedServer = new Histogram[serversCount];
+        final Histogram[] byRespondingServer = new Histogram[serversCount];
+        final long[] lostByRequestedServer = new long[serversCount];
+        final long[] lostByRespondingServer = new long[serversCount];
+        final long[] timeoutsByRequestedServer = new long[serversCount];
+        final long[] timeoutsByRespondingServer = new long[serversCount];
+        final long[] receivedDatagramsByRequestedServer = new long[serversCount];
+        final long[] receivedDatagramsByRespondingServer = new long[serversCount];
+        final long[] expectedDatagramsByRequestedServer = new long[serversCount];
+        final long[] expectedDatagramsByRespondingServer = new long[serversCount];
+        for (int s = 0; s < serversCount; s++) {
+            byRequestedServer[s] = readHistogram(in);
+            byRespondingServer[s] = readHistogram(in);
+            lostByRequestedServer[s] = in.readLong();
+            lostByRespondingServer[s] = in.readLong();
+            timeoutsByRequestedServer[s] = in.readLong();
+            timeoutsByRespondingServer[s] = in.readLong();
+            receivedDatagramsByRequestedServer[s] = in.readLong();
+            receivedDatagramsByRespondingServer[s] = in.readLong();
+            expectedDatagramsByRequestedServer[s] = in.readLong();
+            expectedDatagramsByRespondingServer[s] = in.readLong();
+        }
+        final Histogram nearCacheHits = readHistogram(in);
+        return new LatencySnapshot(startTimeMillis, endTimeMillis, byRequestedServer, byRespondingServer,
+                lostByRequestedServer, lostByRespondingServer, timeoutsByRequestedServer, timeoutsByRespondingServer,
+                receivedDatagramsByRequestedServer, receivedDatagramsByRespondingServer,
+                expectedDatagramsByRequestedServer, expectedDatagramsByRespondingServer, nearCacheHits);
+    }
+
+    private static void writeHistogram(DataOutputStream out, Histogram histogram) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        final int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        out.writeInt(length);
+        out.write(buffer.array(), 0, length);
+    }
+
+    private static Histogram readHistogram(DataInputStream in) throws IOException {
+        final byte[] encoded = new byte[in.readInt()];
+        in.readFully(encoded);
+        try {
+            return Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(encoded), 0);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted histogram: " + e.getMessage(), e);
+        }
+    }
+
+    private String formatServer(Histogram histogram, long lostCount, long timeoutsCount, long receivedDatagramsCount, long expectedDatagramsCount) {
+        return String.format("%.0f requests/s, count=%d, p50=%.3fms, p99=%.3fms, p99.9=%.3fms, max=%.3fms, lost=%d (%.2f%%), timeouts=%d, "
+                        + "datagrams lost=%.2f%%",
+                (histogram.getTotalCount() + lostCount) / getDurationSeconds(),
+                histogram.getTotalCount(),
+                histogram.getValueAtPercentile(50.0) / 1000000.0,
+                histogram.getValueAtPercentile(99.0) / 1000000.0,
+                histogram.getValueAtPercentile(99.9) / 1000000.0,
+                histogram.getMaxValue() / 1000000.0,
+                lostCount, 100 * getRequestLossRate(histogram, lostCount), timeoutsCount,
+                100 * getFragmentLossRate(receivedDatagramsCount, expectedDatagramsCount));
+    }
+
+    private static String formatHistogram(Histogram histogram) {
+        return String.format("count=%d, p50=%.3fms, p99=%.3fms, p99.9=%.3fms, max=%.3fms",
+                histogram.getTotalCount(),
+                histogram.getValueAtPercentile(50.0) / 1000000.0,
+                histogram.getValueAtPercentile(99.0) / 1000000.0,
+                histogram.getValueAtPercentile(99.9) / 1000000.0,
+                histogram.getMaxValue() / 1000000.0);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        double seconds = (endTimeMillis - startTimeMillis) / 1000.0;
+        sb.append(String.format("Latency over %.1f seconds (%d requests, %.0f requests/s):",
+                seconds, getTotalCount(), getTotalCount() / getDurationSeconds()));
+        for (int i = 0; i < byRequestedServer.length; i++) {
+            sb.append(String.format("\n - requested server #%d: %s", i,
+                    formatServer(byRequestedServer[i], lostByRequestedServer[i], timeoutsByRequestedServer[i],
+                            receivedDatagramsByRequestedServer[i], expectedDatagramsByRequestedServer[i])));
+        }
+        for (int i = 0; i < byRespondingServer.length; i++) {
+            sb.append(String.format("\n - responding server #%d: %s", i,
+                    formatServer(byRespondingServer[i], lostByRespondingServer[i], timeoutsByRespondingServer[i],
+                            receivedDatagramsByRespondingServer[i], expectedDatagramsByRespondingServer[i])));
+        }
+        if (nearCacheHits.getTotalCount() > 0) {
+            sb.append(String.format("\n - near cache: %s", formatHistogram(nearCacheHits)));
+        }
+        return sb.toString();
+    }
+
+}
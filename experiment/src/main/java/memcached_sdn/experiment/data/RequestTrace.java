@@ -0,0 +1,148 @@
+package memcached_sdn.experiment.data;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A request trace file, memory mapped for reading so traces of any length are replayed without loading
+ * them to the heap. Traces are recorded by {@link RequestTraceRecorder}.
+ *
+ * The file starts with a {@link #HEADER_SIZE} bytes header: magic number (int), format version and flags
+ * (shorts), records count (long) and keys count, i.e. the highest key id + 1 (int). Records are sorted by
+ * send time, record layout ({@link #RECORD_SIZE} bytes): nanoseconds since the first request (long), key id (int),
+ * operation (highest byte) and value size (lower 3 bytes) of an int.
+ */
+public class RequestTrace implements Closeable {
+
+    public static final int MAGIC = 0x4D425452;
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final int RECORD_SIZE = 16;
+    public static final byte OP_GET = 0;
+    public static final byte OP_SET = 1;
+    public static final int MAX_VALUE_SIZE = 0xFFFFFF;
+
+    /**
+     * Records per mapped segment, a single mapping can not exceed 2GB.
+     */
+    private static final int SEGMENT_RECORDS_SHIFT = 26;
+    private static final long SEGMENT_RECORDS_MASK = (1L << SEGMENT_RECORDS_SHIFT) - 1;
+
+    private final String fileName;
+    private final RandomAccessFile file;
+    private final long recordsCount;
+    private final int keysCount;
+    private final MappedByteBuffer[] segments;
+
+    private RequestTrace(String fileName) throws IOException {
+        this.fileName = fileName;
+        this.file = new RandomAccessFile(fileName, "r");
+        final FileChannel channel = this.file.getChannel();
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+            // Read the whole header
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+            throw new IOException(fileName + " is not a request trace file.");
+        }
+        final short version = header.getShort();
+        if (version != VERSION) {
+            throw new IOException(String.format("Unsupported request trace version %d in %s.", version, fileName));
+        }
+        header.getShort();
+        this.recordsCount = header.getLong();
+        this.keysCount = header.getInt();
+        if (channel.size() < HEADER_SIZE + this.recordsCount * RECORD_SIZE) {
+            throw new IOException(String.format("Request trace %s is truncated, %d records expected.", fileName, this.recordsCount));
+        }
+        this.segments = new MappedByteBuffer[(int) ((this.recordsCount + SEGMENT_RECORDS_MASK) >>> SEGMENT_RECORDS_SHIFT)];
+        for (int s = 0; s < this.segments.length; s++) {
+            long firstRecord = (long) s << SEGMENT_RECORDS_SHIFT;
+            long records = Math.min(SEGMENT_RECORDS_MASK + 1, this.recordsCount - firstRecord);
+            this.segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + firstRecord * RECORD_SIZE, records * RECORD_SIZE);
+        }
+    }
+
+    public static RequestTrace open(String fileName) {
+        try {
+            return new RequestTrace(fileName);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Failed to open request trace %s: %s", fileName, e.getMessage()), e);
+        }
+    }
+
+    static void writeHeader(DataOutputStream out, long recordsCount, int keysCount) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(0);
+        out.writeLong(recordsCount);
+        out.writeInt(keysCount);
+        out.write(new byte[HEADER_SIZE - 20]);
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public long getRecordsCount() {
+        return recordsCount;
+    }
+
+    /**
+     * @return the highest key id of the trace + 1.
+     */
+    public int getKeysCount() {
+        return keysCount;
+    }
+
+    private MappedByteBuffer segment(long record) {
+        return this.segments[(int) (record >>> SEGMENT_RECORDS_SHIFT)];
+    }
+
+    private static int position(long record) {
+        return (int) (record & SEGMENT_RECORDS_MASK) * RECORD_SIZE;
+    }
+
+    /**
+     * @return the record's send time, in nanoseconds since the first request of the trace.
+     */
+    public long getOffsetNanos(long record) {
+        return segment(record).getLong(position(record));
+    }
+
+    public int getKeyId(long record) {
+        return segment(record).getInt(position(record) + 8);
+    }
+
+    public byte getOp(long record) {
+        return (byte) (segment(record).getInt(position(record) + 12) >>> 24);
+    }
+
+    public int getValueSize(long record) {
+        return segment(record).getInt(position(record) + 12) & MAX_VALUE_SIZE;
+    }
+
+    /**
+     * Mapped segments stay readable until they are garbage collected.
+     */
+    @Override
+    public void close() {
+        try {
+            this.file.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("trace:%s (%d requests, %d keys)", fileName, recordsCount, keysCount);
+    }
+
+}
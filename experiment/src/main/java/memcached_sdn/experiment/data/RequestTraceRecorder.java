@@ -0,0 +1,228 @@
+package memcached_sdn.experiment.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Records the requests of an experiment into a {@link RequestTrace} file.
+ *
+ * Each load thread buffers its records and writes them, sorted by send time, to a file of its own, so
+ * recording never contends with other threads. {@link #close()} merges the threads' files into the trace.
+ * Requests are recorded when they are sent, the few which are recorded after a later one of the same
+ * thread (e.g. virtual clients sharing a lane) may end up slightly out of order across buffers.
+ */
+public class RequestTraceRecorder {
+
+    private static final int BUFFER_RECORDS = 65536;
+
+    private final String fileName;
+    private final ThreadBuffer[] threadBuffers;
+
+    public RequestTraceRecorder(String fileName, int numberOfThreads) {
+        this.fileName = fileName;
+        this.threadBuffers = new ThreadBuffer[numberOfThreads];
+        for (int t = 0; t < numberOfThreads; t++) {
+            this.threadBuffers[t] = new ThreadBuffer(new File(String.format("%s.thread-%d.tmp", fileName, t)));
+        }
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Must only be called by the load thread identified by threadId.
+     *
+     * @param nanoTime the request's send time, as returned by {@link System#nanoTime()}.
+     */
+    public void record(int threadId, long nanoTime, int keyId, byte op, int valueSize) {
+        final ThreadBuffer buffer = this.threadBuffers[threadId];
+        buffer.add(nanoTime, keyId, (op << 24) | Math.min(valueSize, RequestTrace.MAX_VALUE_SIZE));
+        if (buffer.size == BUFFER_RECORDS) {
+            buffer.flush();
+        }
+    }
+
+    /**
+     * Writes the trace, once all load threads ended.
+     *
+     * @return the number of recorded requests.
+     */
+    public long close() {
+        long recordsCount = 0;
+        long firstNanoTime = Long.MAX_VALUE;
+        int keysCount = 0;
+        for (ThreadBuffer buffer : this.threadBuffers) {
+            buffer.flush();
+            buffer.close();
+            recordsCount += buffer.recordsCount;
+            firstNanoTime = Math.min(firstNanoTime, buffer.firstNanoTime);
+            keysCount = Math.max(keysCount, buffer.maxKeyId + 1);
+        }
+
+        final PriorityQueue<ThreadRecords> heads = new PriorityQueue<>(Math.max(1, this.threadBuffers.length), new Comparator<ThreadRecords>() {
+            @Override
+            public int compare(ThreadRecords o1, ThreadRecords o2) {
+                return Long.compare(o1.nanoTime, o2.nanoTime);
+            }
+        });
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.fileName), 1 << 16))) {
+            RequestTrace.writeHeader(out, recordsCount, keysCount);
+            for (ThreadBuffer buffer : this.threadBuffers) {
+                ThreadRecords records = new ThreadRecords((buffer.recordsCount > 0) ? buffer.file : null);
+                if (records.next()) {
+                    heads.add(records);
+                } else {
+                    records.close();
+                }
+            }
+            while (!heads.isEmpty()) {
+                ThreadRecords records = heads.poll();
+                out.writeLong(Math.max(0, records.nanoTime - firstNanoTime));
+                out.writeInt(records.keyId);
+                out.writeInt(records.opAndValueSize);
+                if (records.next()) {
+                    heads.add(records);
+                } else {
+                    records.close();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Failed to write request trace %s: %s", this.fileName, e.getMessage()), e);
+        } finally {
+            for (ThreadRecords records : heads) {
+                records.close();
+            }
+            for (ThreadBuffer buffer : this.threadBuffers) {
+                buffer.file.delete();
+            }
+        }
+        return recordsCount;
+    }
+
+    private static class ThreadBuffer {
+
+        private final File file;
+        private final long[] nanoTimes = new long[BUFFER_RECORDS];
+        private final int[] keyIds = new int[BUFFER_RECORDS];
+        private final int[] opsAndValueSizes = new int[BUFFER_RECORDS];
+        private int size = 0;
+        private long recordsCount = 0;
+        private long firstNanoTime = Long.MAX_VALUE;
+        private int maxKeyId = -1;
+        private DataOutputStream out = null;
+
+        ThreadBuffer(File file) {
+            this.file = file;
+        }
+
+        void add(long nanoTime, int keyId, int opAndValueSize) {
+            this.nanoTimes[this.size] = nanoTime;
+            this.keyIds[this.size] = keyId;
+            this.opsAndValueSizes[this.size] = opAndValueSize;
+            this.size++;
+            if (nanoTime < this.firstNanoTime) {
+                this.firstNanoTime = nanoTime;
+            }
+            if (keyId > this.maxKeyId) {
+                this.maxKeyId = keyId;
+            }
+        }
+
+        /**
+         * Sorts the buffered records by send time (insertion sort, they are nearly sorted) and writes them.
+         */
+        void flush() {
+            for (int i = 1; i < this.size; i++) {
+                long nanoTime = this.nanoTimes[i];
+                int keyId = this.keyIds[i];
+                int opAndValueSize = this.opsAndValueSizes[i];
+                int j = i - 1;
+                while (j >= 0 && this.nanoTimes[j] > nanoTime) {
+                    this.nanoTimes[j + 1] = this.nanoTimes[j];
+                    this.keyIds[j + 1] = this.keyIds[j];
+                    this.opsAndValueSizes[j + 1] = this.opsAndValueSizes[j];
+                    j--;
+                }
+                this.nanoTimes[j + 1] = nanoTime;
+                this.keyIds[j + 1] = keyId;
+                this.opsAndValueSizes[j + 1] = opAndValueSize;
+            }
+            try {
+                if (this.out == null) {
+                    this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file), 1 << 16));
+                }
+                for (int i = 0; i < this.size; i++) {
+                    this.out.writeLong(this.nanoTimes[i]);
+                    this.out.writeInt(this.keyIds[i]);
+                    this.out.writeInt(this.opsAndValueSizes[i]);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            this.recordsCount += this.size;
+            this.size = 0;
+        }
+
+        void close() {
+            if (this.out == null) {
+                return;
+            }
+            try {
+                this.out.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Reads back the records of a thread while merging.
+     */
+    private static class ThreadRecords {
+
+        private final DataInputStream in;
+        private long nanoTime;
+        private int keyId;
+        private int opAndValueSize;
+
+        ThreadRecords(File file) throws IOException {
+            this.in = (file != null) ? new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16)) : null;
+        }
+
+        boolean next() throws IOException {
+            if (this.in == null) {
+                return false;
+            }
+            try {
+                this.nanoTime = this.in.readLong();
+            } catch (EOFException e) {
+                return false;
+            }
+            this.keyId = this.in.readInt();
+            this.opAndValueSize = this.in.readInt();
+            return true;
+        }
+
+        void close() {
+            if (this.in == null) {
+                return;
+            }
+            try {
+                this.in.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+package memcached_sdn.experiment.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving (Metwally et al.) heavy hitters summary over a stream of keys, using constant memory.
+ *
+ * Up to capacity keys are monitored. An unmonitored key replaces the monitored key with the smallest count,
+ * inheriting that count as its error. Every key occurring more than n / capacity times is monitored, and a
+ * monitored key's true count is within [count - error, count]. Updates are O(log capacity) with a min-heap.
+ * Not thread safe.
+ */
+public class SpaceSaving {
+
+    private final int capacity;
+    private final Map<String, Counter> counters;
+    private final Counter[] heap;
+    private int size = 0;
+
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+        this.heap = new Counter[capacity];
+    }
+
+    public void offer(String key) {
+        Counter counter = this.counters.get(key);
+        if (counter == null) {
+            if (this.size < this.capacity) {
+                counter = new Counter(key, this.size);
+                this.heap[this.size++] = counter;
+            } else {
+                counter = this.heap[0];
+                this.counters.remove(counter.key);
+                counter.key = key;
+                counter.error = counter.count;
+            }
+            this.counters.put(key, counter);
+        }
+        counter.count++;
+        siftDown(counter.heapIndex);
+    }
+
+    private void siftDown(int index) {
+        final Counter counter = this.heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= this.size) {
+                break;
+            }
+            if (child + 1 < this.size && this.heap[child + 1].count < this.heap[child].count) {
+                child++;
+            }
+            if (this.heap[child].count >= counter.count) {
+                break;
+            }
+            this.heap[index] = this.heap[child];
+            this.heap[index].heapIndex = index;
+            index = child;
+        }
+        this.heap[index] = counter;
+        counter.heapIndex = index;
+    }
+
+    public void reset() {
+        this.counters.clear();
+        for (int i = 0; i < this.size; i++) {
+            this.heap[i] = null;
+        }
+        this.size = 0;
+    }
+
+    /**
+     * @return copies of the monitored keys counters, in no particular order.
+     */
+    public List<Counter> getCounters() {
+        final List<Counter> list = new ArrayList<>(this.size);
+        for (int i = 0; i < this.size; i++) {
+            Counter counter = this.heap[i];
+            list.add(new Counter(counter.key, counter.count, counter.error));
+        }
+        return list;
+    }
+
+    /**
+     * @return an upper bound of the occurrences of any key which is not monitored: the smallest count once
+     * all counters are in use, 0 before (every key offered so far is monitored).
+     */
+    public long getUnmonitoredCount() {
+        return (this.size == this.capacity) ? this.heap[0].count : 0;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public static class Counter {
+        private String key;
+        private long count;
+        private long error;
+        private int heapIndex;
+
+        private Counter(String key, int heapIndex) {
+            this.key = key;
+            this.heapIndex = heapIndex;
+        }
+
+        public Counter(String key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+            this.heapIndex = -1;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return an upper bound of the key's occurrences.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the maximal over estimation of the count.
+         */
+        public long getError() {
+            return error;
+        }
+    }
+
+}
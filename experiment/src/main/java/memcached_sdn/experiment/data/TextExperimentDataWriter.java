@@ -0,0 +1,41 @@
+package memcached_sdn.experiment.data;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Calendar;
+
+/**
+ * Writes the ';' header lines followed by one comma separated line per request, as read by the Python scripts.
+ */
+public class TextExperimentDataWriter implements ExperimentDataWriter {
+
+    private final Writer writer;
+    private final StringBuilder line = new StringBuilder(128);
+    private final Calendar calendar = Calendar.getInstance();
+
+    public TextExperimentDataWriter(String filename, String fileHeader) throws IOException {
+        this(new BufferedWriter(new FileWriter(filename)), fileHeader);
+    }
+
+    public TextExperimentDataWriter(Writer writer, String fileHeader) throws IOException {
+        this.writer = writer;
+        this.writer.write(fileHeader);
+    }
+
+    @Override
+    public void write(ExperimentData data) throws IOException {
+        line.setLength(0);
+        data.appendTo(line, calendar);
+        line.append('\n');
+        writer.append(line);
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.flush();
+        writer.close();
+    }
+
+}
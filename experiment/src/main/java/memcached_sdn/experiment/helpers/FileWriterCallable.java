@@ -1,64 +1,91 @@
 package memcached_sdn.experiment.helpers;
 
 import com.google.common.base.Joiner;
+import memcached_sdn.experiment.data.ExperimentData;
+import memcached_sdn.experiment.data.ExperimentDataQueue;
+import memcached_sdn.experiment.data.ExperimentDataWriter;
+import memcached_sdn.experiment.data.LatencyLogFormat;
+import memcached_sdn.experiment.memcached.routing.KeyRouter;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-import java.util.Queue;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Created by idanmo on 1/15/16.
  */
-public class FileWriterCallable<T> implements Callable<Object> {
+public class FileWriterCallable implements Callable<Object> {
 
-    private final Queue<T> data;
+    private static final int BATCH_SIZE = 4096;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final ExperimentDataQueue data;
     private final String filename;
+    private final LatencyLogFormat format;
     private final AtomicBoolean stop;
     private final long maxEntriesToWrite;
     private final String fileHeader;
     private final String[] servers;
+    private final KeyRouter router;
     private AtomicLong writesCounter = new AtomicLong(0);
 
-    public FileWriterCallable(Queue<T> data, String filename, AtomicBoolean stop, long maxEntriesToWrite, String fileHeader, String[] servers) {
+    public FileWriterCallable(ExperimentDataQueue data, String filename, LatencyLogFormat format, AtomicBoolean stop, long maxEntriesToWrite, String fileHeader, String[] servers, KeyRouter router) {
         this.data = data;
         this.filename = filename;
+        this.format = format;
         this.stop = stop;
         this.maxEntriesToWrite = maxEntriesToWrite;
         this.fileHeader = fileHeader;
         this.servers = servers;
+        this.router = router;
     }
 
     public long getWritesCount() {
         return this.writesCounter.get();
     }
 
+    /**
+     * @return the ';' prefixed header lines (key picker data, the servers list and the keys routing).
+     * Analysis scripts read the servers list as the third line, so new lines go after it.
+     */
+    private String createFileHeader() {
+        final StringBuilder sb = new StringBuilder();
+        for (String header : this.fileHeader.split("\n")) {
+            sb.append(";").append(header).append("\n");
+        }
+        sb.append(";").append(Joiner.on(",").join(this.servers)).append("\n");
+        sb.append(";").append(this.router).append("\n");
+        return sb.toString();
+    }
+
     @Override
     public Object call() throws Exception {
-        BufferedWriter bw = new BufferedWriter(new FileWriter(this.filename));
+        ExperimentDataWriter writer = this.format.createWriter(this.filename, createFileHeader());
         try {
-            for (String header : this.fileHeader.split("\n")) {
-                bw.write(";");
-                bw.write(header);
-                bw.write("\n");
-            }
-            bw.write(";");
-            bw.write(Joiner.on(",").join(this.servers));
-            bw.write("\n");
             System.out.println("Starting asyc file writer...");
-            while (!stop.get()) {
-                if (!data.isEmpty()) {
-                    T item = data.poll();
-                    bw.write(String.format("%s\n", item.toString()));
-                    writesCounter.incrementAndGet();
-                    if (maxEntriesToWrite != -1 && writesCounter.get() == maxEntriesToWrite) {
+            final List<ExperimentData> batch = new ArrayList<>(BATCH_SIZE);
+            boolean done = false;
+            while (!done) {
+                // Records added before the stop flag was raised are still written
+                final boolean stopping = stop.get();
+                batch.clear();
+                if (data.drainTo(batch, BATCH_SIZE) == 0) {
+                    if (stopping) {
+                        break;
+                    }
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    continue;
+                }
+                for (ExperimentData item : batch) {
+                    writer.write(item);
+                    if (writesCounter.incrementAndGet() == maxEntriesToWrite) {
+                        done = true;
                         break;
                     }
-                } else {
-                    Thread.sleep(20);
                 }
             }
             System.out.println("Async file writer terminated.");
@@ -67,9 +94,8 @@ public class FileWriterCallable<T> implements Callable<Object> {
             e.printStackTrace();
             throw e;
         } finally {
-            if (bw != null) {
-                bw.flush();
-                bw.close();
+            if (writer != null) {
+                writer.close();
             }
         }
     }
@@ -1,8 +1,11 @@
 package memcached_sdn.experiment.helpers;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by idanmo on 1/9/16.
@@ -11,6 +14,12 @@ public class Helpers {
 
     static final String AB = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
 
+    public static final String KEY_FORMAT = "mem-key-%d";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final long EPOCH_NANOS_OFFSET = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - System.nanoTime();
+
     public static Random random = new Random();
 
     public static String generateRandomString(int len){
@@ -20,30 +29,48 @@ public class Helpers {
         return sb.toString();
     }
 
+    /**
+     * Converts a System.nanoTime() value to nanoseconds since the epoch.
+     */
+    public static long toEpochNanos(long nanoTime) {
+        return EPOCH_NANOS_OFFSET + nanoTime;
+    }
+
+    /**
+     * @return the number of bytes allocated by the current thread so far, or -1 if the JVM can not tell.
+     */
+    public static long getCurrentThreadAllocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().threadId());
+        }
+        return -1;
+    }
+
     public static Random createRandom(long seed) {
         return new Random(seed);
     }
 
+    /**
+     * Generates a value of exactly len characters for the key: the hex MD5 digest of the key, repeated.
+     */
     public static String generateString(String key, int len) {
+        final byte[] digest;
         try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            md.update(key.getBytes());
-            byte[] digest = md.digest();
-            StringBuilder sb = new StringBuilder();
-            while (sb.length() < len) {
-                StringBuffer buf = new StringBuffer();
-                for (int j = 0; j < 32; j++) {
-                    for (byte b : digest) {
-                        buf.append(String.format("%02x", b & 0xff));
-                    }
-                }
-                sb.append(buf.toString());
-            }
-            return sb.toString();
+            digest = MessageDigest.getInstance("MD5").digest(key.getBytes());
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException(e);
         }
-
+        final char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX_DIGITS[digest[i] & 0xF];
+        }
+        final char[] value = new char[len];
+        for (int i = 0; i < len; i += hex.length) {
+            System.arraycopy(hex, 0, value, i, Math.min(hex.length, len - i));
+        }
+        return new String(value);
     }
 
 }
@@ -5,14 +5,27 @@ package memcached_sdn.experiment.helpers;
  */
 public class KeyValuePair<TKey, TValue> {
 
+    private final int id;
     private final TKey key;
     private final TValue value;
 
     public KeyValuePair(TKey key, TValue value) {
+        this(-1, key, value);
+    }
+
+    public KeyValuePair(int id, TKey key, TValue value) {
+        this.id = id;
         this.key = key;
         this.value = value;
     }
 
+    /**
+     * @return the object's index in the experiment key space, or -1 if unknown.
+     */
+    public int getId() {
+        return id;
+    }
+
     public TKey getKey() {
         return key;
     }
@@ -0,0 +1,172 @@
+package memcached_sdn.experiment.helpers;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * The experiment objects, derived on demand from their ids instead of being kept on the heap: object i has
+ * the key {@link Helpers#KEY_FORMAT} of i and a value of objectSize characters generated from the key
+ * ({@link Helpers#generateString(String, int)}), so every process sees the same values and creating a
+ * dataset of millions of objects takes no time.
+ *
+ * The list is an index space: get(i) returns the object at index i, which is object i until the list is
+ * reordered. Objects are created when first requested and cached by id, so picking a key does not allocate
+ * (the cache takes 4 bytes per object, plus the objects which were requested). Key pickers may shuffle it (set) or rebuild it from a keys distribution file (clear, add),
+ * which only stores the permutation of the ids (4 bytes per object). Only objects of this dataset can be added.
+ */
+public class ObjectsDataset extends AbstractList<KeyValuePair<String, String>> implements RandomAccess {
+
+    private static final String KEY_PREFIX = Helpers.KEY_FORMAT.substring(0, Helpers.KEY_FORMAT.indexOf("%d"));
+
+    private final int objectsCount;
+    private final int objectSize;
+    // Written by the load threads without synchronization, objects are immutable so a race only creates one twice
+    private final DatasetObject[] objects;
+    private int[] ids = null;
+    private int size;
+
+    public ObjectsDataset(int objectsCount, int objectSize) {
+        if (objectsCount < 0 || objectSize < 0) {
+            throw new IllegalArgumentException(String.format("Invalid dataset of %d objects of %d bytes.", objectsCount, objectSize));
+        }
+        this.objectsCount = objectsCount;
+        this.objectSize = objectSize;
+        this.objects = new DatasetObject[objectsCount];
+        this.size = objectsCount;
+    }
+
+    public int getObjectsCount() {
+        return objectsCount;
+    }
+
+    public int getObjectSize() {
+        return objectSize;
+    }
+
+    public static String getKey(int id) {
+        return KEY_PREFIX + id;
+    }
+
+    /**
+     * @return the object of the key, or null if the key is not one of the dataset's keys.
+     */
+    public KeyValuePair<String, String> findObject(String key) {
+        if (!key.startsWith(KEY_PREFIX)) {
+            return null;
+        }
+        final int id;
+        try {
+            id = Integer.parseInt(key.substring(KEY_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (id < 0 || id >= this.objectsCount) {
+            return null;
+        }
+        final KeyValuePair<String, String> object = getObject(id);
+        return object.getKey().equals(key) ? object : null;
+    }
+
+    /**
+     * @return the length of the pair's value, without generating it for objects of a dataset.
+     */
+    public static int getValueSize(KeyValuePair<String, String> pair) {
+        return (pair instanceof DatasetObject) ? ((DatasetObject) pair).valueSize : pair.getValue().length();
+    }
+
+    private KeyValuePair<String, String> getObject(int id) {
+        DatasetObject object = this.objects[id];
+        if (object == null) {
+            object = new DatasetObject(id, getKey(id), this.objectSize);
+            this.objects[id] = object;
+        }
+        return object;
+    }
+
+    private int getId(KeyValuePair<String, String> pair) {
+        if (!(pair instanceof DatasetObject) || pair.getId() < 0 || pair.getId() >= this.objectsCount
+                || ((DatasetObject) pair).valueSize != this.objectSize) {
+            throw new IllegalArgumentException("Not an object of the dataset: " + pair.getKey());
+        }
+        return pair.getId();
+    }
+
+    /**
+     * Switches from the identity order to an explicit permutation of the ids.
+     */
+    private void ensureIds() {
+        if (this.ids == null) {
+            this.ids = new int[this.objectsCount];
+            for (int i = 0; i < this.objectsCount; i++) {
+                this.ids[i] = i;
+            }
+        }
+    }
+
+    @Override
+    public KeyValuePair<String, String> get(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException(String.format("Index %d of %d objects.", index, this.size));
+        }
+        return getObject((this.ids != null) ? this.ids[index] : index);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public KeyValuePair<String, String> set(int index, KeyValuePair<String, String> pair) {
+        final int id = getId(pair);
+        final KeyValuePair<String, String> previous = get(index);
+        ensureIds();
+        this.ids[index] = id;
+        return previous;
+    }
+
+    /**
+     * Objects can only be appended, up to the number of objects of the dataset.
+     */
+    @Override
+    public void add(int index, KeyValuePair<String, String> pair) {
+        if (index != this.size || this.size == this.objectsCount) {
+            throw new UnsupportedOperationException("Objects can only be appended to a dataset which is not full.");
+        }
+        final int id = getId(pair);
+        ensureIds();
+        this.ids[this.size++] = id;
+        this.modCount++;
+    }
+
+    @Override
+    public void clear() {
+        ensureIds();
+        this.size = 0;
+        this.modCount++;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("dataset of %d objects (%d of %d bytes)", this.size, this.objectsCount, this.objectSize);
+    }
+
+    /**
+     * Generates its value whenever it is requested, load threads only need the key.
+     */
+    private static class DatasetObject extends KeyValuePair<String, String> {
+
+        private final int valueSize;
+
+        DatasetObject(int id, String key, int valueSize) {
+            super(id, key, null);
+            this.valueSize = valueSize;
+        }
+
+        @Override
+        public String getValue() {
+            return Helpers.generateString(getKey(), this.valueSize);
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+package memcached_sdn.experiment.helpers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed-rate request schedule for open-loop load generation.
+ *
+ * Every request has an intended send time derived only from the start time and the rate, so a slow
+ * server does not lower the offered load. Latency should be measured from the intended send time
+ * (returned by {@link #next()} / {@link #awaitNext()}) to account for the time requests spent waiting
+ * to be sent (coordinated omission).
+ * A thread which fell behind catches up by sending the overdue requests at up to catch-up factor times the
+ * rate, never as a single burst, and keeps their intended send times.
+ * Instances are not thread safe - each load thread should own one.
+ */
+public class RequestPacer {
+
+    private static final long SPIN_THRESHOLD_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    public static final int DEFAULT_CATCH_UP_FACTOR = 4;
+
+    private final long intervalNanos;
+    private final long catchUpIntervalNanos;
+    private long nextIntendedTime;
+    // The earliest time the next request may be sent, limits the rate of overdue requests
+    private long nextReleaseTime;
+
+    public RequestPacer(double requestsPerSecond, long startTime) {
+        this(requestsPerSecond, startTime, DEFAULT_CATCH_UP_FACTOR);
+    }
+
+    public RequestPacer(double requestsPerSecond, long startTime, int catchUpFactor) {
+        if (requestsPerSecond <= 0) {
+            throw new IllegalArgumentException("Requests rate must be positive: " + requestsPerSecond);
+        }
+        if (catchUpFactor < 1) {
+            throw new IllegalArgumentException("Catch-up factor must be at least 1: " + catchUpFactor);
+        }
+        this.intervalNanos = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / requestsPerSecond));
+        this.catchUpIntervalNanos = this.intervalNanos / catchUpFactor;
+        this.nextIntendedTime = startTime;
+        this.nextReleaseTime = startTime;
+    }
+
+    public long getIntervalNanos() {
+        return intervalNanos;
+    }
+
+    public long getNextIntendedTime() {
+        return nextIntendedTime;
+    }
+
+    /**
+     * @return when the next request may be sent, its intended send time unless catching up.
+     */
+    public long getNextSendTime() {
+        return (nextReleaseTime - nextIntendedTime > 0) ? nextReleaseTime : nextIntendedTime;
+    }
+
+    public boolean isDue(long nanoTime) {
+        return nanoTime - getNextSendTime() >= 0;
+    }
+
+    /**
+     * Returns the intended send time of the next request and advances the schedule without waiting.
+     */
+    public long next() {
+        return next(System.nanoTime());
+    }
+
+    /**
+     * @param nanoTime the time the request is sent.
+     */
+    public long next(long nanoTime) {
+        long intendedTime = nextIntendedTime;
+        nextIntendedTime += intervalNanos;
+        long sendTime = (nanoTime - intendedTime > 0) ? nanoTime : intendedTime;
+        nextReleaseTime = sendTime + catchUpIntervalNanos;
+        return intendedTime;
+    }
+
+    /**
+     * Waits until the next request may be sent (returns immediately when behind schedule and not sending
+     * faster than the catch-up rate), then advances the schedule and returns the request's intended send time.
+     */
+    public long awaitNext() throws InterruptedException {
+        waitUntil(getNextSendTime());
+        return next();
+    }
+
+    /**
+     * Parks until shortly before the deadline and spins the rest of the way for sub-millisecond accuracy.
+     */
+    public static void waitUntil(long deadline) throws InterruptedException {
+        while (true) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            if (remaining > SPIN_THRESHOLD_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_THRESHOLD_NANOS);
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package memcached_sdn.experiment.helpers;
+
+import java.util.Random;
+
+/**
+ * Non thread safe SplitMix64 generator. Unlike {@link Random} it has no atomic seed, so a generator owned by
+ * a single thread costs no CAS per draw. Independent streams are derived from a master seed with
+ * {@link #forStream(long, int)}, the same (seed, stream) pair always producing the same sequence.
+ */
+public class SplitMixRandom extends Random {
+
+    private static final long serialVersionUID = 1L;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long state;
+
+    public SplitMixRandom(long seed) {
+        super(0);
+        this.state = seed;
+    }
+
+    public static SplitMixRandom forStream(long masterSeed, int streamId) {
+        return new SplitMixRandom(mix64(masterSeed + (streamId + 1) * GOLDEN_GAMMA));
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        this.state = seed;
+    }
+
+    @Override
+    public long nextLong() {
+        this.state += GOLDEN_GAMMA;
+        return mix64(this.state);
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+}
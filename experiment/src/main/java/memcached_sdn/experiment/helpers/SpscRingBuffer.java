@@ -0,0 +1,77 @@
+package memcached_sdn.experiment.helpers;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded lock-free single-producer/single-consumer ring buffer.
+ * {@link #offer(Object)} must only be called by one producer thread and {@link #drainTo(List, int)}
+ * by one consumer thread.
+ */
+public class SpscRingBuffer<T> {
+
+    private final Object[] buffer;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(0);
+    private final AtomicLong tail = new AtomicLong(0);
+    private long cachedHead = 0;
+
+    /**
+     * @param capacity rounded up to the next power of two.
+     */
+    public SpscRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Ring buffer capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.buffer = new Object[size];
+        this.mask = size - 1;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * @return false if the buffer is full.
+     */
+    public boolean offer(T item) {
+        final long currentTail = tail.get();
+        if (currentTail - cachedHead >= buffer.length) {
+            cachedHead = head.get();
+            if (currentTail - cachedHead >= buffer.length) {
+                return false;
+            }
+        }
+        buffer[(int) currentTail & mask] = item;
+        tail.lazySet(currentTail + 1);
+        return true;
+    }
+
+    /**
+     * Moves up to maxItems items to the target list.
+     * @return the number of items moved.
+     */
+    @SuppressWarnings("unchecked")
+    public int drainTo(List<? super T> target, int maxItems) {
+        final long currentHead = head.get();
+        final int count = (int) Math.min(tail.get() - currentHead, maxItems);
+        for (int i = 0; i < count; i++) {
+            final int index = (int) (currentHead + i) & mask;
+            target.add((T) buffer[index]);
+            buffer[index] = null;
+        }
+        if (count > 0) {
+            head.lazySet(currentHead + count);
+        }
+        return count;
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+}
@@ -11,22 +11,22 @@ public class TraceableLogger {
     private static Map<Long, StringBuffer> buffers = new ConcurrentHashMap<>();
 
     public static void append(String text) {
-        StringBuffer sb = buffers.get(Thread.currentThread().getId());
+        StringBuffer sb = buffers.get(Thread.currentThread().threadId());
         if (sb == null) {
             sb = new StringBuffer();
-            buffers.put(Thread.currentThread().getId(), sb);
+            buffers.put(Thread.currentThread().threadId(), sb);
         }
         sb.append(text);
         sb.append("\n");
     }
 
     public static void dump() {
-        StringBuffer sb = buffers.get(Thread.currentThread().getId());
+        StringBuffer sb = buffers.get(Thread.currentThread().threadId());
         if (sb != null) {
             System.out.println("======================");
             System.out.println(sb.toString());
             System.out.println("======================");
-            buffers.remove(Thread.currentThread().getId());
+            buffers.remove(Thread.currentThread().threadId());
         }
 
     }
@@ -0,0 +1,82 @@
+package memcached_sdn.experiment.helpers.key_picker;
+
+import java.util.Random;
+
+/**
+ * Samples indices from a discrete distribution in constant time using Vose's alias method.
+ * Building the tables is O(n), the sampler itself is immutable and can be shared between threads.
+ */
+public class AliasSampler {
+
+    private final double[] probability;
+    private final int[] alias;
+
+    /**
+     * @param weights non-negative weights, not necessarily normalized. At least one weight must be positive.
+     */
+    public AliasSampler(double[] weights) {
+        final int n = weights.length;
+        if (n == 0) {
+            throw new IllegalArgumentException("Cannot sample from an empty distribution.");
+        }
+        double sum = 0;
+        for (double weight : weights) {
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight: " + weight);
+            }
+            sum += weight;
+        }
+        if (sum <= 0) {
+            throw new IllegalArgumentException("Weights sum must be positive.");
+        }
+        this.probability = new double[n];
+        this.alias = new int[n];
+
+        final double[] scaled = new double[n];
+        final int[] small = new int[n];
+        final int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / sum;
+            if (scaled[i] < 1.0) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            final int less = small[--smallCount];
+            final int more = large[--largeCount];
+            this.probability[less] = scaled[less];
+            this.alias[less] = more;
+            scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+            if (scaled[more] < 1.0) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // Leftovers are 1.0 up to floating point error
+        while (largeCount > 0) {
+            final int index = large[--largeCount];
+            this.probability[index] = 1.0;
+            this.alias[index] = index;
+        }
+        while (smallCount > 0) {
+            final int index = small[--smallCount];
+            this.probability[index] = 1.0;
+            this.alias[index] = index;
+        }
+    }
+
+    public int sample(Random random) {
+        final int column = random.nextInt(this.probability.length);
+        return (random.nextDouble() < this.probability[column]) ? column : this.alias[column];
+    }
+
+    public int size() {
+        return this.probability.length;
+    }
+
+}
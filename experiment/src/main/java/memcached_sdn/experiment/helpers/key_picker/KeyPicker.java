@@ -1,8 +1,12 @@
 package memcached_sdn.experiment.helpers.key_picker;
 
+import memcached_sdn.experiment.helpers.Helpers;
 import memcached_sdn.experiment.helpers.KeyValuePair;
+import memcached_sdn.experiment.helpers.SplitMixRandom;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 /**
  * Created by idanmo on 3/6/16.
@@ -10,12 +14,62 @@ import java.util.List;
 public abstract class KeyPicker {
 
     protected final List<KeyValuePair<String, String>> objectsList;
+    private final long streamsSeed;
 
     public KeyPicker(List<KeyValuePair<String, String>> objectsList) {
+        this(objectsList, -1);
+    }
+
+    /**
+     * @param seed master seed of the per-thread random streams, -1 picks a random one.
+     */
+    public KeyPicker(List<KeyValuePair<String, String>> objectsList, long seed) {
 
         this.objectsList = objectsList;
+        this.streamsSeed = resolveSeed(seed);
+    }
+
+    /**
+     * @return the seed, or a random non negative one (which can be given back as a key picker seed) for -1.
+     */
+    public static long resolveSeed(long seed) {
+        return (seed != -1) ? seed : Helpers.random.nextLong() & Long.MAX_VALUE;
     }
 
+    /**
+     * Picks a key using the picker's shared generator.
+     * Load threads should use {@link #pickKey(Random)} with a generator from {@link #createThreadRandom(int)}.
+     */
     public abstract KeyValuePair<String, String> pickKey();
 
+    /**
+     * Picks a key using the provided generator. Pickers are immutable after construction, so this can be
+     * called concurrently as long as every thread uses its own generator.
+     */
+    public abstract KeyValuePair<String, String> pickKey(Random random);
+
+    /**
+     * Creates the generator of a load thread. A given (seed, threadId) always yields the same keys sequence.
+     */
+    public Random createThreadRandom(int threadId) {
+        return SplitMixRandom.forStream(this.streamsSeed, threadId);
+    }
+
+    /**
+     * @return the relative picking weight of every key, aligned with the objects list. Uniform by default.
+     */
+    public double[] getKeyWeights() {
+        final double[] weights = new double[objectsList.size()];
+        Arrays.fill(weights, 1.0);
+        return weights;
+    }
+
+    /**
+     * @return the master seed, every generator of the picker (including the ones used while constructing it)
+     * derives from it, so a run is repeated by giving it back as the seed.
+     */
+    public final long getStreamsSeed() {
+        return streamsSeed;
+    }
+
 }
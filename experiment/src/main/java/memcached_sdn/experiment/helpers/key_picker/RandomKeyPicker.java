@@ -4,6 +4,7 @@ import memcached_sdn.experiment.helpers.Helpers;
 import memcached_sdn.experiment.helpers.KeyValuePair;
 
 import java.util.List;
+import java.util.Random;
 
 /**
  * Created by idanmo on 3/6/16.
@@ -11,12 +12,21 @@ import java.util.List;
 public class RandomKeyPicker extends KeyPicker {
 
     public RandomKeyPicker(List<KeyValuePair<String, String>> objectsList) {
-        super(objectsList);
+        this(objectsList, -1);
+    }
+
+    public RandomKeyPicker(List<KeyValuePair<String, String>> objectsList, long seed) {
+        super(objectsList, seed);
     }
 
     @Override
     public KeyValuePair<String, String> pickKey() {
-        int randomObjectIndex = Helpers.random.nextInt(objectsList.size());
+        return pickKey(Helpers.random);
+    }
+
+    @Override
+    public KeyValuePair<String, String> pickKey(Random random) {
+        int randomObjectIndex = random.nextInt(objectsList.size());
         return objectsList.get(randomObjectIndex);
     }
 
@@ -0,0 +1,125 @@
+package memcached_sdn.experiment.helpers.key_picker;
+
+import memcached_sdn.experiment.helpers.Helpers;
+import memcached_sdn.experiment.helpers.KeyValuePair;
+import memcached_sdn.experiment.memcached.routing.KeyRouter;
+
+import java.util.Random;
+
+/**
+ * Steers a key picker's requests to the servers according to a target load split.
+ * <p>
+ * Keys are grouped by the server they hash to, and each group gets an alias table over the
+ * underlying picker's weights of its keys. A pick first samples a server from the load split and
+ * then a key from that server's table, so the popularity order within a server is kept and no
+ * picks are rejected regardless of the number of servers or how skewed the split is.
+ */
+public class ServerLoadKeyPicker extends KeyPicker {
+
+    private final KeyPicker keyPicker;
+    private final double[] serverLoad;
+    private final AliasSampler serverSampler;
+    private final int[][] serverKeys;
+    private final AliasSampler[] keySamplers;
+
+    /**
+     * @param serverLoad relative share of requests for every server.
+     * @param router the clients' keys routing.
+     */
+    public ServerLoadKeyPicker(KeyPicker keyPicker, double[] serverLoad, KeyRouter router) {
+        super(keyPicker.objectsList, keyPicker.getStreamsSeed());
+        if (serverLoad.length != router.getServersCount()) {
+            throw new IllegalArgumentException(String.format(
+                    "Server load has %d values but there are %d servers.", serverLoad.length, router.getServersCount()));
+        }
+        this.keyPicker = keyPicker;
+        this.serverLoad = serverLoad.clone();
+        this.serverSampler = new AliasSampler(this.serverLoad);
+
+        final int numberOfServers = serverLoad.length;
+        final double[] weights = keyPicker.getKeyWeights();
+        final int[] keyServer = new int[objectsList.size()];
+        final int[] keysPerServer = new int[numberOfServers];
+        for (int i = 0; i < objectsList.size(); i++) {
+            keyServer[i] = router.route(objectsList.get(i).getKey());
+            keysPerServer[keyServer[i]]++;
+        }
+
+        this.serverKeys = new int[numberOfServers][];
+        final double[][] serverWeights = new double[numberOfServers][];
+        for (int i = 0; i < numberOfServers; i++) {
+            this.serverKeys[i] = new int[keysPerServer[i]];
+            serverWeights[i] = new double[keysPerServer[i]];
+            keysPerServer[i] = 0;
+        }
+        for (int i = 0; i < keyServer.length; i++) {
+            final int server = keyServer[i];
+            this.serverKeys[server][keysPerServer[server]] = i;
+            serverWeights[server][keysPerServer[server]] = weights[i];
+            keysPerServer[server]++;
+        }
+
+        this.keySamplers = new AliasSampler[numberOfServers];
+        for (int i = 0; i < numberOfServers; i++) {
+            if (this.serverLoad[i] <= 0) {
+                continue;
+            }
+            if (this.serverKeys[i].length == 0) {
+                throw new IllegalArgumentException(String.format(
+                        "Server #%d has a load of %g but none of the keys maps to it.", i, this.serverLoad[i]));
+            }
+            this.keySamplers[i] = new AliasSampler(serverWeights[i]);
+        }
+    }
+
+    public double[] getServerLoad() {
+        return serverLoad.clone();
+    }
+
+    /**
+     * @return the number of keys mapped to the server.
+     */
+    public int getServerKeysCount(int serverIndex) {
+        return serverKeys[serverIndex].length;
+    }
+
+    @Override
+    public KeyValuePair<String, String> pickKey() {
+        return pickKey(Helpers.random);
+    }
+
+    @Override
+    public KeyValuePair<String, String> pickKey(Random random) {
+        final int server = this.serverSampler.sample(random);
+        final int[] keys = this.serverKeys[server];
+        return objectsList.get(keys[this.keySamplers[server].sample(random)]);
+    }
+
+    @Override
+    public double[] getKeyWeights() {
+        final double[] keyWeights = keyPicker.getKeyWeights();
+        final double[] weights = new double[objectsList.size()];
+        for (int server = 0; server < serverKeys.length; server++) {
+            if (keySamplers[server] == null) {
+                continue;
+            }
+            double sum = 0;
+            for (int key : serverKeys[server]) {
+                sum += keyWeights[key];
+            }
+            for (int key : serverKeys[server]) {
+                weights[key] = serverLoad[server] * keyWeights[key] / sum;
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * The latency file header describes the underlying keys distribution.
+     */
+    @Override
+    public String toString() {
+        return keyPicker.toString();
+    }
+
+}
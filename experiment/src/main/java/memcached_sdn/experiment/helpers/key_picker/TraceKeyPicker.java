@@ -0,0 +1,153 @@
+package memcached_sdn.experiment.helpers.key_picker;
+
+import memcached_sdn.experiment.data.RequestTrace;
+import memcached_sdn.experiment.helpers.KeyValuePair;
+import memcached_sdn.experiment.helpers.RequestPacer;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays the gets of a {@link RequestTrace}, in the trace's order. Trace key ids are indexes in the
+ * objects list, other operations are skipped.
+ *
+ * With a positive speed-up factor the picker also schedules the requests: load threads claim the next get
+ * with {@link #claimRecord()} and send it at its trace time divided by the factor ({@link #awaitIntendedTime(long)}),
+ * the experiment ends with the trace. Otherwise {@link #pickKey(Random)} only replays the keys, cycling
+ * through the trace, and requests are sent as the sleep time or target rate allow.
+ *
+ * A process can replay a partition of the trace, every partitionsCount-th record starting at partition.
+ */
+public class TraceKeyPicker extends KeyPicker {
+
+    private final RequestTrace trace;
+    private final double speedUp;
+    private final int partition;
+    private final int partitionsCount;
+    private final long partitionRecordsCount;
+    private final AtomicLong claimsCount = new AtomicLong(0);
+    private final AtomicLong skippedCount = new AtomicLong(0);
+    private volatile long startNanoTime;
+
+    public TraceKeyPicker(List<KeyValuePair<String, String>> objectsList, RequestTrace trace, double speedUp, int partition, int partitionsCount) {
+        super(objectsList);
+        if (trace.getKeysCount() > objectsList.size()) {
+            throw new IllegalArgumentException(String.format("The trace requests %d keys, objects-count must be at least %d.",
+                    trace.getKeysCount(), trace.getKeysCount()));
+        }
+        this.trace = trace;
+        this.speedUp = speedUp;
+        this.partition = partition;
+        this.partitionsCount = partitionsCount;
+        this.partitionRecordsCount = Math.max(0, (trace.getRecordsCount() - partition + partitionsCount - 1) / partitionsCount);
+        if (this.partitionRecordsCount == 0) {
+            throw new IllegalArgumentException(String.format("Partition %d of %d of %s is empty.", partition, partitionsCount, trace));
+        }
+        this.startNanoTime = System.nanoTime();
+    }
+
+    /**
+     * @return true if the trace's send times are replayed.
+     */
+    public boolean isTimed() {
+        return speedUp > 0;
+    }
+
+    /**
+     * Sets the time the first request of the trace is replayed at.
+     */
+    public void start(long nanoTime) {
+        this.startNanoTime = nanoTime;
+    }
+
+    private long getRecord(long claim) {
+        return partition + claim * partitionsCount;
+    }
+
+    /**
+     * Claims the next get of the trace, safe to call from any thread.
+     *
+     * @return the get's record, or -1 once the trace ended.
+     */
+    public long claimRecord() {
+        while (true) {
+            long claim = this.claimsCount.getAndIncrement();
+            if (claim >= this.partitionRecordsCount) {
+                return -1;
+            }
+            long record = getRecord(claim);
+            if (this.trace.getOp(record) == RequestTrace.OP_GET) {
+                return record;
+            }
+            this.skippedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return true once all records were claimed.
+     */
+    public boolean isFinished() {
+        return this.claimsCount.get() >= this.partitionRecordsCount;
+    }
+
+    public KeyValuePair<String, String> getKey(long record) {
+        return objectsList.get(this.trace.getKeyId(record));
+    }
+
+    public long getIntendedTime(long record) {
+        return this.startNanoTime + Math.round(this.trace.getOffsetNanos(record) / this.speedUp);
+    }
+
+    /**
+     * @return the intended send time of the next record to be claimed, or now if the trace ended.
+     */
+    public long getNextIntendedTime() {
+        final long claim = this.claimsCount.get();
+        return (claim < this.partitionRecordsCount) ? getIntendedTime(getRecord(claim)) : System.nanoTime();
+    }
+
+    /**
+     * Waits until the record is due (returns immediately when behind schedule).
+     *
+     * @return the record's intended send time.
+     */
+    public long awaitIntendedTime(long record) throws InterruptedException {
+        final long intendedTime = getIntendedTime(record);
+        RequestPacer.waitUntil(intendedTime);
+        return intendedTime;
+    }
+
+    /**
+     * @return the number of records which were not gets.
+     */
+    public long getSkippedCount() {
+        return skippedCount.get();
+    }
+
+    @Override
+    public KeyValuePair<String, String> pickKey() {
+        return pickKey(null);
+    }
+
+    /**
+     * Picks the next get of the trace, starting over at the end of the trace. The generator is not used.
+     */
+    @Override
+    public KeyValuePair<String, String> pickKey(Random random) {
+        for (long i = 0; i < this.partitionRecordsCount; i++) {
+            long record = getRecord(this.claimsCount.getAndIncrement() % this.partitionRecordsCount);
+            if (this.trace.getOp(record) == RequestTrace.OP_GET) {
+                return getKey(record);
+            }
+            this.skippedCount.incrementAndGet();
+        }
+        throw new IllegalStateException(String.format("No gets in partition %d of %d of %s.", partition, partitionsCount, trace));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s, speed-up %s, partition %d/%d", trace, (speedUp > 0) ? speedUp : "keys only", partition, partitionsCount);
+    }
+
+}
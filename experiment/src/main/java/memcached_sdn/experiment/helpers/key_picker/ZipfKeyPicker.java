@@ -1,146 +1,174 @@
 package memcached_sdn.experiment.helpers.key_picker;
 
-import com.google.common.base.Joiner;
-import com.google.common.collect.Lists;
+import memcached_sdn.experiment.data.BinaryExperimentDataReader;
+import memcached_sdn.experiment.data.BinaryExperimentDataWriter;
 import memcached_sdn.experiment.helpers.Helpers;
 import memcached_sdn.experiment.helpers.KeyValuePair;
+import memcached_sdn.experiment.helpers.ObjectsDataset;
 import net.spy.memcached.DefaultHashAlgorithm;
-import org.apache.commons.math3.distribution.ZipfDistribution;
-import org.apache.commons.math3.util.MathArrays;
 
 import java.io.BufferedReader;
-import java.io.FileNotFoundException;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by idanmo on 3/6/16.
  */
 public class ZipfKeyPicker extends KeyPicker {
 
+    /**
+     * Prefix of the weights header line, followed by the zipf exponent. Weights are derived from the
+     * exponent and the number of keys, so the header stays small for millions of keys.
+     */
+    private static final String EXPONENT_HEADER_PREFIX = "zipf:";
+
     private final Random random;
-    private final int pickServerFactor;
-    private int[] intWeights;
+    private double exponent;
     private double[] weights;
+    private String legacyWeightsLine = null;
+    private AliasSampler sampler;
+
+    public ZipfKeyPicker(List<KeyValuePair<String, String>> objectsList, String dataFile, long seed) {
+        this(objectsList, dataFile, seed, 1.0);
+    }
 
-    public ZipfKeyPicker(List<KeyValuePair<String, String>> objectsList, String dataFile, long seed, int pickServerFactor) {
-        super(objectsList);
-        this.pickServerFactor = pickServerFactor;
-        this.random = (seed != -1) ? Helpers.createRandom(seed) : Helpers.random;
+    public ZipfKeyPicker(List<KeyValuePair<String, String>> objectsList, String dataFile, long seed, double exponent) {
+        super(objectsList, seed);
+        this.exponent = exponent;
+        this.random = Helpers.createRandom(getStreamsSeed());
         if (dataFile != null) {
-            BufferedReader reader = null;
-            try {
-                reader = new BufferedReader(new FileReader(dataFile));
-                String weightsLine = reader.readLine();
-                if (!weightsLine.startsWith(";")) {
-                    throw new IllegalStateException("intWeights line should begin with a ;");
-                }
-                String[] strWeights = weightsLine.replace(";", "").split(",");
-                intWeights = new int[strWeights.length];
-                for (int i = 0; i < intWeights.length; i++) {
-                    intWeights[i] = Integer.parseInt(strWeights[i]);
-                }
-                Map<String, KeyValuePair<String, String>> objectsMap = new HashMap<>();
+            String[] headerLines = readHeaderLines(dataFile);
+            String weightsLine = headerLines[0];
+            if (!weightsLine.startsWith(";")) {
+                throw new IllegalStateException("weights line should begin with a ;");
+            }
+            // A dataset resolves keys to its objects by parsing their ids, other lists are indexed by key
+            final ObjectsDataset dataset = (objectsList instanceof ObjectsDataset) ? (ObjectsDataset) objectsList : null;
+            Map<String, KeyValuePair<String, String>> objectsMap = null;
+            if (dataset == null) {
+                objectsMap = new HashMap<>();
                 for (KeyValuePair<String, String> pair : objectsList) {
                     objectsMap.put(pair.getKey(), pair);
                 }
-                while (!objectsList.isEmpty()) {
-                    objectsList.remove(0);
-                }
-                String keysLine = reader.readLine();
-                if (!keysLine.startsWith(";")) {
-                    throw new IllegalStateException("keys line should begin with a ;");
-                }
-                String[] keys = keysLine.replace(";", "").split(",");
-                for (int i = 0; i < keys.length; i++) {
-                    objectsList.add(objectsMap.get(keys[i]));
-                }
-            } catch (IOException e) {
-                throw new RuntimeException(e.getMessage(), e);
-            } finally {
-                if (reader != null) {
-                    try {
-                        reader.close();
-                    } catch (IOException e) {
-                    }
+            }
+            objectsList.clear();
+            String keysLine = headerLines[1];
+            if (!keysLine.startsWith(";")) {
+                throw new IllegalStateException("keys line should begin with a ;");
+            }
+            String[] keys = keysLine.replace(";", "").split(",");
+            for (int i = 0; i < keys.length; i++) {
+                KeyValuePair<String, String> pair = (dataset != null) ? dataset.findObject(keys[i]) : objectsMap.get(keys[i]);
+                if (pair == null) {
+                    throw new IllegalStateException("Key from keys distribution file not found in objects list: " + keys[i]);
                 }
-                this.weights = null;
+                objectsList.add(pair);
+            }
+            weightsLine = weightsLine.substring(1);
+            if (weightsLine.startsWith(EXPONENT_HEADER_PREFIX)) {
+                this.exponent = Double.parseDouble(weightsLine.substring(EXPONENT_HEADER_PREFIX.length()));
+                this.weights = createWeights(objectsList.size(), this.exponent);
+            } else {
+                this.weights = parseLegacyWeights(weightsLine.split(","));
+                this.legacyWeightsLine = weightsLine;
             }
+            this.sampler = new AliasSampler(this.weights);
         } else {
             generateWeights(objectsList);
         }
     }
 
-    private void generateWeights(List<KeyValuePair<String, String>> objectsList) {
-        this.weights = new double[objectsList.size()];
-        double sum = 0;
-        int s = 1;
-        for (int i = 1; i <= objectsList.size(); i++) {
-            sum += Math.pow(i, -s);
+    /**
+     * Reads the weights and keys header lines of a text or binary latency file.
+     */
+    private static String[] readHeaderLines(String dataFile) {
+        try {
+            if (isBinaryLatencyFile(dataFile)) {
+                try (BinaryExperimentDataReader reader = new BinaryExperimentDataReader(dataFile)) {
+                    return reader.getFileHeader().split("\n", 3);
+                }
+            }
+            try (BufferedReader reader = new BufferedReader(new FileReader(dataFile))) {
+                return new String[]{reader.readLine(), reader.readLine()};
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
         }
-        // Generate zipf distribution
-        for (int i = 0; i < weights.length; i++) {
-            weights[i] = Math.pow(i+1, -s) / sum;
+    }
+
+    private static boolean isBinaryLatencyFile(String dataFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(dataFile))) {
+            return in.readInt() == BinaryExperimentDataWriter.MAGIC;
+        } catch (EOFException e) {
+            return false;
         }
-        // Normalize to natural numbers
-        double factor = 1 / weights[weights.length-1];
-        intWeights = new int[weights.length];
-        for (int i = 0; i < weights.length; i++) {
-            //intWeights[i] = (int) Math.round(weights[i] * factor * 1000) - 1000;
-            intWeights[i] = (int)(weights[i] * 990000.0);
+    }
+
+    /**
+     * Older latency files store descending cumulative integer ranges, key i owning [w[i+1], w[i]).
+     */
+    private static double[] parseLegacyWeights(String[] strWeights) {
+        final double[] weights = new double[strWeights.length];
+        long previous = Long.parseLong(strWeights[strWeights.length - 1]);
+        for (int i = strWeights.length - 2; i >= 0; i--) {
+            long current = Long.parseLong(strWeights[i]);
+            weights[i] = current - previous;
+            previous = current;
         }
-        // Convert to ranges
-        for (int i = intWeights.length - 1; i >= 0; i--) {
-            if (i != intWeights.length - 1) {
-                intWeights[i] += intWeights[i+1];
-            }
+        return weights;
+    }
+
+    private static double[] createWeights(int count, double exponent) {
+        final double[] weights = new double[count];
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            weights[i] = Math.pow(i + 1, -exponent);
+            sum += weights[i];
         }
-//        for (int i = 0; i < intWeights.length; i++) {
-//            System.out.println(intWeights[i]);
-//        }
+        for (int i = 0; i < count; i++) {
+            weights[i] /= sum;
+        }
+        return weights;
+    }
+
+    private void generateWeights(List<KeyValuePair<String, String>> objectsList) {
+        this.legacyWeightsLine = null;
+        this.weights = createWeights(objectsList.size(), this.exponent);
+        this.sampler = new AliasSampler(this.weights);
         Collections.shuffle(objectsList, this.random);
     }
 
+    public double getExponent() {
+        return exponent;
+    }
+
     @Override
     public KeyValuePair<String, String> pickKey() {
-        if (this.pickServerFactor != -1) {
-            int randomValue = this.random.nextInt(100);
-            int serverIndex = (randomValue < this.pickServerFactor) ? 0 : 1;
-            int pickedIndex;
-            KeyValuePair<String, String> kv;
-            do {
-                kv = pickKeyImpl();
-                final long hash = DefaultHashAlgorithm.NATIVE_HASH.hash(kv.getKey());
-                pickedIndex = (int) (hash % 2);
-            } while (pickedIndex != serverIndex);
-            return kv;
-        }
-        return pickKeyImpl();
+        return pickKey(this.random);
     }
 
-    private KeyValuePair<String, String> pickKeyImpl() {
-        final int maxWeight = intWeights[0];
-        final int minWeight = intWeights[intWeights.length-1];
-        int randomValue = this.random.nextInt(maxWeight - minWeight) + minWeight;
-        for (int i = 1; i < intWeights.length; i++) {
-            if (randomValue >= intWeights[i]) {
-                return objectsList.get(i-1);
-            }
-        }
-        StringBuilder sb = new StringBuilder(String.format("Random value not in range. randomValue = %d, min = %d, max = %d", randomValue, minWeight, maxWeight));
-        sb.append(Joiner.on(",").join(Arrays.asList(intWeights)));
-        throw new RuntimeException(sb.toString());
+    @Override
+    public KeyValuePair<String, String> pickKey(Random random) {
+        return objectsList.get(this.sampler.sample(random));
+    }
+
+    @Override
+    public double[] getKeyWeights() {
+        return this.weights.clone();
     }
 
     @Override
     public String toString() {
-        final StringBuffer sb = new StringBuffer();
-        sb.append(intWeights[0]);
-        for (int i = 1; i < intWeights.length; i++) {
-            sb.append(",");
-            sb.append(intWeights[i]);
+        final StringBuilder sb = new StringBuilder();
+        if (this.legacyWeightsLine != null) {
+            sb.append(this.legacyWeightsLine);
+        } else {
+            sb.append(EXPONENT_HEADER_PREFIX);
+            sb.append(this.exponent);
         }
         sb.append("\n");
         sb.append(objectsList.get(0).getKey());
@@ -222,29 +250,6 @@ public class ZipfKeyPicker extends KeyPicker {
 
     }
 
-    private void generateWeights2(List<KeyValuePair<String, String>> objectsList) {
-        final ZipfDistribution z = new ZipfDistribution(1000, 1.0);
-
-        this.intWeights = new int[objectsList.size()];
-        for (int i = 1; i <= objectsList.size(); i++) {
-            System.out.println(z.probability(i) * 1000000);
-            intWeights[i-1] = (int) Math.round(z.probability(i) * 1000000);
-        }
-
-//        this.intWeights = new int[objectsList.size()];
-//        this.intWeights = z.sample(objectsList.size());
-//        Arrays.sort(intWeights);
-//        final ArrayList<Integer> list = Lists.newArrayListWithCapacity(intWeights.length);
-//        for (int i = 0; i < intWeights.length; i++) {
-//            list.add(intWeights[i]);
-//        }
-//        Collections.reverse(list);
-//        for (int i = 0; i < intWeights.length; i++) {
-//            intWeights[i] = list.get(i);
-//        }
-        Collections.shuffle(objectsList, this.random);
-    }
-
     public void printWeightPerServer2(List<KeyValuePair<String, String>> objectsList, int numberOfServers) {
         double[] sumPerServer = new double[numberOfServers];
 
@@ -257,8 +262,8 @@ public class ZipfKeyPicker extends KeyPicker {
             for (int i = 0; i < objectsList.size(); i++) {
                 final long hash = DefaultHashAlgorithm.NATIVE_HASH.hash(objectsList.get(i).getKey());
                 final int index = (int) (hash % numberOfServers);
-                totalWeight += this.intWeights[i];
-                weightPerServer[index] += this.intWeights[i];
+                totalWeight += this.weights[i];
+                weightPerServer[index] += this.weights[i];
             }
             if (weightPerServer[0] < weightPerServer[1]) {
                 double ttt = weightPerServer[1];
@@ -0,0 +1,37 @@
+package memcached_sdn.experiment.memcached;
+
+import memcached_sdn.experiment.memcached.routing.KeyRouter;
+
+import java.util.List;
+
+/**
+ * Non-blocking get interface shared by the UDP and TCP clients, so the load loop does not depend on the transport.
+ * Clients are owned by a single thread which both issues requests and calls {@link #processEvents(long)}.
+ */
+public abstract class AbstractMemcachedAsyncClient extends AbstractMemcachedUDPClient {
+
+    public AbstractMemcachedAsyncClient(String[] servers, String bindAddress, int threadId, KeyRouter router, RetryPolicy retryPolicy) {
+        super(servers, bindAddress, threadId, router, retryPolicy);
+    }
+
+    /**
+     * Sends a get request for the provided key. The callback is invoked from {@link #processEvents(long)}.
+     */
+    public abstract void get(String key, MemcachedUDPCallback callback);
+
+    /**
+     * Multi-get: keys are grouped by server and a single request is sent to each server.
+     * The callback is invoked once per server with the keys of that server, each server's request
+     * counting as one outstanding request.
+     */
+    public abstract void get(List<String> keys, MemcachedUDPCallback callback);
+
+    /**
+     * Handles pending responses, waiting at most timeoutMillis for the first one, and fails requests which timed out.
+     * @return the number of requests completed (successfully or not) by this call.
+     */
+    public abstract int processEvents(long timeoutMillis);
+
+    public abstract int getOutstandingRequestsCount();
+
+}
@@ -0,0 +1,244 @@
+package memcached_sdn.experiment.memcached;
+
+import com.google.common.collect.Maps;
+import memcached_sdn.experiment.memcached.replication.ReplicaSelector;
+import memcached_sdn.experiment.memcached.routing.KeyRouter;
+import memcached_sdn.experiment.memcached.routing.ModuloKeyRouter;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Server list handling and key routing shared by the blocking and non-blocking UDP clients, and the TCP client.
+ */
+public abstract class AbstractMemcachedUDPClient {
+
+    public static final int HEADER_SIZE = 8;
+    protected static final int BUFFER_SIZE = 4096;
+
+    protected final Map<String, Integer> serverToIndex;
+    protected InetAddress[] servers;
+    protected int[] ports;
+    protected String bindAddress = null;
+    protected int threadId = -1;
+    protected final KeyRouter router;
+    protected ReplicaSelector replicaSelector = null;
+    protected final RetryPolicy retryPolicy;
+    protected final RttEstimator[] rttEstimators;
+    protected long timeoutRetriesCount = 0;
+    protected long fragmentRetriesCount = 0;
+    protected long staleDatagramsCount = 0;
+
+    public AbstractMemcachedUDPClient(final String[] servers) {
+        this(servers, new ModuloKeyRouter(servers.length));
+    }
+
+    public AbstractMemcachedUDPClient(final String[] servers, KeyRouter router) {
+        this(servers, router, RetryPolicy.DEFAULT);
+    }
+
+    public AbstractMemcachedUDPClient(final String[] servers, KeyRouter router, RetryPolicy retryPolicy) {
+        if (router.getServersCount() != servers.length) {
+            throw new IllegalArgumentException(String.format(
+                    "Router is set for %d servers but there are %d servers.", router.getServersCount(), servers.length));
+        }
+        this.router = router;
+        this.retryPolicy = retryPolicy;
+        this.rttEstimators = retryPolicy.createEstimators(servers.length);
+        this.servers = new InetAddress[servers.length];
+        this.ports = new int[servers.length];
+        this.serverToIndex = Maps.newHashMap();
+        for (int i = 0; i < servers.length; i++) {
+            String[] values = servers[i].split(":");
+            try {
+                this.servers[i] = InetAddress.getByName(values[0]);
+                serverToIndex.put(this.servers[i].getHostAddress(), i);
+            } catch (UnknownHostException e) {
+                throw new RuntimeException(e);
+            }
+            if (values.length == 1) {
+                this.ports[i] = 11211;
+            } else {
+                this.ports[i] = Integer.parseInt(values[1]);
+            }
+        }
+    }
+
+    public AbstractMemcachedUDPClient(String[] servers, String bindAddress, int threadId) {
+        this(servers, bindAddress, threadId, new ModuloKeyRouter(servers.length));
+    }
+
+    public AbstractMemcachedUDPClient(String[] servers, String bindAddress, int threadId, KeyRouter router) {
+        this(servers, bindAddress, threadId, router, RetryPolicy.DEFAULT);
+    }
+
+    public AbstractMemcachedUDPClient(String[] servers, String bindAddress, int threadId, KeyRouter router, RetryPolicy retryPolicy) {
+        this(servers, router, retryPolicy);
+        this.bindAddress = bindAddress;
+        this.threadId = threadId;
+    }
+
+    static void print(int threadId, String message) {
+        Timestamp timestamp = new Timestamp(new java.util.Date().getTime());
+        String thread = (threadId == -1)? "MAIN" : String.valueOf(threadId);
+        System.out.println(String.format("[%s] [t:%s] %s", timestamp, thread, message));
+    }
+
+    /**
+     * Spreads the gets of replicated hot keys over their replicas. Sets are always sent to the routed server.
+     */
+    public void setReplicaSelector(ReplicaSelector replicaSelector) {
+        this.replicaSelector = replicaSelector;
+    }
+
+    /**
+     * @return the server a get of the key is sent to.
+     */
+    protected int pickServer(String key) {
+        int serverIndex = router.route(key);
+        if (replicaSelector != null) {
+            serverIndex = replicaSelector.pickServer(key, serverIndex);
+        }
+        return serverIndex;
+    }
+
+    protected void onRequestSent(int serverIndex) {
+        if (replicaSelector != null) {
+            replicaSelector.onRequestSent(serverIndex);
+        }
+    }
+
+    protected void onRequestCompleted(int serverIndex) {
+        if (replicaSelector != null) {
+            replicaSelector.onRequestCompleted(serverIndex);
+        }
+    }
+
+    /**
+     * Groups keys by the server they map to, keeping their order.
+     * @return the keys of every server indexed by server, null for servers none of the keys maps to.
+     */
+    protected String[][] groupKeysByServer(List<String> keys) {
+        final List<List<String>> groups = new ArrayList<>(servers.length);
+        for (int i = 0; i < servers.length; i++) {
+            groups.add(null);
+        }
+        for (String key : keys) {
+            int serverIndex = pickServer(key);
+            if (groups.get(serverIndex) == null) {
+                groups.set(serverIndex, new ArrayList<String>());
+            }
+            groups.get(serverIndex).add(key);
+        }
+        final String[][] keysPerServer = new String[servers.length][];
+        for (int i = 0; i < servers.length; i++) {
+            if (groups.get(i) != null) {
+                keysPerServer[i] = groups.get(i).toArray(new String[groups.get(i).size()]);
+            }
+        }
+        return keysPerServer;
+    }
+
+    /**
+     * Writes a "get k1 k2 ... kn" request datagram into the buffer without allocating. UDP requests can
+     * not be fragmented, so the request must fit in a single datagram. Keys must be ASCII.
+     * @return the datagram length.
+     */
+    protected static int encodeGetRequest(String[] keys, int requestId, byte[] buffer) {
+        buffer[2] = 0;
+        buffer[3] = 0;
+        buffer[4] = 0;
+        buffer[5] = 1;
+        buffer[6] = 0;
+        buffer[7] = 0;
+        setRequestId(buffer, requestId);
+        int position = HEADER_SIZE;
+        position = putAscii(buffer, position, "get");
+        for (String key : keys) {
+            position = putAscii(buffer, position, " ");
+            position = putAscii(buffer, position, key);
+        }
+        return putAscii(buffer, position, "\r\n");
+    }
+
+    private static int putAscii(byte[] buffer, int position, String s) {
+        if (position + s.length() > buffer.length) {
+            throw new IllegalArgumentException(String.format(
+                    "get request does not fit in a %d bytes datagram.", buffer.length));
+        }
+        for (int i = 0; i < s.length(); i++) {
+            buffer[position++] = asciiByte(s, i);
+        }
+        return position;
+    }
+
+    /**
+     * @return the character of s at index as a byte, memcached keys are ASCII.
+     */
+    static byte asciiByte(String s, int index) {
+        final char c = s.charAt(index);
+        if (c > 0x7F) {
+            throw new IllegalArgumentException("Non ASCII key: " + s);
+        }
+        return (byte) c;
+    }
+
+    protected static void setRequestId(byte[] datagram, int requestId) {
+        datagram[0] = (byte) (requestId >> 8);
+        datagram[1] = (byte) requestId;
+    }
+
+    protected static short getShort(byte[] datagram, int offset) {
+        return (short) ((datagram[offset] << 8) | (datagram[offset + 1] & 0xFF));
+    }
+
+    /**
+     * Same as looking the address up in serverToIndex, without creating the host address string.
+     * @return the index of the server, or -1 for an unknown address.
+     */
+    protected int getServerIndex(InetAddress address) {
+        // serverToIndex keeps the last index of servers sharing an address
+        for (int i = servers.length - 1; i >= 0; i--) {
+            if (servers[i].equals(address)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int getServersCount() {
+        return servers.length;
+    }
+
+    /**
+     * @return the number of re-sent gets whose previous attempt received no datagram.
+     */
+    public long getTimeoutRetriesCount() {
+        return timeoutRetriesCount;
+    }
+
+    /**
+     * @return the number of re-sent gets whose previous attempt received only some of the response datagrams.
+     */
+    public long getFragmentRetriesCount() {
+        return fragmentRetriesCount;
+    }
+
+    /**
+     * @return the number of received datagrams which did not match any outstanding request.
+     */
+    public long getStaleDatagramsCount() {
+        return staleDatagramsCount;
+    }
+
+    public RttEstimator getRttEstimator(int serverIndex) {
+        return rttEstimators[serverIndex];
+    }
+
+    public abstract void close();
+
+}
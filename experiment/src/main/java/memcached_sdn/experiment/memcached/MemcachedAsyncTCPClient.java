@@ -0,0 +1,464 @@
+package memcached_sdn.experiment.memcached;
+
+import memcached_sdn.experiment.memcached.routing.KeyRouter;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking memcached binary protocol client over pipelined TCP connections.
+ *
+ * A get of n keys is sent as n quiet GETKQ requests followed by a NOOP: the server only answers hits and the
+ * NOOP response completes the request. Requests issued between two calls to {@link #processEvents(long)} are
+ * written together, and since responses come back in request order every connection keeps its requests in a
+ * FIFO. Hits are rewritten as ASCII "VALUE" entries, so results are read through the same
+ * {@link MemcachedUDPResult} as UDP responses (as a single packet).
+ *
+ * TCP does not lose responses, so requests are not retried and the RTT estimators do not shorten the timeout:
+ * a request which is not answered within the retry policy's maximal (fixed) timeout is failed, and its
+ * response is dropped when it arrives (counted as stale).
+ */
+public class MemcachedAsyncTCPClient extends AbstractMemcachedAsyncClient {
+
+    static final int HEADER_LENGTH = 24;
+    static final byte REQUEST_MAGIC = (byte) 0x80;
+    static final byte RESPONSE_MAGIC = (byte) 0x81;
+    static final byte OPCODE_GETKQ = 0x0d;
+    static final byte OPCODE_NOOP = 0x0a;
+    static final short STATUS_NO_ERROR = 0;
+
+    private static final int CONNECTION_BUFFER_SIZE = 65536;
+    private static final byte[] VALUE_PREFIX = "VALUE ".getBytes();
+    private static final byte[] CRLF = "\r\n".getBytes();
+    private static final byte[] END = "END\r\n".getBytes();
+
+    // [server][connection]
+    private final Connection[][] connections;
+    private final int[] nextConnection;
+    private final Selector selector;
+    private int nextOpaque = 0;
+    private int outstandingRequestsCount = 0;
+
+    public MemcachedAsyncTCPClient(String[] servers, String bindAddress, int threadId, KeyRouter router, RetryPolicy retryPolicy, int connectionsPerServer) {
+        super(servers, bindAddress, threadId, router, retryPolicy);
+        if (connectionsPerServer < 1) {
+            throw new IllegalArgumentException("At least one connection per server is required.");
+        }
+        this.connections = new Connection[servers.length][connectionsPerServer];
+        this.nextConnection = new int[servers.length];
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        try {
+            for (int i = 0; i < servers.length; i++) {
+                for (int j = 0; j < connectionsPerServer; j++) {
+                    this.connections[i][j] = connect(i);
+                }
+            }
+        } catch (RuntimeException e) {
+            close(this.connections, this.selector);
+            throw e;
+        }
+    }
+
+    private Connection connect(int serverIndex) {
+        try {
+            SocketChannel channel = SocketChannel.open();
+            if (this.bindAddress != null) {
+                print(this.threadId, String.format("memcached tcp client bound to: %s:%d", this.bindAddress, 0));
+                channel.bind(new InetSocketAddress(this.bindAddress, 0));
+            }
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.connect(new InetSocketAddress(this.servers[serverIndex], this.ports[serverIndex]));
+            channel.configureBlocking(false);
+            Connection connection = new Connection(serverIndex, channel);
+            connection.selectionKey = channel.register(this.selector, SelectionKey.OP_READ, connection);
+            return connection;
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Error connecting to server #%d (%s:%d)",
+                    serverIndex, this.servers[serverIndex], this.ports[serverIndex]), e);
+        }
+    }
+
+    /**
+     * Binary requests are encoded directly into the connection's buffer.
+     */
+    @Override
+    public void get(String key, MemcachedUDPCallback callback) {
+        sendGetRequest(pickServer(key), new String[]{key}, callback);
+    }
+
+    @Override
+    public void get(List<String> keys, MemcachedUDPCallback callback) {
+        final String[][] keysPerServer = groupKeysByServer(keys);
+        for (int i = 0; i < keysPerServer.length; i++) {
+            if (keysPerServer[i] != null) {
+                sendGetRequest(i, keysPerServer[i], callback);
+            }
+        }
+    }
+
+    private void sendGetRequest(int serverIndex, String[] keys, MemcachedUDPCallback callback) {
+        final Connection connection = this.connections[serverIndex][this.nextConnection[serverIndex]];
+        this.nextConnection[serverIndex] = (this.nextConnection[serverIndex] + 1) % this.connections[serverIndex].length;
+        final int opaque = this.nextOpaque++;
+        final int requestStart = connection.writeBuffer.position();
+        try {
+            for (String key : keys) {
+                connection.writeRequestHeader(OPCODE_GETKQ, key.length(), opaque);
+                for (int i = 0; i < key.length(); i++) {
+                    connection.writeBuffer.put(asciiByte(key, i));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // Drops the part of the request which was already written
+            connection.writeBuffer.position(requestStart);
+            throw e;
+        }
+        connection.writeRequestHeader(OPCODE_NOOP, 0, opaque);
+
+        long now = System.nanoTime();
+        connection.pendingRequests.add(new PendingRequest(keys, opaque, serverIndex, callback, now,
+                now + this.retryPolicy.getMaximumTimeoutNanos()));
+        this.outstandingRequestsCount++;
+        onRequestSent(serverIndex);
+        if (connection.writeBuffer.position() >= CONNECTION_BUFFER_SIZE) {
+            flush(connection);
+        }
+    }
+
+    @Override
+    public int processEvents(long timeoutMillis) {
+        int completed = 0;
+        try {
+            long waitMillis = timeoutMillis;
+            long now = System.nanoTime();
+            for (Connection[] serverConnections : this.connections) {
+                for (Connection connection : serverConnections) {
+                    flush(connection);
+                    PendingRequest oldest = connection.getOldestActiveRequest();
+                    if (oldest != null) {
+                        long untilTimeout = TimeUnit.NANOSECONDS.toMillis(oldest.deadline - now) + 1;
+                        waitMillis = Math.max(0, Math.min(waitMillis, untilTimeout));
+                    }
+                }
+            }
+            int selected = (waitMillis > 0) ? this.selector.select(waitMillis) : this.selector.selectNow();
+            if (selected > 0) {
+                Iterator<SelectionKey> iterator = this.selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey selectionKey = iterator.next();
+                    iterator.remove();
+                    Connection connection = (Connection) selectionKey.attachment();
+                    if (selectionKey.isWritable()) {
+                        flush(connection);
+                    }
+                    if (selectionKey.isReadable()) {
+                        completed += receive(connection);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return completed + expireRequests();
+    }
+
+    /**
+     * Writes as much of the connection's buffered requests as the socket accepts, waiting for the socket to
+     * become writable if some are left.
+     */
+    private void flush(Connection connection) {
+        if (connection.writeBuffer.position() == 0) {
+            return;
+        }
+        try {
+            connection.writeBuffer.flip();
+            connection.channel.write(connection.writeBuffer);
+            connection.writeBuffer.compact();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        connection.selectionKey.interestOps((connection.writeBuffer.position() > 0)
+                ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    private int receive(Connection connection) throws IOException {
+        int completed = 0;
+        while (true) {
+            int read = connection.channel.read(connection.readBuffer);
+            if (read == -1) {
+                throw new IllegalStateException(String.format("Server #%d closed the connection.", connection.serverIndex));
+            }
+            if (read == 0) {
+                return completed;
+            }
+            final ByteBuffer buffer = connection.readBuffer;
+            buffer.flip();
+            while (buffer.remaining() >= HEADER_LENGTH) {
+                int start = buffer.position();
+                int bodyLength = buffer.getInt(start + 8);
+                if (buffer.remaining() < HEADER_LENGTH + bodyLength) {
+                    break;
+                }
+                if (handleResponse(connection, buffer, start, bodyLength)) {
+                    completed++;
+                }
+                buffer.position(start + HEADER_LENGTH + bodyLength);
+            }
+            int frameLength = (buffer.remaining() >= HEADER_LENGTH) ? HEADER_LENGTH + buffer.getInt(buffer.position() + 8) : 0;
+            buffer.compact();
+            if (frameLength > buffer.capacity() || !buffer.hasRemaining()) {
+                // A value larger than the buffer
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(frameLength, buffer.capacity() * 2));
+                buffer.flip();
+                larger.put(buffer);
+                connection.readBuffer = larger;
+            }
+        }
+    }
+
+    /**
+     * @return true if the response completed a request.
+     */
+    private boolean handleResponse(Connection connection, ByteBuffer buffer, int start, int bodyLength) {
+        if (buffer.get(start) != RESPONSE_MAGIC) {
+            throw new IllegalStateException(String.format("Malformed response from server #%d.", connection.serverIndex));
+        }
+        byte opcode = buffer.get(start + 1);
+        int keyLength = buffer.getShort(start + 2) & 0xFFFF;
+        int extrasLength = buffer.get(start + 4) & 0xFF;
+        short status = buffer.getShort(start + 6);
+        int opaque = buffer.getInt(start + 12);
+        PendingRequest request = connection.pendingRequests.peek();
+        if (request == null || request.opaque != opaque) {
+            throw new IllegalStateException(String.format(
+                    "Response %d from server #%d does not match the oldest request.", opaque, connection.serverIndex));
+        }
+        if (opcode == OPCODE_NOOP) {
+            connection.pendingRequests.poll();
+            return complete(connection, request);
+        }
+        if (request.expired || opcode != OPCODE_GETKQ || status != STATUS_NO_ERROR) {
+            return false;
+        }
+        int flags = (extrasLength >= 4) ? buffer.getInt(start + HEADER_LENGTH) : 0;
+        int keyOffset = start + HEADER_LENGTH + extrasLength;
+        int valueLength = bodyLength - extrasLength - keyLength;
+        connection.appendValue(buffer, keyOffset, keyLength, flags, valueLength);
+        return false;
+    }
+
+    private boolean complete(Connection connection, PendingRequest request) {
+        if (request.expired) {
+            connection.expiredRequestsCount--;
+            connection.payloadLength = 0;
+            this.staleDatagramsCount++;
+            return false;
+        }
+        this.outstandingRequestsCount--;
+        onRequestCompleted(request.serverIndex);
+        this.rttEstimators[request.serverIndex].addSample(System.nanoTime() - request.sentNanoTime);
+        connection.append(END, 0, END.length);
+        MemcachedUDPResult result = new MemcachedUDPResult(
+                request.keys,
+                connection.payload,
+                0,
+                connection.payloadLength,
+                (short) 1,
+                (short) 1,
+                request.serverIndex,
+                request.serverIndex);
+        try {
+            request.callback.onResult(result);
+        } finally {
+            connection.payloadLength = 0;
+        }
+        return true;
+    }
+
+    private int expireRequests() {
+        int expired = 0;
+        long now = System.nanoTime();
+        for (Connection[] serverConnections : this.connections) {
+            for (Connection connection : serverConnections) {
+                PendingRequest request;
+                while ((request = connection.getOldestActiveRequest()) != null && request.deadline - now <= 0) {
+                    request.expired = true;
+                    connection.expiredRequestsCount++;
+                    this.outstandingRequestsCount--;
+                    onRequestCompleted(request.serverIndex);
+                    expired++;
+                    request.callback.onPacketLost(new MemcachedUDPClient.PacketLostException(
+                            request.keys,
+                            request.opaque,
+                            request.serverIndex,
+                            request.serverIndex,
+                            servers[request.serverIndex].toString(),
+                            ports[request.serverIndex],
+                            (short) 0,
+                            (short) 1));
+                }
+            }
+        }
+        return expired;
+    }
+
+    @Override
+    public int getOutstandingRequestsCount() {
+        return outstandingRequestsCount;
+    }
+
+    @Override
+    public void close() {
+        close(this.connections, this.selector);
+    }
+
+    private static void close(Connection[][] connections, Selector selector) {
+        for (Connection[] serverConnections : connections) {
+            for (Connection connection : serverConnections) {
+                if (connection != null) {
+                    try {
+                        connection.channel.close();
+                    } catch (IOException e) {
+                    }
+                }
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+        }
+    }
+
+    private static class Connection {
+        final int serverIndex;
+        final SocketChannel channel;
+        SelectionKey selectionKey;
+        // Both buffers are kept in write mode
+        ByteBuffer writeBuffer = ByteBuffer.allocate(CONNECTION_BUFFER_SIZE);
+        ByteBuffer readBuffer = ByteBuffer.allocate(CONNECTION_BUFFER_SIZE);
+        // In request order, timed out requests stay until their response arrives
+        final ArrayDeque<PendingRequest> pendingRequests = new ArrayDeque<>();
+        int expiredRequestsCount = 0;
+        // The ASCII response of the oldest request
+        byte[] payload = new byte[BUFFER_SIZE];
+        int payloadLength = 0;
+
+        Connection(int serverIndex, SocketChannel channel) {
+            this.serverIndex = serverIndex;
+            this.channel = channel;
+        }
+
+        PendingRequest getOldestActiveRequest() {
+            if (this.expiredRequestsCount == 0) {
+                return this.pendingRequests.peek();
+            }
+            for (PendingRequest request : this.pendingRequests) {
+                if (!request.expired) {
+                    return request;
+                }
+            }
+            return null;
+        }
+
+        void writeRequestHeader(byte opcode, int keyLength, int opaque) {
+            if (this.writeBuffer.remaining() < HEADER_LENGTH + keyLength) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(this.writeBuffer.capacity() * 2,
+                        this.writeBuffer.position() + HEADER_LENGTH + keyLength));
+                this.writeBuffer.flip();
+                larger.put(this.writeBuffer);
+                this.writeBuffer = larger;
+            }
+            this.writeBuffer.put(REQUEST_MAGIC);
+            this.writeBuffer.put(opcode);
+            this.writeBuffer.putShort((short) keyLength);
+            // extras length, data type and vbucket
+            this.writeBuffer.putInt(0);
+            this.writeBuffer.putInt(keyLength);
+            this.writeBuffer.putInt(opaque);
+            this.writeBuffer.putLong(0);
+        }
+
+        /**
+         * Appends "VALUE &lt;key&gt; &lt;flags&gt; &lt;bytes&gt;\r\n&lt;data&gt;\r\n".
+         */
+        void appendValue(ByteBuffer buffer, int keyOffset, int keyLength, int flags, int valueLength) {
+            append(VALUE_PREFIX, 0, VALUE_PREFIX.length);
+            append(buffer.array(), buffer.arrayOffset() + keyOffset, keyLength);
+            appendByte((byte) ' ');
+            appendNumber(flags & 0xFFFFFFFFL);
+            appendByte((byte) ' ');
+            appendNumber(valueLength);
+            append(CRLF, 0, CRLF.length);
+            append(buffer.array(), buffer.arrayOffset() + keyOffset + keyLength, valueLength);
+            append(CRLF, 0, CRLF.length);
+        }
+
+        void append(byte[] source, int offset, int length) {
+            ensurePayloadCapacity(length);
+            System.arraycopy(source, offset, this.payload, this.payloadLength, length);
+            this.payloadLength += length;
+        }
+
+        private void appendByte(byte b) {
+            ensurePayloadCapacity(1);
+            this.payload[this.payloadLength++] = b;
+        }
+
+        private void appendNumber(long value) {
+            ensurePayloadCapacity(20);
+            if (value == 0) {
+                this.payload[this.payloadLength++] = '0';
+                return;
+            }
+            int digits = 0;
+            for (long v = value; v > 0; v /= 10) {
+                digits++;
+            }
+            for (int i = this.payloadLength + digits - 1; i >= this.payloadLength; i--) {
+                this.payload[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            this.payloadLength += digits;
+        }
+
+        private void ensurePayloadCapacity(int length) {
+            if (this.payloadLength + length > this.payload.length) {
+                this.payload = Arrays.copyOf(this.payload, Math.max(this.payload.length * 2, this.payloadLength + length));
+            }
+        }
+    }
+
+    private static class PendingRequest {
+        final String[] keys;
+        final int opaque;
+        final int serverIndex;
+        final MemcachedUDPCallback callback;
+        final long sentNanoTime;
+        final long deadline;
+        boolean expired = false;
+
+        PendingRequest(String[] keys, int opaque, int serverIndex, MemcachedUDPCallback callback, long sentNanoTime, long deadline) {
+            this.keys = keys;
+            this.opaque = opaque;
+            this.serverIndex = serverIndex;
+            this.callback = callback;
+            this.sentNanoTime = sentNanoTime;
+            this.deadline = deadline;
+        }
+    }
+
+}
@@ -0,0 +1,402 @@
+package memcached_sdn.experiment.memcached;
+
+import memcached_sdn.experiment.memcached.routing.KeyRouter;
+import memcached_sdn.experiment.memcached.routing.ModuloKeyRouter;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking memcached UDP client allowing many outstanding get requests.
+ *
+ * Requests are tracked in a table indexed by the 16 bit memcached UDP request id, response fragments are
+ * reassembled per request and the request callback is invoked once all fragments arrived (or the request
+ * timed out, see {@link RetryPolicy}). Outstanding requests are also linked in deadline order: with a fixed
+ * timeout deadlines follow the send order, so requests are appended and removed when they complete in constant
+ * time (an adaptive timeout or a retry may insert a request a few places before the tail). The client is not thread safe - it is meant to be owned by a single thread which both issues
+ * requests and calls {@link #processEvents(long)}.
+ */
+public class MemcachedAsyncUDPClient extends AbstractMemcachedAsyncClient {
+
+    private static final int REQUEST_IDS_COUNT = 65536;
+
+    private final InetSocketAddress[] serverAddresses;
+    private final DatagramChannel[] channels;
+    private final Selector selector;
+    private final PendingRequest[] pendingRequests = new PendingRequest[REQUEST_IDS_COUNT];
+    // The outstanding requests by deadline, the head expires first
+    private PendingRequest timeoutHead = null;
+    private PendingRequest timeoutTail = null;
+    private final ByteBuffer sendBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final ArrayDeque<ResponseAssembler> freeAssemblers = new ArrayDeque<>();
+    private int nextRequestId = new Random().nextInt(REQUEST_IDS_COUNT);
+    private int outstandingRequestsCount = 0;
+
+    public MemcachedAsyncUDPClient(String[] servers, String bindAddress, int threadId) {
+        this(servers, bindAddress, threadId, new ModuloKeyRouter(servers.length));
+    }
+
+    public MemcachedAsyncUDPClient(String[] servers, String bindAddress, int threadId, KeyRouter router) {
+        this(servers, bindAddress, threadId, router, RetryPolicy.DEFAULT);
+    }
+
+    public MemcachedAsyncUDPClient(String[] servers, String bindAddress, int threadId, long timeoutMillis) {
+        this(servers, bindAddress, threadId, timeoutMillis, new ModuloKeyRouter(servers.length));
+    }
+
+    public MemcachedAsyncUDPClient(String[] servers, String bindAddress, int threadId, long timeoutMillis, KeyRouter router) {
+        this(servers, bindAddress, threadId, router, RetryPolicy.fixed(timeoutMillis));
+    }
+
+    public MemcachedAsyncUDPClient(String[] servers, String bindAddress, int threadId, KeyRouter router, RetryPolicy retryPolicy) {
+        super(servers, bindAddress, threadId, router, retryPolicy);
+        this.serverAddresses = new InetSocketAddress[servers.length];
+        for (int i = 0; i < servers.length; i++) {
+            this.serverAddresses[i] = new InetSocketAddress(this.servers[i], this.ports[i]);
+        }
+        this.channels = new DatagramChannel[servers.length];
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void verifyChannelCreated(int serverIndex) {
+        if (this.channels[serverIndex] == null) {
+            try {
+                DatagramChannel channel = DatagramChannel.open();
+                if (this.bindAddress != null) {
+                    print(this.threadId, String.format("memcached async client bound to: %s:%d", this.bindAddress, 0));
+                    channel.bind(new InetSocketAddress(this.bindAddress, 0));
+                }
+                channel.socket().setReceiveBufferSize(5000000);
+                channel.configureBlocking(false);
+                channel.register(this.selector, SelectionKey.OP_READ);
+                this.channels[serverIndex] = channel;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private int getNextRequestId() {
+        if (this.outstandingRequestsCount == REQUEST_IDS_COUNT) {
+            throw new IllegalStateException("All request ids are in use.");
+        }
+        while (this.pendingRequests[this.nextRequestId] != null) {
+            this.nextRequestId = (this.nextRequestId + 1) & 0xFFFF;
+        }
+        int requestId = this.nextRequestId;
+        this.nextRequestId = (this.nextRequestId + 1) & 0xFFFF;
+        return requestId;
+    }
+
+    @Override
+    public void get(String key, MemcachedUDPCallback callback) {
+        sendGetRequest(this.pickServer(key), new String[]{key}, callback);
+    }
+
+    /**
+     * Multi-get: keys are grouped by server and a single "get k1 k2 ... kn" request is sent to each server.
+     */
+    @Override
+    public void get(List<String> keys, MemcachedUDPCallback callback) {
+        final String[][] keysPerServer = groupKeysByServer(keys);
+        for (int i = 0; i < keysPerServer.length; i++) {
+            if (keysPerServer[i] != null) {
+                sendGetRequest(i, keysPerServer[i], callback);
+            }
+        }
+    }
+
+    private void sendGetRequest(int serverIndex, String[] keys, MemcachedUDPCallback callback) {
+        this.verifyChannelCreated(serverIndex);
+        int requestId = getNextRequestId();
+
+        sendBuffer.clear();
+        sendBuffer.limit(encodeGetRequest(keys, requestId, sendBuffer.array()));
+
+        long now = System.nanoTime();
+        PendingRequest request = new PendingRequest(keys, requestId, serverIndex, callback, now,
+                now + this.retryPolicy.getTimeoutNanos(this.rttEstimators[serverIndex], 0));
+        request.assembler = acquireAssembler();
+        this.pendingRequests[requestId] = request;
+        this.outstandingRequestsCount++;
+        linkTimeout(request);
+        onRequestSent(serverIndex);
+        send(serverIndex);
+    }
+
+    private void send(int serverIndex) {
+        try {
+            while (this.channels[serverIndex].send(sendBuffer, this.serverAddresses[serverIndex]) == 0) {
+                Thread.yield();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Re-sends a timed out request with a new request id, datagrams of the previous attempt become stale.
+     */
+    private void retry(PendingRequest request, long now) {
+        if (request.assembler.getPacketsCount() == 0) {
+            request.timeoutRetries++;
+            this.timeoutRetriesCount++;
+        } else {
+            request.fragmentRetries++;
+            this.fragmentRetriesCount++;
+        }
+        request.attempt++;
+        this.pendingRequests[request.requestId] = null;
+        request.requestId = getNextRequestId();
+        this.pendingRequests[request.requestId] = request;
+        request.assembler.reset();
+        request.deadline = now + this.retryPolicy.getTimeoutNanos(this.rttEstimators[request.serverIndex], request.attempt);
+        linkTimeout(request);
+
+        sendBuffer.clear();
+        sendBuffer.limit(encodeGetRequest(request.keys, request.requestId, sendBuffer.array()));
+        send(request.serverIndex);
+    }
+
+    /**
+     * Receives pending datagrams, waiting at most timeoutMillis for the first one, completes
+     * fully reassembled requests and fails requests which timed out.
+     * @return the number of requests completed (successfully or not) by this call.
+     */
+    @Override
+    public int processEvents(long timeoutMillis) {
+        int completed = 0;
+        try {
+            long waitMillis = timeoutMillis;
+            PendingRequest oldest = this.timeoutHead;
+            if (oldest != null) {
+                long untilTimeout = TimeUnit.NANOSECONDS.toMillis(oldest.deadline - System.nanoTime()) + 1;
+                waitMillis = Math.max(0, Math.min(waitMillis, untilTimeout));
+            }
+            int selected = (waitMillis > 0) ? this.selector.select(waitMillis) : this.selector.selectNow();
+            if (selected > 0) {
+                Iterator<SelectionKey> iterator = this.selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey selectionKey = iterator.next();
+                    iterator.remove();
+                    DatagramChannel channel = (DatagramChannel) selectionKey.channel();
+                    while (true) {
+                        receiveBuffer.clear();
+                        SocketAddress source = channel.receive(receiveBuffer);
+                        if (source == null) {
+                            break;
+                        }
+                        receiveBuffer.flip();
+                        if (handleDatagram((InetSocketAddress) source, receiveBuffer)) {
+                            completed++;
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return completed + expireRequests();
+    }
+
+    private boolean handleDatagram(InetSocketAddress source, ByteBuffer datagram) {
+        if (datagram.remaining() < 8) {
+            this.staleDatagramsCount++;
+            return false;
+        }
+        int requestId = datagram.getShort() & 0xFFFF;
+        short sequenceNumber = datagram.getShort();
+        short totalNumberOfPackets = datagram.getShort();
+        datagram.getShort();
+
+        PendingRequest request = this.pendingRequests[requestId];
+        if (request == null) {
+            // Response to a request which already completed or timed out
+            this.staleDatagramsCount++;
+            return false;
+        }
+        ResponseAssembler assembler = request.assembler;
+        if (!assembler.add(sequenceNumber, totalNumberOfPackets, datagram.array(), 0, datagram.limit())) {
+            this.staleDatagramsCount++;
+            return false;
+        }
+        if (request.responseServerIndex == -1) {
+            request.responseServerIndex = getServerIndex(source.getAddress());
+        }
+        if (!assembler.isComplete()) {
+            return false;
+        }
+        removePendingRequest(request);
+        if (request.attempt == 0) {
+            this.rttEstimators[request.serverIndex].addSample(System.nanoTime() - request.sentNanoTime);
+        }
+        assembler.assemble();
+        MemcachedUDPResult result = new MemcachedUDPResult(
+                request.keys,
+                assembler.getPayload(),
+                assembler.getPayloadOffset(),
+                assembler.getPayloadLength(),
+                assembler.getPacketsCount(),
+                assembler.getTotalNumberOfPackets(),
+                request.serverIndex,
+                request.responseServerIndex);
+        result.setRetries(request.timeoutRetries, request.fragmentRetries);
+        try {
+            request.callback.onResult(result);
+        } finally {
+            releaseAssembler(request);
+        }
+        return true;
+    }
+
+    private int expireRequests() {
+        int expired = 0;
+        long now = System.nanoTime();
+        while (this.timeoutHead != null && this.timeoutHead.deadline - now <= 0) {
+            PendingRequest request = this.timeoutHead;
+            if (request.attempt < this.retryPolicy.getMaximumRetries()) {
+                unlinkTimeout(request);
+                retry(request, now);
+                continue;
+            }
+            removePendingRequest(request);
+            expired++;
+            short packetsCount = request.assembler.getPacketsCount();
+            short totalNumberOfPackets = request.assembler.getTotalNumberOfPackets();
+            releaseAssembler(request);
+            request.callback.onPacketLost(new MemcachedUDPClient.PacketLostException(
+                    request.keys,
+                    request.requestId,
+                    request.serverIndex,
+                    request.responseServerIndex,
+                    servers[request.serverIndex].toString(),
+                    ports[request.serverIndex],
+                    packetsCount,
+                    totalNumberOfPackets,
+                    request.timeoutRetries,
+                    request.fragmentRetries));
+        }
+        return expired;
+    }
+
+    /**
+     * Inserts the request after the last request which does not expire later, searching from the tail.
+     */
+    private void linkTimeout(PendingRequest request) {
+        PendingRequest previous = this.timeoutTail;
+        while (previous != null && previous.deadline - request.deadline > 0) {
+            previous = previous.previous;
+        }
+        request.previous = previous;
+        request.next = (previous != null) ? previous.next : this.timeoutHead;
+        if (request.next != null) {
+            request.next.previous = request;
+        } else {
+            this.timeoutTail = request;
+        }
+        if (previous != null) {
+            previous.next = request;
+        } else {
+            this.timeoutHead = request;
+        }
+    }
+
+    private void unlinkTimeout(PendingRequest request) {
+        if (request.previous != null) {
+            request.previous.next = request.next;
+        } else {
+            this.timeoutHead = request.next;
+        }
+        if (request.next != null) {
+            request.next.previous = request.previous;
+        } else {
+            this.timeoutTail = request.previous;
+        }
+        request.previous = null;
+        request.next = null;
+    }
+
+    private ResponseAssembler acquireAssembler() {
+        ResponseAssembler assembler = this.freeAssemblers.poll();
+        if (assembler == null) {
+            assembler = new ResponseAssembler(BUFFER_SIZE);
+        }
+        assembler.reset();
+        return assembler;
+    }
+
+    private void releaseAssembler(PendingRequest request) {
+        this.freeAssemblers.push(request.assembler);
+        request.assembler = null;
+    }
+
+    private void removePendingRequest(PendingRequest request) {
+        unlinkTimeout(request);
+        this.pendingRequests[request.requestId] = null;
+        this.outstandingRequestsCount--;
+        onRequestCompleted(request.serverIndex);
+    }
+
+    @Override
+    public int getOutstandingRequestsCount() {
+        return outstandingRequestsCount;
+    }
+
+    @Override
+    public void close() {
+        for (DatagramChannel channel : this.channels) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+        try {
+            this.selector.close();
+        } catch (IOException e) {
+        }
+    }
+
+    private static class PendingRequest {
+        final String[] keys;
+        final int serverIndex;
+        final MemcachedUDPCallback callback;
+        final long sentNanoTime;
+        int requestId;
+        long deadline;
+        int attempt = 0;
+        int timeoutRetries = 0;
+        int fragmentRetries = 0;
+        ResponseAssembler assembler;
+        int responseServerIndex = -1;
+        // Neighbours in the deadline order
+        PendingRequest previous = null;
+        PendingRequest next = null;
+
+        PendingRequest(String[] keys, int requestId, int serverIndex, MemcachedUDPCallback callback, long sentNanoTime, long deadline) {
+            this.keys = keys;
+            this.requestId = requestId;
+            this.serverIndex = serverIndex;
+            this.callback = callback;
+            this.sentNanoTime = sentNanoTime;
+            this.deadline = deadline;
+        }
+    }
+
+}
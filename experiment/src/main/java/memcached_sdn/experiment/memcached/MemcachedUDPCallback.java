@@ -0,0 +1,16 @@
+package memcached_sdn.experiment.memcached;
+
+/**
+ * Completion callback for requests issued through {@link MemcachedAsyncUDPClient}.
+ * Callbacks are invoked on the thread calling {@link MemcachedAsyncUDPClient#processEvents(long)}.
+ */
+public interface MemcachedUDPCallback {
+
+    /**
+     * The result shares the client's receive buffers, its values must not be used after this method returns.
+     */
+    void onResult(MemcachedUDPResult result);
+
+    void onPacketLost(MemcachedUDPClient.PacketLostException e);
+
+}
@@ -1,60 +1,59 @@
 package memcached_sdn.experiment.memcached;
 
-import com.google.common.collect.Maps;
-import net.spy.memcached.DefaultHashAlgorithm;
+import com.google.common.base.Joiner;
+import memcached_sdn.experiment.memcached.routing.KeyRouter;
 
 import java.io.IOException;
 import java.net.*;
 import java.nio.ByteBuffer;
-import java.sql.Timestamp;
-import java.util.Map;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by idanmo on 1/9/16.
  */
-public class MemcachedUDPClient {
+public class MemcachedUDPClient extends AbstractMemcachedUDPClient {
 
-    private final Map<String, Integer> serverToIndex;
-    private InetAddress[] servers;
-    private int[] ports;
     private DatagramSocket[] sockets;
     private short nextRequestId = (short) new Random().nextInt(32767);
-    private String bindAddress = null;
-    private int threadId = -1;
+    // Get requests reuse the same buffers and packets
+    private final byte[] sendData = new byte[BUFFER_SIZE];
+    private final DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length);
+    private byte[] receiveData = new byte[BUFFER_SIZE];
+    private final DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
+    private final ResponseAssembler responseAssembler = new ResponseAssembler(BUFFER_SIZE);
+    // Multi-gets receive the responses of all their servers at once, over non-blocking channels of their own
+    private final BatchRequest[] batchRequests;
+    private Selector batchSelector = null;
+    private final ByteBuffer batchSendBuffer = ByteBuffer.wrap(sendData);
+    private final ByteBuffer batchReceiveBuffer = ByteBuffer.allocate(BUFFER_SIZE);
 
 
     public MemcachedUDPClient(final String[] servers) {
-        this.servers = new InetAddress[servers.length];
-        this.ports = new int[servers.length];
-        this.serverToIndex = Maps.newHashMap();
-        for (int i = 0; i < servers.length; i++) {
-            String[] values = servers[i].split(":");
-            try {
-                this.servers[i] = InetAddress.getByName(values[0]);
-                serverToIndex.put(this.servers[i].getHostAddress(), i);
-            } catch (UnknownHostException e) {
-                throw new RuntimeException(e);
-            }
-            if (values.length == 1) {
-                this.ports[i] = 11211;
-            } else {
-                this.ports[i] = Integer.parseInt(values[1]);
-            }
-        }
+        super(servers);
         this.sockets = new DatagramSocket[servers.length];
+        this.batchRequests = new BatchRequest[servers.length];
     }
 
     public MemcachedUDPClient(String[] servers, String bindAddress, int threadId) {
-        this(servers);
-        this.bindAddress = bindAddress;
-        this.threadId = threadId;
+        super(servers, bindAddress, threadId);
+        this.sockets = new DatagramSocket[servers.length];
+        this.batchRequests = new BatchRequest[servers.length];
     }
 
-    static void print(int threadId, String message) {
-        Timestamp timestamp = new Timestamp(new java.util.Date().getTime());
-        String thread = (threadId == -1)? "MAIN" : String.valueOf(threadId);
-        System.out.println(String.format("[%s] [t:%s] %s", timestamp, thread, message));
+    public MemcachedUDPClient(String[] servers, String bindAddress, int threadId, KeyRouter router) {
+        this(servers, bindAddress, threadId, router, RetryPolicy.DEFAULT);
+    }
+
+    public MemcachedUDPClient(String[] servers, String bindAddress, int threadId, KeyRouter router, RetryPolicy retryPolicy) {
+        super(servers, bindAddress, threadId, router, retryPolicy);
+        this.sockets = new DatagramSocket[servers.length];
+        this.batchRequests = new BatchRequest[servers.length];
     }
 
     private short getNextRequestId() {
@@ -66,11 +65,6 @@ public class MemcachedUDPClient {
         return requestId;
     }
 
-    protected int pickServer(String key) {
-        final long hash = DefaultHashAlgorithm.NATIVE_HASH.hash(key);
-        return (int) (hash % servers.length);
-    }
-
     private void verifySocketCreated(int serverIndex) {
         if (this.sockets[serverIndex] == null) {
             try {
@@ -94,7 +88,7 @@ public class MemcachedUDPClient {
     }
 
     public void set(String key, String value) {
-        int serverIndex = this.pickServer(key);
+        int serverIndex = this.router.route(key);
         this.verifySocketCreated(serverIndex);
         short requestId = getNextRequestId();
         String data = String.format(
@@ -136,105 +130,410 @@ public class MemcachedUDPClient {
         return buf.getShort();
     }
 
+    /**
+     * @return the result, its value being valid until the next request of the client.
+     */
     public MemcachedUDPResult get(String key) {
         int serverIndex = this.pickServer(key);
         this.verifySocketCreated(serverIndex);
         short requestId = getNextRequestId();
-        String data = String.format(
-                "get %s\r\n", key);
+        String[] keys = new String[]{key};
+        onRequestSent(serverIndex);
+        try {
+            long sentNanoTime = System.nanoTime();
+            sendGetRequest(serverIndex, requestId, keys);
+            return receiveGetResponse(serverIndex, requestId, keys, sentNanoTime);
+        } finally {
+            onRequestCompleted(serverIndex);
+        }
+    }
 
-        ByteBuffer buffer = ByteBuffer.allocate(4096);
-        buffer.putShort(requestId);
-        buffer.putShort((short)0x0000);
-        buffer.putShort((short)0x0001);
-        buffer.putShort((short)0x0000);
-        buffer.put(data.getBytes());
+    /**
+     * Multi-get: keys are grouped by server and a single "get k1 k2 ... kn" request is sent to each server.
+     * All requests are sent before any response is read and the responses of all the servers are received
+     * as they arrive, so a slow or retried server does not hold the others' responses past their deadlines.
+     * Once every server answered or timed out the callback is invoked once per server (in server order)
+     * with the keys of that server. Result values are only valid during the callback.
+     */
+    public void get(List<String> keys, MemcachedUDPCallback callback) {
+        final String[][] keysPerServer = groupKeysByServer(keys);
+        int pendingCount = 0;
+        try {
+            for (int i = 0; i < keysPerServer.length; i++) {
+                if (keysPerServer[i] == null) {
+                    if (this.batchRequests[i] != null) {
+                        this.batchRequests[i].keys = null;
+                    }
+                    continue;
+                }
+                BatchRequest request = this.verifyBatchChannelCreated(i);
+                request.start(keysPerServer[i], getNextRequestId());
+                onRequestSent(i);
+                request.sentNanoTime = System.nanoTime();
+                request.deadline = request.sentNanoTime + this.retryPolicy.getTimeoutNanos(this.rttEstimators[i], 0);
+                sendBatchRequest(request);
+                pendingCount++;
+            }
+            while (pendingCount > 0) {
+                long waitNanos = Long.MAX_VALUE;
+                long now = System.nanoTime();
+                for (BatchRequest request : this.batchRequests) {
+                    if (request != null && request.pending) {
+                        waitNanos = Math.min(waitNanos, request.deadline - now);
+                    }
+                }
+                // Responses which already arrived are read before their requests can time out
+                pendingCount -= receiveBatchResponses(waitNanos);
+                pendingCount -= expireBatchRequests();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            for (BatchRequest request : this.batchRequests) {
+                if (request != null && request.pending) {
+                    completeBatchRequest(request);
+                }
+            }
+        }
+        for (BatchRequest request : this.batchRequests) {
+            if (request == null || request.keys == null) {
+                continue;
+            }
+            if (request.packetLost != null) {
+                callback.onPacketLost(request.packetLost);
+                continue;
+            }
+            ResponseAssembler assembler = request.assembler;
+            assembler.assemble();
+            MemcachedUDPResult result = new MemcachedUDPResult(
+                    request.keys,
+                    assembler.getPayload(),
+                    assembler.getPayloadOffset(),
+                    assembler.getPayloadLength(),
+                    assembler.getPacketsCount(),
+                    assembler.getTotalNumberOfPackets(),
+                    request.serverIndex,
+                    request.responseServerIndex);
+            result.setRetries(request.timeoutRetries, request.fragmentRetries);
+            callback.onResult(result);
+        }
+    }
 
-        InetAddress address = this.servers[serverIndex];
-        int port = this.ports[serverIndex];
-        DatagramPacket sendPacket = new DatagramPacket(buffer.array(), buffer.position(), address, port);
-        DatagramSocket socket = this.sockets[serverIndex];
+    private BatchRequest verifyBatchChannelCreated(int serverIndex) {
+        if (this.batchRequests[serverIndex] == null) {
+            try {
+                if (this.batchSelector == null) {
+                    this.batchSelector = Selector.open();
+                }
+                DatagramChannel channel = DatagramChannel.open();
+                if (this.bindAddress != null) {
+                    print(this.threadId, String.format("memcached multi-get client bound to: %s:%d", this.bindAddress, 0));
+                    channel.bind(new InetSocketAddress(this.bindAddress, 0));
+                }
+                channel.socket().setReceiveBufferSize(5000000);
+                channel.configureBlocking(false);
+                BatchRequest request = new BatchRequest(serverIndex, channel,
+                        new InetSocketAddress(this.servers[serverIndex], this.ports[serverIndex]));
+                channel.register(this.batchSelector, SelectionKey.OP_READ, request);
+                this.batchRequests[serverIndex] = request;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return this.batchRequests[serverIndex];
+    }
+
+    private void sendBatchRequest(BatchRequest request) throws IOException {
+        this.batchSendBuffer.clear();
+        this.batchSendBuffer.limit(encodeGetRequest(request.keys, request.requestId, this.sendData));
+        while (request.channel.send(this.batchSendBuffer, request.address) == 0) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Reads the datagrams of all the ready channels, waiting at most waitNanos for the first one.
+     * @return the number of requests completed by this call.
+     */
+    private int receiveBatchResponses(long waitNanos) throws IOException {
+        long waitMillis = (waitNanos > 0) ? TimeUnit.NANOSECONDS.toMillis(waitNanos + 999999) : 0;
+        int selected = (waitMillis > 0) ? this.batchSelector.select(waitMillis) : this.batchSelector.selectNow();
+        if (selected == 0) {
+            return 0;
+        }
+        int completed = 0;
+        Iterator<SelectionKey> iterator = this.batchSelector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+            SelectionKey selectionKey = iterator.next();
+            iterator.remove();
+            BatchRequest request = (BatchRequest) selectionKey.attachment();
+            while (true) {
+                this.batchReceiveBuffer.clear();
+                SocketAddress source = request.channel.receive(this.batchReceiveBuffer);
+                if (source == null) {
+                    break;
+                }
+                if (handleBatchDatagram(request, (InetSocketAddress) source, this.batchReceiveBuffer.position())) {
+                    completed++;
+                }
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * @return true if the datagram completed the request's response.
+     */
+    private boolean handleBatchDatagram(BatchRequest request, InetSocketAddress source, int length) {
+        byte[] datagram = this.batchReceiveBuffer.array();
+        if (!request.pending || length < HEADER_SIZE || getShort(datagram, 0) != request.requestId
+                || !request.assembler.add(getShort(datagram, 2), getShort(datagram, 4), datagram, 0, length)) {
+            this.staleDatagramsCount++;
+            return false;
+        }
+        if (request.responseServerIndex == -1) {
+            request.responseServerIndex = getServerIndex(source.getAddress());
+        }
+        if (!request.assembler.isComplete()) {
+            return false;
+        }
+        long now = System.nanoTime();
+        // A response read after its deadline may have waited for the client, it is not an RTT sample
+        if (request.attempt == 0 && request.deadline - now > 0) {
+            this.rttEstimators[request.serverIndex].addSample(now - request.sentNanoTime);
+        }
+        completeBatchRequest(request);
+        return true;
+    }
+
+    /**
+     * Re-sends the timed out requests which have retries left, fails the others.
+     * @return the number of failed requests.
+     */
+    private int expireBatchRequests() throws IOException {
+        int expired = 0;
+        long now = System.nanoTime();
+        for (BatchRequest request : this.batchRequests) {
+            if (request == null || !request.pending || request.deadline - now > 0) {
+                continue;
+            }
+            ResponseAssembler assembler = request.assembler;
+            if (request.attempt == this.retryPolicy.getMaximumRetries()) {
+                request.packetLost = new PacketLostException(
+                        request.keys,
+                        request.requestId,
+                        request.serverIndex,
+                        request.responseServerIndex,
+                        servers[request.serverIndex].toString(),
+                        ports[request.serverIndex],
+                        assembler.getPacketsCount(),
+                        assembler.getTotalNumberOfPackets(),
+                        request.timeoutRetries,
+                        request.fragmentRetries);
+                completeBatchRequest(request);
+                expired++;
+                continue;
+            }
+            if (assembler.getPacketsCount() == 0) {
+                request.timeoutRetries++;
+                this.timeoutRetriesCount++;
+            } else {
+                request.fragmentRetries++;
+                this.fragmentRetriesCount++;
+            }
+            request.attempt++;
+            request.requestId = getNextRequestId();
+            assembler.reset();
+            sendBatchRequest(request);
+            request.deadline = System.nanoTime() + this.retryPolicy.getTimeoutNanos(this.rttEstimators[request.serverIndex], request.attempt);
+        }
+        return expired;
+    }
+
+    private void completeBatchRequest(BatchRequest request) {
+        request.pending = false;
+        onRequestCompleted(request.serverIndex);
+    }
+
+    private void sendGetRequest(int serverIndex, short requestId, String[] keys) {
+        send(serverIndex, encodeGetRequest(keys, requestId, this.sendData));
+    }
+
+    private void send(int serverIndex, int length) {
+        this.sendPacket.setData(this.sendData, 0, length);
+        this.sendPacket.setAddress(this.servers[serverIndex]);
+        this.sendPacket.setPort(this.ports[serverIndex]);
         //TraceableLogger.append(">>> sending request -> key=" + key + ", request.id=" + requestId + ", destination=" + address.toString() + ":" + port);
-        short totalNumberOfPackets = -1;
-        short packetsCounter = 0;
-        int responseServerIndex = -1;
         try {
-            socket.send(sendPacket);
-            byte[] receiveData = new byte[4096];
-            DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
-
-            short sequenceNumber = -1;
+            this.sockets[serverIndex].send(this.sendPacket);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
 
-            String[] responseArray = null;
+    /**
+     * Waits for all the datagrams of the response until the policy's timeout, re-sending the request with a new
+     * request id while retries are left. Datagrams of other request ids (late responses of earlier requests
+     * or attempts) are counted as stale and ignored.
+     */
+    private MemcachedUDPResult receiveGetResponse(int serverIndex, short requestId, String[] keys, long sentNanoTime) {
+        DatagramSocket socket = this.sockets[serverIndex];
+        ResponseAssembler assembler = this.responseAssembler;
+        RttEstimator rttEstimator = this.rttEstimators[serverIndex];
+        assembler.reset();
+        int responseServerIndex = -1;
+        int attempt = 0;
+        int timeoutRetries = 0;
+        int fragmentRetries = 0;
+        long deadline = sentNanoTime + this.retryPolicy.getTimeoutNanos(rttEstimator, attempt);
+        try {
+            while (!assembler.isComplete()) {
+                long remainingNanos = deadline - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    if (attempt == this.retryPolicy.getMaximumRetries()) {
+                        throw new PacketLostException(
+                                keys,
+                                requestId,
+                                serverIndex,
+                                responseServerIndex,
+                                servers[serverIndex].toString(),
+                                ports[serverIndex],
+                                assembler.getPacketsCount(),
+                                assembler.getTotalNumberOfPackets(),
+                                timeoutRetries,
+                                fragmentRetries);
+                    }
+                    if (assembler.getPacketsCount() == 0) {
+                        timeoutRetries++;
+                        this.timeoutRetriesCount++;
+                    } else {
+                        fragmentRetries++;
+                        this.fragmentRetriesCount++;
+                    }
+                    attempt++;
+                    requestId = getNextRequestId();
+                    assembler.reset();
+                    sendGetRequest(serverIndex, requestId, keys);
+                    deadline = System.nanoTime() + this.retryPolicy.getTimeoutNanos(rttEstimator, attempt);
+                    continue;
+                }
 
-            while (sequenceNumber + 1 != totalNumberOfPackets) {
-                socket.receive(receivePacket);
+                socket.setSoTimeout((int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos + 999999)));
+                receivePacket.setData(receiveData);
+                try {
+                    socket.receive(receivePacket);
+                } catch (SocketTimeoutException e) {
+                    continue;
+                }
                 byte[] receivedData = receivePacket.getData();
-                String response = new String(receivedData).substring(0, receivePacket.getLength());
 
-                ByteBuffer responseBuffer = ByteBuffer.wrap(receivedData);
-                short receivedRequestId = responseBuffer.getShort();
-                if (requestId != receivedRequestId) {
-                    throw new RuntimeException(String.format("sentRequestId != receivedRequestId [%d != %d]", requestId, receivedRequestId));
+                if (receivePacket.getLength() < HEADER_SIZE || getShort(receivedData, 0) != requestId) {
+                    this.staleDatagramsCount++;
+                    continue;
                 }
 
-                packetsCounter++;
-                sequenceNumber = responseBuffer.getShort();
-                totalNumberOfPackets = responseBuffer.getShort();
+                short sequenceNumber = getShort(receivedData, 2);
+                short totalNumberOfPackets = getShort(receivedData, 4);
 
                 if (responseServerIndex == -1) {
-                    responseServerIndex = serverToIndex.get(receivePacket.getAddress().getHostAddress());
+                    responseServerIndex = getServerIndex(receivePacket.getAddress());
                 }
 
 //                TraceableLogger.append(">>> packet >>> start " + requestId);
 //                TraceableLogger.append("packet.length=" + receivePacket.getLength());
 //                TraceableLogger.append("request.id=" + requestId);
-//                TraceableLogger.append("* request.id=" + receivedRequestId);
 //                TraceableLogger.append("sequence.number=" + sequenceNumber);
 //                TraceableLogger.append("total_packets=" + totalNumberOfPackets);
-//                TraceableLogger.append("response.length=" + response.length());
 //                TraceableLogger.append(">>> packet >>> end " + requestId);
 
-                response = response.substring(8);
-
-                if (responseArray == null) {
-                    responseArray = new String[totalNumberOfPackets];
-                }
-
-                responseArray[sequenceNumber] = response;
+                // The received buffer is kept by the assembler, the next datagram goes to the one it hands back
+                receiveData = assembler.swap(sequenceNumber, totalNumberOfPackets, receivedData, receivePacket.getLength());
             }
-
-            return new MemcachedUDPResult(responseArray, packetsCounter, totalNumberOfPackets, serverIndex, responseServerIndex);
-
         } catch (IOException e) {
-            if (e instanceof SocketTimeoutException) {
-                throw new PacketLostException(
-                        key,
-                        requestId,
-                        serverIndex,
-                        responseServerIndex,
-                        servers[serverIndex].toString(),
-                        ports[serverIndex],
-                        packetsCounter,
-                        totalNumberOfPackets);
-            } else {
-                throw new RuntimeException(e);
-            }
+            throw new RuntimeException(e);
         }
 
-
+        if (attempt == 0) {
+            rttEstimator.addSample(System.nanoTime() - sentNanoTime);
+        }
+        assembler.assemble();
+        MemcachedUDPResult result = new MemcachedUDPResult(
+                keys,
+                assembler.getPayload(),
+                assembler.getPayloadOffset(),
+                assembler.getPayloadLength(),
+                assembler.getPacketsCount(),
+                assembler.getTotalNumberOfPackets(),
+                serverIndex,
+                responseServerIndex);
+        result.setRetries(timeoutRetries, fragmentRetries);
+        return result;
     }
 
+    @Override
     public void close() {
         for (DatagramSocket ds : this.sockets) {
             if (ds != null) {
                 ds.close();
             }
         }
+        for (BatchRequest request : this.batchRequests) {
+            if (request != null) {
+                try {
+                    request.channel.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+        if (this.batchSelector != null) {
+            try {
+                this.batchSelector.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    /**
+     * The multi-get request of a server, reused by the following multi-gets.
+     */
+    private static class BatchRequest {
+        final int serverIndex;
+        final DatagramChannel channel;
+        final InetSocketAddress address;
+        final ResponseAssembler assembler = new ResponseAssembler(BUFFER_SIZE);
+        String[] keys = null;
+        short requestId;
+        long sentNanoTime;
+        long deadline;
+        int attempt;
+        int timeoutRetries;
+        int fragmentRetries;
+        int responseServerIndex;
+        boolean pending = false;
+        PacketLostException packetLost;
+
+        BatchRequest(int serverIndex, DatagramChannel channel, InetSocketAddress address) {
+            this.serverIndex = serverIndex;
+            this.channel = channel;
+            this.address = address;
+        }
+
+        void start(String[] keys, short requestId) {
+            this.keys = keys;
+            this.requestId = requestId;
+            this.attempt = 0;
+            this.timeoutRetries = 0;
+            this.fragmentRetries = 0;
+            this.responseServerIndex = -1;
+            this.packetLost = null;
+            this.pending = true;
+            this.assembler.reset();
+        }
     }
 
     public static class PacketLostException extends RuntimeException {
         public final String key;
+        public final String[] keys;
         public final int requestId;
         public final int serverIndex;
         public final int responseServerIndex;
@@ -242,17 +541,36 @@ public class MemcachedUDPClient {
         public final int port;
         public final short receivedPacketsCount;
         public final short totalNumberOfPackets;
+        public final int timeoutRetries;
+        public final int fragmentRetries;
 
         public PacketLostException(String key, int requestId, int serverIndex, int responseServerIndex, String serverAddress, int port, short receivedPacketsCount, short totalNumberOfPackets) {
-            super(String.format("Error in get operation [key=%s, requestId=%d, serverIndex=%d, server=%s:%d, receivedPackets=%d, totalPackets=%d]",
-                    key,
+            this(new String[]{key}, requestId, serverIndex, responseServerIndex, serverAddress, port, receivedPacketsCount, totalNumberOfPackets);
+        }
+
+        public PacketLostException(String[] keys, int requestId, int serverIndex, int responseServerIndex, String serverAddress, int port, short receivedPacketsCount, short totalNumberOfPackets) {
+            this(keys, requestId, serverIndex, responseServerIndex, serverAddress, port, receivedPacketsCount, totalNumberOfPackets, 0, 0);
+        }
+
+        /**
+         * @param keys all the keys of the lost (multi-get) request, key holds them space separated.
+         * @param requestId the request id of the last attempt.
+         * @param timeoutRetries retries of attempts which received no datagram.
+         * @param fragmentRetries retries of attempts which received only some of the response datagrams.
+         */
+        public PacketLostException(String[] keys, int requestId, int serverIndex, int responseServerIndex, String serverAddress, int port, short receivedPacketsCount, short totalNumberOfPackets, int timeoutRetries, int fragmentRetries) {
+            super(String.format("Error in get operation [key=%s, requestId=%d, serverIndex=%d, server=%s:%d, receivedPackets=%d, totalPackets=%d, retries=%d/%d]",
+                    Joiner.on(' ').join(keys),
                     requestId,
                     serverIndex,
                     serverAddress,
                     port,
                     receivedPacketsCount,
-                    totalNumberOfPackets));
-            this.key = key;
+                    totalNumberOfPackets,
+                    timeoutRetries,
+                    fragmentRetries));
+            this.key = Joiner.on(' ').join(keys);
+            this.keys = keys;
             this.requestId = requestId;
             this.serverIndex = serverIndex;
             this.responseServerIndex = responseServerIndex;
@@ -260,6 +578,8 @@ public class MemcachedUDPClient {
             this.port = port;
             this.receivedPacketsCount = receivedPacketsCount;
             this.totalNumberOfPackets = totalNumberOfPackets;
+            this.timeoutRetries = timeoutRetries;
+            this.fragmentRetries = fragmentRetries;
         }
     }
 
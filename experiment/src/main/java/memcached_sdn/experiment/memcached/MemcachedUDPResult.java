@@ -1,37 +1,96 @@
 package memcached_sdn.experiment.memcached;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Created by idanmo on 3/11/16.
+ *
+ * The response payload is not copied out of the client's buffers, so it is only valid until the next request
+ * of a blocking client, or until the callback of a non-blocking client returns.
  */
 public class MemcachedUDPResult {
-    private final String[] responseArray;
+
+    private static final Charset CHARSET = Charset.forName("US-ASCII");
+
+    private final String[] keys;
+    private final byte[] payload;
+    private final int payloadOffset;
+    private final int payloadLength;
     private final short packetsCount;
     private final short totalNumberOfPackets;
     private final int serverIndex;
     private final int responseServerIndex;
+    private int timeoutRetries = 0;
+    private int fragmentRetries = 0;
 
-    public MemcachedUDPResult(String[] responseArray, short packetsCount, short totalNumberOfPackets, int serverIndex, int responseServerIndex) {
-        this.responseArray = responseArray;
+    /**
+     * @param keys the requested keys, all of them mapped to the same server.
+     * @param payload the response without the frame headers, fragments concatenated in sequence order.
+     */
+    public MemcachedUDPResult(String[] keys, byte[] payload, int payloadOffset, int payloadLength, short packetsCount, short totalNumberOfPackets, int serverIndex, int responseServerIndex) {
+        this.keys = keys;
+        this.payload = payload;
+        this.payloadOffset = payloadOffset;
+        this.payloadLength = payloadLength;
         this.packetsCount = packetsCount;
         this.totalNumberOfPackets = totalNumberOfPackets;
         this.serverIndex = serverIndex;
         this.responseServerIndex = responseServerIndex;
     }
 
+    /**
+     * @return a cursor over the VALUE entries of the response.
+     */
+    public ValueCursor values() {
+        if (hasPacketsLost()) {
+            throw new IllegalStateException(String.format(
+                    "Response is missing %d of %d packets.", getPacketsLost(), totalNumberOfPackets));
+        }
+        return new ValueCursor();
+    }
+
+    /**
+     * @return the first value of the response.
+     * @throws IllegalStateException if the response has no value.
+     */
     public String getValue() {
-        final StringBuffer concatenatedResult = new StringBuffer();
-        for (String s : responseArray) {
-            concatenatedResult.append(s);
-        }
-        String[] values = concatenatedResult.toString().split("\r\n");
-        if (values.length > 0 && values[0].startsWith("VALUE")) {
-            for (int i = 1; i < values.length; i++) {
-                if (values[i].equals("END")) {
-                    return values[i-1];
-                }
-            }
+        ValueCursor cursor = values();
+        if (!cursor.next()) {
+            throw new IllegalStateException();
         }
-        throw new IllegalStateException();
+        return cursor.getValueString();
+    }
+
+    /**
+     * Copies the first value of the response into the provided buffer.
+     * @return the value length, or -1 if the response has no value.
+     */
+    public int copyValue(byte[] destination, int offset) {
+        ValueCursor cursor = values();
+        return cursor.next() ? cursor.copyValue(destination, offset) : -1;
+    }
+
+    /**
+     * Parses a (possibly multi-get) response.
+     * @return the returned values by key in response order, keys missing from the cache are not included.
+     */
+    public Map<String, String> getValues() {
+        final Map<String, String> values = new LinkedHashMap<>();
+        ValueCursor cursor = values();
+        while (cursor.next()) {
+            values.put(cursor.getKey(), cursor.getValueString());
+        }
+        return values;
+    }
+
+    /**
+     * @return the requested keys.
+     */
+    public String[] getKeys() {
+        return keys;
     }
 
     public int getServerIndex() {
@@ -42,6 +101,23 @@ public class MemcachedUDPResult {
         return responseServerIndex;
     }
 
+    /**
+     * @param timeoutRetries retries of attempts which received no datagram.
+     * @param fragmentRetries retries of attempts which received only some of the response datagrams.
+     */
+    public void setRetries(int timeoutRetries, int fragmentRetries) {
+        this.timeoutRetries = timeoutRetries;
+        this.fragmentRetries = fragmentRetries;
+    }
+
+    public int getTimeoutRetries() {
+        return timeoutRetries;
+    }
+
+    public int getFragmentRetries() {
+        return fragmentRetries;
+    }
+
     public int getPacketsLost() {
         return totalNumberOfPackets - packetsCount;
     }
@@ -57,4 +133,156 @@ public class MemcachedUDPResult {
     public short getPacketsCount() {
         return packetsCount;
     }
+
+    /**
+     * Streams over "VALUE &lt;key&gt; &lt;flags&gt; &lt;bytes&gt; [&lt;cas&gt;]\r\n&lt;data&gt;\r\n" entries up to "END\r\n".
+     * Values are located by their length, so they may contain any bytes (CRLF included).
+     */
+    public class ValueCursor {
+
+        private final int end = payloadOffset + payloadLength;
+        private int position = payloadOffset;
+        private int keyOffset;
+        private int keyLength;
+        private int flags;
+        private int valueOffset = -1;
+        private int valueLength;
+
+        private ValueCursor() {
+        }
+
+        /**
+         * Advances to the next value.
+         * @return false once END was reached.
+         */
+        public boolean next() {
+            if (startsWith(position, "END\r\n")) {
+                valueOffset = -1;
+                return false;
+            }
+            if (!startsWith(position, "VALUE ")) {
+                throw malformed();
+            }
+            keyOffset = position + 6;
+            int keyEnd = indexOf(keyOffset, (byte) ' ');
+            keyLength = keyEnd - keyOffset;
+            position = keyEnd + 1;
+            flags = (int) parseNumber();
+            valueLength = (int) parseNumber();
+            if (payload[position - 1] == ' ') {
+                // cas unique
+                parseNumber();
+            }
+            if (payload[position - 1] != '\n' || payload[position - 2] != '\r') {
+                throw malformed();
+            }
+            valueOffset = position;
+            position += valueLength;
+            if (!startsWith(position, "\r\n")) {
+                throw malformed();
+            }
+            position += 2;
+            return true;
+        }
+
+        /**
+         * Parses a decimal number followed by a space or CRLF, leaving the position after the separator.
+         */
+        private long parseNumber() {
+            long value = 0;
+            int start = position;
+            while (position < end && payload[position] >= '0' && payload[position] <= '9') {
+                value = value * 10 + (payload[position] - '0');
+                position++;
+            }
+            if (position == start || position >= end) {
+                throw malformed();
+            }
+            if (payload[position] == ' ') {
+                position++;
+            } else if (startsWith(position, "\r\n")) {
+                position += 2;
+            } else {
+                throw malformed();
+            }
+            return value;
+        }
+
+        private int indexOf(int from, byte b) {
+            for (int i = from; i < end; i++) {
+                if (payload[i] == b) {
+                    return i;
+                }
+            }
+            throw malformed();
+        }
+
+        private boolean startsWith(int from, String s) {
+            if (from + s.length() > end) {
+                return false;
+            }
+            for (int i = 0; i < s.length(); i++) {
+                if (payload[from + i] != s.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private IllegalStateException malformed() {
+            return new IllegalStateException("Malformed response: " + new String(payload, payloadOffset, payloadLength, CHARSET));
+        }
+
+        private void verifyValue() {
+            if (valueOffset == -1) {
+                throw new IllegalStateException("No current value.");
+            }
+        }
+
+        public String getKey() {
+            verifyValue();
+            return new String(payload, keyOffset, keyLength, CHARSET);
+        }
+
+        /**
+         * Compares the current key without decoding it.
+         */
+        public boolean keyEquals(String key) {
+            verifyValue();
+            return key.length() == keyLength && startsWith(keyOffset, key);
+        }
+
+        public int getFlags() {
+            verifyValue();
+            return flags;
+        }
+
+        public int getValueLength() {
+            verifyValue();
+            return valueLength;
+        }
+
+        /**
+         * @return a read only view of the current value, sharing the result's buffer.
+         */
+        public ByteBuffer getValueBuffer() {
+            verifyValue();
+            return ByteBuffer.wrap(payload, valueOffset, valueLength).slice().asReadOnlyBuffer();
+        }
+
+        /**
+         * @return the value length.
+         */
+        public int copyValue(byte[] destination, int offset) {
+            verifyValue();
+            System.arraycopy(payload, valueOffset, destination, offset, valueLength);
+            return valueLength;
+        }
+
+        public String getValueString() {
+            verifyValue();
+            return new String(payload, valueOffset, valueLength);
+        }
+    }
+
 }
@@ -0,0 +1,247 @@
+package memcached_sdn.experiment.memcached;
+
+import memcached_sdn.experiment.helpers.KeyValuePair;
+import memcached_sdn.experiment.helpers.ObjectsDataset;
+import memcached_sdn.experiment.memcached.replication.HotKeyReplicator;
+import memcached_sdn.experiment.memcached.routing.KeyRouter;
+import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.transcoders.SerializingTranscoder;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Writes the experiment objects to the servers their gets are routed to (over TCP).
+ *
+ * Every connection is written by its own thread, which keeps up to window sets in flight and only waits for
+ * the oldest one when the window is full, so the load is limited by bandwidth rather than round trips.
+ * Objects of a server are split round robin between its connections.
+ */
+public class ObjectsPreloader {
+
+    private static final long PROGRESS_INTERVAL_MILLIS = 1000;
+
+    private final KeyRouter router;
+    private final int window;
+    private final Logger logger;
+    // [connection][server]
+    private final MemcachedClient[][] clients;
+    private final SerializingTranscoder transcoder = new SerializingTranscoder();
+    private final AtomicLong writtenObjectsCount = new AtomicLong(0);
+    private final AtomicLong writtenBytesCount = new AtomicLong(0);
+
+    public ObjectsPreloader(String[] servers, KeyRouter router, int connectionsPerServer, int window, Logger logger) {
+        if (connectionsPerServer < 1 || window < 1) {
+            throw new IllegalArgumentException("Preload connections and window must be positive.");
+        }
+        this.router = router;
+        this.window = window;
+        this.logger = logger;
+        this.transcoder.setCompressionThreshold(Integer.MAX_VALUE);
+        this.clients = new MemcachedClient[connectionsPerServer][];
+        try {
+            for (int i = 0; i < connectionsPerServer; i++) {
+                this.clients[i] = HotKeyReplicator.createMemcachedClients(servers);
+            }
+        } catch (RuntimeException e) {
+            shutdown(this.clients);
+            throw e;
+        }
+    }
+
+    /**
+     * Splits the objects by the server they are routed to, and the objects of a server round robin
+     * between its connections. Partitions only keep the objects' indexes, so objects derived on demand
+     * (e.g. an {@link ObjectsDataset}) are not all created at once.
+     * @return objects lists indexed by [connection][server].
+     */
+    public static List<KeyValuePair<String, String>>[][] partition(
+            List<KeyValuePair<String, String>> objects, KeyRouter router, int serversCount, int connectionsPerServer) {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final List<KeyValuePair<String, String>>[][] partitions = new List[connectionsPerServer][serversCount];
+        final int expectedSize = objects.size() / (serversCount * connectionsPerServer) + 1;
+        for (int i = 0; i < connectionsPerServer; i++) {
+            for (int j = 0; j < serversCount; j++) {
+                partitions[i][j] = new ObjectsSubset(objects, expectedSize);
+            }
+        }
+        final int[] objectsPerServer = new int[serversCount];
+        for (int index = 0; index < objects.size(); index++) {
+            int serverIndex = router.route(objects.get(index).getKey());
+            ((ObjectsSubset) partitions[objectsPerServer[serverIndex]++ % connectionsPerServer][serverIndex]).addIndex(index);
+        }
+        return partitions;
+    }
+
+    public void load(final List<KeyValuePair<String, String>> objects) {
+        final List<KeyValuePair<String, String>>[][] partitions =
+                partition(objects, this.router, this.clients[0].length, this.clients.length);
+        final ExecutorService executorService = Executors.newFixedThreadPool(this.clients.length * this.clients[0].length);
+        final List<Future<Void>> futures = new ArrayList<>();
+        final long startTime = System.nanoTime();
+        try {
+            for (int i = 0; i < this.clients.length; i++) {
+                for (int j = 0; j < this.clients[i].length; j++) {
+                    final MemcachedClient client = this.clients[i][j];
+                    final List<KeyValuePair<String, String>> partition = partitions[i][j];
+                    futures.add(executorService.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            write(client, partition);
+                            return null;
+                        }
+                    }));
+                }
+            }
+            executorService.shutdown();
+            while (!executorService.awaitTermination(PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                logProgress(objects.size(), startTime);
+                for (Future<Void> future : futures) {
+                    if (future.isDone()) {
+                        // Fail fast instead of waiting for the other connections
+                        future.get();
+                    }
+                }
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+            logProgress(objects.size(), startTime);
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private void write(MemcachedClient client, List<KeyValuePair<String, String>> objects) throws Exception {
+        final ArrayDeque<Future<Boolean>> inFlight = new ArrayDeque<>(this.window);
+        final ArrayDeque<KeyValuePair<String, String>> inFlightPairs = new ArrayDeque<>(this.window);
+        for (KeyValuePair<String, String> pair : objects) {
+            if (inFlight.size() == this.window) {
+                complete(inFlight.poll(), inFlightPairs.poll());
+            }
+            inFlight.add(client.set(pair.getKey(), 0, pair.getValue(), this.transcoder));
+            inFlightPairs.add(pair);
+        }
+        while (!inFlight.isEmpty()) {
+            complete(inFlight.poll(), inFlightPairs.poll());
+        }
+    }
+
+    private void complete(Future<Boolean> future, KeyValuePair<String, String> pair) throws Exception {
+        if (!future.get()) {
+            throw new RuntimeException("Error storing key " + pair.getKey());
+        }
+        this.writtenObjectsCount.incrementAndGet();
+        this.writtenBytesCount.addAndGet(pair.getKey().length() + ObjectsDataset.getValueSize(pair));
+    }
+
+    private void logProgress(int objectsCount, long startTime) {
+        final long written = this.writtenObjectsCount.get();
+        final double seconds = Math.max(1, System.nanoTime() - startTime) / 1e9;
+        this.logger.info(String.format("Preloaded %d/%d objects (%.1f%%) in %.1f seconds: %.0f objects/s, %.2f MB/s",
+                written, objectsCount, 100.0 * written / Math.max(1, objectsCount), seconds,
+                written / seconds, this.writtenBytesCount.get() / seconds / (1024 * 1024)));
+    }
+
+    /**
+     * Reads back a random sample of the objects from the servers they are routed to.
+     * @return the number of sampled objects which are missing or have a different value.
+     */
+    public int verify(List<KeyValuePair<String, String>> objects, int samplesCount, long seed) {
+        if (objects.isEmpty() || samplesCount <= 0) {
+            return 0;
+        }
+        final int serversCount = this.clients[0].length;
+        final List<List<KeyValuePair<String, String>>> samples = new ArrayList<>(serversCount);
+        for (int i = 0; i < serversCount; i++) {
+            samples.add(new ArrayList<KeyValuePair<String, String>>());
+        }
+        final Random random = new Random(seed);
+        for (int i = 0; i < Math.min(samplesCount, objects.size()); i++) {
+            KeyValuePair<String, String> pair = objects.get(random.nextInt(objects.size()));
+            samples.get(this.router.route(pair.getKey())).add(pair);
+        }
+        int mismatchesCount = 0;
+        for (int i = 0; i < serversCount; i++) {
+            if (samples.get(i).isEmpty()) {
+                continue;
+            }
+            final List<String> keys = new ArrayList<>(samples.get(i).size());
+            for (KeyValuePair<String, String> pair : samples.get(i)) {
+                keys.add(pair.getKey());
+            }
+            Map<String, Object> values = this.clients[0][i].getBulk(keys, this.transcoder);
+            for (KeyValuePair<String, String> pair : samples.get(i)) {
+                if (!pair.getValue().equals(values.get(pair.getKey()))) {
+                    this.logger.warning(String.format("Preloaded key %s has a wrong value on server #%d", pair.getKey(), i));
+                    mismatchesCount++;
+                }
+            }
+        }
+        return mismatchesCount;
+    }
+
+    public void close() {
+        shutdown(this.clients);
+    }
+
+    private static void shutdown(MemcachedClient[][] clients) {
+        for (MemcachedClient[] connectionClients : clients) {
+            if (connectionClients != null) {
+                HotKeyReplicator.shutdown(connectionClients);
+            }
+        }
+    }
+
+    /**
+     * A read only view of some of the objects, by index.
+     */
+    private static class ObjectsSubset extends AbstractList<KeyValuePair<String, String>> implements RandomAccess {
+
+        private final List<KeyValuePair<String, String>> objects;
+        private int[] indexes;
+        private int size = 0;
+
+        ObjectsSubset(List<KeyValuePair<String, String>> objects, int expectedSize) {
+            this.objects = objects;
+            this.indexes = new int[expectedSize];
+        }
+
+        void addIndex(int index) {
+            if (this.size == this.indexes.length) {
+                this.indexes = Arrays.copyOf(this.indexes, this.size * 2 + 1);
+            }
+            this.indexes[this.size++] = index;
+        }
+
+        @Override
+        public KeyValuePair<String, String> get(int index) {
+            if (index < 0 || index >= this.size) {
+                throw new IndexOutOfBoundsException(String.format("Index %d of %d objects.", index, this.size));
+            }
+            return this.objects.get(this.indexes[index]);
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+package memcached_sdn.experiment.memcached;
+
+/**
+ * Reassembles the datagrams of a single response by sequence number.
+ *
+ * Datagrams are kept whole (frame header included) in per sequence number slots which are reused by the
+ * following responses, so once the slots are allocated a response is received without allocating.
+ * A single datagram response is exposed in place, a fragmented one is concatenated once into a payload buffer.
+ */
+class ResponseAssembler {
+
+    private final int datagramSize;
+    private byte[][] datagrams = new byte[1][];
+    private int[] lengths = new int[1];
+    private short totalNumberOfPackets = -1;
+    private short packetsCount = 0;
+    private byte[] payload = new byte[0];
+    private byte[] assembled;
+    private int assembledOffset;
+    private int assembledLength;
+
+    ResponseAssembler(int datagramSize) {
+        this.datagramSize = datagramSize;
+    }
+
+    void reset() {
+        this.totalNumberOfPackets = -1;
+        this.packetsCount = 0;
+        this.assembled = null;
+    }
+
+    private boolean accept(short sequenceNumber, short totalNumberOfPackets) {
+        if (this.totalNumberOfPackets == -1) {
+            if (totalNumberOfPackets <= 0) {
+                return false;
+            }
+            this.totalNumberOfPackets = totalNumberOfPackets;
+            if (this.datagrams.length < totalNumberOfPackets) {
+                byte[][] datagrams = new byte[totalNumberOfPackets][];
+                System.arraycopy(this.datagrams, 0, datagrams, 0, this.datagrams.length);
+                this.datagrams = datagrams;
+                this.lengths = new int[totalNumberOfPackets];
+            }
+            for (int i = 0; i < totalNumberOfPackets; i++) {
+                this.lengths[i] = -1;
+            }
+        }
+        return sequenceNumber >= 0 && sequenceNumber < this.totalNumberOfPackets && this.lengths[sequenceNumber] == -1;
+    }
+
+    /**
+     * Copies a datagram into its slot.
+     * @return false for a duplicate or out of range datagram, which is ignored.
+     */
+    boolean add(short sequenceNumber, short totalNumberOfPackets, byte[] datagram, int offset, int length) {
+        if (!accept(sequenceNumber, totalNumberOfPackets)) {
+            return false;
+        }
+        if (this.datagrams[sequenceNumber] == null || this.datagrams[sequenceNumber].length < length) {
+            this.datagrams[sequenceNumber] = new byte[Math.max(length, this.datagramSize)];
+        }
+        System.arraycopy(datagram, offset, this.datagrams[sequenceNumber], 0, length);
+        this.lengths[sequenceNumber] = length;
+        this.packetsCount++;
+        return true;
+    }
+
+    /**
+     * Stores a received datagram buffer in its slot without copying it.
+     * @return the buffer to receive the next datagram into - the slot's previous buffer, or the provided
+     * buffer itself if the datagram was ignored as a duplicate or out of range.
+     */
+    byte[] swap(short sequenceNumber, short totalNumberOfPackets, byte[] datagram, int length) {
+        if (!accept(sequenceNumber, totalNumberOfPackets)) {
+            return datagram;
+        }
+        byte[] previous = this.datagrams[sequenceNumber];
+        this.datagrams[sequenceNumber] = datagram;
+        this.lengths[sequenceNumber] = length;
+        this.packetsCount++;
+        return (previous != null) ? previous : new byte[this.datagramSize];
+    }
+
+    boolean isComplete() {
+        return this.totalNumberOfPackets != -1 && this.packetsCount == this.totalNumberOfPackets;
+    }
+
+    short getPacketsCount() {
+        return packetsCount;
+    }
+
+    short getTotalNumberOfPackets() {
+        return totalNumberOfPackets;
+    }
+
+    /**
+     * Concatenates the payloads of the received datagrams in sequence order (missing ones are skipped).
+     * The assembled payload is valid until the next {@link #reset()}.
+     */
+    void assemble() {
+        if (this.totalNumberOfPackets == 1 && this.lengths[0] != -1) {
+            this.assembled = this.datagrams[0];
+            this.assembledOffset = AbstractMemcachedUDPClient.HEADER_SIZE;
+            this.assembledLength = this.lengths[0] - AbstractMemcachedUDPClient.HEADER_SIZE;
+            return;
+        }
+        int length = 0;
+        for (int i = 0; i < this.totalNumberOfPackets; i++) {
+            if (this.lengths[i] != -1) {
+                length += this.lengths[i] - AbstractMemcachedUDPClient.HEADER_SIZE;
+            }
+        }
+        if (this.payload.length < length) {
+            this.payload = new byte[Math.max(length, this.payload.length * 2)];
+        }
+        int position = 0;
+        for (int i = 0; i < this.totalNumberOfPackets; i++) {
+            if (this.lengths[i] != -1) {
+                int fragmentLength = this.lengths[i] - AbstractMemcachedUDPClient.HEADER_SIZE;
+                System.arraycopy(this.datagrams[i], AbstractMemcachedUDPClient.HEADER_SIZE, this.payload, position, fragmentLength);
+                position += fragmentLength;
+            }
+        }
+        this.assembled = this.payload;
+        this.assembledOffset = 0;
+        this.assembledLength = length;
+    }
+
+    byte[] getPayload() {
+        return assembled;
+    }
+
+    int getPayloadOffset() {
+        return assembledOffset;
+    }
+
+    int getPayloadLength() {
+        return assembledLength;
+    }
+
+}
@@ -0,0 +1,86 @@
+package memcached_sdn.experiment.memcached;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long the UDP clients wait for a get response and how many times they re-send it.
+ *
+ * With a fixed policy every attempt waits timeoutMillis. An adaptive policy waits the server's
+ * {@link RttEstimator} timeout, bounded by minimumTimeoutMillis and timeoutMillis (which is also used until
+ * the server was sampled). Every retry doubles the previous wait, up to timeoutMillis, and is sent with a
+ * new request id so late datagrams of the earlier attempts are ignored.
+ */
+public class RetryPolicy {
+
+    public static final RetryPolicy DEFAULT = new RetryPolicy(1000, false, 1000, 0);
+
+    private final long timeoutNanos;
+    private final boolean adaptive;
+    private final long minimumTimeoutNanos;
+    private final int maximumRetries;
+
+    public RetryPolicy(long timeoutMillis, boolean adaptive, long minimumTimeoutMillis, int maximumRetries) {
+        if (timeoutMillis <= 0 || minimumTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("Timeouts must be positive.");
+        }
+        if (maximumRetries < 0) {
+            throw new IllegalArgumentException("Retries count can not be negative.");
+        }
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.adaptive = adaptive;
+        this.minimumTimeoutNanos = Math.min(this.timeoutNanos, TimeUnit.MILLISECONDS.toNanos(minimumTimeoutMillis));
+        this.maximumRetries = maximumRetries;
+    }
+
+    public static RetryPolicy fixed(long timeoutMillis) {
+        return new RetryPolicy(timeoutMillis, false, timeoutMillis, 0);
+    }
+
+    /**
+     * @param attempt 0 for the first request, n for the n-th retry.
+     * @return the time to wait for the response of the attempt.
+     */
+    public long getTimeoutNanos(RttEstimator estimator, int attempt) {
+        long timeout = this.timeoutNanos;
+        if (this.adaptive && estimator.hasSamples()) {
+            timeout = Math.max(this.minimumTimeoutNanos, Math.min(this.timeoutNanos, estimator.getTimeoutNanos()));
+        }
+        for (int i = 0; i < attempt && timeout < this.timeoutNanos; i++) {
+            timeout *= 2;
+        }
+        return Math.min(timeout, this.timeoutNanos);
+    }
+
+    /**
+     * @return the fixed timeout, the longest wait of any attempt.
+     */
+    public long getMaximumTimeoutNanos() {
+        return this.timeoutNanos;
+    }
+
+    public RttEstimator[] createEstimators(int serversCount) {
+        final RttEstimator[] estimators = new RttEstimator[serversCount];
+        for (int i = 0; i < serversCount; i++) {
+            estimators[i] = new RttEstimator();
+        }
+        return estimators;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public int getMaximumRetries() {
+        return maximumRetries;
+    }
+
+    @Override
+    public String toString() {
+        if (this.adaptive) {
+            return String.format("adaptive timeout %d-%dms, %d retries",
+                    TimeUnit.NANOSECONDS.toMillis(this.minimumTimeoutNanos), TimeUnit.NANOSECONDS.toMillis(this.timeoutNanos), this.maximumRetries);
+        }
+        return String.format("timeout %dms, %d retries", TimeUnit.NANOSECONDS.toMillis(this.timeoutNanos), this.maximumRetries);
+    }
+
+}
@@ -0,0 +1,52 @@
+package memcached_sdn.experiment.memcached;
+
+/**
+ * Smoothed round trip time and RTT variation of a server, computed as TCP does (RFC 6298):
+ * srtt += (rtt - srtt) / 8, rttvar += (|srtt - rtt| - rttvar) / 4 and timeout = srtt + 4 * rttvar.
+ * Not thread safe, every client keeps its own estimators.
+ */
+public class RttEstimator {
+
+    private long smoothedRttNanos = -1;
+    private long rttVariationNanos = 0;
+
+    /**
+     * Only requests answered on their first attempt are sampled, a retried request's response can not be
+     * matched to the attempt it answers (Karn's algorithm).
+     */
+    public void addSample(long rttNanos) {
+        if (rttNanos < 0) {
+            return;
+        }
+        if (this.smoothedRttNanos == -1) {
+            this.smoothedRttNanos = rttNanos;
+            this.rttVariationNanos = rttNanos / 2;
+        } else {
+            this.rttVariationNanos += (Math.abs(this.smoothedRttNanos - rttNanos) - this.rttVariationNanos) / 4;
+            this.smoothedRttNanos += (rttNanos - this.smoothedRttNanos) / 8;
+        }
+    }
+
+    public boolean hasSamples() {
+        return this.smoothedRttNanos != -1;
+    }
+
+    public long getSmoothedRttNanos() {
+        return smoothedRttNanos;
+    }
+
+    public long getRttVariationNanos() {
+        return rttVariationNanos;
+    }
+
+    /**
+     * @return srtt + 4 * rttvar, or -1 before the first sample.
+     */
+    public long getTimeoutNanos() {
+        if (!hasSamples()) {
+            return -1;
+        }
+        return this.smoothedRttNanos + 4 * this.rttVariationNanos;
+    }
+
+}
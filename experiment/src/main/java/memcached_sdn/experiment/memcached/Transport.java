@@ -0,0 +1,21 @@
+package memcached_sdn.experiment.memcached;
+
+/**
+ * How the load threads send their gets.
+ */
+public enum Transport {
+
+    /**
+     * memcached ASCII protocol over UDP, the path MBalancer redirects.
+     */
+    UDP,
+    /**
+     * memcached binary protocol over pipelined TCP connections, see {@link MemcachedAsyncTCPClient}.
+     */
+    TCP;
+
+    public static Transport fromString(String value) {
+        return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+
+}
@@ -0,0 +1,98 @@
+package memcached_sdn.experiment.memcached.cache;
+
+/**
+ * Count-min sketch of 4 bit counters estimating how often keys were accessed recently (the TinyLFU admission
+ * filter). Four counters of a key are packed in the longs of the table, and all counters are halved once
+ * the number of increments reaches ten times the table size, so old popularity fades away.
+ */
+class FrequencySketch {
+
+    private static final long[] SEEDS = new long[]{
+            0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MINIMUM_SIZE = 16;
+    private static final int MAXIMUM_SIZE = 1 << 24;
+
+    private long[] table;
+    private int sampleSize;
+    private int size;
+
+    FrequencySketch() {
+        allocate(MINIMUM_SIZE);
+    }
+
+    /**
+     * Grows the table for the expected number of keys, forgetting the counts.
+     */
+    void ensureCapacity(int expectedKeys) {
+        if (expectedKeys > this.table.length && this.table.length < MAXIMUM_SIZE) {
+            allocate(Math.min(MAXIMUM_SIZE, Integer.highestOneBit(expectedKeys - 1) << 1));
+        }
+    }
+
+    private void allocate(int tableSize) {
+        this.table = new long[tableSize];
+        this.sampleSize = 10 * tableSize;
+        this.size = 0;
+    }
+
+    /**
+     * @return the estimated accesses of the key, at most 15.
+     */
+    int frequency(String key) {
+        final int hash = spread(key.hashCode());
+        final int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((this.table[index] >>> ((start + i) << 2)) & 0xFL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    void increment(String key) {
+        final int hash = spread(key.hashCode());
+        final int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++this.size == this.sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        final int offset = counter << 2;
+        final long mask = 0xFL << offset;
+        if ((this.table[index] & mask) != mask) {
+            this.table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < this.table.length; i++) {
+            odd += Long.bitCount(this.table[i] & ONE_MASK);
+            this.table[i] = (this.table[i] >>> 1) & RESET_MASK;
+        }
+        this.size = (this.size - (odd >>> 2)) >>> 1;
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return ((int) h) & (this.table.length - 1);
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45D9F3B;
+        x = ((x >>> 16) ^ x) * 0x45D9F3B;
+        return (x >>> 16) ^ x;
+    }
+
+}
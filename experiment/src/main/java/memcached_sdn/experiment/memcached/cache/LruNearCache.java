@@ -0,0 +1,41 @@
+package memcached_sdn.experiment.memcached.cache;
+
+/**
+ * Evicts the least recently used entries.
+ */
+public class LruNearCache extends NearCache {
+
+    private final AccessOrderQueue queue = new AccessOrderQueue();
+
+    public LruNearCache(long maximumWeight, long ttlMillis) {
+        super(maximumWeight, ttlMillis);
+    }
+
+    @Override
+    protected void onAccess(String key, Entry entry) {
+        if (entry != null) {
+            this.queue.moveToLast(entry);
+        }
+    }
+
+    @Override
+    protected void onAdd(Entry entry) {
+        this.queue.addLast(entry);
+    }
+
+    @Override
+    protected void onRemove(Entry entry) {
+        this.queue.remove(entry);
+    }
+
+    @Override
+    protected Entry selectVictim() {
+        return this.queue.getFirst();
+    }
+
+    @Override
+    public String getPolicy() {
+        return LRU;
+    }
+
+}
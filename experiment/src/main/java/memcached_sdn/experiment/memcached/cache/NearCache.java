@@ -0,0 +1,239 @@
+package memcached_sdn.experiment.memcached.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client side (L1) cache of values in front of the memcached servers, bounded by the estimated heap its
+ * entries take. Every load thread owns its own cache, so caches are not thread safe.
+ *
+ * Entries are weighed as their value and key bytes plus {@link #ENTRY_OVERHEAD} for the entry, map node and
+ * array headers, which is close to what they actually retain on a 64 bit JVM with compressed oops.
+ */
+public abstract class NearCache {
+
+    public static final String LRU = "lru";
+    public static final String TINY_LFU = "tinylfu";
+    static final int ENTRY_OVERHEAD = 120;
+
+    protected final long maximumWeight;
+    private final long ttlNanos;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private long weight = 0;
+    private long hitsCount = 0;
+    private long missesCount = 0;
+    private long evictionsCount = 0;
+    private long expirationsCount = 0;
+    private long rejectionsCount = 0;
+
+    /**
+     * @param ttlMillis time an entry is served after it was stored, 0 keeps entries until they are evicted.
+     */
+    protected NearCache(long maximumWeight, long ttlMillis) {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("Near cache size must be positive.");
+        }
+        this.maximumWeight = maximumWeight;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    /**
+     * @param policy lru/tinylfu.
+     */
+    public static NearCache create(String policy, long maximumWeight, long ttlMillis) {
+        switch (policy) {
+            case LRU:
+                return new LruNearCache(maximumWeight, ttlMillis);
+            case TINY_LFU:
+                return new TinyLfuNearCache(maximumWeight, ttlMillis);
+            default:
+                throw new IllegalArgumentException("Unrecognized near cache policy: " + policy);
+        }
+    }
+
+    /**
+     * @return the cached value (not a copy), or null on a miss.
+     */
+    public byte[] get(String key) {
+        Entry entry = this.entries.get(key);
+        if (entry != null && this.ttlNanos > 0 && System.nanoTime() - entry.expiresAtNanos >= 0) {
+            remove(entry);
+            this.expirationsCount++;
+            entry = null;
+        }
+        onAccess(key, entry);
+        if (entry == null) {
+            this.missesCount++;
+            return null;
+        }
+        this.hitsCount++;
+        return entry.value;
+    }
+
+    /**
+     * Stores a value fetched from the servers, evicting entries if the cache grows above its size.
+     * Values weighing more than the whole cache are not stored.
+     */
+    public void put(String key, byte[] value) {
+        final Entry existing = this.entries.get(key);
+        if (existing != null) {
+            remove(existing);
+        }
+        final Entry entry = new Entry(key, value, ENTRY_OVERHEAD + 2 * key.length() + value.length);
+        if (entry.weight > this.maximumWeight) {
+            this.rejectionsCount++;
+            return;
+        }
+        if (this.ttlNanos > 0) {
+            entry.expiresAtNanos = System.nanoTime() + this.ttlNanos;
+        }
+        this.entries.put(key, entry);
+        this.weight += entry.weight;
+        onAdd(entry);
+        while (this.weight > this.maximumWeight) {
+            Entry victim = selectVictim();
+            remove(victim);
+            this.evictionsCount++;
+        }
+    }
+
+    private void remove(Entry entry) {
+        this.entries.remove(entry.key);
+        this.weight -= entry.weight;
+        onRemove(entry);
+    }
+
+    /**
+     * Called on every get, with the live entry or null on a miss.
+     */
+    protected abstract void onAccess(String key, Entry entry);
+
+    protected abstract void onAdd(Entry entry);
+
+    protected abstract void onRemove(Entry entry);
+
+    /**
+     * @return the entry to evict while the cache is above its maximum weight.
+     */
+    protected abstract Entry selectVictim();
+
+    public abstract String getPolicy();
+
+    public long getWeight() {
+        return weight;
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    public int getEntriesCount() {
+        return this.entries.size();
+    }
+
+    public long getHitsCount() {
+        return hitsCount;
+    }
+
+    public long getMissesCount() {
+        return missesCount;
+    }
+
+    public long getEvictionsCount() {
+        return evictionsCount;
+    }
+
+    public long getExpirationsCount() {
+        return expirationsCount;
+    }
+
+    /**
+     * @return the number of values which were too large to store.
+     */
+    public long getRejectionsCount() {
+        return rejectionsCount;
+    }
+
+    /**
+     * A cached value, linked in the access order queue of its policy.
+     */
+    protected static class Entry {
+        final String key;
+        final byte[] value;
+        final int weight;
+        long expiresAtNanos;
+        Entry previous;
+        Entry next;
+        AccessOrderQueue queue;
+
+        Entry(String key, byte[] value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Doubly linked entries, least recently used first, tracking their total weight.
+     */
+    protected static class AccessOrderQueue {
+        private Entry first;
+        private Entry last;
+        private long weight = 0;
+
+        void addLast(Entry entry) {
+            entry.queue = this;
+            entry.previous = this.last;
+            entry.next = null;
+            if (this.last == null) {
+                this.first = entry;
+            } else {
+                this.last.next = entry;
+            }
+            this.last = entry;
+            this.weight += entry.weight;
+        }
+
+        void remove(Entry entry) {
+            if (entry.previous == null) {
+                this.first = entry.next;
+            } else {
+                entry.previous.next = entry.next;
+            }
+            if (entry.next == null) {
+                this.last = entry.previous;
+            } else {
+                entry.next.previous = entry.previous;
+            }
+            entry.previous = null;
+            entry.next = null;
+            entry.queue = null;
+            this.weight -= entry.weight;
+        }
+
+        void moveToLast(Entry entry) {
+            if (entry != this.last) {
+                remove(entry);
+                addLast(entry);
+            }
+        }
+
+        Entry getFirst() {
+            return first;
+        }
+
+        Entry getLast() {
+            return last;
+        }
+
+        long getWeight() {
+            return weight;
+        }
+
+        boolean isEmpty() {
+            return this.first == null;
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+package memcached_sdn.experiment.memcached.cache;
+
+/**
+ * W-TinyLFU (Einziger et al.): new entries enter a small LRU window, entries leaving the window are candidates
+ * for the main segmented LRU and only replace its victim if the frequency sketch saw them more often.
+ * Main entries accessed again move from probation to the protected segment, so one-hit wonders of a
+ * zipf workload do not push the hot keys out.
+ */
+public class TinyLfuNearCache extends NearCache {
+
+    private static final double WINDOW_SHARE = 0.01;
+    private static final double PROTECTED_SHARE = 0.8;
+
+    private final AccessOrderQueue window = new AccessOrderQueue();
+    private final AccessOrderQueue probation = new AccessOrderQueue();
+    private final AccessOrderQueue protectedQueue = new AccessOrderQueue();
+    private final long windowMaximumWeight;
+    private final long protectedMaximumWeight;
+    private final FrequencySketch sketch = new FrequencySketch();
+    // Oldest entry moved from the window to probation by the current put, the later ones follow it
+    private Entry firstCandidate = null;
+
+    public TinyLfuNearCache(long maximumWeight, long ttlMillis) {
+        super(maximumWeight, ttlMillis);
+        this.windowMaximumWeight = Math.max(1, (long) (maximumWeight * WINDOW_SHARE));
+        this.protectedMaximumWeight = (long) ((maximumWeight - this.windowMaximumWeight) * PROTECTED_SHARE);
+    }
+
+    @Override
+    protected void onAccess(String key, Entry entry) {
+        this.sketch.increment(key);
+        if (entry == null) {
+            return;
+        }
+        if (entry.queue == this.probation) {
+            this.probation.remove(entry);
+            this.protectedQueue.addLast(entry);
+            while (this.protectedQueue.getWeight() > this.protectedMaximumWeight) {
+                Entry demoted = this.protectedQueue.getFirst();
+                this.protectedQueue.remove(demoted);
+                this.probation.addLast(demoted);
+            }
+        } else {
+            entry.queue.moveToLast(entry);
+        }
+    }
+
+    @Override
+    protected void onAdd(Entry entry) {
+        this.sketch.ensureCapacity(getEntriesCount());
+        this.firstCandidate = null;
+        this.window.addLast(entry);
+        while (this.window.getWeight() > this.windowMaximumWeight) {
+            Entry candidate = this.window.getFirst();
+            this.window.remove(candidate);
+            this.probation.addLast(candidate);
+            if (this.firstCandidate == null) {
+                this.firstCandidate = candidate;
+            }
+        }
+    }
+
+    @Override
+    protected void onRemove(Entry entry) {
+        entry.queue.remove(entry);
+    }
+
+    @Override
+    protected Entry selectVictim() {
+        final Entry candidate = this.firstCandidate;
+        if (candidate != null) {
+            this.firstCandidate = candidate.next;
+            Entry victim = this.probation.getFirst();
+            if (candidate == victim) {
+                return candidate;
+            }
+            return this.sketch.frequency(candidate.key) > this.sketch.frequency(victim.key) ? victim : candidate;
+        }
+        if (!this.probation.isEmpty()) {
+            return this.probation.getFirst();
+        }
+        if (!this.protectedQueue.isEmpty()) {
+            return this.protectedQueue.getFirst();
+        }
+        return this.window.getFirst();
+    }
+
+    @Override
+    public String getPolicy() {
+        return TINY_LFU;
+    }
+
+}
@@ -0,0 +1,146 @@
+package memcached_sdn.experiment.memcached.replication;
+
+import memcached_sdn.experiment.helpers.SplitMixRandom;
+import memcached_sdn.experiment.memcached.routing.KeyRouter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The hot keys which were written to more than one server, shared by all the load threads.
+ *
+ * A key is replicated to the server the router maps it to followed by the next servers (by index), up to
+ * replicasCount servers. Keys only become visible to the clients once {@link #publish(Collection)} is called,
+ * so their replicas must be written before. Lookups read an immutable map, publishing copies it.
+ */
+public class HotKeyReplicas {
+
+    // Separates the selectors' streams from the key picker's streams of the same seed
+    private static final long SELECTOR_SEED_SALT = 0x5265706C69636173L;
+
+    private final KeyRouter router;
+    private final int replicasCount;
+    private final SpreadingPolicy policy;
+    private final AtomicIntegerArray outstandingRequests;
+    private final List<ReplicaSelector> selectors = new ArrayList<>();
+    private volatile Map<String, int[]> replicas = Collections.emptyMap();
+
+    /**
+     * @param replicasCount number of servers holding every replicated key, 0 (or more than the servers count)
+     *                      replicates to all servers.
+     */
+    public HotKeyReplicas(KeyRouter router, int replicasCount, SpreadingPolicy policy) {
+        if (replicasCount < 0) {
+            throw new IllegalArgumentException("Replicas count can not be negative.");
+        }
+        final int serversCount = router.getServersCount();
+        this.router = router;
+        this.replicasCount = (replicasCount == 0) ? serversCount : Math.min(replicasCount, serversCount);
+        this.policy = policy;
+        this.outstandingRequests = new AtomicIntegerArray(serversCount);
+    }
+
+    /**
+     * @return the servers the key is (or would be) replicated to, its routed server first.
+     */
+    public int[] getReplicaServers(String key) {
+        final int serversCount = this.router.getServersCount();
+        final int primary = this.router.route(key);
+        final int[] servers = new int[this.replicasCount];
+        for (int i = 0; i < servers.length; i++) {
+            servers[i] = (primary + i) % serversCount;
+        }
+        return servers;
+    }
+
+    /**
+     * @return the servers of a published key, or null for keys which are only on their routed server.
+     */
+    public int[] getReplicas(String key) {
+        return this.replicas.get(key);
+    }
+
+    /**
+     * Makes the clients spread the reads of the keys over their replica servers.
+     */
+    public synchronized void publish(Collection<String> keys) {
+        final Map<String, int[]> updated = new HashMap<>(this.replicas);
+        for (String key : keys) {
+            updated.put(key, getReplicaServers(key));
+        }
+        this.replicas = Collections.unmodifiableMap(updated);
+    }
+
+    public boolean isPublished(String key) {
+        return this.replicas.containsKey(key);
+    }
+
+    public int getPublishedKeysCount() {
+        return this.replicas.size();
+    }
+
+    public int getServersCount() {
+        return this.router.getServersCount();
+    }
+
+    public int getReplicasCount() {
+        return replicasCount;
+    }
+
+    public SpreadingPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Creates the selector of a client, a selector must only be used by the thread owning the client.
+     * Its random choices are derived from the key picker's streams seed and the client's key stream, apart
+     * from the keys sequence itself, so a repeated run spreads the reads the same way.
+     */
+    public synchronized ReplicaSelector createSelector(long streamsSeed, int streamId) {
+        final ReplicaSelector selector = new ReplicaSelector(this, SplitMixRandom.forStream(streamsSeed ^ SELECTOR_SEED_SALT, streamId));
+        this.selectors.add(selector);
+        return selector;
+    }
+
+    int getOutstandingRequests(int serverIndex) {
+        return this.outstandingRequests.get(serverIndex);
+    }
+
+    void incrementOutstandingRequests(int serverIndex) {
+        this.outstandingRequests.incrementAndGet(serverIndex);
+    }
+
+    void decrementOutstandingRequests(int serverIndex) {
+        this.outstandingRequests.decrementAndGet(serverIndex);
+    }
+
+    /**
+     * Summed over all selectors, only accurate once the load threads stopped.
+     * @return the reads of replicated keys sent to every server.
+     */
+    public synchronized long[] getSpreadReadsPerServer() {
+        final long[] reads = new long[this.router.getServersCount()];
+        for (ReplicaSelector selector : this.selectors) {
+            for (int i = 0; i < reads.length; i++) {
+                reads[i] += selector.getReadsPerServer()[i];
+            }
+        }
+        return reads;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Hot key replicas: %d keys on %d servers each, %s spreading, reads per server: %s",
+                getPublishedKeysCount(),
+                this.replicasCount,
+                this.policy.name().toLowerCase().replace('_', '-'),
+                Arrays.toString(getSpreadReadsPerServer()));
+    }
+
+}
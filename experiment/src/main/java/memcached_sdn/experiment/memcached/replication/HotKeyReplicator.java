@@ -0,0 +1,108 @@
+package memcached_sdn.experiment.memcached.replication;
+
+import memcached_sdn.experiment.helpers.KeyValuePair;
+import memcached_sdn.experiment.helpers.ObjectsDataset;
+import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.transcoders.SerializingTranscoder;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Writes the values of hot keys to their replica servers (over TCP) and then publishes them to the clients,
+ * the client side counterpart of mbalancer's spread_hot_keys_and_add_openflow_rules.
+ */
+public class HotKeyReplicator {
+
+    private final HotKeyReplicas replicas;
+    private final List<KeyValuePair<String, String>> objects;
+    private final Map<String, KeyValuePair<String, String>> objectsByKey;
+    private final MemcachedClient[] clients;
+    private final SerializingTranscoder transcoder = new SerializingTranscoder();
+
+    /**
+     * @param objects the experiment objects, hot keys must be one of them.
+     */
+    public HotKeyReplicator(String[] servers, HotKeyReplicas replicas, List<KeyValuePair<String, String>> objects) {
+        this.replicas = replicas;
+        this.objects = objects;
+        // Dataset objects are found by their key, values are only generated for the hot keys
+        this.objectsByKey = (objects instanceof ObjectsDataset) ? null : new HashMap<String, KeyValuePair<String, String>>(objects.size() * 2);
+        if (this.objectsByKey != null) {
+            for (KeyValuePair<String, String> pair : objects) {
+                this.objectsByKey.put(pair.getKey(), pair);
+            }
+        }
+        this.transcoder.setCompressionThreshold(Integer.MAX_VALUE);
+        this.clients = createMemcachedClients(servers);
+    }
+
+    /**
+     * Creates one client per server so every key can be written to a chosen server.
+     */
+    public static MemcachedClient[] createMemcachedClients(String[] servers) {
+        final MemcachedClient[] clients = new MemcachedClient[servers.length];
+        try {
+            for (int i = 0; i < servers.length; i++) {
+                String[] values = servers[i].split(":");
+                int port = (values.length == 1) ? 11211 : Integer.parseInt(values[1]);
+                clients[i] = new MemcachedClient(new InetSocketAddress(values[0], port));
+            }
+        } catch (IOException e) {
+            shutdown(clients);
+            throw new RuntimeException(e);
+        }
+        return clients;
+    }
+
+    public static void shutdown(MemcachedClient[] clients) {
+        for (MemcachedClient client : clients) {
+            if (client != null) {
+                client.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Writes the keys which are not replicated yet to all their replica servers, then publishes them.
+     * @return the newly replicated keys.
+     */
+    public List<String> replicate(Collection<String> keys) {
+        final List<String> replicated = new ArrayList<>();
+        for (String key : new LinkedHashSet<>(keys)) {
+            if (this.replicas.isPublished(key)) {
+                continue;
+            }
+            KeyValuePair<String, String> pair = (this.objectsByKey != null)
+                    ? this.objectsByKey.get(key) : ((ObjectsDataset) this.objects).findObject(key);
+            if (pair == null) {
+                throw new IllegalArgumentException("Hot key is not one of the experiment objects: " + key);
+            }
+            String value = pair.getValue();
+            for (int serverIndex : this.replicas.getReplicaServers(key)) {
+                try {
+                    if (!this.clients[serverIndex].set(key, 0, value, this.transcoder).get()) {
+                        throw new RuntimeException(String.format("Error storing key %s on server #%d", key, serverIndex));
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            replicated.add(key);
+        }
+        this.replicas.publish(replicated);
+        return replicated;
+    }
+
+    public void close() {
+        shutdown(this.clients);
+    }
+
+}
@@ -0,0 +1,98 @@
+package memcached_sdn.experiment.memcached.replication;
+
+import java.util.Random;
+
+/**
+ * Picks the server of every request of a single client, spreading replicated hot keys over their replicas.
+ * Not thread safe, see {@link HotKeyReplicas#createSelector(long, int)}.
+ */
+public class ReplicaSelector {
+
+    private final HotKeyReplicas replicas;
+    private final SpreadingPolicy policy;
+    private final Random random;
+    private final boolean trackOutstandingRequests;
+    private final long[] readsPerServer;
+    private int nextReplica = 0;
+
+    ReplicaSelector(HotKeyReplicas replicas, Random random) {
+        this.replicas = replicas;
+        this.policy = replicas.getPolicy();
+        this.random = random;
+        this.trackOutstandingRequests = this.policy == SpreadingPolicy.LEAST_OUTSTANDING;
+        this.readsPerServer = new long[replicas.getServersCount()];
+    }
+
+    /**
+     * @param serverIndex the server the router maps the key to.
+     * @return the server to send the key's request to.
+     */
+    public int pickServer(String key, int serverIndex) {
+        final int[] servers = this.replicas.getReplicas(key);
+        if (servers == null) {
+            return serverIndex;
+        }
+        final int picked;
+        switch (this.policy) {
+            case ROUND_ROBIN:
+                picked = servers[nextReplica() % servers.length];
+                break;
+            case LEAST_OUTSTANDING:
+                picked = pickLeastOutstanding(servers);
+                break;
+            default:
+                picked = servers[this.random.nextInt(servers.length)];
+                break;
+        }
+        this.readsPerServer[picked]++;
+        return picked;
+    }
+
+    /**
+     * Ties are broken round robin, so a blocking client (which never has requests in flight while picking)
+     * still spreads its reads when the other threads are idle.
+     */
+    private int pickLeastOutstanding(int[] servers) {
+        final int start = nextReplica();
+        int picked = -1;
+        int pickedOutstanding = Integer.MAX_VALUE;
+        for (int i = 0; i < servers.length; i++) {
+            int server = servers[(start + i) % servers.length];
+            int outstanding = this.replicas.getOutstandingRequests(server);
+            if (outstanding < pickedOutstanding) {
+                picked = server;
+                pickedOutstanding = outstanding;
+            }
+        }
+        return picked;
+    }
+
+    private int nextReplica() {
+        int replica = this.nextReplica;
+        this.nextReplica = (this.nextReplica + 1) & Integer.MAX_VALUE;
+        return replica;
+    }
+
+    /**
+     * Must be called for every request sent to a server (replicated or not).
+     */
+    public void onRequestSent(int serverIndex) {
+        if (this.trackOutstandingRequests) {
+            this.replicas.incrementOutstandingRequests(serverIndex);
+        }
+    }
+
+    /**
+     * Must be called once for every sent request, when it completed or was given up on.
+     */
+    public void onRequestCompleted(int serverIndex) {
+        if (this.trackOutstandingRequests) {
+            this.replicas.decrementOutstandingRequests(serverIndex);
+        }
+    }
+
+    long[] getReadsPerServer() {
+        return readsPerServer;
+    }
+
+}
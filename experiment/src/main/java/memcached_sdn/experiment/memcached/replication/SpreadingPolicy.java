@@ -0,0 +1,25 @@
+package memcached_sdn.experiment.memcached.replication;
+
+/**
+ * How a client picks one of the replicas of a replicated hot key.
+ */
+public enum SpreadingPolicy {
+
+    /**
+     * A uniformly random replica.
+     */
+    RANDOM,
+    /**
+     * The replicas in turn, per client.
+     */
+    ROUND_ROBIN,
+    /**
+     * The replica with the fewest requests in flight from all the load threads.
+     */
+    LEAST_OUTSTANDING;
+
+    public static SpreadingPolicy fromString(String value) {
+        return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+
+}
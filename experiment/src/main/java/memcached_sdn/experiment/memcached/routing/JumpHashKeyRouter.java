@@ -0,0 +1,36 @@
+package memcached_sdn.experiment.memcached.routing;
+
+/**
+ * Jump consistent hash (Lamping &amp; Veach) over a 64 bit FNV-1a hash of the key.
+ * No memory per server, and growing from n to n+1 servers moves 1/(n+1) of the keys, all to the new server.
+ */
+public class JumpHashKeyRouter extends KeyRouter {
+
+    public static final String NAME = "jump";
+
+    public JumpHashKeyRouter(int serversCount) {
+        super(serversCount);
+    }
+
+    static int jumpConsistentHash(long key, int buckets) {
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+
+    @Override
+    public int route(String key) {
+        return jumpConsistentHash(fnv1a64(key), serversCount);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+}
@@ -0,0 +1,90 @@
+package memcached_sdn.experiment.memcached.routing;
+
+import com.google.common.base.Joiner;
+import com.google.common.primitives.Doubles;
+import net.spy.memcached.DefaultHashAlgorithm;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Ketama consistent hashing, as in libketama and spymemcached's KetamaNodeLocator.
+ *
+ * Every server gets points on a 32 bit ring in proportion to its weight (160 per server for equal weights),
+ * point hashes being taken 4 at a time from the md5 of "&lt;host:port&gt;-&lt;i&gt;". A key belongs to the first
+ * point at or after the md5 based hash of the key, wrapping around the ring. When two points collide
+ * the first server in the list keeps it.
+ */
+public class KetamaKeyRouter extends KeyRouter {
+
+    public static final String NAME = "ketama";
+
+    private static final int POINTS_PER_SERVER = 160;
+
+    private final double[] weights;
+    private final long[] points;
+    private final int[] pointServers;
+
+    public KetamaKeyRouter(String[] servers, double[] weights) {
+        super(servers.length);
+        this.weights = defaultWeights(servers, weights);
+        double totalWeight = 0;
+        for (double weight : this.weights) {
+            totalWeight += weight;
+        }
+        if (totalWeight <= 0) {
+            throw new IllegalArgumentException("Server weights sum must be positive.");
+        }
+
+        final TreeMap<Long, Integer> ring = new TreeMap<>();
+        for (int i = 0; i < servers.length; i++) {
+            // Rounded down to a multiple of 4 since every digest gives 4 points
+            long digests = (long) Math.floor(this.weights[i] / totalWeight * POINTS_PER_SERVER * servers.length / 4);
+            for (long j = 0; j < digests; j++) {
+                byte[] digest = DefaultHashAlgorithm.computeMd5(servers[i] + "-" + j);
+                for (int h = 0; h < 4; h++) {
+                    long point = ((long) (digest[3 + h * 4] & 0xFF) << 24)
+                            | ((long) (digest[2 + h * 4] & 0xFF) << 16)
+                            | ((long) (digest[1 + h * 4] & 0xFF) << 8)
+                            | (digest[h * 4] & 0xFF);
+                    if (!ring.containsKey(point)) {
+                        ring.put(point, i);
+                    }
+                }
+            }
+        }
+        this.points = new long[ring.size()];
+        this.pointServers = new int[ring.size()];
+        int index = 0;
+        for (Map.Entry<Long, Integer> entry : ring.entrySet()) {
+            this.points[index] = entry.getKey();
+            this.pointServers[index] = entry.getValue();
+            index++;
+        }
+    }
+
+    @Override
+    public int route(String key) {
+        final long hash = DefaultHashAlgorithm.KETAMA_HASH.hash(key);
+        int index = Arrays.binarySearch(this.points, hash);
+        if (index < 0) {
+            index = -index - 1;
+            if (index == this.points.length) {
+                index = 0;
+            }
+        }
+        return this.pointServers[index];
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + ":" + Joiner.on(",").join(Doubles.asList(weights));
+    }
+
+}
@@ -0,0 +1,101 @@
+package memcached_sdn.experiment.memcached.routing;
+
+/**
+ * Maps keys to server indices. Routers are immutable and can be shared between threads.
+ *
+ * The latency file header stores {@link #toString()}, mbalancer/routing.py implements the same mappings
+ * so the analysis can tell which server a key was sent to.
+ */
+public abstract class KeyRouter {
+
+    public static final String HEADER_PREFIX = "routing:";
+
+    protected final int serversCount;
+
+    public KeyRouter(int serversCount) {
+        if (serversCount <= 0) {
+            throw new IllegalArgumentException("At least one server is required.");
+        }
+        this.serversCount = serversCount;
+    }
+
+    /**
+     * @param method modulo/ketama/jump/weighted.
+     * @param servers the servers list as given on the command line (host:port), ketama hashes these names.
+     * @param weights relative server capacities, or null for equal servers. Only ketama and weighted support weights.
+     */
+    public static KeyRouter create(String method, String[] servers, double[] weights) {
+        if (weights != null && weights.length != servers.length) {
+            throw new IllegalArgumentException(String.format(
+                    "%d server weights given for %d servers.", weights.length, servers.length));
+        }
+        switch (method) {
+            case ModuloKeyRouter.NAME:
+                verifyNoWeights(method, weights);
+                return new ModuloKeyRouter(servers.length);
+            case JumpHashKeyRouter.NAME:
+                verifyNoWeights(method, weights);
+                return new JumpHashKeyRouter(servers.length);
+            case KetamaKeyRouter.NAME:
+                return new KetamaKeyRouter(servers, weights);
+            case WeightedKeyRouter.NAME:
+                return new WeightedKeyRouter(servers, weights);
+            default:
+                throw new IllegalArgumentException("Unrecognized routing method: " + method);
+        }
+    }
+
+    private static void verifyNoWeights(String method, double[] weights) {
+        if (weights != null) {
+            throw new IllegalArgumentException(String.format("%s routing does not support server weights.", method));
+        }
+    }
+
+    /**
+     * @return equal weights when none were given.
+     */
+    static double[] defaultWeights(String[] servers, double[] weights) {
+        if (weights != null) {
+            for (double weight : weights) {
+                if (weight < 0) {
+                    throw new IllegalArgumentException("Negative server weight: " + weight);
+                }
+            }
+            return weights.clone();
+        }
+        double[] equal = new double[servers.length];
+        for (int i = 0; i < equal.length; i++) {
+            equal[i] = 1;
+        }
+        return equal;
+    }
+
+    /**
+     * 64 bit FNV-1a over the key's chars (keys are expected to be ASCII).
+     */
+    static long fnv1a64(String key) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    public abstract int route(String key);
+
+    public abstract String getName();
+
+    public int getServersCount() {
+        return serversCount;
+    }
+
+    /**
+     * @return the header line describing the routing (without the ';' prefix).
+     */
+    @Override
+    public String toString() {
+        return HEADER_PREFIX + getName();
+    }
+
+}
@@ -0,0 +1,27 @@
+package memcached_sdn.experiment.memcached.routing;
+
+import net.spy.memcached.DefaultHashAlgorithm;
+
+/**
+ * The original mapping, hash % servers count. Adding a server remaps almost every key.
+ */
+public class ModuloKeyRouter extends KeyRouter {
+
+    public static final String NAME = "modulo";
+
+    public ModuloKeyRouter(int serversCount) {
+        super(serversCount);
+    }
+
+    @Override
+    public int route(String key) {
+        final long hash = DefaultHashAlgorithm.NATIVE_HASH.hash(key);
+        return (int) (hash % serversCount);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+}
@@ -0,0 +1,62 @@
+package memcached_sdn.experiment.memcached.routing;
+
+import com.google.common.base.Joiner;
+import com.google.common.primitives.Doubles;
+
+/**
+ * Weighted rendezvous (highest random weight) hashing: a key goes to the server maximizing
+ * -weight / ln(u), u being a uniform hash of the key and the server index. Servers get keys in exact
+ * proportion to their weights, and changing a weight only moves keys from or to that server.
+ * Routing is O(servers count).
+ */
+public class WeightedKeyRouter extends KeyRouter {
+
+    public static final String NAME = "weighted";
+
+    private final double[] weights;
+
+    public WeightedKeyRouter(String[] servers, double[] weights) {
+        super(servers.length);
+        this.weights = defaultWeights(servers, weights);
+        if (Doubles.max(this.weights) <= 0) {
+            throw new IllegalArgumentException("At least one server weight must be positive.");
+        }
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public int route(String key) {
+        final long keyHash = fnv1a64(key);
+        int best = -1;
+        double bestScore = 0;
+        for (int i = 0; i < serversCount; i++) {
+            if (weights[i] <= 0) {
+                continue;
+            }
+            // Uniform in (0, 1)
+            double u = ((mix64(keyHash + i) >>> 11) + 0.5) / (double) (1L << 53);
+            double score = -weights[i] / StrictMath.log(u);
+            if (best == -1 || score > bestScore) {
+                best = i;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + ":" + Joiner.on(",").join(Doubles.asList(weights));
+    }
+
+}
@@ -0,0 +1,154 @@
+package memcached_sdn.experiment.metrics;
+
+import memcached_sdn.experiment.data.ExperimentDataQueue;
+import memcached_sdn.experiment.data.LatencySnapshot;
+
+import java.util.Locale;
+
+/**
+ * The metrics of every server over one interval, see {@link ServerMetrics}, and the state of the latency
+ * records queue when the interval ended.
+ */
+public class IntervalMetrics {
+
+    private final long startTimeMillis;
+    private final long endTimeMillis;
+    private final double requestsPerSecond;
+    private final ServerMetrics[] requested;
+    private final ServerMetrics[] responding;
+    private final long droppedRecordsCount;
+    private final long recordsQueueDepth;
+
+    public IntervalMetrics(long startTimeMillis, long endTimeMillis, double requestsPerSecond, ServerMetrics[] requested, ServerMetrics[] responding,
+                           long droppedRecordsCount, long recordsQueueDepth) {
+        this.startTimeMillis = startTimeMillis;
+        this.endTimeMillis = endTimeMillis;
+        this.requestsPerSecond = requestsPerSecond;
+        this.requested = requested;
+        this.responding = responding;
+        this.droppedRecordsCount = droppedRecordsCount;
+        this.recordsQueueDepth = recordsQueueDepth;
+    }
+
+    public static IntervalMetrics create(LatencySnapshot snapshot, String[] servers) {
+        return create(snapshot, servers, null);
+    }
+
+    /**
+     * @param servers the server addresses, in server index order.
+     * @param recordsQueue the queue of the latency records log, null when there is none.
+     */
+    public static IntervalMetrics create(LatencySnapshot snapshot, String[] servers, ExperimentDataQueue recordsQueue) {
+        final double seconds = snapshot.getDurationSeconds();
+        final ServerMetrics[] requested = new ServerMetrics[servers.length];
+        final ServerMetrics[] responding = new ServerMetrics[servers.length];
+        for (int i = 0; i < servers.length; i++) {
+            requested[i] = ServerMetrics.create(servers[i], i, snapshot.getRequestedServerHistogram(i),
+                    snapshot.getPacketsLostCount(i), snapshot.getTimeoutsCount(i),
+                    snapshot.getReceivedDatagramsCount(i), snapshot.getExpectedDatagramsCount(i), seconds);
+            responding[i] = ServerMetrics.create(servers[i], i, snapshot.getRespondingServerHistogram(i),
+                    snapshot.getRespondingPacketsLostCount(i), snapshot.getRespondingTimeoutsCount(i),
+                    snapshot.getRespondingReceivedDatagramsCount(i), snapshot.getRespondingExpectedDatagramsCount(i), seconds);
+        }
+        return new IntervalMetrics(snapshot.getStartTimeMillis(), snapshot.getEndTimeMillis(),
+                snapshot.getTotalCount() / seconds, requested, responding,
+                (recordsQueue != null) ? recordsQueue.getDroppedCount() : 0,
+                (recordsQueue != null) ? recordsQueue.getQueueDepth() : 0);
+    }
+
+    /**
+     * @return all zero metrics, until the first interval ends.
+     */
+    public static IntervalMetrics empty(String[] servers) {
+        final long now = System.currentTimeMillis();
+        final ServerMetrics[] metrics = new ServerMetrics[servers.length];
+        for (int i = 0; i < servers.length; i++) {
+            metrics[i] = new ServerMetrics(servers[i], i, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+        }
+        return new IntervalMetrics(now, now, 0, metrics, metrics, 0, 0);
+    }
+
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    public long getEndTimeMillis() {
+        return endTimeMillis;
+    }
+
+    /**
+     * @return all requests (near cache hits included) per second.
+     */
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    public ServerMetrics getRequested(int serverIndex) {
+        return requested[serverIndex];
+    }
+
+    public ServerMetrics getResponding(int serverIndex) {
+        return responding[serverIndex];
+    }
+
+    public int getServersCount() {
+        return requested.length;
+    }
+
+    /**
+     * @return the latency records dropped since the experiment started, see {@link ExperimentDataQueue.OverflowPolicy}.
+     */
+    public long getDroppedRecordsCount() {
+        return droppedRecordsCount;
+    }
+
+    /**
+     * @return the latency records waiting to be written.
+     */
+    public long getRecordsQueueDepth() {
+        return recordsQueueDepth;
+    }
+
+    public String toJson() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("{\"startTime\":").append(startTimeMillis)
+                .append(",\"endTime\":").append(endTimeMillis)
+                .append(",\"requestsPerSecond\":").append(formatDouble(requestsPerSecond))
+                .append(",\"droppedRecords\":").append(droppedRecordsCount)
+                .append(",\"recordsQueueDepth\":").append(recordsQueueDepth)
+                .append(",\"requested\":");
+        appendJson(sb, requested);
+        sb.append(",\"responding\":");
+        appendJson(sb, responding);
+        return sb.append('}').toString();
+    }
+
+    private static void appendJson(StringBuilder sb, ServerMetrics[] metrics) {
+        sb.append('[');
+        for (int i = 0; i < metrics.length; i++) {
+            ServerMetrics m = metrics[i];
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"server\":\"").append(m.getServer().replace("\\", "\\\\").replace("\"", "\\\"")).append('"')
+                    .append(",\"index\":").append(m.getServerIndex())
+                    .append(",\"requests\":").append(m.getRequestsCount())
+                    .append(",\"requestsPerSecond\":").append(formatDouble(m.getRequestsPerSecond()))
+                    .append(",\"p50Ms\":").append(formatDouble(m.getP50Millis()))
+                    .append(",\"p99Ms\":").append(formatDouble(m.getP99Millis()))
+                    .append(",\"p999Ms\":").append(formatDouble(m.getP999Millis()))
+                    .append(",\"maxMs\":").append(formatDouble(m.getMaxMillis()))
+                    .append(",\"lost\":").append(m.getLostCount())
+                    .append(",\"requestLossRate\":").append(String.format(Locale.ROOT, "%.6f", m.getRequestLossRate()))
+                    .append(",\"fragmentLossRate\":").append(String.format(Locale.ROOT, "%.6f", m.getFragmentLossRate()))
+                    .append(",\"timeouts\":").append(m.getTimeoutsCount())
+                    .append('}');
+        }
+        sb.append(']');
+    }
+
+    private static String formatDouble(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+}
@@ -0,0 +1,226 @@
+package memcached_sdn.experiment.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import memcached_sdn.experiment.data.ExperimentDataQueue;
+import memcached_sdn.experiment.data.HotKeysSnapshot;
+import memcached_sdn.experiment.data.IntervalListener;
+import memcached_sdn.experiment.data.LatencySnapshot;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exports the metrics of the latest latency interval while the experiment runs, as JMX MBeans (one per server
+ * and role, see {@link ServerMetricsMXBean}) and as JSON served on GET /metrics.
+ *
+ * The load threads are not involved: the experiment's main loop publishes every sampled interval, readers
+ * always see a complete interval.
+ */
+public class MetricsReporter implements IntervalListener, Closeable {
+
+    public static final String JMX_DOMAIN = "memcached_sdn.experiment";
+    public static final String HTTP_PATH = "/metrics";
+
+    private final String[] servers;
+    private volatile IntervalMetrics latest;
+    private volatile ExperimentDataQueue recordsQueue = null;
+    private final List<ObjectName> registeredNames = new ArrayList<>();
+    private HttpServer httpServer = null;
+
+    public MetricsReporter(String[] servers) {
+        this.servers = servers;
+        this.latest = IntervalMetrics.empty(servers);
+    }
+
+    /**
+     * Exports the dropped records count and depth of the latency records queue with every interval.
+     */
+    public void setRecordsQueue(ExperimentDataQueue recordsQueue) {
+        this.recordsQueue = recordsQueue;
+    }
+
+    public void publish(LatencySnapshot snapshot) {
+        this.latest = IntervalMetrics.create(snapshot, this.servers, this.recordsQueue);
+    }
+
+    @Override
+    public void onLatencyInterval(LatencySnapshot snapshot) {
+        publish(snapshot);
+    }
+
+    @Override
+    public void onHotKeysInterval(HotKeysSnapshot snapshot) {
+        // Only latency metrics are exported
+    }
+
+    public IntervalMetrics getLatest() {
+        return latest;
+    }
+
+    public static ObjectName getObjectName(boolean requested, int serverIndex) {
+        try {
+            return new ObjectName(String.format("%s:type=ServerMetrics,role=%s,server=%d",
+                    JMX_DOMAIN, requested ? "requested" : "responding", serverIndex));
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Registers the MBeans of all servers in the platform MBean server.
+     */
+    public synchronized void registerMBeans() {
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (int i = 0; i < this.servers.length; i++) {
+                for (boolean requested : new boolean[]{true, false}) {
+                    ObjectName name = getObjectName(requested, i);
+                    mBeanServer.registerMBean(new LiveServerMetrics(requested, i), name);
+                    this.registeredNames.add(name);
+                }
+            }
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public synchronized void startHttpServer(InetSocketAddress address) {
+        try {
+            this.httpServer = HttpServer.create(address, 0);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Failed to serve metrics on %s: %s", address, e.getMessage()), e);
+        }
+        this.httpServer.createContext(HTTP_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    if (!"GET".equals(exchange.getRequestMethod())) {
+                        exchange.sendResponseHeaders(405, -1);
+                        return;
+                    }
+                    byte[] body = getLatest().toJson().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "application/json");
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        this.httpServer.start();
+    }
+
+    /**
+     * @return the address metrics are served on, null if the HTTP server is not running.
+     */
+    public synchronized InetSocketAddress getHttpAddress() {
+        return (this.httpServer != null) ? this.httpServer.getAddress() : null;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (this.httpServer != null) {
+            this.httpServer.stop(0);
+            this.httpServer = null;
+        }
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : this.registeredNames) {
+            try {
+                mBeanServer.unregisterMBean(name);
+            } catch (JMException e) {
+                // Already unregistered
+            }
+        }
+        this.registeredNames.clear();
+    }
+
+    private class LiveServerMetrics implements ServerMetricsMXBean {
+
+        private final boolean requested;
+        private final int serverIndex;
+
+        LiveServerMetrics(boolean requested, int serverIndex) {
+            this.requested = requested;
+            this.serverIndex = serverIndex;
+        }
+
+        private ServerMetrics current() {
+            IntervalMetrics metrics = getLatest();
+            return this.requested ? metrics.getRequested(this.serverIndex) : metrics.getResponding(this.serverIndex);
+        }
+
+        @Override
+        public String getServer() {
+            return servers[this.serverIndex];
+        }
+
+        @Override
+        public long getIntervalEndTime() {
+            return getLatest().getEndTimeMillis();
+        }
+
+        @Override
+        public long getRequestsCount() {
+            return current().getRequestsCount();
+        }
+
+        @Override
+        public double getRequestsPerSecond() {
+            return current().getRequestsPerSecond();
+        }
+
+        @Override
+        public double getP50Millis() {
+            return current().getP50Millis();
+        }
+
+        @Override
+        public double getP99Millis() {
+            return current().getP99Millis();
+        }
+
+        @Override
+        public double getP999Millis() {
+            return current().getP999Millis();
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return current().getMaxMillis();
+        }
+
+        @Override
+        public long getLostCount() {
+            return current().getLostCount();
+        }
+
+        @Override
+        public double getRequestLossRate() {
+            return current().getRequestLossRate();
+        }
+
+        @Override
+        public long getTimeoutsCount() {
+            return current().getTimeoutsCount();
+        }
+
+        @Override
+        public double getFragmentLossRate() {
+            return current().getFragmentLossRate();
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+package memcached_sdn.experiment.metrics;
+
+import memcached_sdn.experiment.data.LatencySnapshot;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Throughput, latency percentiles, request and datagram losses and timeouts of a single server over one interval, either as the
+ * requested server or as the responding one.
+ */
+public class ServerMetrics {
+
+    private final String server;
+    private final int serverIndex;
+    private final long requestsCount;
+    private final double requestsPerSecond;
+    private final double p50Millis;
+    private final double p99Millis;
+    private final double p999Millis;
+    private final double maxMillis;
+    private final long lostCount;
+    private final double requestLossRate;
+    private final long timeoutsCount;
+    private final double fragmentLossRate;
+
+    public ServerMetrics(String server, int serverIndex, long requestsCount, double requestsPerSecond,
+                         double p50Millis, double p99Millis, double p999Millis, double maxMillis,
+                         long lostCount, double requestLossRate, long timeoutsCount, double fragmentLossRate) {
+        this.server = server;
+        this.serverIndex = serverIndex;
+        this.requestsCount = requestsCount;
+        this.requestsPerSecond = requestsPerSecond;
+        this.p50Millis = p50Millis;
+        this.p99Millis = p99Millis;
+        this.p999Millis = p999Millis;
+        this.maxMillis = maxMillis;
+        this.lostCount = lostCount;
+        this.requestLossRate = requestLossRate;
+        this.timeoutsCount = timeoutsCount;
+        this.fragmentLossRate = fragmentLossRate;
+    }
+
+    /**
+     * @param histogram the answered requests' latencies, in nanoseconds.
+     * @param receivedDatagramsCount the response datagrams which arrived, out of expectedDatagramsCount.
+     */
+    public static ServerMetrics create(String server, int serverIndex, Histogram histogram, long lostCount, long timeoutsCount,
+                                       long receivedDatagramsCount, long expectedDatagramsCount, double seconds) {
+        final long requestsCount = histogram.getTotalCount() + lostCount;
+        return new ServerMetrics(server, serverIndex, requestsCount, requestsCount / seconds,
+                histogram.getValueAtPercentile(50.0) / 1000000.0,
+                histogram.getValueAtPercentile(99.0) / 1000000.0,
+                histogram.getValueAtPercentile(99.9) / 1000000.0,
+                histogram.getMaxValue() / 1000000.0,
+                lostCount, LatencySnapshot.getRequestLossRate(histogram, lostCount), timeoutsCount,
+                LatencySnapshot.getFragmentLossRate(receivedDatagramsCount, expectedDatagramsCount));
+    }
+
+    public String getServer() {
+        return server;
+    }
+
+    public int getServerIndex() {
+        return serverIndex;
+    }
+
+    /**
+     * @return answered and lost requests.
+     */
+    public long getRequestsCount() {
+        return requestsCount;
+    }
+
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    public double getP50Millis() {
+        return p50Millis;
+    }
+
+    public double getP99Millis() {
+        return p99Millis;
+    }
+
+    public double getP999Millis() {
+        return p999Millis;
+    }
+
+    public double getMaxMillis() {
+        return maxMillis;
+    }
+
+    public long getLostCount() {
+        return lostCount;
+    }
+
+    public double getRequestLossRate() {
+        return requestLossRate;
+    }
+
+    public long getTimeoutsCount() {
+        return timeoutsCount;
+    }
+
+    /**
+     * @return the fraction of the response datagrams which did not arrive.
+     */
+    public double getFragmentLossRate() {
+        return fragmentLossRate;
+    }
+
+}
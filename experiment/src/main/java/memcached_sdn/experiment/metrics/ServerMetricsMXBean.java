@@ -0,0 +1,36 @@
+package memcached_sdn.experiment.metrics;
+
+/**
+ * The latest interval metrics of a server, registered by {@link MetricsReporter} as
+ * memcached_sdn.experiment:type=ServerMetrics,role=requested|responding,server=&lt;index&gt;.
+ */
+public interface ServerMetricsMXBean {
+
+    String getServer();
+
+    /**
+     * @return end of the interval the values belong to, in milliseconds since the epoch.
+     */
+    long getIntervalEndTime();
+
+    long getRequestsCount();
+
+    double getRequestsPerSecond();
+
+    double getP50Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+
+    long getLostCount();
+
+    double getRequestLossRate();
+
+    long getTimeoutsCount();
+
+    double getFragmentLossRate();
+
+}
@@ -0,0 +1,763 @@
+package memcached_sdn.experiment.server;
+
+import joptsimple.OptionException;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import memcached_sdn.experiment.helpers.SplitMixRandom;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * In-process stand-in for a memcached server, so experiments and tests can run without one.
+ *
+ * Gets and sets are served over UDP (the memcached frame format, ASCII protocol) by a pool of worker threads
+ * sharing one channel, and over TCP (ASCII or binary protocol, detected per connection) for the preload and
+ * the TCP transport. Responses of a server started with a response address are sent from that address, the way
+ * a switch redirecting requests to another server makes the response come from it.
+ * The {@link ServerFaults} add service time, a capacity limit and UDP drops, reordering and delay.
+ */
+public class MemcachedStandInServer implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger("stand-in");
+    private static final Charset CHARSET = Charset.forName("US-ASCII");
+
+    public static final int HEADER_SIZE = 8;
+    /**
+     * Same as memcached's UDP_MAX_PAYLOAD_SIZE.
+     */
+    public static final int UDP_MAX_PAYLOAD_SIZE = 1400;
+    private static final int DATAGRAM_SIZE = 65536;
+    private static final int BIND_ATTEMPTS = 10;
+    // Extra delay of reordered responses, letting the following responses overtake them
+    private static final long REORDER_DELAY_MICROS = 1000;
+    private static final String VERSION = "1.4.25-stand-in";
+
+    private static final byte REQUEST_MAGIC = (byte) 0x80;
+    private static final byte RESPONSE_MAGIC = (byte) 0x81;
+    private static final byte OPCODE_GET = 0x00;
+    private static final byte OPCODE_SET = 0x01;
+    private static final byte OPCODE_GETQ = 0x09;
+    private static final byte OPCODE_NOOP = 0x0a;
+    private static final byte OPCODE_VERSION = 0x0b;
+    private static final byte OPCODE_GETK = 0x0c;
+    private static final byte OPCODE_GETKQ = 0x0d;
+    private static final byte OPCODE_SETQ = 0x11;
+    private static final short STATUS_NOT_FOUND = 0x0001;
+    private static final short STATUS_UNKNOWN_COMMAND = 0x0081;
+
+    private final InetSocketAddress address;
+    private final InetSocketAddress responseAddress;
+    private final int threadsCount;
+    private final ServerFaults faults;
+    private final long seed;
+    private final ConcurrentHashMap<String, Item> items = new ConcurrentHashMap<>();
+    private final AtomicLong nextServiceSlotNanos = new AtomicLong(System.nanoTime());
+    private final AtomicLong requestsCount = new AtomicLong(0);
+    private final AtomicLong droppedDatagramsCount = new AtomicLong(0);
+    private final AtomicLong reorderedResponsesCount = new AtomicLong(0);
+    private final AtomicInteger connectionsCount = new AtomicInteger(0);
+    private DatagramChannel channel;
+    private DatagramChannel responseChannel;
+    private ServerSocketChannel tcpChannel;
+    private ScheduledExecutorService scheduler;
+    private volatile boolean closed = false;
+
+    /**
+     * @param address the UDP and TCP address to listen on, port 0 picks a free port.
+     * @param responseAddress the address UDP responses are sent from, or null to answer from the listening address.
+     * @param seed seeds the fault injection of the worker threads.
+     */
+    public MemcachedStandInServer(InetSocketAddress address, InetSocketAddress responseAddress, int threadsCount, ServerFaults faults, long seed) {
+        if (threadsCount < 1) {
+            throw new IllegalArgumentException("At least one worker thread is required.");
+        }
+        this.address = address;
+        this.responseAddress = responseAddress;
+        this.threadsCount = threadsCount;
+        this.faults = faults;
+        this.seed = seed;
+    }
+
+    public MemcachedStandInServer(InetSocketAddress address) {
+        this(address, null, 1, ServerFaults.NONE, 0);
+    }
+
+    public void start() throws IOException {
+        bindPort();
+        if (this.responseAddress != null) {
+            this.responseChannel = DatagramChannel.open();
+            this.responseChannel.bind(this.responseAddress);
+        } else {
+            this.responseChannel = this.channel;
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        for (int i = 0; i < this.threadsCount; i++) {
+            final int workerId = i;
+            startThread("udp-" + i, new Runnable() {
+                @Override
+                public void run() {
+                    serveDatagrams(workerId);
+                }
+            });
+        }
+        startThread("tcp-accept", new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        });
+    }
+
+    /**
+     * Binds UDP and TCP to the same port. A free UDP port may be in use by a TCP socket, in which case
+     * another port is picked when the port was not given.
+     */
+    private void bindPort() throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            this.channel = DatagramChannel.open();
+            this.channel.socket().setReceiveBufferSize(5000000);
+            this.channel.bind(this.address);
+            this.tcpChannel = ServerSocketChannel.open();
+            try {
+                this.tcpChannel.bind(new InetSocketAddress(this.address.getAddress(), getPort()));
+                return;
+            } catch (BindException e) {
+                closeQuietly(this.tcpChannel);
+                closeQuietly(this.channel);
+                if (this.address.getPort() != 0 || attempt == BIND_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void startThread(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, String.format("stand-in-%d-%s", getPort(), name));
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public int getPort() {
+        return this.channel.socket().getLocalPort();
+    }
+
+    /**
+     * @return host:port as given to the clients' servers list.
+     */
+    public String getServerAddress() {
+        return this.address.getAddress().getHostAddress() + ":" + getPort();
+    }
+
+    private void serveDatagrams(int workerId) {
+        final ByteBuffer receiveBuffer = ByteBuffer.allocate(DATAGRAM_SIZE);
+        final ResponseBuffer response = new ResponseBuffer();
+        final Random random = SplitMixRandom.forStream(this.seed, workerId);
+        try {
+            while (!this.closed) {
+                receiveBuffer.clear();
+                SocketAddress client = this.channel.receive(receiveBuffer);
+                receiveBuffer.flip();
+                if (receiveBuffer.remaining() < HEADER_SIZE) {
+                    continue;
+                }
+                short requestId = receiveBuffer.getShort(0);
+                awaitService();
+                response.reset();
+                handleDatagram(receiveBuffer.array(), HEADER_SIZE, receiveBuffer.limit(), response);
+                sendResponse(client, requestId, response, random);
+            }
+        } catch (ClosedChannelException e) {
+            // Closed
+        } catch (IOException e) {
+            if (!this.closed) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Waits for the request's turn when the server is at capacity, then spends the service time.
+     */
+    private void awaitService() {
+        this.requestsCount.incrementAndGet();
+        long now = System.nanoTime();
+        if (this.faults.getCapacity() > 0) {
+            long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / this.faults.getCapacity());
+            long slot;
+            while (true) {
+                long next = this.nextServiceSlotNanos.get();
+                slot = Math.max(now, next);
+                if (this.nextServiceSlotNanos.compareAndSet(next, slot + intervalNanos)) {
+                    break;
+                }
+            }
+            if (slot > now) {
+                LockSupport.parkNanos(slot - now);
+            }
+        }
+        if (this.faults.getServiceTimeMicros() > 0) {
+            // Busy, like a server spending CPU on the request
+            long end = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(this.faults.getServiceTimeMicros());
+            while (System.nanoTime() - end < 0) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Handles a single "get k1 .. kn" or "set key flags exptime bytes" request.
+     */
+    private void handleDatagram(byte[] data, int offset, int end, ResponseBuffer response) {
+        int lineEnd = indexOfCrlf(data, offset, end);
+        if (lineEnd == -1) {
+            response.writeAscii("ERROR\r\n");
+            return;
+        }
+        String[] parts = new String(data, offset, lineEnd - offset, CHARSET).split(" ");
+        switch (parts[0]) {
+            case "get":
+            case "gets":
+                writeValues(parts, response);
+                break;
+            case "set":
+                if (!isStorageCommand(parts)) {
+                    response.writeAscii("CLIENT_ERROR bad command line format\r\n");
+                    break;
+                }
+                int length = parseCount(parts[4]);
+                if (length > end - lineEnd - 2) {
+                    response.writeAscii("CLIENT_ERROR bad data chunk\r\n");
+                    break;
+                }
+                this.items.put(parts[1], new Item(parseCount(parts[2]),
+                        Arrays.copyOfRange(data, lineEnd + 2, lineEnd + 2 + length)));
+                response.writeAscii("STORED\r\n");
+                break;
+            default:
+                response.writeAscii("ERROR\r\n");
+        }
+    }
+
+    /**
+     * @return whether the line is "command key flags exptime bytes [noreply]" with a valid flags and bytes.
+     */
+    private static boolean isStorageCommand(String[] parts) {
+        return parts.length >= 5 && parseCount(parts[2]) >= 0 && parseCount(parts[4]) >= 0;
+    }
+
+    /**
+     * @return the non-negative number sent by the client, or -1 if it is not one.
+     */
+    private static int parseCount(String value) {
+        try {
+            return Math.max(-1, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int indexOfCrlf(byte[] data, int offset, int end) {
+        for (int i = offset; i < end - 1; i++) {
+            if (data[i] == '\r' && data[i + 1] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void writeValues(String[] parts, ResponseBuffer response) {
+        for (int i = 1; i < parts.length; i++) {
+            Item item = this.items.get(parts[i]);
+            if (item != null) {
+                response.writeAscii("VALUE " + parts[i] + " " + item.flags + " " + item.data.length + "\r\n");
+                response.write(item.data, 0, item.data.length);
+                response.writeAscii("\r\n");
+            }
+        }
+        response.writeAscii("END\r\n");
+    }
+
+    /**
+     * Splits the response into UDP_MAX_PAYLOAD_SIZE datagrams and sends the ones which are not dropped.
+     */
+    private void sendResponse(final SocketAddress client, short requestId, ResponseBuffer response, Random random) throws IOException {
+        final int totalNumberOfPackets = Math.max(1, (response.size() + UDP_MAX_PAYLOAD_SIZE - 1) / UDP_MAX_PAYLOAD_SIZE);
+        final List<ByteBuffer> datagrams = new ArrayList<>(totalNumberOfPackets);
+        for (int i = 0; i < totalNumberOfPackets; i++) {
+            if (this.faults.getDropRate() > 0 && random.nextDouble() < this.faults.getDropRate()) {
+                this.droppedDatagramsCount.incrementAndGet();
+                continue;
+            }
+            int payloadOffset = i * UDP_MAX_PAYLOAD_SIZE;
+            int payloadLength = Math.min(UDP_MAX_PAYLOAD_SIZE, response.size() - payloadOffset);
+            ByteBuffer datagram = ByteBuffer.allocate(HEADER_SIZE + payloadLength);
+            datagram.putShort(requestId);
+            datagram.putShort((short) i);
+            datagram.putShort((short) totalNumberOfPackets);
+            datagram.putShort((short) 0);
+            datagram.put(response.array(), payloadOffset, payloadLength);
+            datagram.flip();
+            datagrams.add(datagram);
+        }
+        long delayMicros = this.faults.getDelayMicros();
+        if (this.faults.getReorderRate() > 0 && random.nextDouble() < this.faults.getReorderRate()) {
+            this.reorderedResponsesCount.incrementAndGet();
+            Collections.shuffle(datagrams, random);
+            delayMicros += REORDER_DELAY_MICROS;
+        }
+        if (delayMicros == 0) {
+            send(client, datagrams);
+            return;
+        }
+        this.scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    send(client, datagrams);
+                } catch (IOException e) {
+                    if (!closed) {
+                        LOGGER.log(Level.WARNING, "Failed to send a delayed response to " + client, e);
+                    }
+                }
+            }
+        }, delayMicros, TimeUnit.MICROSECONDS);
+    }
+
+    private void send(SocketAddress client, List<ByteBuffer> datagrams) throws IOException {
+        for (ByteBuffer datagram : datagrams) {
+            this.responseChannel.send(datagram, client);
+        }
+    }
+
+    private void acceptConnections() {
+        try {
+            while (!this.closed) {
+                final SocketChannel connection = this.tcpChannel.accept();
+                this.connectionsCount.incrementAndGet();
+                startThread("tcp-" + this.connectionsCount.get(), new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            serveConnection(connection);
+                        } catch (EOFException | ClosedChannelException e) {
+                            // Closed by the client
+                        } catch (IOException e) {
+                            if (!closed) {
+                                LOGGER.log(Level.WARNING, "Closing a TCP connection after an error", e);
+                            }
+                        } finally {
+                            try {
+                                connection.close();
+                            } catch (IOException e) {
+                            }
+                        }
+                    }
+                });
+            }
+        } catch (IOException e) {
+            if (!this.closed) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private void serveConnection(SocketChannel connection) throws IOException {
+        connection.socket().setTcpNoDelay(true);
+        final BufferedInputStream in = new BufferedInputStream(Channels.newInputStream(connection), 65536);
+        final BufferedOutputStream out = new BufferedOutputStream(Channels.newOutputStream(connection), 65536);
+        in.mark(1);
+        int first = in.read();
+        if (first == -1) {
+            return;
+        }
+        in.reset();
+        if ((byte) first == REQUEST_MAGIC) {
+            serveBinaryProtocol(new DataInputStream(in), new DataOutputStream(out));
+        } else {
+            serveAsciiProtocol(in, out);
+        }
+    }
+
+    private void serveAsciiProtocol(InputStream in, OutputStream out) throws IOException {
+        final ResponseBuffer response = new ResponseBuffer();
+        String line;
+        while (!this.closed && (line = readLine(in)) != null) {
+            String[] parts = line.split(" ");
+            boolean noreply = parts[parts.length - 1].equals("noreply");
+            response.reset();
+            switch (parts[0]) {
+                case "get":
+                case "gets":
+                    awaitService();
+                    writeValues(parts, response);
+                    break;
+                case "set":
+                case "add":
+                case "replace": {
+                    if (!isStorageCommand(parts)) {
+                        // The data block which may follow is then answered as an unknown command
+                        response.writeAscii("CLIENT_ERROR bad command line format\r\n");
+                        break;
+                    }
+                    awaitService();
+                    byte[] data = new byte[parseCount(parts[4])];
+                    readFully(in, data);
+                    byte[] crlf = new byte[2];
+                    readFully(in, crlf);
+                    if (crlf[0] != '\r' || crlf[1] != '\n') {
+                        response.writeAscii("CLIENT_ERROR bad data chunk\r\n");
+                        break;
+                    }
+                    Item item = new Item(parseCount(parts[2]), data);
+                    boolean stored = true;
+                    if (parts[0].equals("add")) {
+                        stored = this.items.putIfAbsent(parts[1], item) == null;
+                    } else if (parts[0].equals("replace")) {
+                        stored = this.items.replace(parts[1], item) != null;
+                    } else {
+                        this.items.put(parts[1], item);
+                    }
+                    response.writeAscii(stored ? "STORED\r\n" : "NOT_STORED\r\n");
+                    break;
+                }
+                case "delete":
+                    if (parts.length < 2) {
+                        response.writeAscii("CLIENT_ERROR bad command line format\r\n");
+                        break;
+                    }
+                    response.writeAscii(this.items.remove(parts[1]) != null ? "DELETED\r\n" : "NOT_FOUND\r\n");
+                    break;
+                case "flush_all":
+                    this.items.clear();
+                    response.writeAscii("OK\r\n");
+                    break;
+                case "version":
+                    response.writeAscii("VERSION " + VERSION + "\r\n");
+                    break;
+                case "quit":
+                    return;
+                default:
+                    response.writeAscii("ERROR\r\n");
+            }
+            if (!noreply) {
+                out.write(response.array(), 0, response.size());
+            }
+            if (in.available() == 0) {
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * @return the line without its CRLF, or null at the end of the stream.
+     */
+    private static String readLine(InputStream in) throws IOException {
+        final StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) b);
+        }
+        return null;
+    }
+
+    private static void readFully(InputStream in, byte[] data) throws IOException {
+        new DataInputStream(in).readFully(data);
+    }
+
+    private void serveBinaryProtocol(DataInputStream in, DataOutputStream out) throws IOException {
+        while (!this.closed) {
+            byte magic = in.readByte();
+            byte opcode = in.readByte();
+            int keyLength = in.readUnsignedShort();
+            int extrasLength = in.readUnsignedByte();
+            in.readByte();
+            in.readShort();
+            int bodyLength = in.readInt();
+            int opaque = in.readInt();
+            in.readLong();
+            if (magic != REQUEST_MAGIC) {
+                throw new IOException("Bad request magic " + magic);
+            }
+            if (bodyLength < extrasLength + keyLength) {
+                // The next request cannot be found either, so the connection is closed
+                throw new IOException(String.format("Bad body length %d for %d bytes of extras and key", bodyLength, extrasLength + keyLength));
+            }
+            byte[] extras = new byte[extrasLength];
+            in.readFully(extras);
+            byte[] key = new byte[keyLength];
+            in.readFully(key);
+            byte[] value = new byte[bodyLength - extrasLength - keyLength];
+            in.readFully(value);
+            String keyString = new String(key, CHARSET);
+
+            switch (opcode) {
+                case OPCODE_GET:
+                case OPCODE_GETQ:
+                case OPCODE_GETK:
+                case OPCODE_GETKQ: {
+                    awaitService();
+                    Item item = this.items.get(keyString);
+                    boolean withKey = opcode == OPCODE_GETK || opcode == OPCODE_GETKQ;
+                    if (item != null) {
+                        byte[] flags = ByteBuffer.allocate(4).putInt(item.flags).array();
+                        writeBinaryResponse(out, opcode, (short) 0, opaque, flags, withKey ? key : new byte[0], item.data);
+                    } else if (opcode == OPCODE_GET || opcode == OPCODE_GETK) {
+                        writeBinaryResponse(out, opcode, STATUS_NOT_FOUND, opaque, new byte[0],
+                                withKey ? key : new byte[0], "Not found".getBytes(CHARSET));
+                    }
+                    break;
+                }
+                case OPCODE_SET:
+                case OPCODE_SETQ: {
+                    awaitService();
+                    int flags = (extrasLength >= 4) ? ByteBuffer.wrap(extras).getInt() : 0;
+                    this.items.put(keyString, new Item(flags, value));
+                    if (opcode == OPCODE_SET) {
+                        writeBinaryResponse(out, opcode, (short) 0, opaque, new byte[0], new byte[0], new byte[0]);
+                    }
+                    break;
+                }
+                case OPCODE_NOOP:
+                    writeBinaryResponse(out, opcode, (short) 0, opaque, new byte[0], new byte[0], new byte[0]);
+                    break;
+                case OPCODE_VERSION:
+                    writeBinaryResponse(out, opcode, (short) 0, opaque, new byte[0], new byte[0], VERSION.getBytes(CHARSET));
+                    break;
+                default:
+                    writeBinaryResponse(out, opcode, STATUS_UNKNOWN_COMMAND, opaque, new byte[0], new byte[0], new byte[0]);
+            }
+            if (in.available() == 0) {
+                out.flush();
+            }
+        }
+    }
+
+    private static void writeBinaryResponse(DataOutputStream out, byte opcode, short status, int opaque,
+                                            byte[] extras, byte[] key, byte[] value) throws IOException {
+        out.writeByte(RESPONSE_MAGIC);
+        out.writeByte(opcode);
+        out.writeShort(key.length);
+        out.writeByte(extras.length);
+        out.writeByte(0);
+        out.writeShort(status);
+        out.writeInt(extras.length + key.length + value.length);
+        out.writeInt(opaque);
+        out.writeLong(0);
+        out.write(extras);
+        out.write(key);
+        out.write(value);
+    }
+
+    public long getRequestsCount() {
+        return requestsCount.get();
+    }
+
+    public long getDroppedDatagramsCount() {
+        return droppedDatagramsCount.get();
+    }
+
+    public long getReorderedResponsesCount() {
+        return reorderedResponsesCount.get();
+    }
+
+    public int getItemsCount() {
+        return items.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Stand-in %s%s: %d requests, %d items, %d datagrams dropped, %d responses reordered (%s)",
+                getServerAddress(),
+                (this.responseAddress != null) ? " responding from " + this.responseAddress.getAddress().getHostAddress() : "",
+                getRequestsCount(), getItemsCount(), getDroppedDatagramsCount(), getReorderedResponsesCount(), this.faults);
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+        closeQuietly(this.channel);
+        closeQuietly(this.responseChannel);
+        closeQuietly(this.tcpChannel);
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    private static class Item {
+        final int flags;
+        final byte[] data;
+
+        Item(int flags, byte[] data) {
+            this.flags = flags;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Exposes the written bytes without copying them.
+     */
+    private static class ResponseBuffer extends ByteArrayOutputStream {
+
+        ResponseBuffer() {
+            super(4096);
+        }
+
+        byte[] array() {
+            return this.buf;
+        }
+
+        void writeAscii(String s) {
+            byte[] bytes = s.getBytes(CHARSET);
+            write(bytes, 0, bytes.length);
+        }
+    }
+
+    private static OptionSet parseProgramArgument(String[] args) throws IOException {
+        OptionParser parser = new OptionParser();
+        parser.accepts(
+                "servers", "Comma separated addresses to listen on (127.0.0.1:22122,127.0.0.2:22122...), one server each.")
+                .withRequiredArg().required();
+        parser.accepts(
+                "respond-from", "Comma separated addresses the servers send their UDP responses from (in servers order, empty for the server's own address).")
+                .withOptionalArg().ofType(String.class);
+        parser.accepts(
+                "threads", "Number of UDP worker threads per server.")
+                .withOptionalArg().ofType(Integer.class).defaultsTo(4);
+        parser.accepts(
+                "service-time", "Time in microseconds a worker spends on every request.")
+                .withOptionalArg().ofType(Long.class).defaultsTo(0L);
+        parser.accepts(
+                "capacity", "Maximal requests per second of every server, 0 for no limit.")
+                .withOptionalArg().ofType(Double.class).defaultsTo(0.0);
+        parser.accepts(
+                "drop-rate", "Probability of dropping a UDP response datagram.")
+                .withOptionalArg().ofType(Double.class).defaultsTo(0.0);
+        parser.accepts(
+                "reorder-rate", "Probability of shuffling the datagrams of a UDP response and sending it after the following ones.")
+                .withOptionalArg().ofType(Double.class).defaultsTo(0.0);
+        parser.accepts(
+                "delay", "Delay in microseconds added to every UDP response.")
+                .withOptionalArg().ofType(Long.class).defaultsTo(0L);
+        parser.accepts(
+                "seed", "Seed of the fault injection, -1 for a random seed.")
+                .withOptionalArg().ofType(Long.class).defaultsTo(-1L);
+        parser.accepts(
+                "stats-interval", "Seconds between statistics reports, 0 to disable.")
+                .withOptionalArg().ofType(Integer.class).defaultsTo(10);
+        try {
+            return parser.parse(args);
+        } catch (OptionException e) {
+            parser.printHelpOn(System.out);
+            System.exit(1);
+        }
+        return null;
+    }
+
+    private static InetSocketAddress parseAddress(String value, int defaultPort) {
+        String[] values = value.trim().split(":");
+        return new InetSocketAddress(values[0], (values.length == 1) ? defaultPort : Integer.parseInt(values[1]));
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        OptionSet options = parseProgramArgument(args);
+        final String[] addresses = options.valueOf("servers").toString().split(",");
+        final String[] respondFrom = options.hasArgument("respond-from") ? options.valueOf("respond-from").toString().split(",", -1) : null;
+        final int threadsCount = Integer.parseInt(options.valueOf("threads").toString());
+        final long seed = Long.parseLong(options.valueOf("seed").toString());
+        final int statsInterval = Integer.parseInt(options.valueOf("stats-interval").toString());
+        final ServerFaults faults = new ServerFaults(
+                Long.parseLong(options.valueOf("service-time").toString()),
+                Double.parseDouble(options.valueOf("capacity").toString()),
+                Double.parseDouble(options.valueOf("drop-rate").toString()),
+                Double.parseDouble(options.valueOf("reorder-rate").toString()),
+                Long.parseLong(options.valueOf("delay").toString()));
+
+        if (respondFrom != null && respondFrom.length != addresses.length) {
+            System.out.println(String.format("%d respond-from addresses given for %d servers.", respondFrom.length, addresses.length));
+            System.exit(1);
+        }
+
+        final long masterSeed = (seed != -1) ? seed : new Random().nextLong();
+        final List<MemcachedStandInServer> servers = new ArrayList<>();
+        for (int i = 0; i < addresses.length; i++) {
+            InetSocketAddress responseAddress = (respondFrom != null && !respondFrom[i].trim().isEmpty())
+                    ? parseAddress(respondFrom[i], 0) : null;
+            MemcachedStandInServer server = new MemcachedStandInServer(
+                    parseAddress(addresses[i], 11211), responseAddress, threadsCount, faults, masterSeed + i);
+            server.start();
+            servers.add(server);
+            LOGGER.info("Started " + server);
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (MemcachedStandInServer server : servers) {
+                    server.close();
+                    LOGGER.info(server.toString());
+                }
+            }
+        }));
+
+        while (true) {
+            if (statsInterval > 0) {
+                Thread.sleep(statsInterval * 1000L);
+                for (MemcachedStandInServer server : servers) {
+                    LOGGER.info(server.toString());
+                }
+            } else {
+                Thread.sleep(Long.MAX_VALUE);
+            }
+        }
+    }
+
+}
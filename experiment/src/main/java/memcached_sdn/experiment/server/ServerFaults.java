@@ -0,0 +1,66 @@
+package memcached_sdn.experiment.server;
+
+/**
+ * Service time, capacity and network faults emulated by a {@link MemcachedStandInServer}.
+ */
+public class ServerFaults {
+
+    public static final ServerFaults NONE = new ServerFaults(0, 0, 0, 0, 0);
+
+    private final long serviceTimeMicros;
+    private final double capacity;
+    private final double dropRate;
+    private final double reorderRate;
+    private final long delayMicros;
+
+    /**
+     * @param serviceTimeMicros time a worker thread spends on every request.
+     * @param capacity maximal requests per second of the server (all threads together), requests above it are
+     *                 queued, 0 for no limit.
+     * @param dropRate probability of dropping every UDP response datagram.
+     * @param reorderRate probability of sending the datagrams of a UDP response shuffled and late enough for
+     *                    the following responses to overtake them.
+     * @param delayMicros one way delay added to every UDP response without holding a worker thread.
+     */
+    public ServerFaults(long serviceTimeMicros, double capacity, double dropRate, double reorderRate, long delayMicros) {
+        if (serviceTimeMicros < 0 || capacity < 0 || delayMicros < 0) {
+            throw new IllegalArgumentException("Service time, capacity and delay can not be negative.");
+        }
+        if (dropRate < 0 || dropRate > 1 || reorderRate < 0 || reorderRate > 1) {
+            throw new IllegalArgumentException("Drop and reorder rates must be between 0 and 1.");
+        }
+        this.serviceTimeMicros = serviceTimeMicros;
+        this.capacity = capacity;
+        this.dropRate = dropRate;
+        this.reorderRate = reorderRate;
+        this.delayMicros = delayMicros;
+    }
+
+    public long getServiceTimeMicros() {
+        return serviceTimeMicros;
+    }
+
+    public double getCapacity() {
+        return capacity;
+    }
+
+    public double getDropRate() {
+        return dropRate;
+    }
+
+    public double getReorderRate() {
+        return reorderRate;
+    }
+
+    public long getDelayMicros() {
+        return delayMicros;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("service time %dus, capacity %s, drop rate %.4f, reorder rate %.4f, delay %dus",
+                serviceTimeMicros, (capacity > 0) ? String.format("%.0f requests/s", capacity) : "unlimited",
+                dropRate, reorderRate, delayMicros);
+    }
+
+}
@@ -0,0 +1,32 @@
+import memcached_sdn.experiment.helpers.key_picker.AliasSampler;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static junit.framework.TestCase.assertEquals;
+
+public class AliasSamplerTest {
+
+    @Test
+    public void testSamplesFollowWeights() {
+        double[] weights = new double[]{5, 0, 3, 2};
+        AliasSampler sampler = new AliasSampler(weights);
+        Random random = new Random(1);
+        int[] counts = new int[weights.length];
+        int samples = 1000000;
+        for (int i = 0; i < samples; i++) {
+            counts[sampler.sample(random)]++;
+        }
+        assertEquals(0, counts[1]);
+        assertEquals(0.5, counts[0] / (double) samples, 0.005);
+        assertEquals(0.3, counts[2] / (double) samples, 0.005);
+        assertEquals(0.2, counts[3] / (double) samples, 0.005);
+    }
+
+    @Test
+    public void testSingleWeight() {
+        AliasSampler sampler = new AliasSampler(new double[]{0.1});
+        assertEquals(0, sampler.sample(new Random(1)));
+    }
+
+}
@@ -0,0 +1,195 @@
+import memcached_sdn.experiment.data.BinaryExperimentDataReader;
+import memcached_sdn.experiment.data.BinaryExperimentDataWriter;
+import memcached_sdn.experiment.data.ExperimentData;
+import memcached_sdn.experiment.data.TextExperimentDataWriter;
+import memcached_sdn.experiment.helpers.Helpers;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
+
+public class BinaryExperimentDataTest {
+
+    private static final String FILE_HEADER = "; 3.0,2.0,1.0\n; mem-key-0,mem-key-1,mem-key-2\n";
+    private static final int RECORDS_PER_BLOCK = BinaryExperimentDataWriter.BLOCK_SIZE / BinaryExperimentDataWriter.RECORD_SIZE;
+
+    private static File createFile() throws IOException {
+        File file = File.createTempFile("latency", ".bin");
+        file.deleteOnExit();
+        for (int i = 1; i < 10; i++) {
+            new File(file.getPath() + "." + i).deleteOnExit();
+        }
+        return file;
+    }
+
+    /**
+     * Every 7th request is lost and every 5th was retried.
+     */
+    private static ExperimentData record(int i) {
+        final boolean lost = i % 7 == 0;
+        return new ExperimentData(1456000000000000000L + i * 1000L, String.format(Helpers.KEY_FORMAT, i % 1000), i % 1000,
+                lost ? -1 : 250000 + i % 100, i % 4, lost ? -1 : (i + 1) % 4, lost ? 1 : 2, 2,
+                (i % 5 == 0) ? 1 : 0, (i % 10 == 0) ? 2 : 0);
+    }
+
+    private static void assertRecord(ExperimentData expected, ExperimentData actual) {
+        assertEquals(expected.getTimestampNanos(), actual.getTimestampNanos());
+        assertEquals(expected.getKey(), actual.getKey());
+        assertEquals(expected.getKeyId(), actual.getKeyId());
+        assertEquals(expected.getLatencyNanos(), actual.getLatencyNanos());
+        assertEquals(expected.getServerIndex(), actual.getServerIndex());
+        assertEquals(expected.getResponseServerIndex(), actual.getResponseServerIndex());
+        assertEquals(expected.getReceivedPacketsCount(), actual.getReceivedPacketsCount());
+        assertEquals(expected.getTotalPacketsCount(), actual.getTotalPacketsCount());
+        assertEquals(expected.getTimeoutRetries(), actual.getTimeoutRetries());
+        assertEquals(expected.getFragmentRetries(), actual.getFragmentRetries());
+    }
+
+    private static long write(File file, int recordsCount, boolean compress, long segmentSize) throws IOException {
+        BinaryExperimentDataWriter writer = new BinaryExperimentDataWriter(file.getPath(), FILE_HEADER, Helpers.KEY_FORMAT, compress, segmentSize);
+        for (int i = 0; i < recordsCount; i++) {
+            writer.write(record(i));
+        }
+        writer.close();
+        return writer.getStoredBytesCount();
+    }
+
+    private static void assertRecords(File file, int recordsCount) throws IOException {
+        try (BinaryExperimentDataReader reader = new BinaryExperimentDataReader(file.getPath())) {
+            assertEquals(FILE_HEADER, reader.getFileHeader());
+            assertEquals(Helpers.KEY_FORMAT, reader.getKeyFormat());
+            for (int i = 0; i < recordsCount; i++) {
+                assertRecord(record(i), reader.next());
+            }
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void testTextRoundTrip() throws Exception {
+        File file = createFile();
+        write(file, 1000, false, BinaryExperimentDataWriter.DEFAULT_SEGMENT_SIZE);
+        StringWriter converted = new StringWriter();
+        try (BinaryExperimentDataReader reader = new BinaryExperimentDataReader(file.getPath());
+             TextExperimentDataWriter writer = new TextExperimentDataWriter(converted, reader.getFileHeader())) {
+            ExperimentData data;
+            while ((data = reader.next()) != null) {
+                writer.write(data);
+            }
+        }
+        StringWriter expected = new StringWriter();
+        try (TextExperimentDataWriter writer = new TextExperimentDataWriter(expected, FILE_HEADER)) {
+            for (int i = 0; i < 1000; i++) {
+                writer.write(record(i));
+            }
+        }
+        assertEquals(expected.toString(), converted.toString());
+        assertTrue(converted.toString().contains(",mem-key-7,-1.0,3,-1,1/2\n"));
+        assertTrue(converted.toString().contains(",mem-key-10,0.25001,2,3,2/2,1/2\n"));
+    }
+
+    @Test
+    public void testDeflateBlocks() throws Exception {
+        final int recordsCount = 3 * RECORDS_PER_BLOCK + 17;
+        File raw = createFile();
+        File compressed = createFile();
+        long rawBytes = write(raw, recordsCount, false, BinaryExperimentDataWriter.DEFAULT_SEGMENT_SIZE);
+        long compressedBytes = write(compressed, recordsCount, true, BinaryExperimentDataWriter.DEFAULT_SEGMENT_SIZE);
+        assertEquals(recordsCount * (long) BinaryExperimentDataWriter.RECORD_SIZE + 4 * BinaryExperimentDataWriter.BLOCK_HEADER_SIZE, rawBytes);
+        assertTrue(compressedBytes < rawBytes / 2);
+        assertRecords(raw, recordsCount);
+        assertRecords(compressed, recordsCount);
+    }
+
+    @Test
+    public void testSegments() throws Exception {
+        // Two full blocks fit in a segment, so the records continue in the next segment after every second block.
+        final long segmentSize = 5 * BinaryExperimentDataWriter.BLOCK_SIZE / 2;
+        final int recordsCount = 7 * RECORDS_PER_BLOCK + 100;
+        File file = createFile();
+        write(file, recordsCount, false, segmentSize);
+        assertTrue(new File(file.getPath() + ".3").exists());
+        assertFalse(new File(file.getPath() + ".4").exists());
+        assertRecords(file, recordsCount);
+    }
+
+    @Test
+    public void testUnclosedSegment() throws Exception {
+        File file = createFile();
+        write(file, 100, false, BinaryExperimentDataWriter.DEFAULT_SEGMENT_SIZE);
+        try (RandomAccessFile segment = new RandomAccessFile(file, "rw")) {
+            assertEquals(BinaryExperimentDataWriter.VERSION, readVersion(segment));
+            segment.seek(12);
+            assertTrue(segment.readLong() > 0);
+            segment.seek(12);
+            segment.writeLong(0);
+        }
+        assertRecords(file, 100);
+    }
+
+    private static short readVersion(RandomAccessFile segment) throws IOException {
+        segment.seek(4);
+        return segment.readShort();
+    }
+
+    /**
+     * Writes a single segment in the layout of the older versions, which had no data length and were truncated.
+     */
+    private static void writeOldVersion(File file, short version, int recordsCount) throws IOException {
+        final int recordSize = (version == 1) ? 28 : BinaryExperimentDataWriter.RECORD_SIZE;
+        final byte[] header = FILE_HEADER.getBytes(StandardCharsets.UTF_8);
+        final byte[] format = Helpers.KEY_FORMAT.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer segment = ByteBuffer.allocate(12 + 4 + header.length + 4 + format.length
+                + BinaryExperimentDataWriter.BLOCK_HEADER_SIZE + recordsCount * recordSize);
+        segment.putInt(BinaryExperimentDataWriter.MAGIC).putShort(version).putShort((short) 0).putInt(0);
+        segment.putInt(header.length).put(header).putInt(format.length).put(format);
+        segment.putInt(recordsCount * recordSize).putInt(recordsCount * recordSize);
+        for (int i = 0; i < recordsCount; i++) {
+            ExperimentData data = record(i);
+            segment.putLong(data.getTimestampNanos()).putInt(data.getKeyId()).putLong(data.getLatencyNanos());
+            segment.putShort((short) data.getServerIndex()).putShort((short) data.getResponseServerIndex());
+            segment.putShort((short) data.getReceivedPacketsCount()).putShort((short) data.getTotalPacketsCount());
+            if (version > 1) {
+                segment.putShort((short) data.getTimeoutRetries()).putShort((short) data.getFragmentRetries());
+            }
+        }
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(segment.array());
+        }
+    }
+
+    @Test
+    public void testOldVersions() throws Exception {
+        File file = createFile();
+        writeOldVersion(file, (short) 2, 50);
+        assertRecords(file, 50);
+
+        writeOldVersion(file, (short) 1, 50);
+        try (BinaryExperimentDataReader reader = new BinaryExperimentDataReader(file.getPath())) {
+            assertEquals(FILE_HEADER, reader.getFileHeader());
+            for (int i = 0; i < 50; i++) {
+                ExperimentData expected = record(i);
+                ExperimentData actual = reader.next();
+                assertEquals(expected.getTimestampNanos(), actual.getTimestampNanos());
+                assertEquals(expected.getKey(), actual.getKey());
+                assertEquals(expected.getLatencyNanos(), actual.getLatencyNanos());
+                assertEquals(expected.getResponseServerIndex(), actual.getResponseServerIndex());
+                assertEquals(expected.getReceivedPacketsCount(), actual.getReceivedPacketsCount());
+                assertEquals(0, actual.getTimeoutRetries());
+                assertEquals(0, actual.getFragmentRetries());
+            }
+            assertNull(reader.next());
+        }
+    }
+
+}
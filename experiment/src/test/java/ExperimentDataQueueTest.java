@@ -0,0 +1,190 @@
+import memcached_sdn.experiment.data.ExperimentData;
+import memcached_sdn.experiment.data.ExperimentDataQueue;
+import memcached_sdn.experiment.helpers.SpscRingBuffer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
+
+public class ExperimentDataQueueTest {
+
+    private static ExperimentData record(int threadId, int keyId) {
+        return new ExperimentData(keyId, "mem-key-" + keyId, keyId, 1000, threadId, threadId, 1, 1);
+    }
+
+    private static List<Integer> keyIds(List<ExperimentData> records) {
+        List<Integer> ids = new ArrayList<>();
+        for (ExperimentData data : records) {
+            ids.add(data.getKeyId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testRingBuffer() {
+        SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(5);
+        assertEquals(8, buffer.capacity());
+        List<Integer> drained = new ArrayList<>();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 8; i++) {
+                assertTrue(buffer.offer(round * 8 + i));
+            }
+            assertFalse(buffer.offer(-1));
+            assertEquals(8, buffer.size());
+            assertEquals(3, buffer.drainTo(drained, 3));
+            assertEquals(5, buffer.size());
+            assertEquals(5, buffer.drainTo(drained, 100));
+            assertEquals(0, buffer.drainTo(drained, 100));
+        }
+        assertEquals(24, drained.size());
+        for (int i = 0; i < drained.size(); i++) {
+            assertEquals(i, drained.get(i).intValue());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRingBufferCapacity() {
+        new SpscRingBuffer<Integer>(0);
+    }
+
+    @Test
+    public void testRingBufferProducerConsumer() throws Exception {
+        final int count = 1000000;
+        final SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(64);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    while (!buffer.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+            }
+        });
+        producer.start();
+        List<Integer> drained = new ArrayList<>();
+        int expected = 0;
+        long deadline = System.currentTimeMillis() + 30000;
+        while (expected < count && System.currentTimeMillis() < deadline) {
+            drained.clear();
+            if (buffer.drainTo(drained, 16) == 0) {
+                Thread.yield();
+            }
+            for (Integer item : drained) {
+                assertEquals(expected++, item.intValue());
+            }
+        }
+        producer.join();
+        assertEquals(count, expected);
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testDrop() {
+        ExperimentDataQueue queue = new ExperimentDataQueue(2, 4, ExperimentDataQueue.OverflowPolicy.DROP, 10, new AtomicBoolean(false));
+        for (int i = 0; i < 10; i++) {
+            queue.add(0, record(0, i));
+        }
+        queue.add(1, record(1, 100));
+        assertEquals(5, queue.getQueueDepth());
+        assertEquals(6, queue.getDroppedCount());
+        List<ExperimentData> drained = new ArrayList<>();
+        assertEquals(5, queue.drainTo(drained, 100));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 100), keyIds(drained));
+        assertEquals(0, queue.getQueueDepth());
+    }
+
+    @Test
+    public void testSample() {
+        ExperimentDataQueue queue = ExperimentDataQueue.create(1, 8, "sample-2", new AtomicBoolean(false));
+        for (int i = 0; i < 20; i++) {
+            queue.add(0, record(0, i));
+        }
+        // Every record is kept until the buffer is more than half full, then every second one until it is full.
+        List<ExperimentData> drained = new ArrayList<>();
+        assertEquals(8, queue.drainTo(drained, 100));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 6, 8, 10), keyIds(drained));
+        assertEquals(12, queue.getDroppedCount());
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        final int count = 10000;
+        final ExperimentDataQueue queue = ExperimentDataQueue.create(1, 2, "block", new AtomicBoolean(false));
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    queue.add(0, record(0, i));
+                }
+            }
+        });
+        producer.start();
+        List<ExperimentData> drained = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + 30000;
+        while (drained.size() < count && System.currentTimeMillis() < deadline) {
+            if (queue.drainTo(drained, 1) == 0) {
+                Thread.yield();
+            }
+        }
+        producer.join();
+        assertEquals(count, drained.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, drained.get(i).getKeyId());
+        }
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+    @Test
+    public void testBlockedProducerStops() throws Exception {
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final ExperimentDataQueue queue = new ExperimentDataQueue(1, 1, ExperimentDataQueue.OverflowPolicy.BLOCK, 10, stop);
+        queue.add(0, record(0, 0));
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queue.add(0, record(0, 1));
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+        stop.set(true);
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertNull(error.get());
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(1, queue.getQueueDepth());
+    }
+
+    @Test
+    public void testDrainRotatesThreads() {
+        ExperimentDataQueue queue = new ExperimentDataQueue(3, 4, ExperimentDataQueue.OverflowPolicy.DROP, 10, new AtomicBoolean(false));
+        for (int threadId = 0; threadId < 3; threadId++) {
+            for (int i = 0; i < 2; i++) {
+                queue.add(threadId, record(threadId, threadId * 10 + i));
+            }
+        }
+        List<ExperimentData> drained = new ArrayList<>();
+        queue.drainTo(drained, 1);
+        queue.drainTo(drained, 1);
+        queue.drainTo(drained, 1);
+        assertEquals(Arrays.asList(0, 10, 20), keyIds(drained));
+        assertEquals(3, queue.drainTo(drained, 100));
+        assertEquals(6, drained.size());
+    }
+
+}
@@ -0,0 +1,104 @@
+import memcached_sdn.experiment.memcached.replication.HotKeyReplicas;
+import memcached_sdn.experiment.memcached.replication.ReplicaSelector;
+import memcached_sdn.experiment.memcached.replication.SpreadingPolicy;
+import memcached_sdn.experiment.memcached.routing.ModuloKeyRouter;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
+
+public class HotKeyReplicasTest {
+
+    private static final String KEY = "mem-key-7";
+
+    @Test
+    public void testReplicaServersStartAtTheRoutedServer() {
+        ModuloKeyRouter router = new ModuloKeyRouter(4);
+        int primary = router.route(KEY);
+        int[] servers = new HotKeyReplicas(router, 3, SpreadingPolicy.RANDOM).getReplicaServers(KEY);
+        assertEquals(3, servers.length);
+        for (int i = 0; i < servers.length; i++) {
+            assertEquals((primary + i) % 4, servers[i]);
+        }
+        assertEquals(4, new HotKeyReplicas(router, 0, SpreadingPolicy.RANDOM).getReplicaServers(KEY).length);
+    }
+
+    @Test
+    public void testUnpublishedKeysGoToTheRoutedServer() {
+        HotKeyReplicas replicas = new HotKeyReplicas(new ModuloKeyRouter(3), 0, SpreadingPolicy.ROUND_ROBIN);
+        ReplicaSelector selector = replicas.createSelector(1, 1);
+        assertNull(replicas.getReplicas(KEY));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(2, selector.pickServer(KEY, 2));
+        }
+    }
+
+    @Test
+    public void testRoundRobinCyclesReplicas() {
+        HotKeyReplicas replicas = new HotKeyReplicas(new ModuloKeyRouter(3), 0, SpreadingPolicy.ROUND_ROBIN);
+        replicas.publish(Collections.singletonList(KEY));
+        ReplicaSelector selector = replicas.createSelector(1, 1);
+        int[] counts = new int[3];
+        for (int i = 0; i < 30; i++) {
+            counts[selector.pickServer(KEY, 0)]++;
+        }
+        assertEquals("[10, 10, 10]", Arrays.toString(counts));
+        assertEquals("[10, 10, 10]", Arrays.toString(replicas.getSpreadReadsPerServer()));
+    }
+
+    @Test
+    public void testRandomReachesAllReplicas() {
+        HotKeyReplicas replicas = new HotKeyReplicas(new ModuloKeyRouter(4), 2, SpreadingPolicy.RANDOM);
+        replicas.publish(Collections.singletonList(KEY));
+        ReplicaSelector selector = replicas.createSelector(1, 1);
+        int[] servers = replicas.getReplicas(KEY);
+        int[] counts = new int[4];
+        for (int i = 0; i < 10000; i++) {
+            counts[selector.pickServer(KEY, servers[0])]++;
+        }
+        assertEquals(10000, counts[servers[0]] + counts[servers[1]]);
+        assertTrue(counts[servers[0]] > 4000 && counts[servers[1]] > 4000);
+    }
+
+    @Test
+    public void testLeastOutstandingAvoidsBusyServers() {
+        HotKeyReplicas replicas = new HotKeyReplicas(new ModuloKeyRouter(3), 0, SpreadingPolicy.LEAST_OUTSTANDING);
+        replicas.publish(Collections.singletonList(KEY));
+        ReplicaSelector busy = replicas.createSelector(1, 0);
+        ReplicaSelector selector = replicas.createSelector(1, 1);
+        busy.onRequestSent(0);
+        busy.onRequestSent(1);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(2, selector.pickServer(KEY, 0));
+        }
+        busy.onRequestCompleted(1);
+        busy.onRequestSent(2);
+        assertEquals(1, selector.pickServer(KEY, 0));
+    }
+
+    private static String pickServers(ReplicaSelector selector) {
+        StringBuilder servers = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            servers.append(selector.pickServer(KEY, 0));
+        }
+        return servers.toString();
+    }
+
+    @Test
+    public void testSelectorsRepeatWithTheStreamsSeed() {
+        HotKeyReplicas replicas = new HotKeyReplicas(new ModuloKeyRouter(4), 0, SpreadingPolicy.RANDOM);
+        replicas.publish(Collections.singletonList(KEY));
+        HotKeyReplicas repeated = new HotKeyReplicas(new ModuloKeyRouter(4), 0, SpreadingPolicy.RANDOM);
+        repeated.publish(Collections.singletonList(KEY));
+        String servers = pickServers(replicas.createSelector(42, 3));
+        assertEquals(servers, pickServers(repeated.createSelector(42, 3)));
+        assertFalse(servers.equals(pickServers(repeated.createSelector(42, 4))));
+        assertFalse(servers.equals(pickServers(repeated.createSelector(43, 3))));
+    }
+
+}
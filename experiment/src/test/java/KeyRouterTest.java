@@ -0,0 +1,81 @@
+import memcached_sdn.experiment.helpers.Helpers;
+import memcached_sdn.experiment.memcached.routing.KeyRouter;
+import net.spy.memcached.DefaultHashAlgorithm;
+import org.junit.Test;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+public class KeyRouterTest {
+
+    private static final int KEYS_COUNT = 100000;
+
+    private static String[] createServers(int count) {
+        String[] servers = new String[count];
+        for (int i = 0; i < count; i++) {
+            servers[i] = String.format("10.0.0.%d:11211", i + 1);
+        }
+        return servers;
+    }
+
+    private static String key(int i) {
+        return String.format(Helpers.KEY_FORMAT, i);
+    }
+
+    private static double[] keysShare(KeyRouter router) {
+        double[] share = new double[router.getServersCount()];
+        for (int i = 0; i < KEYS_COUNT; i++) {
+            share[router.route(key(i))] += 1.0 / KEYS_COUNT;
+        }
+        return share;
+    }
+
+    /**
+     * @return the share of keys routed differently after adding a server.
+     */
+    private static double movedShare(String method) {
+        KeyRouter before = KeyRouter.create(method, createServers(4), null);
+        KeyRouter after = KeyRouter.create(method, createServers(5), null);
+        int moved = 0;
+        for (int i = 0; i < KEYS_COUNT; i++) {
+            int server = after.route(key(i));
+            if (server != before.route(key(i))) {
+                assertEquals(4, server);
+                moved++;
+            }
+        }
+        return moved / (double) KEYS_COUNT;
+    }
+
+    @Test
+    public void testModuloMatchesNativeHash() {
+        KeyRouter router = KeyRouter.create("modulo", createServers(3), null);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals((int) (DefaultHashAlgorithm.NATIVE_HASH.hash(key(i)) % 3), router.route(key(i)));
+        }
+    }
+
+    @Test
+    public void testConsistentRoutingOnlyMovesKeysToNewServer() {
+        assertEquals(0.2, movedShare("jump"), 0.01);
+        assertEquals(0.2, movedShare("ketama"), 0.05);
+        assertEquals(0.2, movedShare("weighted"), 0.01);
+    }
+
+    @Test
+    public void testWeights() {
+        double[] weights = new double[]{1, 2, 1};
+        double[] weighted = keysShare(KeyRouter.create("weighted", createServers(3), weights));
+        assertEquals(0.25, weighted[0], 0.01);
+        assertEquals(0.5, weighted[1], 0.01);
+        assertEquals(0.25, weighted[2], 0.01);
+        double[] ketama = keysShare(KeyRouter.create("ketama", createServers(3), weights));
+        assertTrue(ketama[1] > ketama[0] && ketama[1] > ketama[2]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testModuloDoesNotSupportWeights() {
+        KeyRouter.create("modulo", createServers(2), new double[]{1, 2});
+    }
+
+}
@@ -0,0 +1,87 @@
+import memcached_sdn.experiment.data.LatencyRecorder;
+import memcached_sdn.experiment.data.LatencySnapshot;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+public class LatencyRecorderTest {
+
+    @Test
+    public void testIntervalsAreMergedPerServer() {
+        LatencyRecorder recorder = new LatencyRecorder(2, 2);
+        recorder.recordLatency(0, 0, 0, TimeUnit.MILLISECONDS.toNanos(1));
+        recorder.recordLatency(1, 0, 1, TimeUnit.MILLISECONDS.toNanos(3));
+        recorder.recordPacketLost(1, 1);
+
+        LatencySnapshot first = recorder.sampleInterval();
+        assertEquals(2, first.getRequestedServerHistogram(0).getTotalCount());
+        assertEquals(1, first.getRespondingServerHistogram(1).getTotalCount());
+        assertEquals(1, first.getPacketsLostCount(1));
+        assertEquals(3, first.getTotalCount());
+
+        recorder.recordLatency(0, 1, 1, TimeUnit.MILLISECONDS.toNanos(2));
+        LatencySnapshot second = recorder.sampleInterval();
+        assertEquals(0, second.getRequestedServerHistogram(0).getTotalCount());
+        assertEquals(1, second.getRequestedServerHistogram(1).getTotalCount());
+        assertEquals(0, second.getPacketsLostCount(1));
+
+        LatencySnapshot total = recorder.getTotal();
+        assertEquals(4, total.getTotalCount());
+        long max = total.getRequestedServerHistogram(0).getMaxValue();
+        assertTrue(Math.abs(max - TimeUnit.MILLISECONDS.toNanos(3)) < TimeUnit.MICROSECONDS.toNanos(10));
+    }
+
+    @Test
+    public void testLossesAndTimeoutsPerRespondingServer() {
+        LatencyRecorder recorder = new LatencyRecorder(1, 2);
+        recorder.recordLatency(0, 0, 1, TimeUnit.MILLISECONDS.toNanos(1));
+        recorder.recordTimeouts(0, 0, 1, 2);
+        recorder.recordTimeouts(0, 1, -1, 1);
+        recorder.recordPacketLost(0, 0, 1);
+        recorder.recordPacketLost(0, 1, -1);
+
+        LatencySnapshot first = recorder.sampleInterval();
+        assertEquals(1, first.getPacketsLostCount(0));
+        assertEquals(1, first.getPacketsLostCount(1));
+        assertEquals(0, first.getRespondingPacketsLostCount(0));
+        assertEquals(1, first.getRespondingPacketsLostCount(1));
+        assertEquals(2, first.getTimeoutsCount(0));
+        assertEquals(1, first.getTimeoutsCount(1));
+        assertEquals(2, first.getRespondingTimeoutsCount(1));
+        assertEquals(0.5, LatencySnapshot.getRequestLossRate(first.getRequestedServerHistogram(0), first.getPacketsLostCount(0)), 1e-9);
+
+        LatencySnapshot second = recorder.sampleInterval();
+        assertEquals(0, second.getTimeoutsCount(0));
+        assertEquals(0, second.getRespondingPacketsLostCount(1));
+        assertEquals(3, recorder.getTotal().getTimeoutsCount(0) + recorder.getTotal().getTimeoutsCount(1));
+    }
+
+    @Test
+    public void testDatagramsPerServer() {
+        LatencyRecorder recorder = new LatencyRecorder(1, 2);
+        recorder.recordDatagrams(0, 0, 0, 4, 4);
+        recorder.recordDatagrams(0, 0, 1, 2, 4);
+        // Nothing arrived, the number of datagrams is unknown
+        recorder.recordDatagrams(0, 1, -1, 0, 0);
+        recorder.recordDatagrams(0, 1, 1, 1, 1);
+
+        LatencySnapshot first = recorder.sampleInterval();
+        assertEquals(6, first.getReceivedDatagramsCount(0));
+        assertEquals(8, first.getExpectedDatagramsCount(0));
+        assertEquals(1, first.getExpectedDatagramsCount(1));
+        assertEquals(3, first.getRespondingReceivedDatagramsCount(1));
+        assertEquals(5, first.getRespondingExpectedDatagramsCount(1));
+        assertEquals(0.25, LatencySnapshot.getFragmentLossRate(first.getReceivedDatagramsCount(0), first.getExpectedDatagramsCount(0)), 1e-9);
+        assertEquals(0.0, LatencySnapshot.getFragmentLossRate(first.getReceivedDatagramsCount(1), first.getExpectedDatagramsCount(1)), 1e-9);
+        assertTrue(first.toString(), first.toString().contains("datagrams lost=25.00%"));
+
+        LatencySnapshot second = recorder.sampleInterval();
+        assertEquals(0, second.getExpectedDatagramsCount(0));
+        assertEquals(0.0, LatencySnapshot.getFragmentLossRate(0, 0), 1e-9);
+        assertEquals(8, recorder.getTotal().getExpectedDatagramsCount(0));
+    }
+
+}
@@ -0,0 +1,147 @@
+import memcached_sdn.experiment.coordinator.LoadCoordinator;
+import memcached_sdn.experiment.coordinator.WorkerConnection;
+import memcached_sdn.experiment.data.HotKeysSnapshot;
+import memcached_sdn.experiment.data.IntervalListener;
+import memcached_sdn.experiment.data.LatencyRecorder;
+import memcached_sdn.experiment.data.LatencySnapshot;
+import memcached_sdn.experiment.data.SpaceSaving;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static junit.framework.TestCase.assertEquals;
+
+public class LoadCoordinatorTest {
+
+    private static LatencySnapshot recordInterval(int requestsCount, long latencyMillis) {
+        LatencyRecorder recorder = new LatencyRecorder(1, 2);
+        for (int i = 0; i < requestsCount; i++) {
+            recorder.recordLatency(0, i % 2, i % 2, TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+        }
+        recorder.recordPacketLost(0, 1, -1);
+        recorder.recordTimeouts(0, 0, 0, 2);
+        recorder.recordDatagrams(0, 1, 0, 3, 4);
+        return recorder.sampleInterval();
+    }
+
+    private static HotKeysSnapshot hotKeys(long... counts) {
+        List<SpaceSaving.Counter> counters = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            counters.add(new SpaceSaving.Counter("key-" + i, counts[i], 1));
+        }
+        return new HotKeysSnapshot(0, 1000, Collections.singletonList(counters));
+    }
+
+    @Test
+    public void testLatencySerialization() throws Exception {
+        LatencySnapshot snapshot = recordInterval(100, 3);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        snapshot.writeTo(new DataOutputStream(bytes));
+        LatencySnapshot read = LatencySnapshot.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(snapshot.getStartTimeMillis(), read.getStartTimeMillis());
+        assertEquals(snapshot.getEndTimeMillis(), read.getEndTimeMillis());
+        assertEquals(snapshot.getRequestedServerHistogram(0), read.getRequestedServerHistogram(0));
+        assertEquals(snapshot.getRespondingServerHistogram(1), read.getRespondingServerHistogram(1));
+        assertEquals(1, read.getPacketsLostCount(1));
+        assertEquals(2, read.getTimeoutsCount(0));
+        assertEquals(3, read.getReceivedDatagramsCount(1));
+        assertEquals(4, read.getRespondingExpectedDatagramsCount(0));
+        assertEquals(snapshot.getTotalCount(), read.getTotalCount());
+    }
+
+    @Test
+    public void testLatencyMerge() {
+        LatencySnapshot merged = LatencySnapshot.merge(Arrays.asList(recordInterval(100, 1), recordInterval(100, 9)));
+        assertEquals(202, merged.getTotalCount());
+        assertEquals(100, merged.getRequestedServerHistogram(0).getTotalCount());
+        assertEquals(2, merged.getPacketsLostCount(1));
+        assertEquals(4, merged.getTimeoutsCount(0));
+        assertEquals(6, merged.getReceivedDatagramsCount(1));
+        assertEquals(8, merged.getExpectedDatagramsCount(1));
+        assertEquals(9, TimeUnit.NANOSECONDS.toMillis(merged.getRequestedServerHistogram(0).getMaxValue()));
+    }
+
+    @Test
+    public void testHotKeysMerge() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        hotKeys(10, 5, 1).writeTo(new DataOutputStream(bytes));
+        HotKeysSnapshot read = HotKeysSnapshot.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        HotKeysSnapshot merged = HotKeysSnapshot.merge(Arrays.asList(read, hotKeys(1, 8, 0, 7)));
+        List<SpaceSaving.Counter> top = merged.getTopKeys(0);
+        assertEquals(4, top.size());
+        assertEquals("key-1", top.get(0).getKey());
+        assertEquals(13, top.get(0).getCount());
+        assertEquals(2, top.get(0).getError());
+        assertEquals("key-0", top.get(1).getKey());
+        assertEquals("key-3", top.get(2).getKey());
+    }
+
+    @Test
+    public void testCoordinator() throws Exception {
+        final List<LatencySnapshot> merged = Collections.synchronizedList(new ArrayList<LatencySnapshot>());
+        final LoadCoordinator coordinator = new LoadCoordinator(new InetSocketAddress("127.0.0.1", 0), 2,
+                Collections.<IntervalListener>singletonList(new IntervalListener() {
+                    @Override
+                    public void onLatencyInterval(LatencySnapshot snapshot) {
+                        merged.add(snapshot);
+                    }
+
+                    @Override
+                    public void onHotKeysInterval(HotKeysSnapshot snapshot) {
+                    }
+                }), Logger.getLogger("test"));
+        final String address = "127.0.0.1:" + coordinator.getAddress().getPort();
+        final List<Thread> workers = new ArrayList<>();
+        final int[] workerIndexes = new int[2];
+        for (int i = 0; i < 2; i++) {
+            final int intervalsCount = i + 1;
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    WorkerConnection connection = WorkerConnection.connect(address);
+                    try {
+                        workerIndexes[connection.getWorkerIndex()] = Integer.parseInt(connection.getArgs()[0]);
+                        connection.awaitStart();
+                        for (int interval = 0; interval < intervalsCount; interval++) {
+                            connection.onLatencyInterval(recordInterval(10, 1));
+                        }
+                        connection.finish();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        connection.close();
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        LatencySnapshot total;
+        try {
+            total = coordinator.run(Arrays.asList(new String[]{"0"}, new String[]{"1"}));
+        } finally {
+            coordinator.close();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(0, workerIndexes[0]);
+        assertEquals(1, workerIndexes[1]);
+        // The first interval of both workers, then the second one of the second worker
+        assertEquals(2, merged.size());
+        assertEquals(22, merged.get(0).getTotalCount());
+        assertEquals(11, merged.get(1).getTotalCount());
+        assertEquals(33, total.getTotalCount());
+    }
+
+}
@@ -0,0 +1,183 @@
+import memcached_sdn.experiment.memcached.MemcachedAsyncTCPClient;
+import memcached_sdn.experiment.memcached.MemcachedUDPCallback;
+import memcached_sdn.experiment.memcached.MemcachedUDPClient;
+import memcached_sdn.experiment.memcached.MemcachedUDPResult;
+import memcached_sdn.experiment.memcached.RetryPolicy;
+import memcached_sdn.experiment.memcached.routing.ModuloKeyRouter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.fail;
+
+public class MemcachedAsyncTCPClientTest {
+
+    private static final int BIG_VALUE_SIZE = 200000;
+
+    private ServerSocket serverSocket;
+    private MemcachedAsyncTCPClient client;
+
+    /**
+     * Answers GETKQ requests of keys starting with "hit" (with a 200KB value for "hit-big") and NOOPs.
+     */
+    @Before
+    public void startServer() throws IOException {
+        this.serverSocket = new ServerSocket(0);
+        Thread server = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (Socket socket = serverSocket.accept()) {
+                    DataInputStream in = new DataInputStream(socket.getInputStream());
+                    DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                    byte[] header = new byte[24];
+                    while (true) {
+                        in.readFully(header);
+                        int keyLength = ((header[2] & 0xFF) << 8) | (header[3] & 0xFF);
+                        int opaque = ByteBuffer.wrap(header).getInt(12);
+                        byte[] key = new byte[keyLength];
+                        in.readFully(key);
+                        String keyString = new String(key, "US-ASCII");
+                        if (header[1] == 0x0a) {
+                            writeResponse(out, (byte) 0x0a, new byte[0], new byte[0], opaque);
+                            out.flush();
+                        } else if (keyString.startsWith("hit")) {
+                            byte[] value = keyString.equals("hit-big") ? new byte[BIG_VALUE_SIZE] : ("value-" + keyString).getBytes("US-ASCII");
+                            writeResponse(out, (byte) 0x0d, key, value, opaque);
+                        }
+                    }
+                } catch (IOException e) {
+                    // Closed by the test
+                }
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+        this.client = new MemcachedAsyncTCPClient(new String[]{"127.0.0.1:" + this.serverSocket.getLocalPort()},
+                null, -1, new ModuloKeyRouter(1), RetryPolicy.DEFAULT, 1);
+    }
+
+    private static void writeResponse(DataOutputStream out, byte opcode, byte[] key, byte[] value, int opaque) throws IOException {
+        int extrasLength = (opcode == 0x0d) ? 4 : 0;
+        out.writeByte(0x81);
+        out.writeByte(opcode);
+        out.writeShort(key.length);
+        out.writeByte(extrasLength);
+        out.writeByte(0);
+        out.writeShort(0);
+        out.writeInt(extrasLength + key.length + value.length);
+        out.writeInt(opaque);
+        out.writeLong(0);
+        if (extrasLength > 0) {
+            out.writeInt(7);
+        }
+        out.write(key);
+        out.write(value);
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        this.client.close();
+        this.serverSocket.close();
+    }
+
+    private static class Collector implements MemcachedUDPCallback {
+        final List<Map<String, String>> results = new ArrayList<>();
+        int lost = 0;
+
+        @Override
+        public void onResult(MemcachedUDPResult result) {
+            results.add(result.getValues());
+        }
+
+        @Override
+        public void onPacketLost(MemcachedUDPClient.PacketLostException e) {
+            lost++;
+        }
+    }
+
+    private void awaitAll() {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (this.client.getOutstandingRequestsCount() > 0 && System.currentTimeMillis() < deadline) {
+            this.client.processEvents(10);
+        }
+        assertEquals(0, this.client.getOutstandingRequestsCount());
+    }
+
+    @Test
+    public void testPipelinedGets() {
+        Collector collector = new Collector();
+        for (int i = 0; i < 1000; i++) {
+            this.client.get("hit-" + i, collector);
+        }
+        awaitAll();
+        assertEquals(1000, collector.results.size());
+        for (int i = 0; i < 1000; i++) {
+            // Responses complete in request order
+            assertEquals("value-hit-" + i, collector.results.get(i).get("hit-" + i));
+        }
+        assertEquals(0, collector.lost);
+    }
+
+    @Test
+    public void testNonAsciiKey() {
+        Collector collector = new Collector();
+        try {
+            this.client.get(Arrays.asList("hit-1", "hit-\u00e9"), collector);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals(0, this.client.getOutstandingRequestsCount());
+        }
+        // The rejected request was not written, so the connection stays in sync
+        this.client.get("hit-2", collector);
+        awaitAll();
+        assertEquals(1, collector.results.size());
+        assertEquals("value-hit-2", collector.results.get(0).get("hit-2"));
+    }
+
+    @Test
+    public void testMultiGetReturnsOnlyHits() {
+        Collector collector = new Collector();
+        this.client.get(Arrays.asList("hit-1", "miss-1", "hit-2", "miss-2"), collector);
+        this.client.get("miss-3", collector);
+        awaitAll();
+        assertEquals(2, collector.results.size());
+        Map<String, String> expected = new HashMap<>();
+        expected.put("hit-1", "value-hit-1");
+        expected.put("hit-2", "value-hit-2");
+        assertEquals(expected, collector.results.get(0));
+        assertEquals(0, collector.results.get(1).size());
+    }
+
+    @Test
+    public void testValueLargerThanBuffers() {
+        final int[] lengths = new int[2];
+        this.client.get("hit-big", new Collector() {
+            @Override
+            public void onResult(MemcachedUDPResult result) {
+                MemcachedUDPResult.ValueCursor cursor = result.values();
+                cursor.next();
+                lengths[0] = cursor.getValueLength();
+                lengths[1] = cursor.getFlags();
+                assertFalse(cursor.next());
+            }
+        });
+        awaitAll();
+        assertEquals(BIG_VALUE_SIZE, lengths[0]);
+        assertEquals(7, lengths[1]);
+    }
+
+}
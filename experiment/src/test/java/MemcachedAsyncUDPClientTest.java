@@ -0,0 +1,304 @@
+import memcached_sdn.experiment.memcached.MemcachedAsyncUDPClient;
+import memcached_sdn.experiment.memcached.MemcachedUDPCallback;
+import memcached_sdn.experiment.memcached.MemcachedUDPClient;
+import memcached_sdn.experiment.memcached.MemcachedUDPResult;
+import memcached_sdn.experiment.memcached.RetryPolicy;
+import memcached_sdn.experiment.memcached.routing.ModuloKeyRouter;
+import memcached_sdn.experiment.server.MemcachedStandInServer;
+import memcached_sdn.experiment.server.ServerFaults;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+
+public class MemcachedAsyncUDPClientTest {
+
+    private final List<MemcachedStandInServer> servers = new ArrayList<>();
+    private MemcachedAsyncUDPClient client;
+
+    private MemcachedStandInServer startServer(ServerFaults faults) throws IOException {
+        MemcachedStandInServer server = new MemcachedStandInServer(new InetSocketAddress("127.0.0.1", 0), null, 2, faults, 1);
+        server.start();
+        servers.add(server);
+        return server;
+    }
+
+    private MemcachedAsyncUDPClient createClient(RetryPolicy retryPolicy) {
+        String[] addresses = new String[servers.size()];
+        for (int i = 0; i < servers.size(); i++) {
+            addresses[i] = servers.get(i).getServerAddress();
+        }
+        client = new MemcachedAsyncUDPClient(addresses, null, -1, new ModuloKeyRouter(addresses.length), retryPolicy);
+        return client;
+    }
+
+    @After
+    public void tearDown() {
+        if (client != null) {
+            client.close();
+        }
+        for (MemcachedStandInServer server : servers) {
+            server.close();
+        }
+    }
+
+    /**
+     * Stores the value with an ASCII set over TCP, UDP requests can not be fragmented.
+     */
+    private static void store(MemcachedStandInServer server, String key, String value) throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            out.write(String.format("set %s 0 0 %d\r\n%s\r\n", key, value.length(), value).getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            assertEquals("STORED", new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII)).readLine());
+        }
+    }
+
+    private static String value(String key, int length) {
+        StringBuilder value = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            value.append((char) ('a' + (key.hashCode() + i) % 26));
+        }
+        return value.toString();
+    }
+
+    private static String keyOfServer(int serverIndex, int serversCount, int index) {
+        int found = -1;
+        for (int i = 0; ; i++) {
+            String key = "key-" + i;
+            if (new ModuloKeyRouter(serversCount).route(key) == serverIndex && ++found == index) {
+                return key;
+            }
+        }
+    }
+
+    private static class Collector implements MemcachedUDPCallback {
+        final List<MemcachedUDPResult> results = new ArrayList<>();
+        final Map<String, String> values = new HashMap<>();
+        final List<MemcachedUDPClient.PacketLostException> lost = new ArrayList<>();
+
+        @Override
+        public void onResult(MemcachedUDPResult result) {
+            // The payload is only valid during the callback
+            results.add(result);
+            values.putAll(result.getValues());
+        }
+
+        @Override
+        public void onPacketLost(MemcachedUDPClient.PacketLostException e) {
+            lost.add(e);
+        }
+    }
+
+    private void awaitAll() {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (client.getOutstandingRequestsCount() > 0 && System.currentTimeMillis() < deadline) {
+            client.processEvents(10);
+        }
+        assertEquals(0, client.getOutstandingRequestsCount());
+    }
+
+    @Test
+    public void testOutstandingRequests() throws IOException {
+        MemcachedStandInServer server = startServer(ServerFaults.NONE);
+        createClient(RetryPolicy.DEFAULT);
+        for (int i = 0; i < 10; i++) {
+            store(server, "key-" + i, "value-" + i);
+        }
+        Collector collector = new Collector();
+        for (int i = 0; i < 100; i++) {
+            client.get("key-" + i % 10, collector);
+        }
+        assertEquals(100, client.getOutstandingRequestsCount());
+        awaitAll();
+        assertEquals(100, collector.results.size());
+        assertEquals(10, collector.values.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("value-" + i, collector.values.get("key-" + i));
+        }
+        assertEquals(0, collector.lost.size());
+        assertTrue(client.getRttEstimator(0).hasSamples());
+    }
+
+    @Test
+    public void testWindow() throws IOException {
+        // The load threads keep at most a window of requests outstanding, as counted by the client
+        MemcachedStandInServer server = startServer(new ServerFaults(0, 5000, 0, 0, 0));
+        createClient(RetryPolicy.DEFAULT);
+        store(server, "key", "value");
+        final int window = 8;
+        Collector collector = new Collector();
+        int sent = 0;
+        long deadline = System.currentTimeMillis() + 10000;
+        while (collector.results.size() < 500 && System.currentTimeMillis() < deadline) {
+            while (sent < 500 && client.getOutstandingRequestsCount() < window) {
+                client.get("key", collector);
+                sent++;
+            }
+            assertTrue(client.getOutstandingRequestsCount() <= window);
+            int outstanding = client.getOutstandingRequestsCount();
+            int completed = client.processEvents(10);
+            assertEquals(outstanding - completed, client.getOutstandingRequestsCount());
+        }
+        assertEquals(500, collector.results.size());
+        assertEquals(0, client.getOutstandingRequestsCount());
+        assertEquals(1 + 500, server.getRequestsCount());
+    }
+
+    @Test
+    public void testTimeouts() throws IOException {
+        startServer(new ServerFaults(0, 0, 1, 0, 0));
+        createClient(new RetryPolicy(30, false, 30, 2));
+        Collector collector = new Collector();
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            client.get("key-" + i, collector);
+        }
+        awaitAll();
+        // Three attempts of 30ms each
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+        assertEquals(0, collector.results.size());
+        assertEquals(10, collector.lost.size());
+        for (MemcachedUDPClient.PacketLostException e : collector.lost) {
+            assertEquals(0, e.receivedPacketsCount);
+            assertEquals(2, e.timeoutRetries);
+            assertEquals(0, e.fragmentRetries);
+        }
+        assertEquals(20, client.getTimeoutRetriesCount());
+        assertEquals(30, servers.get(0).getRequestsCount());
+        assertTrue(!client.getRttEstimator(0).hasSamples());
+    }
+
+    @Test
+    public void testReorderedFragments() throws IOException {
+        MemcachedStandInServer server = startServer(new ServerFaults(0, 0, 0, 1, 0));
+        createClient(RetryPolicy.DEFAULT);
+        Collector collector = new Collector();
+        for (int i = 0; i < 5; i++) {
+            String key = "key-" + i;
+            store(server, key, value(key, 10000 + i * 3000));
+            client.get(key, collector);
+        }
+        awaitAll();
+        assertEquals(5, collector.results.size());
+        for (int i = 0; i < 5; i++) {
+            String key = "key-" + i;
+            assertEquals(value(key, 10000 + i * 3000), collector.values.get(key));
+        }
+        for (MemcachedUDPResult result : collector.results) {
+            assertTrue(result.getTotalNumberOfPackets() > 1);
+            assertEquals(result.getTotalNumberOfPackets(), result.getPacketsCount());
+        }
+        assertEquals(5, server.getReorderedResponsesCount());
+    }
+
+    @Test
+    public void testMultiGet() throws IOException {
+        MemcachedStandInServer first = startServer(new ServerFaults(0, 0, 0, 1, 0));
+        MemcachedStandInServer second = startServer(ServerFaults.NONE);
+        createClient(RetryPolicy.DEFAULT);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            String firstKey = keyOfServer(0, 2, i);
+            String secondKey = keyOfServer(1, 2, i);
+            store(first, firstKey, value(firstKey, 3000));
+            store(second, secondKey, value(secondKey, 10));
+            keys.add(firstKey);
+            keys.add(secondKey);
+        }
+        keys.add(keyOfServer(1, 2, 10));
+        // The sets were requests too
+        long firstRequestsCount = first.getRequestsCount();
+        long secondRequestsCount = second.getRequestsCount();
+        Collector collector = new Collector();
+        client.get(keys, collector);
+        assertEquals(2, client.getOutstandingRequestsCount());
+        awaitAll();
+        // One request per server
+        assertEquals(2, collector.results.size());
+        assertEquals(8, collector.values.size());
+        for (String key : keys.subList(0, 8)) {
+            assertEquals(value(key, (keys.indexOf(key) % 2 == 0) ? 3000 : 10), collector.values.get(key));
+        }
+        assertEquals(firstRequestsCount + 1, first.getRequestsCount());
+        assertEquals(secondRequestsCount + 1, second.getRequestsCount());
+    }
+
+    @Test
+    public void testDeadlineOrder() throws IOException {
+        // Once the server was sampled the adaptive timeout is the minimal one, so the second get times out
+        // (and is retried) before the retry of the first get, which waits twice as long, expires
+        try (DatagramSocket server = new DatagramSocket(new InetSocketAddress("127.0.0.1", 0))) {
+            server.setSoTimeout(5000);
+            client = new MemcachedAsyncUDPClient(new String[]{"127.0.0.1:" + server.getLocalPort()}, null, -1,
+                    new ModuloKeyRouter(1), new RetryPolicy(1000, true, 50, 1));
+            final List<String> lostKeys = new ArrayList<>();
+            final List<Long> retriesWhenLost = new ArrayList<>();
+            Collector collector = new Collector() {
+                @Override
+                public void onPacketLost(MemcachedUDPClient.PacketLostException e) {
+                    lostKeys.add(e.key);
+                    retriesWhenLost.add(client.getTimeoutRetriesCount());
+                }
+            };
+            client.get("sampled", collector);
+            DatagramPacket request = new DatagramPacket(new byte[1024], 1024);
+            server.receive(request);
+            byte[] response = new byte[]{request.getData()[0], request.getData()[1], 0, 0, 0, 1, 0, 0, 'E', 'N', 'D', '\r', '\n'};
+            server.send(new DatagramPacket(response, response.length, request.getSocketAddress()));
+            awaitAll();
+            assertEquals(1, collector.results.size());
+
+            client.get("first", collector);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (client.getTimeoutRetriesCount() == 0 && System.currentTimeMillis() < deadline) {
+                client.processEvents(1);
+            }
+            assertEquals(1, client.getTimeoutRetriesCount());
+            client.get("second", collector);
+            awaitAll();
+            assertEquals(Arrays.asList("first", "second"), lostKeys);
+            assertEquals(Arrays.asList(2L, 2L), retriesWhenLost);
+        }
+    }
+
+    @Test
+    public void testRequestIdsExhausted() throws IOException {
+        // Nothing is read from the socket, so every request stays outstanding
+        try (DatagramSocket blackHole = new DatagramSocket(new InetSocketAddress("127.0.0.1", 0))) {
+            client = new MemcachedAsyncUDPClient(new String[]{"127.0.0.1:" + blackHole.getLocalPort()}, null, -1,
+                    new ModuloKeyRouter(1), RetryPolicy.fixed(60000));
+            Collector collector = new Collector();
+            for (int i = 0; i < 65536; i++) {
+                client.get("key", collector);
+            }
+            assertEquals(65536, client.getOutstandingRequestsCount());
+            try {
+                client.get("key", collector);
+                fail();
+            } catch (IllegalStateException e) {
+                assertEquals(65536, client.getOutstandingRequestsCount());
+            }
+        }
+    }
+
+}
@@ -1,5 +1,6 @@
 import memcached_sdn.experiment.helpers.Helpers;
 import memcached_sdn.experiment.memcached.MemcachedUDPClient;
+import memcached_sdn.experiment.server.MemcachedStandInServer;
 import net.spy.memcached.MemcachedClient;
 import net.spy.memcached.internal.OperationFuture;
 import net.spy.memcached.transcoders.SerializingTranscoder;
@@ -18,32 +19,37 @@ import static junit.framework.TestCase.assertEquals;
  */
 public class MemcachedClientTest {
 
+    private MemcachedStandInServer server;
     private MemcachedUDPClient client;
 
     @Before
     public void setUp() throws Exception {
-        client = new MemcachedUDPClient(new String[]{"localhost:11211"});
+        server = new MemcachedStandInServer(new InetSocketAddress("127.0.0.1", 0));
+        server.start();
+        client = new MemcachedUDPClient(new String[]{"127.0.0.1:" + server.getPort()});
     }
 
     @After
     public void tearDown() throws Exception {
         client.close();
+        server.close();
     }
 
     @Test
     public void testReadWriteObject() {
         client.set("key", "value");
-        assertEquals("value", client.get("key"));
+        assertEquals("value", client.get("key").getValue());
     }
 
     @Test
     public void testReadWriteLargeObject() throws IOException, ExecutionException, InterruptedException {
-        MemcachedClient memcachedClient = new MemcachedClient(new InetSocketAddress("localhost", 11211));
+        MemcachedClient memcachedClient = new MemcachedClient(new InetSocketAddress("127.0.0.1", server.getPort()));
         String value = Helpers.generateString("test", 100000);
         SerializingTranscoder transcoder = new SerializingTranscoder();
         transcoder.setCompressionThreshold(Integer.MAX_VALUE);
         OperationFuture<Boolean> set = memcachedClient.set("key", 0, value, transcoder);
         set.get();
+        memcachedClient.shutdown();
         System.out.println("value:");
         System.out.println(value);
         System.out.println("length=" + value.length());
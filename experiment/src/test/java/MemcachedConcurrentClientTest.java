@@ -0,0 +1,99 @@
+import memcached_sdn.experiment.MemcachedConcurrentClient;
+import memcached_sdn.experiment.data.IntervalListener;
+import memcached_sdn.experiment.data.LatencyLogFormat;
+import memcached_sdn.experiment.data.LatencyRecorder;
+import memcached_sdn.experiment.data.LatencySnapshot;
+import memcached_sdn.experiment.helpers.KeyValuePair;
+import memcached_sdn.experiment.helpers.ObjectsDataset;
+import memcached_sdn.experiment.helpers.key_picker.RandomKeyPicker;
+import memcached_sdn.experiment.memcached.ObjectsPreloader;
+import memcached_sdn.experiment.memcached.RetryPolicy;
+import memcached_sdn.experiment.memcached.Transport;
+import memcached_sdn.experiment.memcached.routing.KeyRouter;
+import memcached_sdn.experiment.memcached.routing.ModuloKeyRouter;
+import memcached_sdn.experiment.server.MemcachedStandInServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
+
+public class MemcachedConcurrentClientTest {
+
+    private static final Logger LOGGER = Logger.getLogger("test");
+
+    private MemcachedStandInServer server;
+    private String[] servers;
+    private KeyRouter router;
+    private List<KeyValuePair<String, String>> objects;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MemcachedStandInServer(new InetSocketAddress("127.0.0.1", 0));
+        server.start();
+        servers = new String[]{server.getServerAddress()};
+        router = new ModuloKeyRouter(1);
+        objects = new ObjectsDataset(100, 100);
+        ObjectsPreloader preloader = new ObjectsPreloader(servers, router, 1, 16, LOGGER);
+        try {
+            preloader.load(objects);
+        } finally {
+            preloader.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    /**
+     * Runs virtual clients over 2 lanes until 2000 gets were sent.
+     */
+    @Test(timeout = 60000)
+    public void testVirtualClients() throws Exception {
+        final File latencyFile = File.createTempFile("latency", ".txt");
+        latencyFile.deleteOnExit();
+        final LatencyRecorder latencyRecorder = new LatencyRecorder(2, servers.length);
+        final MemcachedConcurrentClient client = new MemcachedConcurrentClient(servers, 2, 20, 0, false, 0, 1, 0,
+                null, router, RetryPolicy.DEFAULT, Transport.UDP, 1, -1, 2000, true,
+                latencyFile.getPath(), LatencyLogFormat.TEXT, false, 1024, "block",
+                latencyRecorder, 0, new ArrayList<IntervalListener>(), null, 0, null, null, null, null, 0,
+                new RandomKeyPicker(objects, 1), LOGGER);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread experiment = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    client.run();
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            }
+        });
+        experiment.start();
+        experiment.join(30000);
+        assertFalse(experiment.isAlive());
+        assertNull(error.get());
+
+        LatencySnapshot total = latencyRecorder.getTotal();
+        assertEquals(0, total.getPacketsLostCount(0));
+        // Every client checks the count before its next get, so each may send one get past it
+        final long latenciesCount = total.getRequestedServerHistogram(0).getTotalCount();
+        assertTrue(latenciesCount >= 2000 && latenciesCount < 2000 + 20);
+        assertTrue(total.getRequestedServerHistogram(0).getMinValue() > 0);
+        // One get per recorded latency, after the preload sets
+        assertEquals(objects.size() + latenciesCount, server.getRequestsCount());
+    }
+
+}
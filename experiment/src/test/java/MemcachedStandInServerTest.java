@@ -0,0 +1,286 @@
+import memcached_sdn.experiment.memcached.MemcachedUDPCallback;
+import memcached_sdn.experiment.memcached.MemcachedUDPClient;
+import memcached_sdn.experiment.memcached.MemcachedUDPResult;
+import memcached_sdn.experiment.memcached.RetryPolicy;
+import memcached_sdn.experiment.memcached.RttEstimator;
+import memcached_sdn.experiment.memcached.routing.ModuloKeyRouter;
+import memcached_sdn.experiment.server.MemcachedStandInServer;
+import memcached_sdn.experiment.server.ServerFaults;
+import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.transcoders.SerializingTranscoder;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+
+public class MemcachedStandInServerTest {
+
+    private final List<MemcachedStandInServer> servers = new ArrayList<>();
+    private MemcachedUDPClient client;
+
+    private MemcachedStandInServer startServer(String host, InetSocketAddress responseAddress, ServerFaults faults) throws IOException {
+        MemcachedStandInServer server = new MemcachedStandInServer(new InetSocketAddress(host, 0), responseAddress, 2, faults, 1);
+        server.start();
+        servers.add(server);
+        return server;
+    }
+
+    private MemcachedUDPClient createClient(RetryPolicy retryPolicy) {
+        String[] addresses = new String[servers.size()];
+        for (int i = 0; i < servers.size(); i++) {
+            addresses[i] = servers.get(i).getServerAddress();
+        }
+        client = new MemcachedUDPClient(addresses, null, -1, new ModuloKeyRouter(addresses.length), retryPolicy);
+        return client;
+    }
+
+    @After
+    public void tearDown() {
+        if (client != null) {
+            client.close();
+        }
+        for (MemcachedStandInServer server : servers) {
+            server.close();
+        }
+    }
+
+    private void storeOverTcp(String key, String value) throws IOException {
+        storeOverTcp(servers.get(0), key, value);
+    }
+
+    private static void storeOverTcp(MemcachedStandInServer server, String key, String value) throws IOException {
+        MemcachedClient memcachedClient = new MemcachedClient(new InetSocketAddress("127.0.0.1", server.getPort()));
+        try {
+            SerializingTranscoder transcoder = new SerializingTranscoder();
+            transcoder.setCompressionThreshold(Integer.MAX_VALUE);
+            memcachedClient.set(key, 0, value, transcoder).get();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            memcachedClient.shutdown();
+        }
+    }
+
+    private static String largeValue() {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            value.append((char) ('a' + i % 26));
+        }
+        return value.toString();
+    }
+
+    @Test
+    public void testReorderedFragments() throws IOException {
+        startServer("127.0.0.1", null, new ServerFaults(0, 0, 0, 1, 0));
+        createClient(RetryPolicy.DEFAULT);
+        String value = largeValue();
+        // UDP requests can not be fragmented
+        storeOverTcp("key", value);
+        MemcachedUDPResult result = client.get("key");
+        assertEquals(value, result.getValue());
+        assertEquals(value.length() / MemcachedStandInServer.UDP_MAX_PAYLOAD_SIZE + 1, result.getTotalNumberOfPackets());
+        assertTrue(servers.get(0).getReorderedResponsesCount() > 0);
+    }
+
+    @Test
+    public void testDroppedResponsesAreRetried() throws IOException {
+        startServer("127.0.0.1", null, new ServerFaults(0, 0, 0.5, 0, 0));
+        createClient(new RetryPolicy(20, false, 20, 20));
+        // Sets are not retried
+        storeOverTcp("key", "value");
+        int retried = 0;
+        for (int i = 0; i < 20; i++) {
+            MemcachedUDPResult result = client.get("key");
+            assertEquals("value", result.getValue());
+            retried += result.getTimeoutRetries();
+        }
+        assertTrue(retried > 0);
+        assertEquals(retried, client.getTimeoutRetriesCount());
+    }
+
+    @Test
+    public void testAllResponsesDropped() throws IOException {
+        startServer("127.0.0.1", null, new ServerFaults(0, 0, 1, 0, 0));
+        createClient(RetryPolicy.fixed(20));
+        try {
+            client.get("key");
+            fail();
+        } catch (MemcachedUDPClient.PacketLostException e) {
+            assertEquals(0, e.receivedPacketsCount);
+        }
+    }
+
+    @Test
+    public void testRedirectedResponse() throws IOException {
+        // The first server answers from the second server's address, as if a switch redirected the request
+        MemcachedStandInServer redirected = startServer("127.0.0.1", new InetSocketAddress("127.0.0.2", 0), ServerFaults.NONE);
+        startServer("127.0.0.2", null, ServerFaults.NONE);
+        createClient(RetryPolicy.DEFAULT);
+        MemcachedUDPResult result = client.get(keyOfServer(0, 2));
+        assertEquals(0, result.getServerIndex());
+        assertEquals(1, result.getResponseServerIndex());
+        assertEquals(1, redirected.getRequestsCount());
+    }
+
+    private static String keyOfServer(int serverIndex, int serversCount) {
+        String key = "key-0";
+        for (int i = 1; new ModuloKeyRouter(serversCount).route(key) != serverIndex; i++) {
+            key = "key-" + i;
+        }
+        return key;
+    }
+
+    @Test
+    public void testSlowServerInMultiGet() throws IOException {
+        // The first server never answers, its retry outlasts the second server's timeout
+        startServer("127.0.0.1", null, new ServerFaults(0, 0, 1, 0, 0));
+        startServer("127.0.0.1", null, ServerFaults.NONE);
+        createClient(new RetryPolicy(100, false, 100, 1));
+        final List<MemcachedUDPResult> results = new ArrayList<>();
+        final List<MemcachedUDPClient.PacketLostException> lost = new ArrayList<>();
+        long start = System.nanoTime();
+        client.get(Arrays.asList(keyOfServer(0, 2), keyOfServer(1, 2)), new MemcachedUDPCallback() {
+            @Override
+            public void onResult(MemcachedUDPResult result) {
+                results.add(result);
+            }
+
+            @Override
+            public void onPacketLost(MemcachedUDPClient.PacketLostException e) {
+                lost.add(e);
+            }
+        });
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals(1, lost.size());
+        assertEquals(0, lost.get(0).serverIndex);
+        assertEquals(1, lost.get(0).timeoutRetries);
+        assertEquals(1, results.size());
+        assertEquals(1, results.get(0).getServerIndex());
+        assertEquals(0, results.get(0).getTimeoutRetries());
+        assertEquals(1, servers.get(1).getRequestsCount());
+        assertEquals(1, client.getTimeoutRetriesCount());
+        // Read as soon as it arrived, well before the first server timed out
+        RttEstimator estimator = client.getRttEstimator(1);
+        assertTrue(estimator.hasSamples());
+        assertTrue(estimator.getSmoothedRttNanos() < TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(!client.getRttEstimator(0).hasSamples());
+    }
+
+    @Test
+    public void testMultiGetOfReorderedFragments() throws IOException {
+        startServer("127.0.0.1", null, new ServerFaults(0, 0, 0, 1, 0));
+        startServer("127.0.0.1", null, new ServerFaults(0, 0, 0, 1, 0));
+        createClient(RetryPolicy.DEFAULT);
+        String value = largeValue();
+        final List<String> keys = Arrays.asList(keyOfServer(0, 2), keyOfServer(1, 2));
+        storeOverTcp(servers.get(0), keys.get(0), value);
+        storeOverTcp(servers.get(1), keys.get(1), value.substring(1000));
+        final List<MemcachedUDPResult> results = new ArrayList<>();
+        final List<String> values = new ArrayList<>();
+        client.get(keys, new MemcachedUDPCallback() {
+            @Override
+            public void onResult(MemcachedUDPResult result) {
+                results.add(result);
+                values.add(result.getValues().get(keys.get(result.getServerIndex())));
+            }
+
+            @Override
+            public void onPacketLost(MemcachedUDPClient.PacketLostException e) {
+                fail(e.getMessage());
+            }
+        });
+        assertEquals(2, results.size());
+        for (int i = 0; i < 2; i++) {
+            MemcachedUDPResult result = results.get(i);
+            assertEquals((result.getServerIndex() == 0) ? value : value.substring(1000), values.get(i));
+            assertTrue(result.getTotalNumberOfPackets() > 1);
+            assertEquals(result.getTotalNumberOfPackets(), result.getPacketsCount());
+        }
+        assertEquals(1, servers.get(0).getReorderedResponsesCount());
+        assertEquals(1, servers.get(1).getReorderedResponsesCount());
+    }
+
+    @Test
+    public void testCapacity() throws IOException {
+        startServer("127.0.0.1", null, new ServerFaults(0, 1000, 0, 0, 0));
+        createClient(RetryPolicy.DEFAULT);
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            client.get("key");
+        }
+        // 100 requests at 1000 requests/s
+        assertTrue(System.nanoTime() - start >= 90000000L);
+    }
+
+    /**
+     * Sends one request datagram and returns the payload of the single response datagram.
+     */
+    private static String requestOverUdp(DatagramSocket socket, MemcachedStandInServer server, short requestId, String request) throws IOException {
+        ByteBuffer datagram = ByteBuffer.allocate(8 + request.length());
+        datagram.putShort(requestId).putShort((short) 0).putShort((short) 1).putShort((short) 0);
+        datagram.put(request.getBytes(StandardCharsets.US_ASCII));
+        socket.send(new DatagramPacket(datagram.array(), datagram.capacity(), new InetSocketAddress("127.0.0.1", server.getPort())));
+        DatagramPacket response = new DatagramPacket(new byte[65536], 65536);
+        socket.receive(response);
+        assertEquals(requestId, ByteBuffer.wrap(response.getData()).getShort());
+        return new String(response.getData(), 8, response.getLength() - 8, StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void testMalformedUdpRequests() throws IOException {
+        MemcachedStandInServer server = startServer("127.0.0.1", null, ServerFaults.NONE);
+        try (DatagramSocket socket = new DatagramSocket(new InetSocketAddress("127.0.0.1", 0))) {
+            socket.setSoTimeout(5000);
+            short requestId = 0;
+            for (String request : new String[]{"set key 0 0 abc\r\nvalue\r\n", "set key x 0 5\r\nvalue\r\n",
+                    "set key 0 0 -5\r\nvalue\r\n", "set key 0 0 2147483647\r\nvalue\r\n", "set key 0\r\n"}) {
+                assertTrue(request, requestOverUdp(socket, server, requestId++, request).startsWith("CLIENT_ERROR"));
+            }
+            // Both worker threads are still serving
+            assertEquals("STORED\r\n", requestOverUdp(socket, server, requestId++, "set key 0 0 5\r\nvalue\r\n"));
+            for (int i = 0; i < 4; i++) {
+                assertEquals("VALUE key 0 5\r\nvalue\r\nEND\r\n", requestOverUdp(socket, server, requestId++, "get key\r\n"));
+            }
+        }
+    }
+
+    @Test
+    public void testMalformedTcpRequests() throws IOException {
+        MemcachedStandInServer server = startServer("127.0.0.1", null, ServerFaults.NONE);
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            out.write("set key 0 0 abc\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.write("delete\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.write("set key 0 0 5\r\nvalue!!".getBytes(StandardCharsets.US_ASCII));
+            out.write("set key 0 0 5\r\nvalue\r\nget key\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            assertTrue(in.readLine().startsWith("CLIENT_ERROR"));
+            assertTrue(in.readLine().startsWith("CLIENT_ERROR"));
+            assertEquals("CLIENT_ERROR bad data chunk", in.readLine());
+            assertEquals("STORED", in.readLine());
+            assertEquals("VALUE key 0 5", in.readLine());
+            assertEquals("value", in.readLine());
+            assertEquals("END", in.readLine());
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+import memcached_sdn.experiment.memcached.MemcachedUDPResult;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+
+public class MemcachedUDPResultTest {
+
+    private static MemcachedUDPResult createResult(String[] keys, String response) {
+        // Surrounding bytes make sure the payload bounds are respected
+        byte[] payload = ("##" + response + "##").getBytes();
+        return new MemcachedUDPResult(keys, payload, 2, payload.length - 4, (short) 1, (short) 1, 0, 0);
+    }
+
+    @Test
+    public void testMultiGetValues() {
+        MemcachedUDPResult result = createResult(
+                new String[]{"k1", "k2", "k3"},
+                "VALUE k1 0 5\r\nhello\r\nVALUE k3 0 7\r\na\r\nb\r\nc\r\nEND\r\n");
+        Map<String, String> values = result.getValues();
+        assertEquals(2, values.size());
+        assertEquals("hello", values.get("k1"));
+        assertEquals("a\r\nb\r\nc", values.get("k3"));
+    }
+
+    @Test
+    public void testAllKeysMissing() {
+        assertEquals(0, createResult(new String[]{"k1"}, "END\r\n").getValues().size());
+        assertEquals(-1, createResult(new String[]{"k1"}, "END\r\n").copyValue(new byte[16], 0));
+    }
+
+    @Test
+    public void testSingleValue() {
+        assertEquals("value", createResult(new String[]{"k1"}, "VALUE k1 0 5\r\nvalue\r\nEND\r\n").getValue());
+    }
+
+    @Test
+    public void testCursor() {
+        MemcachedUDPResult result = createResult(new String[]{"key"}, "VALUE key 42 3 99\r\nabc\r\nEND\r\n");
+        MemcachedUDPResult.ValueCursor cursor = result.values();
+        assertTrue(cursor.next());
+        assertTrue(cursor.keyEquals("key"));
+        assertFalse(cursor.keyEquals("ke"));
+        assertEquals(42, cursor.getFlags());
+        ByteBuffer value = cursor.getValueBuffer();
+        assertEquals(3, value.remaining());
+        assertEquals('a', value.get(0));
+        byte[] copy = new byte[4];
+        assertEquals(3, cursor.copyValue(copy, 1));
+        assertEquals('c', copy[3]);
+        assertFalse(cursor.next());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTruncatedResponse() {
+        createResult(new String[]{"k1"}, "VALUE k1 0 50\r\nvalue\r\nEND\r\n").getValue();
+    }
+
+}
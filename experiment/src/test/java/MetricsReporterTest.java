@@ -0,0 +1,107 @@
+import memcached_sdn.experiment.data.ExperimentData;
+import memcached_sdn.experiment.data.ExperimentDataQueue;
+import memcached_sdn.experiment.data.LatencyRecorder;
+import memcached_sdn.experiment.metrics.MetricsReporter;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+
+public class MetricsReporterTest {
+
+    private static final String[] SERVERS = new String[]{"127.0.0.1:11211", "127.0.0.1:11212"};
+
+    private static MetricsReporter publishInterval() {
+        LatencyRecorder recorder = new LatencyRecorder(1, 2);
+        for (int i = 0; i < 99; i++) {
+            recorder.recordLatency(0, 0, 1, TimeUnit.MILLISECONDS.toNanos(2));
+        }
+        recorder.recordPacketLost(0, 0, -1);
+        recorder.recordTimeouts(0, 0, 1, 3);
+        recorder.recordDatagrams(0, 0, 1, 6, 8);
+        MetricsReporter reporter = new MetricsReporter(SERVERS);
+        reporter.publish(recorder.sampleInterval());
+        return reporter;
+    }
+
+    @Test
+    public void testJson() {
+        String json = publishInterval().getLatest().toJson();
+        assertTrue(json, json.contains("\"requested\":[{\"server\":\"127.0.0.1:11211\",\"index\":0,\"requests\":100,"));
+        assertTrue(json, json.contains("\"lost\":1,\"requestLossRate\":0.010000,\"fragmentLossRate\":0.250000,\"timeouts\":3}"));
+        assertTrue(json, json.contains("\"responding\":[{\"server\":\"127.0.0.1:11211\",\"index\":0,\"requests\":0,"));
+        assertFalse(json, json.contains("NaN"));
+    }
+
+    @Test
+    public void testRecordsQueue() {
+        ExperimentDataQueue queue = new ExperimentDataQueue(1, 4, ExperimentDataQueue.OverflowPolicy.DROP, 10, new AtomicBoolean(false));
+        for (int i = 0; i < 10; i++) {
+            queue.add(0, new ExperimentData(i, "mem-key-" + i, i, 1000, 0, 0, 1, 1));
+        }
+        MetricsReporter reporter = new MetricsReporter(SERVERS);
+        String json = reporter.getLatest().toJson();
+        assertTrue(json, json.contains(",\"droppedRecords\":0,\"recordsQueueDepth\":0,"));
+        reporter.setRecordsQueue(queue);
+        reporter.publish(new LatencyRecorder(1, 2).sampleInterval());
+        assertEquals(6, reporter.getLatest().getDroppedRecordsCount());
+        assertEquals(4, reporter.getLatest().getRecordsQueueDepth());
+        json = reporter.getLatest().toJson();
+        assertTrue(json, json.contains(",\"droppedRecords\":6,\"recordsQueueDepth\":4,"));
+    }
+
+    @Test
+    public void testMBeans() throws Exception {
+        MetricsReporter reporter = publishInterval();
+        reporter.registerMBeans();
+        try {
+            Object requests = ManagementFactory.getPlatformMBeanServer().getAttribute(
+                    MetricsReporter.getObjectName(false, 1), "RequestsCount");
+            assertEquals(99L, requests);
+            Object timeouts = ManagementFactory.getPlatformMBeanServer().getAttribute(
+                    MetricsReporter.getObjectName(true, 0), "TimeoutsCount");
+            assertEquals(3L, timeouts);
+            Object fragmentLossRate = ManagementFactory.getPlatformMBeanServer().getAttribute(
+                    MetricsReporter.getObjectName(false, 1), "FragmentLossRate");
+            assertEquals(0.25, fragmentLossRate);
+        } finally {
+            reporter.close();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(MetricsReporter.getObjectName(true, 0)));
+    }
+
+    @Test
+    public void testHttp() throws Exception {
+        MetricsReporter reporter = publishInterval();
+        reporter.startHttpServer(new InetSocketAddress("127.0.0.1", 0));
+        try {
+            URL url = URI.create(String.format("http://127.0.0.1:%d%s", reporter.getHttpAddress().getPort(), MetricsReporter.HTTP_PATH)).toURL();
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            assertEquals(200, connection.getResponseCode());
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream in = connection.getInputStream()) {
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    body.write(buffer, 0, read);
+                }
+            }
+            assertEquals(reporter.getLatest().toJson(), new String(body.toByteArray(), StandardCharsets.UTF_8));
+        } finally {
+            reporter.close();
+        }
+    }
+
+}
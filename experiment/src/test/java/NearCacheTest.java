@@ -0,0 +1,94 @@
+import memcached_sdn.experiment.memcached.cache.NearCache;
+import org.junit.Test;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNotNull;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
+
+public class NearCacheTest {
+
+    private static final int VALUE_SIZE = 1000;
+
+    private static String key(int i) {
+        return "k" + i;
+    }
+
+    @Test
+    public void testLruEvictsLeastRecentlyUsed() {
+        // Room for 3 values and their overhead, not 4
+        NearCache cache = NearCache.create(NearCache.LRU, 3 * VALUE_SIZE + 500, 0);
+        for (int i = 0; i < 3; i++) {
+            cache.put(key(i), new byte[VALUE_SIZE]);
+        }
+        assertNotNull(cache.get(key(0)));
+        cache.put(key(3), new byte[VALUE_SIZE]);
+        assertNull(cache.get(key(1)));
+        assertNotNull(cache.get(key(0)));
+        assertNotNull(cache.get(key(2)));
+        assertNotNull(cache.get(key(3)));
+        assertEquals(1, cache.getEvictionsCount());
+        assertTrue(cache.getWeight() <= cache.getMaximumWeight());
+    }
+
+    @Test
+    public void testTooLargeValuesAreNotStored() {
+        NearCache cache = NearCache.create(NearCache.TINY_LFU, VALUE_SIZE, 0);
+        cache.put(key(0), new byte[VALUE_SIZE]);
+        assertNull(cache.get(key(0)));
+        assertEquals(1, cache.getRejectionsCount());
+        assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void testExpiredEntriesAreMisses() throws InterruptedException {
+        NearCache cache = NearCache.create(NearCache.LRU, 10 * VALUE_SIZE, 20);
+        cache.put(key(0), new byte[VALUE_SIZE]);
+        assertNotNull(cache.get(key(0)));
+        Thread.sleep(40);
+        assertNull(cache.get(key(0)));
+        assertEquals(1, cache.getExpirationsCount());
+        assertEquals(0, cache.getEntriesCount());
+    }
+
+    @Test
+    public void testTinyLfuKeepsFrequentKeysDuringScan() {
+        NearCache cache = NearCache.create(NearCache.TINY_LFU, 20 * (VALUE_SIZE + 200), 0);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 10; i++) {
+                if (cache.get(key(i)) == null) {
+                    cache.put(key(i), new byte[VALUE_SIZE]);
+                }
+            }
+        }
+        // Keys requested once do not replace the hot ones
+        for (int i = 1000; i < 2000; i++) {
+            if (cache.get(key(i)) == null) {
+                cache.put(key(i), new byte[VALUE_SIZE]);
+            }
+        }
+        int hot = 0;
+        for (int i = 0; i < 10; i++) {
+            if (cache.get(key(i)) != null) {
+                hot++;
+            }
+        }
+        assertEquals(10, hot);
+        assertTrue(cache.getWeight() <= cache.getMaximumWeight());
+    }
+
+    @Test
+    public void testLruLosesFrequentKeysDuringScan() {
+        NearCache cache = NearCache.create(NearCache.LRU, 20 * (VALUE_SIZE + 200), 0);
+        for (int i = 0; i < 10; i++) {
+            cache.put(key(i), new byte[VALUE_SIZE]);
+        }
+        for (int i = 1000; i < 2000; i++) {
+            cache.put(key(i), new byte[VALUE_SIZE]);
+        }
+        for (int i = 0; i < 10; i++) {
+            assertNull(cache.get(key(i)));
+        }
+    }
+
+}
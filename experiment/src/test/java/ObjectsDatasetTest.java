@@ -0,0 +1,129 @@
+import memcached_sdn.experiment.helpers.Helpers;
+import memcached_sdn.experiment.helpers.KeyValuePair;
+import memcached_sdn.experiment.helpers.ObjectsDataset;
+import memcached_sdn.experiment.helpers.key_picker.ZipfKeyPicker;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertSame;
+import static junit.framework.TestCase.assertTrue;
+
+public class ObjectsDatasetTest {
+
+    @Test
+    public void testGenerateString() {
+        String value = Helpers.generateString("mem-key-7", 1000);
+        assertEquals(1000, value.length());
+        assertEquals(value.substring(0, 32), value.substring(32, 64));
+        assertTrue(value.matches("[0-9a-f]+"));
+        assertEquals(value, Helpers.generateString("mem-key-7", 1000));
+        assertEquals(value.substring(0, 10), Helpers.generateString("mem-key-7", 10));
+        assertEquals("", Helpers.generateString("mem-key-7", 0));
+    }
+
+    @Test
+    public void testDerivedObjects() {
+        ObjectsDataset dataset = new ObjectsDataset(10000000, 1000);
+        assertEquals(10000000, dataset.size());
+        KeyValuePair<String, String> pair = dataset.get(1234567);
+        assertEquals(1234567, pair.getId());
+        assertEquals(String.format(Helpers.KEY_FORMAT, 1234567), pair.getKey());
+        assertEquals(Helpers.generateString(pair.getKey(), 1000), pair.getValue());
+        assertEquals(1000, ObjectsDataset.getValueSize(pair));
+        assertEquals(pair.getValue(), dataset.findObject("mem-key-1234567").getValue());
+        assertNull(dataset.findObject("mem-key-10000000"));
+        assertNull(dataset.findObject("mem-key-01"));
+        assertNull(dataset.findObject("other-key-1"));
+    }
+
+    @Test
+    public void testShuffle() {
+        ObjectsDataset dataset = new ObjectsDataset(1000, 10);
+        ZipfKeyPicker picker = new ZipfKeyPicker(dataset, null, 1);
+        Set<Integer> ids = new HashSet<>();
+        int movedCount = 0;
+        for (int i = 0; i < dataset.size(); i++) {
+            ids.add(dataset.get(i).getId());
+            if (dataset.get(i).getId() != i) {
+                movedCount++;
+            }
+        }
+        assertEquals(1000, ids.size());
+        assertTrue(movedCount > 900);
+        assertEquals(dataset.get(0).getKey(), picker.toString().split("\n")[1].split(",")[0]);
+    }
+
+    @Test
+    public void testRandomSeedRepeatsShuffle() {
+        ZipfKeyPicker picker = new ZipfKeyPicker(new ObjectsDataset(1000, 10), null, -1);
+        assertTrue(picker.getStreamsSeed() >= 0);
+        ZipfKeyPicker repeated = new ZipfKeyPicker(new ObjectsDataset(1000, 10), null, picker.getStreamsSeed());
+        assertEquals(picker.toString(), repeated.toString());
+    }
+
+    @Test
+    public void testRebuild() {
+        ObjectsDataset dataset = new ObjectsDataset(100, 10);
+        KeyValuePair<String, String> first = dataset.get(42);
+        KeyValuePair<String, String> second = dataset.get(7);
+        dataset.clear();
+        dataset.add(first);
+        dataset.add(second);
+        assertEquals(2, dataset.size());
+        assertEquals(42, dataset.get(0).getId());
+        assertEquals(7, dataset.get(1).getId());
+    }
+
+    @Test
+    public void testObjectsAreCached() {
+        ObjectsDataset dataset = new ObjectsDataset(1000, 10);
+        KeyValuePair<String, String> pair = dataset.get(17);
+        assertSame(pair, dataset.get(17));
+        assertSame(pair, dataset.findObject("mem-key-17"));
+        new ZipfKeyPicker(dataset, null, 1);
+        for (int i = 0; i < dataset.size(); i++) {
+            if (dataset.get(i).getId() == 17) {
+                assertSame(pair, dataset.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testKeysDistributionFile() throws IOException {
+        File file = File.createTempFile("latency", ".txt");
+        file.deleteOnExit();
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(";zipf:1.0\n;mem-key-42,mem-key-7,mem-key-999\n");
+        }
+        ObjectsDataset dataset = new ObjectsDataset(1000, 10);
+        ZipfKeyPicker picker = new ZipfKeyPicker(dataset, file.getPath(), 1);
+        assertEquals(3, dataset.size());
+        assertEquals(42, dataset.get(0).getId());
+        assertEquals(7, dataset.get(1).getId());
+        assertEquals(999, dataset.get(2).getId());
+        assertEquals("zipf:1.0\nmem-key-42,mem-key-7,mem-key-999", picker.toString());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnknownDistributionKey() throws IOException {
+        File file = File.createTempFile("latency", ".txt");
+        file.deleteOnExit();
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(";zipf:1.0\n;mem-key-42,mem-key-1000\n");
+        }
+        new ZipfKeyPicker(new ObjectsDataset(1000, 10), file.getPath(), 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testForeignObject() {
+        new ObjectsDataset(100, 10).set(0, new KeyValuePair<>(0, "mem-key-0", "value"));
+    }
+
+}
@@ -0,0 +1,39 @@
+import memcached_sdn.experiment.helpers.KeyValuePair;
+import memcached_sdn.experiment.memcached.ObjectsPreloader;
+import memcached_sdn.experiment.memcached.routing.KeyRouter;
+import memcached_sdn.experiment.memcached.routing.ModuloKeyRouter;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+public class ObjectsPreloaderTest {
+
+    @Test
+    public void testPartition() {
+        final List<KeyValuePair<String, String>> objects = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            objects.add(new KeyValuePair<>("key-" + i, "value-" + i));
+        }
+        KeyRouter router = new ModuloKeyRouter(3);
+        List<KeyValuePair<String, String>>[][] partitions = ObjectsPreloader.partition(objects, router, 3, 2);
+        int total = 0;
+        for (int server = 0; server < 3; server++) {
+            int first = partitions[0][server].size();
+            int second = partitions[1][server].size();
+            // Round robin between the connections of a server
+            assertTrue(first - second == 0 || first - second == 1);
+            for (int connection = 0; connection < 2; connection++) {
+                for (KeyValuePair<String, String> pair : partitions[connection][server]) {
+                    assertEquals(server, router.route(pair.getKey()));
+                }
+                total += partitions[connection][server].size();
+            }
+        }
+        assertEquals(objects.size(), total);
+    }
+
+}
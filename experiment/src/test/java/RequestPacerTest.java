@@ -0,0 +1,82 @@
+import memcached_sdn.experiment.helpers.RequestPacer;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+
+public class RequestPacerTest {
+
+    private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testSchedule() {
+        RequestPacer pacer = new RequestPacer(1000, 5000);
+        assertEquals(INTERVAL_NANOS, pacer.getIntervalNanos());
+        assertFalse(pacer.isDue(4999));
+        for (int i = 0; i < 100; i++) {
+            long intendedTime = 5000 + i * INTERVAL_NANOS;
+            assertEquals(intendedTime, pacer.getNextSendTime());
+            assertTrue(pacer.isDue(intendedTime));
+            assertEquals(intendedTime, pacer.next(intendedTime));
+            assertFalse(pacer.isDue(intendedTime + INTERVAL_NANOS - 1));
+        }
+    }
+
+    @Test
+    public void testCatchUp() {
+        // Stalled for 10 intervals, then sends every request as soon as it may
+        RequestPacer pacer = new RequestPacer(1000, 0, 4);
+        long now = 10 * INTERVAL_NANOS;
+        long previousSendTime = -1;
+        int i = 0;
+        while (pacer.getNextIntendedTime() - now < 0) {
+            assertTrue(pacer.isDue(now));
+            // Overdue requests keep their intended send times
+            assertEquals(i * INTERVAL_NANOS, pacer.next(now));
+            if (previousSendTime != -1) {
+                assertEquals(INTERVAL_NANOS / 4, now - previousSendTime);
+            }
+            previousSendTime = now;
+            assertFalse(pacer.isDue(now));
+            now = pacer.getNextSendTime();
+            i++;
+        }
+        // 10 + 0.25 * i <= i
+        assertEquals(14, i);
+        assertEquals(14 * INTERVAL_NANOS, pacer.getNextSendTime());
+        assertEquals(14 * INTERVAL_NANOS, pacer.next(now));
+        assertEquals(15 * INTERVAL_NANOS, pacer.getNextSendTime());
+    }
+
+    @Test
+    public void testAwaitNext() throws InterruptedException {
+        final long start = System.nanoTime();
+        RequestPacer pacer = new RequestPacer(10000, start);
+        for (int i = 0; i < 100; i++) {
+            long intendedTime = pacer.awaitNext();
+            assertEquals(start + i * pacer.getIntervalNanos(), intendedTime);
+            assertTrue(System.nanoTime() - intendedTime >= 0);
+        }
+        assertTrue(System.nanoTime() - start >= 99 * pacer.getIntervalNanos());
+    }
+
+    @Test
+    public void testLateThreadDoesNotBurst() throws InterruptedException {
+        // 100 requests are overdue, they are sent at 4 times the rate
+        final long now = System.nanoTime();
+        RequestPacer pacer = new RequestPacer(1000, now - 100 * INTERVAL_NANOS);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(now - (100 - i) * INTERVAL_NANOS, pacer.awaitNext());
+        }
+        assertTrue(System.nanoTime() - now >= 99 * INTERVAL_NANOS / RequestPacer.DEFAULT_CATCH_UP_FACTOR);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRate() {
+        new RequestPacer(0, 0);
+    }
+
+}
@@ -0,0 +1,113 @@
+import memcached_sdn.experiment.data.RequestTrace;
+import memcached_sdn.experiment.data.RequestTraceRecorder;
+import memcached_sdn.experiment.helpers.KeyValuePair;
+import memcached_sdn.experiment.helpers.key_picker.TraceKeyPicker;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+
+public class RequestTraceTest {
+
+    private static List<KeyValuePair<String, String>> createObjects(int count) {
+        List<KeyValuePair<String, String>> objects = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            objects.add(new KeyValuePair<>(i, "key-" + i, "value-" + i));
+        }
+        return objects;
+    }
+
+    /**
+     * Thread 0 records the even keys at even microseconds, thread 1 the odd keys (one of them late)
+     * and a set every 10th request.
+     */
+    private static File recordTrace() throws Exception {
+        File file = File.createTempFile("requests", ".trace");
+        file.deleteOnExit();
+        RequestTraceRecorder recorder = new RequestTraceRecorder(file.getPath(), 2);
+        final long start = 5000000;
+        for (int i = 0; i < 100; i += 2) {
+            recorder.record(0, start + i * 1000, i, (i % 10 == 0) ? RequestTrace.OP_SET : RequestTrace.OP_GET, 100 + i);
+        }
+        for (int i = 1; i < 100; i += 2) {
+            int key = (i == 51) ? 53 : (i == 53) ? 51 : i;
+            recorder.record(1, start + key * 1000, key, RequestTrace.OP_GET, 100 + key);
+        }
+        assertEquals(100, recorder.close());
+        assertFalse(new File(file.getPath() + ".thread-0.tmp").exists());
+        return file;
+    }
+
+    @Test
+    public void testRecordAndRead() throws Exception {
+        RequestTrace trace = RequestTrace.open(recordTrace().getPath());
+        try {
+            assertEquals(100, trace.getRecordsCount());
+            assertEquals(100, trace.getKeysCount());
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i * 1000L, trace.getOffsetNanos(i));
+                assertEquals(i, trace.getKeyId(i));
+                assertEquals(100 + i, trace.getValueSize(i));
+                assertEquals((i % 10 == 0) ? RequestTrace.OP_SET : RequestTrace.OP_GET, trace.getOp(i));
+            }
+        } finally {
+            trace.close();
+        }
+    }
+
+    @Test
+    public void testTimedReplay() throws Exception {
+        RequestTrace trace = RequestTrace.open(recordTrace().getPath());
+        try {
+            TraceKeyPicker picker = new TraceKeyPicker(createObjects(100), trace, 2.0, 1, 2);
+            assertTrue(picker.isTimed());
+            picker.start(1000000);
+            long record = picker.claimRecord();
+            assertEquals(1, record);
+            assertEquals("key-1", picker.getKey(record).getKey());
+            assertEquals(1000000 + 500, picker.getIntendedTime(record));
+            int claimed = 1;
+            while (picker.claimRecord() != -1) {
+                claimed++;
+            }
+            assertEquals(50, claimed);
+            assertTrue(picker.isFinished());
+        } finally {
+            trace.close();
+        }
+    }
+
+    @Test
+    public void testKeysOnlyReplay() throws Exception {
+        RequestTrace trace = RequestTrace.open(recordTrace().getPath());
+        try {
+            TraceKeyPicker picker = new TraceKeyPicker(createObjects(100), trace, 0, 0, 1);
+            assertFalse(picker.isTimed());
+            assertEquals("key-1", picker.pickKey(null).getKey());
+            for (int i = 1; i < 90; i++) {
+                picker.pickKey(null);
+            }
+            // Sets are skipped, the trace starts over after its 90 gets
+            assertEquals(10, picker.getSkippedCount());
+            assertEquals("key-1", picker.pickKey(null).getKey());
+        } finally {
+            trace.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingKeys() throws Exception {
+        RequestTrace trace = RequestTrace.open(recordTrace().getPath());
+        try {
+            new TraceKeyPicker(createObjects(10), trace, 1.0, 0, 1);
+        } finally {
+            trace.close();
+        }
+    }
+
+}
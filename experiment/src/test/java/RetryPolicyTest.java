@@ -0,0 +1,64 @@
+import memcached_sdn.experiment.memcached.RetryPolicy;
+import memcached_sdn.experiment.memcached.RttEstimator;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+
+public class RetryPolicyTest {
+
+    private static long millis(long ms) {
+        return TimeUnit.MILLISECONDS.toNanos(ms);
+    }
+
+    @Test
+    public void testRttEstimator() {
+        RttEstimator estimator = new RttEstimator();
+        assertFalse(estimator.hasSamples());
+        assertEquals(-1, estimator.getTimeoutNanos());
+        estimator.addSample(800);
+        assertEquals(800, estimator.getSmoothedRttNanos());
+        assertEquals(400, estimator.getRttVariationNanos());
+        assertEquals(800 + 4 * 400, estimator.getTimeoutNanos());
+        estimator.addSample(1600);
+        assertEquals(900, estimator.getSmoothedRttNanos());
+        assertEquals(500, estimator.getRttVariationNanos());
+    }
+
+    @Test
+    public void testFixedTimeoutIgnoresRtt() {
+        RetryPolicy policy = RetryPolicy.fixed(1000);
+        RttEstimator estimator = new RttEstimator();
+        estimator.addSample(millis(1));
+        assertEquals(millis(1000), policy.getTimeoutNanos(estimator, 0));
+        assertEquals(millis(1000), policy.getTimeoutNanos(estimator, 3));
+        assertEquals(0, policy.getMaximumRetries());
+    }
+
+    @Test
+    public void testAdaptiveTimeoutBackoff() {
+        RetryPolicy policy = new RetryPolicy(100, true, 10, 3);
+        RttEstimator estimator = new RttEstimator();
+        // The maximal timeout is used until the server was sampled
+        assertEquals(millis(100), policy.getTimeoutNanos(estimator, 0));
+        estimator.addSample(millis(5));
+        // 5 + 4 * 2.5 = 15ms, doubled for every retry up to the maximum
+        assertEquals(millis(15), policy.getTimeoutNanos(estimator, 0));
+        assertEquals(millis(30), policy.getTimeoutNanos(estimator, 1));
+        assertEquals(millis(60), policy.getTimeoutNanos(estimator, 2));
+        assertEquals(millis(100), policy.getTimeoutNanos(estimator, 3));
+        assertTrue(policy.isAdaptive());
+    }
+
+    @Test
+    public void testAdaptiveTimeoutMinimum() {
+        RetryPolicy policy = new RetryPolicy(100, true, 10, 1);
+        RttEstimator estimator = new RttEstimator();
+        estimator.addSample(TimeUnit.MICROSECONDS.toNanos(50));
+        assertEquals(millis(10), policy.getTimeoutNanos(estimator, 0));
+    }
+
+}
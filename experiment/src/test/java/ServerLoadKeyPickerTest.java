@@ -0,0 +1,59 @@
+import memcached_sdn.experiment.helpers.Helpers;
+import memcached_sdn.experiment.helpers.KeyValuePair;
+import memcached_sdn.experiment.helpers.key_picker.ServerLoadKeyPicker;
+import memcached_sdn.experiment.helpers.key_picker.ZipfKeyPicker;
+import memcached_sdn.experiment.memcached.routing.ModuloKeyRouter;
+import net.spy.memcached.DefaultHashAlgorithm;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.TestCase.assertEquals;
+
+public class ServerLoadKeyPickerTest {
+
+    private static List<KeyValuePair<String, String>> createObjectsList(int count) {
+        List<KeyValuePair<String, String>> objects = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            objects.add(new KeyValuePair<>(i, String.format(Helpers.KEY_FORMAT, i), ""));
+        }
+        return objects;
+    }
+
+    @Test
+    public void testRequestsFollowServerLoad() {
+        double[] load = new double[]{50, 30, 20};
+        ZipfKeyPicker zipf = new ZipfKeyPicker(createObjectsList(1000), null, 7, 1.2);
+        ServerLoadKeyPicker picker = new ServerLoadKeyPicker(zipf, load, new ModuloKeyRouter(load.length));
+        Random random = picker.createThreadRandom(0);
+        int[] counts = new int[load.length];
+        int samples = 300000;
+        for (int i = 0; i < samples; i++) {
+            String key = picker.pickKey(random).getKey();
+            counts[(int) (DefaultHashAlgorithm.NATIVE_HASH.hash(key) % load.length)]++;
+        }
+        assertEquals(0.5, counts[0] / (double) samples, 0.01);
+        assertEquals(0.3, counts[1] / (double) samples, 0.01);
+        assertEquals(0.2, counts[2] / (double) samples, 0.01);
+    }
+
+    @Test
+    public void testZeroLoadServerIsNeverPicked() {
+        ZipfKeyPicker zipf = new ZipfKeyPicker(createObjectsList(100), null, 7);
+        ServerLoadKeyPicker picker = new ServerLoadKeyPicker(zipf, new double[]{0, 1}, new ModuloKeyRouter(2));
+        Random random = picker.createThreadRandom(0);
+        for (int i = 0; i < 10000; i++) {
+            String key = picker.pickKey(random).getKey();
+            assertEquals(1, DefaultHashAlgorithm.NATIVE_HASH.hash(key) % 2);
+        }
+    }
+
+    @Test
+    public void testHeaderIsTheUnderlyingPickers() {
+        ZipfKeyPicker zipf = new ZipfKeyPicker(createObjectsList(10), null, 7);
+        assertEquals(zipf.toString(), new ServerLoadKeyPicker(zipf, new double[]{1, 1}, new ModuloKeyRouter(2)).toString());
+    }
+
+}
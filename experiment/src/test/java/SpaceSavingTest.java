@@ -0,0 +1,95 @@
+import memcached_sdn.experiment.data.HotKeyDetector;
+import memcached_sdn.experiment.data.HotKeysSnapshot;
+import memcached_sdn.experiment.data.SpaceSaving;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+public class SpaceSavingTest {
+
+    @Test
+    public void testHeavyHittersAreFoundWithBoundedError() {
+        SpaceSaving summary = new SpaceSaving(20);
+        Map<String, Long> exact = new HashMap<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 100000; i++) {
+            // a few hot keys within a long uniform tail
+            String key = (random.nextInt(10) < 3) ? "hot-" + random.nextInt(3) : "cold-" + random.nextInt(5000);
+            summary.offer(key);
+            Long count = exact.get(key);
+            exact.put(key, count == null ? 1 : count + 1);
+        }
+        List<SpaceSaving.Counter> counters = summary.getCounters();
+        assertEquals(20, counters.size());
+        int hotFound = 0;
+        for (SpaceSaving.Counter counter : counters) {
+            long actual = exact.get(counter.getKey());
+            assertTrue(counter.getCount() >= actual);
+            assertTrue(counter.getCount() - counter.getError() <= actual);
+            if (counter.getKey().startsWith("hot-")) {
+                hotFound++;
+            }
+        }
+        assertEquals(3, hotFound);
+    }
+
+    @Test
+    public void testDetectorMergesThreadsPerServer() {
+        HotKeyDetector detector = new HotKeyDetector(2, 2, 10, 1);
+        for (int i = 0; i < 100; i++) {
+            detector.recordRequest(0, 1, "a");
+            detector.recordRequest(1, 1, "a");
+            detector.recordRequest(1, 1, "b" + i);
+            detector.recordRequest(0, 0, "c");
+        }
+        HotKeysSnapshot snapshot = detector.sampleInterval();
+        assertEquals("c", snapshot.getTopKeys(0).get(0).getKey());
+        assertEquals("a", snapshot.getTopKeys(1).get(0).getKey());
+        assertEquals(200, snapshot.getTopKeys(1).get(0).getCount());
+        assertEquals(1, snapshot.getTopKeys(1).size());
+        assertEquals(0, detector.sampleInterval().getTopKeys(1).size());
+    }
+
+    @Test
+    public void testMergedThreadsAreUpperBounds() {
+        // Every thread sees the hot key at a rate below its summaries' guarantee
+        HotKeyDetector detector = new HotKeyDetector(4, 1, 5, 5);
+        Map<String, Long> exact = new HashMap<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 40000; i++) {
+            String key = (random.nextInt(100) < 12) ? "hot" : "cold-" + random.nextInt(300);
+            detector.recordRequest(i % 4, 0, key);
+            Long count = exact.get(key);
+            exact.put(key, count == null ? 1 : count + 1);
+        }
+        HotKeysSnapshot snapshot = detector.sampleInterval();
+        List<SpaceSaving.Counter> top = snapshot.getTopKeys(0);
+        assertEquals("hot", top.get(0).getKey());
+        for (SpaceSaving.Counter counter : top) {
+            long actual = exact.get(counter.getKey());
+            assertTrue(counter.getCount() >= actual);
+            assertTrue(counter.getCount() - counter.getError() <= actual);
+        }
+        // Keys which are not listed are bounded by the unmonitored count
+        for (Map.Entry<String, Long> entry : exact.entrySet()) {
+            boolean listed = false;
+            for (SpaceSaving.Counter counter : top) {
+                listed |= counter.getKey().equals(entry.getKey());
+            }
+            assertTrue(listed || entry.getValue() <= snapshot.getUnmonitoredCount(0));
+        }
+
+        // Merging the snapshots of two processes keeps the bounds
+        HotKeysSnapshot merged = HotKeysSnapshot.merge(Arrays.asList(snapshot, snapshot));
+        assertEquals(2 * top.get(0).getCount(), merged.getTopKeys(0).get(0).getCount());
+        assertTrue(merged.getUnmonitoredCount(0) >= 2 * snapshot.getUnmonitoredCount(0));
+    }
+
+}
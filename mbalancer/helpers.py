@@ -9,11 +9,17 @@ from datetime import datetime
 
 import requests
 
+import routing
+
 
 KEY_INDEX = 1
 REQUEST_SERVER_INDEX = 3
 RESPONSE_SERVER_INDEX = 4
 PACKETS_COUNT_INDEX = 5
+RETRIES_INDEX = 6
+
+# Server index of requests answered by the load generator's near cache
+NEAR_CACHE_SERVER_INDEX = -2
 
 TIMESTAMP_FORMAT = '%H:%M:%S:%f'
 
@@ -36,6 +42,10 @@ class RequestData(list):
     def response_server_index(self):
         return int(self[RESPONSE_SERVER_INDEX])
 
+    @property
+    def is_near_cache_hit(self):
+        return self.request_server_index == NEAR_CACHE_SERVER_INDEX
+
     @property
     def time(self):
         return datetime.fromtimestamp(time.mktime(time.strptime(self[0], TIMESTAMP_FORMAT)))
@@ -60,6 +70,14 @@ class RequestData(list):
         else:
             return total - self.received_packets_count
 
+    @property
+    def retries(self):
+        """Times the request was re-sent (after a timeout, after missing fragments)."""
+        if len(self) <= RETRIES_INDEX:
+            return 0, 0
+        values = self[RETRIES_INDEX].split('/')
+        return int(values[0]), int(values[1])
+
     @property
     def has_packet_loss(self):
         return not self.has_packets or self[2] == '-1.0'
@@ -190,6 +208,8 @@ def load_multi_server_data(filename, number_of_servers, ignore_packet_loss, acco
     for item in data:
         if ignore_packet_loss and item[2] == '-1.0':
             continue
+        if item.is_near_cache_hit:
+            continue
         if according_to_response:
             if len(item) < 5:
                 raise RuntimeError('Response server index not available in data.')
@@ -245,7 +265,7 @@ def get_server_index_by_key(key, requests, get_actual_server_index=False):
             continue
         values = r.split(',') if not isinstance(r, list) else r
         r_key = values[1]
-        if r_key == key:
+        if r_key == key and int(values[3]) != NEAR_CACHE_SERVER_INDEX:
             counter += 1
             fallback_index = int(values[3])
             r_server_index = int(values[4]) if get_actual_server_index else int(values[3])
@@ -347,7 +367,7 @@ def create_optimal_key_to_server_mapping(hot_keys, requests_per_server, servers)
 
 def spread_hot_keys_and_add_openflow_rules(hot_keys, requests_per_server, data_file, controller_host, according_to_response, use_group=False):
     all_data = load_data_from_file(data_file)
-    data = [x for x in all_data if x.startswith(';')]
+    data = [x for x in all_data if x.startswith(';') and not x.startswith(routing.ROUTING_PREFIX)]
     if len(data) < 3:
         raise RuntimeError('Servers line could not be found in data file.')
     servers = data[2].replace(';', '').split(',')
@@ -589,10 +609,9 @@ if __name__ == '__main__':
     flat_requests = [RequestData(x.split(',')) for x in raw_data]
 
     meta_lines = [x for x in all_data if x.startswith(';')]
-    if len(meta_lines) == 0:
-        raise RuntimeError('Server line does not exist in data')
+    servers, _ = routing.parse_meta_lines(meta_lines)
 
-    number_of_servers = len(meta_lines[-1].replace(';', '').split(','))
+    number_of_servers = len(servers)
 
     use_actual_server_indices = args.according_to_response if hasattr(args, 'according_to_response') else False
 
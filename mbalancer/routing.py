@@ -0,0 +1,138 @@
+"""Key to server mappings of the Java load generator (memcached_sdn.experiment.memcached.routing).
+
+Latency files written with routing support carry a ';routing:<method>[:<weights>]' line after the
+servers line, older files always used modulo routing.
+"""
+import hashlib
+import math
+import struct
+
+ROUTING_PREFIX = ';routing:'
+
+MASK_64 = 0xFFFFFFFFFFFFFFFF
+KETAMA_POINTS_PER_SERVER = 160
+
+
+def java_string_hashcode(s):
+    h = 0
+    for c in s:
+        h = (31 * h + ord(c)) & 0xFFFFFFFF
+    return h
+
+
+def fnv1a64(key):
+    h = 0xCBF29CE484222325
+    for c in key:
+        h ^= ord(c)
+        h = (h * 0x100000001B3) & MASK_64
+    return h
+
+
+def mix64(z):
+    z = ((z ^ (z >> 30)) * 0xBF58476D1CE4E5B9) & MASK_64
+    z = ((z ^ (z >> 27)) * 0x94D049BB133111EB) & MASK_64
+    return z ^ (z >> 31)
+
+
+def ketama_hash(key):
+    return struct.unpack('<I', hashlib.md5(key.encode('utf-8')).digest()[:4])[0]
+
+
+def jump_consistent_hash(key, buckets):
+    b, j = -1, 0
+    while j < buckets:
+        b = j
+        key = (key * 2862933555777941757 + 1) & MASK_64
+        j = int((b + 1) * (float(1 << 31) / float((key >> 33) + 1)))
+    return b
+
+
+class ModuloRouter(object):
+
+    def __init__(self, servers):
+        self.servers_count = len(servers)
+
+    def route(self, key):
+        return java_string_hashcode(key) % self.servers_count
+
+
+class JumpRouter(object):
+
+    def __init__(self, servers):
+        self.servers_count = len(servers)
+
+    def route(self, key):
+        return jump_consistent_hash(fnv1a64(key), self.servers_count)
+
+
+class KetamaRouter(object):
+
+    def __init__(self, servers, weights):
+        total_weight = sum(weights)
+        ring = {}
+        for i, server in enumerate(servers):
+            digests = int(math.floor(weights[i] / total_weight * KETAMA_POINTS_PER_SERVER * len(servers) / 4))
+            for j in range(digests):
+                digest = hashlib.md5('{0}-{1}'.format(server, j).encode('utf-8')).digest()
+                for h in range(4):
+                    point = struct.unpack('<I', digest[h * 4:h * 4 + 4])[0]
+                    ring.setdefault(point, i)
+        self.points = sorted(ring)
+        self.point_servers = [ring[p] for p in self.points]
+
+    def route(self, key):
+        import bisect
+        index = bisect.bisect_left(self.points, ketama_hash(key))
+        if index == len(self.points):
+            index = 0
+        return self.point_servers[index]
+
+
+class WeightedRouter(object):
+
+    def __init__(self, servers, weights):
+        self.weights = weights
+
+    def route(self, key):
+        key_hash = fnv1a64(key)
+        best, best_score = -1, 0
+        for i, weight in enumerate(self.weights):
+            if weight <= 0:
+                continue
+            u = ((mix64((key_hash + i) & MASK_64) >> 11) + 0.5) / float(1 << 53)
+            score = -weight / math.log(u)
+            if best == -1 or score > best_score:
+                best, best_score = i, score
+        return best
+
+
+def parse_meta_lines(meta_lines):
+    """Returns the servers list and routing line of the ';' header lines of a latency file."""
+    routing_lines = [x for x in meta_lines if x.startswith(ROUTING_PREFIX)]
+    other_lines = [x for x in meta_lines if not x.startswith(ROUTING_PREFIX)]
+    if len(other_lines) == 0:
+        raise RuntimeError('Servers line does not exist in data')
+    servers = other_lines[-1].replace(';', '').split(',')
+    routing = routing_lines[-1] if routing_lines else ROUTING_PREFIX + 'modulo'
+    return servers, routing
+
+
+def create_router(routing, servers):
+    values = routing[len(ROUTING_PREFIX):].split(':')
+    method = values[0]
+    weights = [float(x) for x in values[1].split(',')] if len(values) > 1 else [1.0] * len(servers)
+    if method == 'modulo':
+        return ModuloRouter(servers)
+    if method == 'jump':
+        return JumpRouter(servers)
+    if method == 'ketama':
+        return KetamaRouter(servers, weights)
+    if method == 'weighted':
+        return WeightedRouter(servers, weights)
+    raise RuntimeError('Unrecognized routing method: {0}'.format(method))
+
+
+def create_router_from_data(all_data):
+    """Creates the router of a latency file given its lines."""
+    servers, routing = parse_meta_lines([x for x in all_data if x.startswith(';')])
+    return create_router(routing, servers)